@@ -0,0 +1,421 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.config;
+
+import java.io.PrintStream;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Holds the caches shared by the configurations of a manager hierarchy: the derived instances
+ * created by {@link ParameterizedConfig#getInstance} and the resource-loaded configurations.
+ * Each cache is created according to a {@link Policy}, and hits, misses, and evictions are
+ * tallied by config class.
+ */
+public class ConfigCache
+{
+    /**
+     * Determines how a cache retains its entries.
+     */
+    public static class Policy
+    {
+        /** A policy that retains entries until the collector needs the memory. */
+        public static final Policy SOFT = new Policy(-1, true);
+
+        /**
+         * Creates a new policy.
+         *
+         * @param maximumSize the maximum number of entries to retain (evicting the least
+         * recently used entries once exceeded), or -1 for no limit.
+         * @param softValues if true, hold the values through soft references so that the
+         * collector may reclaim them before the size limit is reached.
+         */
+        public Policy (int maximumSize, boolean softValues)
+        {
+            _maximumSize = maximumSize;
+            _softValues = softValues;
+        }
+
+        /**
+         * Returns the maximum number of entries to retain, or -1 for no limit.
+         */
+        public int getMaximumSize ()
+        {
+            return _maximumSize;
+        }
+
+        /**
+         * Checks whether values are held through soft references.
+         */
+        public boolean getSoftValues ()
+        {
+            return _softValues;
+        }
+
+        /**
+         * Creates a map with this policy, notifying the supplied listener when entries are
+         * removed.
+         */
+        public <K, V> ConcurrentMap<K, V> createMap (RemovalListener<K, V> listener)
+        {
+            CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().concurrencyLevel(1);
+            if (_maximumSize != -1) {
+                builder.maximumSize(_maximumSize);
+            }
+            if (_softValues) {
+                builder.softValues();
+            }
+            return builder.removalListener(listener).<K, V>build().asMap();
+        }
+
+        @Override
+        public String toString ()
+        {
+            return "[maximumSize=" + _maximumSize + ", softValues=" + _softValues + "]";
+        }
+
+        /** The maximum number of entries, or -1 for no limit. */
+        protected int _maximumSize;
+
+        /** Whether or not to use soft references for the values. */
+        protected boolean _softValues;
+    }
+
+    /**
+     * Hit, miss, and eviction counts for a single config class.
+     */
+    public static class Stats
+    {
+        /**
+         * Returns the number of lookups satisfied by the cache.
+         */
+        public long getHits ()
+        {
+            return _hits.get();
+        }
+
+        /**
+         * Returns the number of lookups that required a new entry.
+         */
+        public long getMisses ()
+        {
+            return _misses.get();
+        }
+
+        /**
+         * Returns the number of entries evicted due to size or memory pressure.
+         */
+        public long getEvictions ()
+        {
+            return _evictions.get();
+        }
+
+        /**
+         * Returns the fraction of lookups satisfied by the cache.
+         */
+        public double getHitRate ()
+        {
+            long hits = getHits(), total = hits + getMisses();
+            return (total == 0) ? 1.0 : (double)hits / total;
+        }
+
+        @Override
+        public String toString ()
+        {
+            return "[hits=" + getHits() + ", misses=" + getMisses() +
+                ", evictions=" + getEvictions() + "]";
+        }
+
+        /** The counters. */
+        protected AtomicLong _hits = new AtomicLong(), _misses = new AtomicLong(),
+            _evictions = new AtomicLong();
+    }
+
+    /**
+     * Creates a cache that uses soft values for both derived instances and resources, as was
+     * the behavior before policies were configurable.
+     */
+    public ConfigCache ()
+    {
+        this(Policy.SOFT, Policy.SOFT);
+    }
+
+    /**
+     * Creates a cache with the specified policies.
+     *
+     * @param derivedPolicy the policy for derived instances, whose size limit (if any) is a
+     * budget shared by all parameterized configs.
+     * @param resourcePolicy the policy for resource-loaded configs.
+     */
+    public ConfigCache (Policy derivedPolicy, Policy resourcePolicy)
+    {
+        _derivedPolicy = derivedPolicy;
+        _resourcePolicy = resourcePolicy;
+        _derived = derivedPolicy.createMap(
+                new RemovalListener<DerivedKey, ParameterizedConfig>() {
+            public void onRemoval (
+                    RemovalNotification<DerivedKey, ParameterizedConfig> notification) {
+                DerivedKey key = notification.getKey();
+                if (key == null || notification.getCause() == RemovalCause.REPLACED) {
+                    return;
+                }
+                removeDerivedArgs(key);
+                if (notification.wasEvicted()) {
+                    getStats(key.base.getClass())._evictions.incrementAndGet();
+                }
+            }
+        });
+        _resources = resourcePolicy.createMap(new RemovalListener<String, ManagedConfig>() {
+            public void onRemoval (RemovalNotification<String, ManagedConfig> notification) {
+                if (notification.wasEvicted()) {
+                    // collected values can't tell us their class
+                    ManagedConfig value = notification.getValue();
+                    getStats(value == null ? ManagedConfig.class : value.getClass())
+                        ._evictions.incrementAndGet();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the policy used for derived instances.
+     */
+    public Policy getDerivedPolicy ()
+    {
+        return _derivedPolicy;
+    }
+
+    /**
+     * Returns the policy used for resource-loaded configs.
+     */
+    public Policy getResourcePolicy ()
+    {
+        return _resourcePolicy;
+    }
+
+    /**
+     * Returns the cached instance of the specified config derived with the given arguments, or
+     * <code>null</code> if there isn't one.
+     */
+    public ParameterizedConfig getDerived (ParameterizedConfig base, ArgumentMap args)
+    {
+        ParameterizedConfig instance = _derived.get(new DerivedKey(base, args));
+        noteLookup(base.getClass(), instance != null);
+        return instance;
+    }
+
+    /**
+     * Stores an instance derived from the specified config.
+     */
+    public void putDerived (
+        ParameterizedConfig base, ArgumentMap args, ParameterizedConfig instance)
+    {
+        synchronized (_derivedArgs) {
+            Set<ArgumentMap> argset = _derivedArgs.get(base);
+            if (argset == null) {
+                _derivedArgs.put(base, argset = Sets.newHashSet());
+            }
+            argset.add(args);
+            _derived.put(new DerivedKey(base, args), instance);
+        }
+    }
+
+    /**
+     * Returns a snapshot of the cached instances derived from the specified config, mapped by
+     * their arguments.
+     */
+    public List<Map.Entry<ArgumentMap, ParameterizedConfig>> getDerived (ParameterizedConfig base)
+    {
+        ArgumentMap[] argarray;
+        synchronized (_derivedArgs) {
+            Set<ArgumentMap> argset = _derivedArgs.get(base);
+            if (argset == null) {
+                return Lists.newArrayList();
+            }
+            argarray = argset.toArray(new ArgumentMap[argset.size()]);
+        }
+        List<Map.Entry<ArgumentMap, ParameterizedConfig>> list =
+            Lists.newArrayListWithCapacity(argarray.length);
+        for (ArgumentMap args : argarray) {
+            ParameterizedConfig instance = _derived.get(new DerivedKey(base, args));
+            if (instance != null) {
+                list.add(Maps.immutableEntry(args, instance));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Returns the map containing the resource-loaded configs.  Lookups should be recorded
+     * through {@link #noteLookup}.
+     */
+    public Map<String, ManagedConfig> getResources ()
+    {
+        return _resources;
+    }
+
+    /**
+     * Returns the map containing resource configs that have been read in advance by
+     * {@link ConfigManager#prefetchResourceConfig} but not yet initialized.  The values are
+     * softly held, so that configs prefetched but never requested may be collected.
+     */
+    public Map<String, ManagedConfig> getPrefetched ()
+    {
+        return _prefetched;
+    }
+
+    /**
+     * Records a cache lookup for the specified class.
+     */
+    public void noteLookup (Class<?> clazz, boolean hit)
+    {
+        Stats stats = getStats(clazz);
+        (hit ? stats._hits : stats._misses).incrementAndGet();
+    }
+
+    /**
+     * Returns the statistics for the specified class, creating them if necessary.
+     */
+    public Stats getStats (Class<?> clazz)
+    {
+        Stats stats = _stats.get(clazz);
+        if (stats == null) {
+            Stats nstats = _stats.putIfAbsent(clazz, stats = new Stats());
+            if (nstats != null) {
+                stats = nstats;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the statistics for all classes for which lookups have been recorded.
+     */
+    public Map<Class<?>, Stats> getStats ()
+    {
+        return _stats;
+    }
+
+    /**
+     * Writes a summary of the cache statistics to the specified stream.
+     */
+    public void dumpStats (PrintStream out)
+    {
+        out.println("Derived: " + _derived.size() + " " + _derivedPolicy);
+        out.println("Resources: " + _resources.size() + " " + _resourcePolicy);
+        for (Map.Entry<Class<?>, Stats> entry : _stats.entrySet()) {
+            out.println("  " + entry.getKey().getName() + " " + entry.getValue());
+        }
+    }
+
+    /**
+     * Removes a derived instance's arguments from the index of its base.
+     */
+    protected void removeDerivedArgs (DerivedKey key)
+    {
+        synchronized (_derivedArgs) {
+            Set<ArgumentMap> argset = _derivedArgs.get(key.base);
+            if (argset != null && argset.remove(key.args) && argset.isEmpty()) {
+                _derivedArgs.remove(key.base);
+            }
+        }
+    }
+
+    /**
+     * Identifies a derived instance by the identity of its base and its arguments.
+     */
+    protected static class DerivedKey
+    {
+        /** The config from which the instance is derived. */
+        public ParameterizedConfig base;
+
+        /** The arguments applied to the instance. */
+        public ArgumentMap args;
+
+        public DerivedKey (ParameterizedConfig base, ArgumentMap args)
+        {
+            this.base = base;
+            this.args = args;
+        }
+
+        @Override
+        public int hashCode ()
+        {
+            return 31 * System.identityHashCode(base) + args.hashCode();
+        }
+
+        @Override
+        public boolean equals (Object other)
+        {
+            if (!(other instanceof DerivedKey)) {
+                return false;
+            }
+            DerivedKey okey = (DerivedKey)other;
+            return base == okey.base && args.equals(okey.args);
+        }
+    }
+
+    /** The derived instance policy. */
+    protected Policy _derivedPolicy;
+
+    /** The resource config policy. */
+    protected Policy _resourcePolicy;
+
+    /** Derived instances mapped by base and arguments. */
+    protected ConcurrentMap<DerivedKey, ParameterizedConfig> _derived;
+
+    /** The arguments of the cached instances derived from each base (weakly keyed by identity),
+     * so that the instances of a base can be found without scanning the cache. */
+    protected Map<ParameterizedConfig, Set<ArgumentMap>> _derivedArgs =
+        new MapMaker().weakKeys().makeMap();
+
+    /** Resource-loaded configs mapped by path. */
+    protected ConcurrentMap<String, ManagedConfig> _resources;
+
+    /** Prefetched resource configs awaiting initialization. */
+    protected ConcurrentMap<String, ManagedConfig> _prefetched =
+        Policy.SOFT.createMap(new RemovalListener<String, ManagedConfig>() {
+            public void onRemoval (RemovalNotification<String, ManagedConfig> notification) {
+                // no need to track
+            }
+        });
+
+    /** Statistics mapped by config class. */
+    protected ConcurrentMap<Class<?>, Stats> _stats = Maps.newConcurrentMap();
+}
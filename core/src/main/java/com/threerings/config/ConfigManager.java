@@ -31,11 +31,14 @@ import java.io.PrintStream;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import com.google.common.collect.Lists;
 
@@ -45,6 +48,7 @@ import com.samskivert.util.ObserverList;
 import com.samskivert.util.PropertiesUtil;
 import com.samskivert.util.QuickSort;
 import com.samskivert.util.StringUtil;
+import com.samskivert.util.Tuple;
 
 import com.threerings.resource.ResourceManager;
 
@@ -53,7 +57,6 @@ import com.threerings.export.Exportable;
 import com.threerings.export.Exporter;
 import com.threerings.export.Importer;
 import com.threerings.expr.Scope;
-import com.threerings.util.CacheUtil;
 import com.threerings.util.Copyable;
 import com.threerings.util.MessageManager;
 
@@ -65,6 +68,18 @@ import static com.threerings.ClydeLog.log;
 public class ConfigManager
     implements Copyable, Exportable
 {
+    /**
+     * Returns the cache used for derived instances of configs that aren't associated with an
+     * initialized manager.
+     */
+    public static synchronized ConfigCache getDefaultConfigCache ()
+    {
+        if (_defaultConfigCache == null) {
+            _defaultConfigCache = new ConfigCache();
+        }
+        return _defaultConfigCache;
+    }
+
     /**
      * Creates a new global configuration manager.
      *
@@ -106,8 +121,9 @@ public class ConfigManager
             return;
         }
 
-        // create the resource cache
-        _resources = CacheUtil.softValues();
+        // create the resource and derived instance caches
+        _configCache = createConfigCache();
+        _resources = _configCache.getResources();
 
         // register the global groups
         Class<?>[] classes = _classes.get("global");
@@ -130,6 +146,7 @@ public class ConfigManager
         _parent = parent;
         _rsrcmgr = parent._rsrcmgr;
         _msgmgr = parent._msgmgr;
+        _configCache = parent._configCache;
         _resources = parent._resources;
         _classes = parent._classes;
 
@@ -201,6 +218,25 @@ public class ConfigManager
         return _configPath;
     }
 
+    /**
+     * Returns the cache shared by all managers in this hierarchy, or <code>null</code> if the
+     * manager hasn't been initialized.
+     */
+    public ConfigCache getConfigCache ()
+    {
+        return _configCache;
+    }
+
+    /**
+     * Returns the cache hit, miss, and eviction statistics for derived instances and resource
+     * configs, mapped by config class.
+     */
+    public Map<Class<?>, ConfigCache.Stats> getCacheStats ()
+    {
+        return (_configCache == null) ?
+            Collections.<Class<?>, ConfigCache.Stats>emptyMap() : _configCache.getStats();
+    }
+
     /**
      * Determines whether configurations of the specified class are loaded from individual
      * resources.
@@ -344,13 +380,25 @@ public class ConfigManager
     public ManagedConfig getResourceConfig (String name)
     {
         ManagedConfig config = _resources.get(name);
-        if (config == null) {
+        if (config != null) {
+            _configCache.noteLookup(config.getClass(), true);
+        } else {
+            // use the prefetched config, if any, to avoid reading it here
+            config = _configCache.getPrefetched().remove(name);
+            if (config != null) {
+                _resources.put(name, config);
+                config.setName(name);
+                config.init(getRoot());
+                _configCache.noteLookup(config.getClass(), false);
+                return config;
+            }
             try {
                 BinaryImporter in = new BinaryImporter(_rsrcmgr.getResource(name));
                 _resources.put(name, config = (ManagedConfig)in.readObject());
                 config.setName(name);
                 config.init(getRoot());
                 in.close();
+                _configCache.noteLookup(config.getClass(), false);
 
             } catch (FileNotFoundException fnfe) {
                 return null;
@@ -363,6 +411,20 @@ public class ConfigManager
         return config;
     }
 
+    /**
+     * Reads a resource config (and, recursively, the resource configs that it references) in
+     * advance of its being requested through {@link #getResourceConfig}.  The configs are parsed
+     * but not initialized, which is deferred until they are requested.  Unlike the other
+     * methods of the manager, this may be called from any thread.
+     *
+     * @param paths if non-null, a set to populate with the paths of the resources on which the
+     * prefetched configs depend (textures, etc.), so that they may be prefetched as well.
+     */
+    public void prefetchResourceConfig (String name, Set<String> paths)
+    {
+        prefetchResourceConfig(name, paths, new HashSet<String>());
+    }
+
     /**
      * Retrieves the groups registered for the specified class in this manager and all of its
      * ancestors.
@@ -641,6 +703,88 @@ public class ConfigManager
             }
             _classes.put(type, classes);
         }
+
+        // read the cache policies
+        _derivedPolicy = parseCachePolicy(props.getProperty("cache.derived"));
+        _resourcePolicy = parseCachePolicy(props.getProperty("cache.resource"));
+    }
+
+    /**
+     * Prefetches a resource config and those it references, skipping any in the visited set.
+     */
+    protected void prefetchResourceConfig (
+        String name, Set<String> paths, HashSet<String> visited)
+    {
+        if (name == null || !visited.add(name) || _resources.containsKey(name)) {
+            return;
+        }
+        Map<String, ManagedConfig> prefetched = _configCache.getPrefetched();
+        ManagedConfig config = prefetched.get(name);
+        if (config == null) {
+            try {
+                BinaryImporter in = new BinaryImporter(_rsrcmgr.getResource(name));
+                try {
+                    config = (ManagedConfig)in.readObject();
+                } finally {
+                    in.close();
+                }
+            } catch (FileNotFoundException fnfe) {
+                return;
+
+            } catch (Exception e) { // IOException, ClassCastException
+                log.warning("Failed to prefetch config from resource.", "name", name, e);
+                return;
+            }
+            prefetched.put(name, config);
+        }
+        if (paths != null) {
+            HashSet<String> resources = new HashSet<String>();
+            config.getUpdateResources(resources);
+            paths.addAll(resources);
+        }
+        ConfigReferenceSet refs = new ConfigReferenceSet();
+        config.getUpdateReferences(refs);
+        for (Tuple<Class<?>, ?> ref : refs) {
+            if (isResourceClass(ref.left)) {
+                prefetchResourceConfig(((ConfigReference<?>)ref.right).getName(), paths, visited);
+            }
+        }
+    }
+
+    /**
+     * Creates the cache to share between this manager and its children.  The default
+     * implementation uses the policies specified in the manager properties, if any.
+     */
+    protected ConfigCache createConfigCache ()
+    {
+        return new ConfigCache(_derivedPolicy, _resourcePolicy);
+    }
+
+    /**
+     * Parses a cache policy of the form <code>size</code>, <code>soft</code>, or
+     * <code>size,soft</code> from the manager properties.
+     */
+    protected static ConfigCache.Policy parseCachePolicy (String value)
+        throws IOException
+    {
+        if (value == null) {
+            return ConfigCache.Policy.SOFT;
+        }
+        int maximumSize = -1;
+        boolean softValues = false;
+        for (String token : StringUtil.parseStringArray(value)) {
+            if (token.equals("soft")) {
+                softValues = true;
+            } else {
+                try {
+                    maximumSize = Integer.parseInt(token);
+                } catch (NumberFormatException e) {
+                    throw (IOException)new IOException(
+                        "Invalid cache policy: " + value).initCause(e);
+                }
+            }
+        }
+        return new ConfigCache.Policy(maximumSize, softValues);
     }
 
     /**
@@ -705,6 +849,13 @@ public class ConfigManager
     /** Resource-loaded configs mapped by path. */
     protected Map<String, ManagedConfig> _resources;
 
+    /** The cache of derived instances and resource configs (shared with our children). */
+    protected ConfigCache _configCache;
+
+    /** The cache policies read from the manager properties. */
+    protected ConfigCache.Policy _derivedPolicy = ConfigCache.Policy.SOFT,
+        _resourcePolicy = ConfigCache.Policy.SOFT;
+
     /** Maps manager types to their classes (as read from the manager properties). */
     protected HashMap<String, Class<?>[]> _classes;
 
@@ -713,4 +864,7 @@ public class ConfigManager
 
     /** Set when we should ignore config updates because we're refreshing. */
     protected boolean _ignoreUpdates;
+
+    /** The cache used by configs that aren't associated with an initialized manager. */
+    protected static ConfigCache _defaultConfigCache;
 }
@@ -27,8 +27,6 @@ package com.threerings.config;
 
 import java.io.PrintStream;
 
-import java.lang.ref.SoftReference;
-
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -38,7 +36,6 @@ import com.google.common.collect.Lists;
 import com.threerings.editor.Editable;
 import com.threerings.editor.Property;
 import com.threerings.expr.Scope;
-import com.threerings.util.CacheUtil;
 import com.threerings.util.DeepOmit;
 import com.threerings.util.DeepUtil;
 
@@ -97,15 +94,14 @@ public class ParameterizedConfig extends ManagedConfig
                 break;
             }
         }
-        if (_derived == null) {
-            _derived = CacheUtil.softValues(1);
-        }
-        ParameterizedConfig instance = _derived.get(filteredArgs);
+        ConfigCache cache = getConfigCache();
+        ParameterizedConfig instance = cache.getDerived(this, filteredArgs);
         if (instance == null) {
             if (derivedArgs == null) {
                 derivedArgs = filteredArgs.clone();
             }
-            _derived.put(derivedArgs, instance = (ParameterizedConfig)clone());
+            cache.putDerived(this, derivedArgs, instance = (ParameterizedConfig)clone());
+            _hasDerived = true;
             instance.init(_cfgmgr);
             instance._base = this;
             instance._args = derivedArgs;
@@ -126,16 +122,14 @@ public class ParameterizedConfig extends ManagedConfig
         super.wasUpdated();
 
         // update derived instances
-        if (_derived != null) {
-            for (Map.Entry<ArgumentMap, ParameterizedConfig> entry : _derived.entrySet()) {
+        if (_hasDerived) {
+            for (Map.Entry<ArgumentMap, ParameterizedConfig> entry :
+                    getConfigCache().getDerived(this)) {
                 ParameterizedConfig instance = entry.getValue();
                 copy(instance);
                 applyArguments(instance, entry.getKey());
                 instance.wasUpdated();
             }
-            if (_derived.isEmpty()) {
-                _derived = null;
-            }
         }
     }
 
@@ -167,6 +161,15 @@ public class ParameterizedConfig extends ManagedConfig
         }
     }
 
+    /**
+     * Returns the cache in which to store derived instances.
+     */
+    protected ConfigCache getConfigCache ()
+    {
+        ConfigCache cache = (_cfgmgr == null) ? null : _cfgmgr.getConfigCache();
+        return (cache == null) ? ConfigManager.getDefaultConfigCache() : cache;
+    }
+
     /**
      * Returns an instance of this config bound in the specified scope.
      */
@@ -226,7 +229,8 @@ public class ParameterizedConfig extends ManagedConfig
     @DeepOmit
     protected transient ArgumentMap _args;
 
-    /** Maps arguments to derived instances. */
+    /** Set once we have stored a derived instance in the cache (so that we know to look for
+     * them when updated). */
     @DeepOmit
-    protected transient Map<ArgumentMap, ParameterizedConfig> _derived;
+    protected transient boolean _hasDerived;
 }
@@ -26,8 +26,10 @@
 package com.threerings.editor.tools;
 
 import java.io.File;
+import java.io.IOException;
 
 import java.util.List;
+import java.util.Set;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.DirectoryScanner;
@@ -35,18 +37,34 @@ import org.apache.tools.ant.Task;
 import org.apache.tools.ant.types.FileSet;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import com.samskivert.util.Tuple;
 
 import com.threerings.resource.ResourceManager;
 import com.threerings.util.MessageManager;
 
 import com.threerings.config.ConfigManager;
 import com.threerings.config.ManagedConfig;
+import com.threerings.editor.util.PropertyUtil;
+import com.threerings.editor.util.ReferenceManifest;
+import com.threerings.util.BuildManifest;
 
 /**
- * Validates the references in a set of configs.
+ * Validates the references in a set of configs.  If a manifest is specified, resource configs
+ * whose contents haven't changed since they were last found to be valid are not read again;
+ * we simply check that the configs and resources they reference still exist.
  */
 public class ConfigValidatorTask extends Task
 {
+    /**
+     * Sets the file in which to record the validated configs and their references.
+     */
+    public void setManifest (File manifest)
+    {
+        _manifest = manifest;
+    }
+
     /**
      * Adds a fileset to the list of sets to process.
      */
@@ -70,20 +88,56 @@ public class ConfigValidatorTask extends Task
         valid = cfgmgr.validateReferences("", System.err) && valid;
 
         // validate the resource configs
+        ReferenceManifest manifest = (_manifest == null) ? null : new ReferenceManifest(_manifest);
         for (FileSet fs : _filesets) {
             DirectoryScanner ds = fs.getDirectoryScanner(getProject());
             File fromDir = fs.getDir(getProject());
             for (String file : ds.getIncludedFiles()) {
                 File source = new File(fromDir, file);
                 String path = rsrcmgr.getResourcePath(source);
-                ManagedConfig config = (path == null) ? null : cfgmgr.getResourceConfig(path);
-                if (config != null) {
+                if (path == null) {
+                    continue;
+                }
+                String hash = null;
+                if (manifest != null) {
                     try {
-                        valid = config.validateReferences(path, System.err) && valid;
-                    } catch (Exception e) {
-                        throw new BuildException("Error validating '" + path + "': " + e);
+                        hash = BuildManifest.getHash(source);
+                    } catch (IOException e) {
+                        throw new BuildException("Error reading '" + path + "': " + e);
+                    }
+                    if (manifest.isStillValid(path, hash, cfgmgr)) {
+                        continue;
                     }
                 }
+                ManagedConfig config = cfgmgr.getResourceConfig(path);
+                if (config == null) {
+                    continue;
+                }
+                boolean cvalid;
+                try {
+                    cvalid = config.validateReferences(path, System.err);
+                } catch (Exception e) {
+                    throw new BuildException("Error validating '" + path + "': " + e);
+                }
+                valid = cvalid && valid;
+                if (manifest == null) {
+                    continue;
+                }
+                if (cvalid) {
+                    Set<Tuple<Class<?>, String>> configs = Sets.newHashSet();
+                    Set<String> resources = Sets.newHashSet();
+                    PropertyUtil.getReferences(cfgmgr, config, configs, resources);
+                    manifest.put(path, hash, cfgmgr, configs, resources);
+                } else {
+                    manifest.remove(path);
+                }
+            }
+        }
+        if (manifest != null) {
+            try {
+                manifest.save();
+            } catch (IOException e) {
+                throw new BuildException("Error writing manifest: " + e, e);
             }
         }
 
@@ -92,6 +146,9 @@ public class ConfigValidatorTask extends Task
         }
     }
 
+    /** The file in which to record the validated configs, if any. */
+    protected File _manifest;
+
     /** A list of filesets that contain resource configs. */
     protected List<FileSet> _filesets = Lists.newArrayList();
 }
@@ -0,0 +1,154 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.editor.util;
+
+import java.io.File;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.samskivert.util.Tuple;
+
+import com.threerings.resource.ResourceManager;
+
+import com.threerings.config.ConfigManager;
+import com.threerings.config.ManagedConfig;
+import com.threerings.export.util.ExportUtil;
+import com.threerings.util.BuildManifest;
+
+/**
+ * A build manifest for validation tasks that records, for each validated file, the configs and
+ * resources that it references, along with the hash of each config's exported form.  The
+ * validity of an unchanged file then depends only on whether the resources still exist and the
+ * configs still exist unchanged, which can be checked without reading the file.
+ */
+public class ReferenceManifest extends BuildManifest
+{
+    /**
+     * Creates a manifest that will be stored in the specified file, reading its existing
+     * contents if present.
+     */
+    public ReferenceManifest (File file)
+    {
+        super(file);
+    }
+
+    /**
+     * Checks whether the specified source was validated with the given hash, all of the configs
+     * it referenced still exist with the same hashes, and all of the resources it referenced
+     * still exist, in which case it need not be validated again.
+     */
+    public boolean isStillValid (String path, String hash, ConfigManager cfgmgr)
+    {
+        if (!isCurrent(path, hash)) {
+            return false;
+        }
+        ResourceManager rsrcmgr = cfgmgr.getResourceManager();
+        for (String dependency : getDependencies(path)) {
+            if (dependency.startsWith(RESOURCE_PREFIX)) {
+                String resource = dependency.substring(RESOURCE_PREFIX.length());
+                if (!rsrcmgr.getResourceFile(resource).exists()) {
+                    return false;
+                }
+                continue;
+            }
+            // configs are recorded as prefix, class name, config hash, and config name
+            String[] parts = dependency.split(":", 4);
+            if (parts.length != 4) {
+                return false;
+            }
+            try {
+                Class<? extends ManagedConfig> clazz =
+                    Class.forName(parts[1]).asSubclass(ManagedConfig.class);
+                if (!parts[2].equals(getConfigHash(cfgmgr, clazz, parts[3]))) {
+                    return false;
+                }
+            } catch (Exception e) { // ClassNotFoundException, ClassCastException
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records that the specified source was validated with the given hash and references.
+     * Configs that the supplied manager can't resolve (those defined within the source itself,
+     * for instance) are omitted.
+     */
+    public void put (
+        String path, String hash, ConfigManager cfgmgr, Set<Tuple<Class<?>, String>> configs,
+        Set<String> resources)
+    {
+        List<String> dependencies = Lists.newArrayListWithCapacity(
+            configs.size() + resources.size());
+        for (Tuple<Class<?>, String> tuple : configs) {
+            @SuppressWarnings("unchecked") Class<ManagedConfig> cclass =
+                (Class<ManagedConfig>)tuple.left;
+            String chash = getConfigHash(cfgmgr, cclass, tuple.right);
+            if (chash != null) {
+                dependencies.add(
+                    CONFIG_PREFIX + cclass.getName() + ":" + chash + ":" + tuple.right);
+            }
+        }
+        for (String resource : resources) {
+            dependencies.add(RESOURCE_PREFIX + resource);
+        }
+        put(path, hash, dependencies);
+    }
+
+    /**
+     * Returns the hash of the exported form of the specified config, or <code>null</code> if the
+     * manager can't resolve it.
+     */
+    protected synchronized String getConfigHash (
+        ConfigManager cfgmgr, Class<? extends ManagedConfig> clazz, String name)
+    {
+        String key = clazz.getName() + ":" + name;
+        String hash = _configHashes.get(key);
+        if (hash == null) {
+            ManagedConfig config = cfgmgr.getConfig(clazz, name);
+            if (config == null) {
+                return null;
+            }
+            hash = Hashing.md5().hashBytes(ExportUtil.toBytes(config, false)).toString();
+            _configHashes.put(key, hash);
+        }
+        return hash;
+    }
+
+    /** The hashes of the configs resolved during this build, mapped by class and name. */
+    protected Map<String, String> _configHashes = Maps.newHashMap();
+
+    /** The prefix of recorded config references. */
+    protected static final String CONFIG_PREFIX = "c:";
+
+    /** The prefix of recorded resource references. */
+    protected static final String RESOURCE_PREFIX = "r:";
+}
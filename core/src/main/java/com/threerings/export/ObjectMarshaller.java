@@ -32,7 +32,8 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.threerings.util.ReflectionUtil;
 
@@ -48,7 +49,12 @@ public class ObjectMarshaller
     {
         ObjectMarshaller marshaller = _marshallers.get(clazz);
         if (marshaller == null) {
-            _marshallers.put(clazz, marshaller = new ObjectMarshaller(clazz));
+            // configs may be imported on prefetch threads; make sure they all share one instance
+            ObjectMarshaller omarshaller = _marshallers.putIfAbsent(
+                clazz, marshaller = new ObjectMarshaller(clazz));
+            if (omarshaller != null) {
+                marshaller = omarshaller;
+            }
         }
         return marshaller;
     }
@@ -230,6 +236,6 @@ public class ObjectMarshaller
     protected Object _prototype;
 
     /** Maps classes to created marshallers. */
-    protected static HashMap<Class<?>, ObjectMarshaller> _marshallers =
-        new HashMap<Class<?>, ObjectMarshaller>();
+    protected static ConcurrentMap<Class<?>, ObjectMarshaller> _marshallers =
+        new ConcurrentHashMap<Class<?>, ObjectMarshaller>();
 }
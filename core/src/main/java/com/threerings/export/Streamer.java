@@ -38,7 +38,8 @@ import java.nio.IntBuffer;
 import java.nio.LongBuffer;
 import java.nio.ShortBuffer;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.lwjgl.BufferUtils;
 
@@ -106,7 +107,8 @@ public abstract class Streamer<T>
     protected static enum Dummy {}
 
     /** Registered streamers. */
-    protected static HashMap<Class<?>, Streamer> _streamers = new HashMap<Class<?>, Streamer>();
+    protected static ConcurrentMap<Class<?>, Streamer> _streamers =
+        new ConcurrentHashMap<Class<?>, Streamer>();
     static {
         // register basic streamers for wrapper types, primitive arrays
         Streamer streamer = new Streamer<Boolean>() {
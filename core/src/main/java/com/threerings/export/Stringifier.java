@@ -35,8 +35,9 @@ import java.nio.IntBuffer;
 import java.nio.LongBuffer;
 import java.nio.ShortBuffer;
 
-import java.util.HashMap;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.lwjgl.BufferUtils;
 
@@ -98,8 +99,8 @@ public abstract class Stringifier<T>
     protected static enum Dummy {}
 
     /** Registered stringifiers. */
-    protected static HashMap<Class<?>, Stringifier> _stringifiers =
-        new HashMap<Class<?>, Stringifier>();
+    protected static ConcurrentMap<Class<?>, Stringifier> _stringifiers =
+        new ConcurrentHashMap<Class<?>, Stringifier>();
     static {
         // register basic stringifiers for wrapper types, primitive arrays
         _stringifiers.put(Boolean.class, new Stringifier<Boolean>() {
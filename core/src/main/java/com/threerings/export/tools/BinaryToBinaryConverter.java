@@ -31,6 +31,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.tools.ant.DirectoryScanner;
 
@@ -91,22 +93,29 @@ public class BinaryToBinaryConverter
     }
 
     /**
-     * Converts the file(s) identified by the given pattern.
+     * Converts the file(s) identified by the given pattern, in parallel.
      */
-    public static void convert (String pattern, boolean compress)
+    public static void convert (String pattern, final boolean compress)
         throws IOException
     {
         DirectoryScanner scanner = new DirectoryScanner();
         scanner.setBasedir(".");
         scanner.setIncludes(new String[] { pattern });
         scanner.scan();
-        for (String source : scanner.getIncludedFiles()) {
-            try {
-                convert(source, source, compress);
-            } catch (IOException e) {
-                log.warning("Error converting file.", "file", source, e);
-            }
+        ExecutorService executor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors());
+        for (final String source : scanner.getIncludedFiles()) {
+            executor.execute(new Runnable() {
+                public void run () {
+                    try {
+                        convert(source, source, compress);
+                    } catch (IOException e) {
+                        log.warning("Error converting file.", "file", source, e);
+                    }
+                }
+            });
         }
+        XMLToBinaryConverter.awaitCompletion(executor);
     }
 
     /**
@@ -31,6 +31,10 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.tools.ant.DirectoryScanner;
 
 import com.samskivert.util.ArrayUtil;
@@ -88,21 +92,44 @@ public class XMLToBinaryConverter
     }
 
     /**
-     * Converts the file(s) identified by the given pattern.
+     * Converts the file(s) identified by the given pattern, in parallel.
      */
-    public static void convert (String pattern, boolean compress)
+    public static void convert (String pattern, final boolean compress)
         throws IOException
     {
         DirectoryScanner scanner = new DirectoryScanner();
         scanner.setBasedir(".");
         scanner.setIncludes(new String[] { pattern });
         scanner.scan();
-        for (String source : scanner.getIncludedFiles()) {
-            try {
-                convert(source, FileUtil.resuffix(new File(source), ".xml", ".dat"), compress);
-            } catch (IOException e) {
-                log.warning("Error converting file.", "file", source, e);
-            }
+        ExecutorService executor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors());
+        for (final String source : scanner.getIncludedFiles()) {
+            executor.execute(new Runnable() {
+                public void run () {
+                    try {
+                        convert(source, FileUtil.resuffix(new File(source), ".xml", ".dat"),
+                            compress);
+                    } catch (IOException e) {
+                        log.warning("Error converting file.", "file", source, e);
+                    }
+                }
+            });
+        }
+        awaitCompletion(executor);
+    }
+
+    /**
+     * Shuts down the supplied executor and waits for its tasks to complete.
+     */
+    protected static void awaitCompletion (ExecutorService executor)
+        throws IOException
+    {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            throw new IOException("Interrupted while converting.", e);
         }
     }
 
@@ -29,14 +29,21 @@ import java.io.File;
 import java.io.IOException;
 
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.DirectoryScanner;
 import org.apache.tools.ant.Task;
 import org.apache.tools.ant.types.FileSet;
 
+import com.threerings.util.BuildManifest;
+
 /**
- * Converts XML export files into binary export files.
+ * Converts XML export files into binary export files.  Files are converted in parallel.  If a
+ * manifest is specified, a file is converted only if its contents have changed since it was last
+ * converted (or its target is missing); otherwise, only if it is newer than its target.
  */
 public class XMLToBinaryTask extends Task
 {
@@ -56,6 +63,23 @@ public class XMLToBinaryTask extends Task
         _compress = compress;
     }
 
+    /**
+     * Sets the file in which to store the hashes of the converted files.
+     */
+    public void setManifest (File manifest)
+    {
+        _manifest = manifest;
+    }
+
+    /**
+     * Sets the number of threads on which to convert files (by default, the number of
+     * available processors).
+     */
+    public void setThreads (int threads)
+    {
+        _threads = threads;
+    }
+
     /**
      * Adds a fileset to the list of sets to process.
      */
@@ -68,23 +92,47 @@ public class XMLToBinaryTask extends Task
     public void execute ()
         throws BuildException
     {
+        final BuildManifest manifest = (_manifest == null) ? null : new BuildManifest(_manifest);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, _threads));
         for (FileSet fs : _filesets) {
             DirectoryScanner ds = fs.getDirectoryScanner(getProject());
-            File fromDir = fs.getDir(getProject());
-            for (String file : ds.getIncludedFiles()) {
-                try {
-                    convert(fromDir, file);
-                } catch (Exception e) {
-                    System.err.println("Error converting " + new File(fromDir, file) + ": " + e);
-                }
+            final File fromDir = fs.getDir(getProject());
+            for (final String file : ds.getIncludedFiles()) {
+                executor.execute(new Runnable() {
+                    public void run () {
+                        try {
+                            convert(fromDir, file, manifest);
+                        } catch (Exception e) {
+                            System.err.println(
+                                "Error converting " + new File(fromDir, file) + ": " + e);
+                        }
+                    }
+                });
+            }
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            throw new BuildException("Interrupted while converting.", e);
+        }
+        if (manifest != null) {
+            try {
+                manifest.save();
+            } catch (IOException e) {
+                throw new BuildException("Error writing manifest: " + e, e);
             }
         }
     }
 
     /**
      * Converts a single file.
+     *
+     * @param manifest the manifest in which to look up and record the file's hash, or
+     * <code>null</code> to compare modification times.
      */
-    protected void convert (File sourceDir, String sourceName)
+    protected void convert (File sourceDir, String sourceName, BuildManifest manifest)
         throws IOException
     {
         // find the path of the target file
@@ -94,20 +142,34 @@ public class XMLToBinaryTask extends Task
 
         // no need to compile if nothing has been modified
         File source = new File(sourceDir, sourceName);
-        long lastmod = target.lastModified();
-        if (source.lastModified() < lastmod) {
-            return;
+        String hash = null;
+        if (manifest == null) {
+            if (source.lastModified() < target.lastModified()) {
+                return;
+            }
+        } else {
+            // the output also depends on whether we compress
+            hash = BuildManifest.getHash(source) + (_compress ? "" : "u");
+            if (target.exists() && manifest.isCurrent(source.getPath(), hash)) {
+                return;
+            }
         }
         System.out.println("Converting " + source + " to " + target + "...");
 
-        // make sure the parent exists
+        // make sure the parent exists (one thread at a time, since concurrent calls to mkdirs
+        // may fail when creating the same ancestors)
         File parent = target.getParentFile();
-        if (!parent.exists()) {
-            parent.mkdirs();
+        synchronized (this) {
+            if (!parent.exists()) {
+                parent.mkdirs();
+            }
         }
 
         // perform the conversion
         XMLToBinaryConverter.convert(source.getPath(), target.getPath(), _compress);
+        if (manifest != null) {
+            manifest.put(source.getPath(), hash);
+        }
     }
 
     /** The directory in which we will generate our output (in a directory tree mirroring the
@@ -117,6 +179,12 @@ public class XMLToBinaryTask extends Task
     /** Whether or not to compress the output files. */
     protected boolean _compress = true;
 
+    /** The file in which to store the hashes of the converted files, if any. */
+    protected File _manifest;
+
+    /** The number of threads on which to convert files. */
+    protected int _threads = Runtime.getRuntime().availableProcessors();
+
     /** A list of filesets that contain XML exports. */
     protected ArrayList<FileSet> _filesets = new ArrayList<FileSet>();
 }
@@ -26,6 +26,9 @@
 package com.threerings.expr;
 
 import java.util.HashMap;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
 
 import com.samskivert.util.ObserverList;
 import com.samskivert.util.WeakObserverList;
@@ -135,11 +138,43 @@ public class DynamicScope
         }
     }
 
+    /**
+     * Resolves an unqualified symbol in this scope or, failing that, its ancestors.  Results for
+     * the classes in {@link #CACHEABLE_CLASSES} are cached until the scope is updated.
+     *
+     * @return the mapping for the symbol, or <code>defvalue</code> if not found anywhere in the
+     * chain.
+     */
+    public <T> T resolve (String name, T defvalue, Class<T> clazz)
+    {
+        if (!(CACHEABLE_CLASSES.contains(clazz) && canCacheResolutions())) {
+            T value = get(name, clazz);
+            return (value != null) ? value : ScopeUtil.resolve(_parentScope, name, defvalue, clazz);
+        }
+        ResolutionKey key = new ResolutionKey(name, clazz);
+        Object value = (_resolved == null) ? null : _resolved.get(key);
+        if (value == null) {
+            value = get(name, clazz);
+            if (value == null && _parentScope != null) {
+                value = ScopeUtil.resolve(_parentScope, name, null, clazz);
+            }
+            if (_resolved == null) {
+                _resolved = new HashMap<ResolutionKey, Object>();
+            }
+            _resolved.put(key, (value == null) ? UNRESOLVED : value);
+        }
+        return (value == UNRESOLVED || value == null) ? defvalue : clazz.cast(value);
+    }
+
     /**
      * Notes that this scope has been updated.
      */
     public void wasUpdated ()
     {
+        // the symbols may have changed here or in our ancestors
+        _resolved = null;
+        _canCache = null;
+
         if (_compoundDepth == 0 && _listeners != null) {
             final ScopeEvent event = new ScopeEvent(this);
             _listeners.apply(new ObserverList.ObserverOp<ScopeUpdateListener>() {
@@ -214,6 +249,66 @@ public class DynamicScope
         wasUpdated();
     }
 
+    /**
+     * Checks whether we may cache resolutions.  Subclasses whose {@link #get} method returns
+     * values that change without an update should override this to return false.
+     */
+    protected boolean cacheResolutions ()
+    {
+        return true;
+    }
+
+    /**
+     * Checks whether neither this scope nor any of its ancestors forbids caching resolutions.
+     */
+    protected boolean canCacheResolutions ()
+    {
+        if (_canCache == null) {
+            _canCache = true;
+            for (Scope scope = this; scope != null; scope = scope.getParentScope()) {
+                if (scope instanceof DynamicScope && !((DynamicScope)scope).cacheResolutions()) {
+                    _canCache = false;
+                    break;
+                }
+            }
+        }
+        return _canCache;
+    }
+
+    /**
+     * Identifies a cached resolution.
+     */
+    protected static class ResolutionKey
+    {
+        public ResolutionKey (String name, Class<?> clazz)
+        {
+            _name = name;
+            _clazz = clazz;
+        }
+
+        @Override
+        public int hashCode ()
+        {
+            return 31 * _name.hashCode() + _clazz.hashCode();
+        }
+
+        @Override
+        public boolean equals (Object other)
+        {
+            if (!(other instanceof ResolutionKey)) {
+                return false;
+            }
+            ResolutionKey okey = (ResolutionKey)other;
+            return _name.equals(okey._name) && _clazz == okey._clazz;
+        }
+
+        /** The name of the symbol. */
+        protected String _name;
+
+        /** The requested class. */
+        protected Class<?> _clazz;
+    }
+
     protected void checkCreateListeners ()
     {
         if (_listeners == null) {
@@ -242,6 +337,22 @@ public class DynamicScope
     /** The listeners to this scope. */
     protected WeakObserverList<ScopeUpdateListener> _listeners;
 
+    /** Cached resolutions (from this scope upwards) mapped by name and class. */
+    protected HashMap<ResolutionKey, Object> _resolved;
+
+    /** Whether we may cache resolutions, if known. */
+    protected Boolean _canCache;
+
+    /** The classes whose resolutions we cache.  Symbols of these types are expected to retain
+     * their identities until the scope is updated: mutable holders are updated in place rather
+     * than replaced, and variables and functions are views of the underlying members. */
+    protected static final Set<Class<?>> CACHEABLE_CLASSES = ImmutableSet.<Class<?>>of(
+        MutableBoolean.class, MutableFloat.class, MutableInteger.class, MutableLong.class,
+        Variable.class, Function.class);
+
+    /** Marks symbols that couldn't be resolved. */
+    protected static final Object UNRESOLVED = new Object();
+
     /** Used to force initialization. */
     protected static final Scope INVALID_SCOPE = new DynamicScope(null);
 }
@@ -77,7 +77,8 @@ public abstract class ExpressionBinding extends DeepObject
         @Override
         public Updater createUpdater (ConfigManager cfgmgr, Scope scope, Object object)
         {
-            final FloatExpression.Evaluator evaluator = expression.createEvaluator(scope);
+            final FloatExpression.Evaluator evaluator = FloatCompiler.isEnabled() ?
+                FloatCompiler.compile(expression, scope) : expression.createEvaluator(scope);
             final Tuple<Property, Object>[] targets = getTargets(cfgmgr, object, Float.TYPE);
             final Tuple<Property, Object>[] flags = getFlags(cfgmgr, object);
             return new Updater() {
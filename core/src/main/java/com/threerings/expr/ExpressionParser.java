@@ -326,6 +326,10 @@ public class ExpressionParser<T>
         public int nextToken ()
             throws IOException
         {
+            if (_pushedBack) {
+                _pushedBack = false;
+                return ttype;
+            }
             int token;
             if (_nttype != TT_NOTHING) {
                 token = ttype = _nttype;
@@ -376,9 +380,19 @@ public class ExpressionParser<T>
             return (ttype = TT_OPERATOR);
         }
 
+        @Override
+        public void pushBack ()
+        {
+            // the parent's flag would be ignored when we have read ahead of an operator
+            if (ttype != TT_NOTHING) {
+                _pushedBack = true;
+            }
+        }
+
         protected int _nttype = TT_NOTHING;
         protected String _nsval;
         protected double _nnval;
+        protected boolean _pushedBack;
     }
 
     /**
@@ -0,0 +1,722 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.expr;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.threerings.expr.util.ScopeUtil;
+
+import static com.threerings.ClydeLog.log;
+
+/**
+ * Compiles a bound {@link FloatExpression} tree into a generated evaluator class whose
+ * <code>evaluate</code> method computes the entire expression in straight-line bytecode, rather
+ * than through a tree of evaluators invoking one another through virtual calls.  Constant
+ * subexpressions are folded at compile time and references are read directly from the
+ * {@link MutableFloat} (or {@link Variable}) instances resolved from the scope.  Expression
+ * types unknown to the compiler are evaluated through their own evaluators.  Generated classes
+ * are shared between all expressions with the same structure and constants.  Each is defined by
+ * a loader of its own, so that classes evicted from the (bounded) cache may be unloaded once
+ * their evaluators are no longer in use.  Only float expressions are compiled; the other
+ * expression types are evaluated as trees, although parsed float expressions among their
+ * operands (such as the components of a {@link Vector3fExpression}) are compiled in turn.
+ */
+public class FloatCompiler
+{
+    /**
+     * Checks whether parsed expressions should be compiled when their evaluators are created.
+     */
+    public static boolean isEnabled ()
+    {
+        return _enabled;
+    }
+
+    /**
+     * Sets whether parsed expressions should be compiled when their evaluators are created.
+     * Defaults to the value of the <code>compile_expressions</code> system property.
+     */
+    public static void setEnabled (boolean enabled)
+    {
+        _enabled = enabled;
+    }
+
+    /**
+     * Compiles the supplied expression within the given scope.  If the evaluator class can't be
+     * generated, the expression's own evaluator is returned.
+     */
+    public static FloatExpression.Evaluator compile (FloatExpression expr, Scope scope)
+    {
+        FloatCompiler compiler = new FloatCompiler(scope);
+        compiler.compile(expr);
+        try {
+            return compiler.createEvaluator();
+        } catch (Exception e) {
+            log.warning("Failed to compile expression.", "expr", expr, e);
+            return expr.createEvaluator(scope);
+        }
+    }
+
+    /**
+     * Creates a compiler for the specified scope.
+     */
+    protected FloatCompiler (Scope scope)
+    {
+        _scope = scope;
+    }
+
+    /**
+     * Emits the instructions for the supplied expression.
+     *
+     * @return true if the expression compiled to a single constant.
+     */
+    protected boolean compile (FloatExpression expr)
+    {
+        if (expr instanceof FloatExpression.Parsed) {
+            return compile(((FloatExpression.Parsed)expr).getExpression());
+
+        } else if (expr instanceof FloatExpression.Constant) {
+            emitConstant(((FloatExpression.Constant)expr).value);
+            return true;
+
+        } else if (expr instanceof FloatExpression.Reference) {
+            // first look for a mutable reference, then for a variable
+            FloatExpression.Reference ref = (FloatExpression.Reference)expr;
+            MutableFloat reference = ScopeUtil.resolve(_scope, ref.name, (MutableFloat)null);
+            if (reference != null) {
+                emit(REFERENCE, _references.size(), 1);
+                _references.add(reference);
+            } else {
+                emit(VARIABLE, _variables.size(), 1);
+                _variables.add(ScopeUtil.resolve(
+                    _scope, ref.name, Variable.newInstance(ref.defvalue)));
+            }
+            return false;
+
+        } else if (expr instanceof FloatExpression.Clock) {
+            String name = ((FloatExpression.Clock)expr).scope.trim();
+            name = (name.length() > 0) ? (name + ":" + Scope.EPOCH) : Scope.EPOCH;
+            emit(CLOCK, _clocks.size(), 1);
+            _clocks.add(ScopeUtil.resolveTimestamp(_scope, name));
+            _clocks.add(ScopeUtil.resolveTimestamp(_scope, Scope.NOW));
+            return false;
+
+        } else if (expr instanceof FloatExpression.UnaryOperation) {
+            Integer opcode = OPCODES.get(expr.getClass());
+            if (opcode != null) {
+                int start = _ops.size(), cstart = _constants.size();
+                boolean constant = compile(((FloatExpression.UnaryOperation)expr).operand);
+                emit(opcode, 0, 0);
+                return constant && fold(expr, start, cstart);
+            }
+
+        } else if (expr instanceof FloatExpression.BinaryOperation) {
+            Integer opcode = OPCODES.get(expr.getClass());
+            if (opcode != null) {
+                FloatExpression.BinaryOperation binary = (FloatExpression.BinaryOperation)expr;
+                int start = _ops.size(), cstart = _constants.size();
+                boolean constant = compile(binary.firstOperand);
+                constant &= compile(binary.secondOperand);
+                emit(opcode, 0, -1);
+                return constant && fold(expr, start, cstart);
+            }
+        }
+
+        // fall back to the expression's own evaluator
+        emit(EVALUATOR, _evaluators.size(), 1);
+        _evaluators.add(expr.createEvaluator(_scope));
+        return false;
+    }
+
+    /**
+     * Replaces the instructions and constants emitted for a constant expression with its value.
+     *
+     * @return true, for convenience.
+     */
+    protected boolean fold (FloatExpression expr, int start, int cstart)
+    {
+        _ops.subList(start, _ops.size()).clear();
+        _constants.subList(cstart, _constants.size()).clear();
+        _depth--;
+        emitConstant(expr.createEvaluator(_scope).evaluate());
+        return true;
+    }
+
+    /**
+     * Emits an instruction to push a constant value.
+     */
+    protected void emitConstant (float value)
+    {
+        emit(CONSTANT, _constants.size(), 1);
+        _constants.add(value);
+    }
+
+    /**
+     * Emits an instruction.
+     *
+     * @param delta the change in stack depth effected by the instruction.
+     */
+    protected void emit (int opcode, int arg, int delta)
+    {
+        _ops.add(opcode | (arg << OPCODE_BITS));
+        _maxDepth = Math.max(_maxDepth, _depth += delta);
+    }
+
+    /**
+     * Creates an evaluator for the emitted instructions.
+     */
+    protected FloatExpression.Evaluator createEvaluator ()
+        throws Exception
+    {
+        // a single constant or reference doesn't require a generated class
+        if (_ops.size() == 1) {
+            int op = _ops.get(0);
+            switch (op & OPCODE_MASK) {
+                case CONSTANT:
+                    final float value = _constants.get(0);
+                    return new FloatExpression.Evaluator() {
+                        public float evaluate () {
+                            return value;
+                        }
+                    };
+                case REFERENCE:
+                    final MutableFloat reference = _references.get(0);
+                    return new FloatExpression.Evaluator() {
+                        public float evaluate () {
+                            return reference.value;
+                        }
+                    };
+                case EVALUATOR:
+                    return _evaluators.get(0);
+            }
+        }
+
+        // find or generate the class for this combination of instructions and constants
+        StringBuilder buf = new StringBuilder();
+        for (int op : _ops) {
+            buf.append(op).append(',');
+        }
+        for (float constant : _constants) {
+            buf.append(Float.floatToIntBits(constant)).append(',');
+        }
+        String signature = buf.toString();
+        Class<?> clazz;
+        synchronized (_classes) {
+            clazz = _classes.getIfPresent(signature);
+            if (clazz == null) {
+                String name = GENERATED_PREFIX + (_generated++);
+                _classes.put(signature, clazz = new Loader().define(name, generate(name)));
+            }
+        }
+
+        // create the instance and bind its fields
+        FloatExpression.Evaluator eval = (FloatExpression.Evaluator)clazz.newInstance();
+        setFields(clazz, eval, "r", _references);
+        setFields(clazz, eval, "v", _variables);
+        setFields(clazz, eval, "c", _clocks);
+        setFields(clazz, eval, "e", _evaluators);
+        return eval;
+    }
+
+    /**
+     * Generates the bytecode for an evaluator class with the given name.
+     */
+    protected byte[] generate (String name)
+        throws IOException
+    {
+        String cname = name.replace('.', '/');
+        ClassFile cfile = new ClassFile(cname, EVALUATOR_CLASS);
+        addFields(cfile, "r", _references.size(), MUTABLE_FLOAT_CLASS);
+        addFields(cfile, "v", _variables.size(), VARIABLE_CLASS);
+        addFields(cfile, "c", _clocks.size(), MUTABLE_LONG_CLASS);
+        addFields(cfile, "e", _evaluators.size(), EVALUATOR_CLASS);
+
+        // the constructor simply calls the superclass constructor
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bout);
+        out.writeByte(ALOAD_0);
+        out.writeByte(INVOKESPECIAL);
+        out.writeShort(cfile.methodRef(EVALUATOR_CLASS, "<init>", "()V"));
+        out.writeByte(RETURN);
+        cfile.addMethod("<init>", "()V", 1, bout.toByteArray());
+
+        // the evaluate method computes the expression
+        bout.reset();
+        for (int op : _ops) {
+            int arg = op >>> OPCODE_BITS;
+            switch (op & OPCODE_MASK) {
+                case CONSTANT:
+                    writeConstant(cfile, out, _constants.get(arg));
+                    break;
+                case REFERENCE:
+                    writeField(cfile, out, cname, "r" + arg, MUTABLE_FLOAT_CLASS);
+                    out.writeByte(GETFIELD);
+                    out.writeShort(cfile.fieldRef(MUTABLE_FLOAT_CLASS, "value", "F"));
+                    break;
+                case VARIABLE:
+                    writeField(cfile, out, cname, "v" + arg, VARIABLE_CLASS);
+                    out.writeByte(INVOKEVIRTUAL);
+                    out.writeShort(cfile.methodRef(VARIABLE_CLASS, "getFloat", "()F"));
+                    break;
+                case CLOCK:
+                    // (now.value - epoch.value) / 1000f
+                    writeField(cfile, out, cname, "c" + (arg + 1), MUTABLE_LONG_CLASS);
+                    out.writeByte(GETFIELD);
+                    out.writeShort(cfile.fieldRef(MUTABLE_LONG_CLASS, "value", "J"));
+                    writeField(cfile, out, cname, "c" + arg, MUTABLE_LONG_CLASS);
+                    out.writeByte(GETFIELD);
+                    out.writeShort(cfile.fieldRef(MUTABLE_LONG_CLASS, "value", "J"));
+                    out.writeByte(LSUB);
+                    out.writeByte(L2F);
+                    writeConstant(cfile, out, 1000f);
+                    out.writeByte(FDIV);
+                    break;
+                case EVALUATOR:
+                    writeField(cfile, out, cname, "e" + arg, EVALUATOR_CLASS);
+                    out.writeByte(INVOKEVIRTUAL);
+                    out.writeShort(cfile.methodRef(EVALUATOR_CLASS, "evaluate", "()F"));
+                    break;
+                case NEGATE: out.writeByte(FNEG); break;
+                case ADD: out.writeByte(FADD); break;
+                case SUBTRACT: out.writeByte(FSUB); break;
+                case MULTIPLY: out.writeByte(FMUL); break;
+                case DIVIDE: out.writeByte(FDIV); break;
+                case REMAINDER: out.writeByte(FREM); break;
+                default:
+                    String[] method = METHODS[(op & OPCODE_MASK) - FIRST_METHOD];
+                    out.writeByte(INVOKESTATIC);
+                    out.writeShort(cfile.methodRef(method[0], method[1], method[2]));
+                    break;
+            }
+        }
+        out.writeByte(FRETURN);
+
+        // leave room for the clock computation's longs on top of the operand stack
+        cfile.addMethod("evaluate", "()F", _maxDepth + 4, bout.toByteArray());
+        return cfile.toByteArray();
+    }
+
+    /**
+     * Writes the instructions to push the value of one of our fields.
+     */
+    protected static void writeField (
+        ClassFile cfile, DataOutputStream out, String cname, String name, String type)
+        throws IOException
+    {
+        out.writeByte(ALOAD_0);
+        out.writeByte(GETFIELD);
+        out.writeShort(cfile.fieldRef(cname, name, "L" + type + ";"));
+    }
+
+    /**
+     * Writes the instruction to push a float constant.
+     */
+    protected static void writeConstant (ClassFile cfile, DataOutputStream out, float value)
+        throws IOException
+    {
+        int bits = Float.floatToIntBits(value);
+        if (bits == Float.floatToIntBits(0f)) {
+            out.writeByte(FCONST_0);
+        } else if (bits == Float.floatToIntBits(1f)) {
+            out.writeByte(FCONST_1);
+        } else if (bits == Float.floatToIntBits(2f)) {
+            out.writeByte(FCONST_2);
+        } else {
+            out.writeByte(LDC_W);
+            out.writeShort(cfile.floatConstant(value));
+        }
+    }
+
+    /**
+     * Adds a set of public fields to the class.
+     */
+    protected static void addFields (ClassFile cfile, String prefix, int count, String type)
+    {
+        for (int ii = 0; ii < count; ii++) {
+            cfile.addField(prefix + ii, "L" + type + ";");
+        }
+    }
+
+    /**
+     * Sets the values of a set of fields of a generated evaluator.
+     */
+    protected static void setFields (
+        Class<?> clazz, Object eval, String prefix, List<?> values)
+        throws Exception
+    {
+        for (int ii = 0, nn = values.size(); ii < nn; ii++) {
+            clazz.getField(prefix + ii).set(eval, values.get(ii));
+        }
+    }
+
+    /**
+     * Builds a minimal class file.
+     */
+    protected static class ClassFile
+    {
+        public ClassFile (String name, String superName)
+        {
+            _this = classRef(name);
+            _super = classRef(superName);
+        }
+
+        /**
+         * Adds a public field.
+         */
+        public void addField (String name, String desc)
+        {
+            _fields.add(new int[] { utf8(name), utf8(desc) });
+        }
+
+        /**
+         * Adds a public method with the supplied code.
+         */
+        public void addMethod (String name, String desc, int maxStack, byte[] code)
+        {
+            _methods.add(new Object[] { utf8(name), utf8(desc), maxStack, code });
+        }
+
+        /**
+         * Returns the index of a field reference constant.
+         */
+        public int fieldRef (String owner, String name, String desc)
+        {
+            return memberRef(CONSTANT_FIELDREF, owner, name, desc);
+        }
+
+        /**
+         * Returns the index of a method reference constant.
+         */
+        public int methodRef (String owner, String name, String desc)
+        {
+            return memberRef(CONSTANT_METHODREF, owner, name, desc);
+        }
+
+        /**
+         * Returns the index of a float constant.
+         */
+        public int floatConstant (float value)
+        {
+            String key = "F" + Float.floatToIntBits(value);
+            Integer idx = _indices.get(key);
+            if (idx == null) {
+                _indices.put(key, idx = _count++);
+                write(CONSTANT_FLOAT);
+                int bits = Float.floatToIntBits(value);
+                writeShort(bits >>> 16);
+                writeShort(bits);
+            }
+            return idx;
+        }
+
+        /**
+         * Returns the contents of the class file.
+         */
+        public byte[] toByteArray ()
+            throws IOException
+        {
+            // make sure the code attribute name is in the pool before we write it
+            int code = utf8("Code");
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bout);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0); // minor version
+            out.writeShort(49); // major version (Java 5)
+            out.writeShort(_count);
+            _poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_SUPER);
+            out.writeShort(_this);
+            out.writeShort(_super);
+            out.writeShort(0); // interfaces
+            out.writeShort(_fields.size());
+            for (int[] field : _fields) {
+                out.writeShort(ACC_PUBLIC);
+                out.writeShort(field[0]);
+                out.writeShort(field[1]);
+                out.writeShort(0); // attributes
+            }
+            out.writeShort(_methods.size());
+            for (Object[] method : _methods) {
+                byte[] bytes = (byte[])method[3];
+                out.writeShort(ACC_PUBLIC);
+                out.writeShort((Integer)method[0]);
+                out.writeShort((Integer)method[1]);
+                out.writeShort(1); // attributes
+                out.writeShort(code);
+                out.writeInt(12 + bytes.length);
+                out.writeShort((Integer)method[2]); // max stack
+                out.writeShort(1); // max locals
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                out.writeShort(0); // exception table
+                out.writeShort(0); // attributes
+            }
+            out.writeShort(0); // attributes
+            return bout.toByteArray();
+        }
+
+        /**
+         * Returns the index of a UTF8 constant.
+         */
+        protected int utf8 (String value)
+        {
+            String key = "U" + value;
+            Integer idx = _indices.get(key);
+            if (idx == null) {
+                _indices.put(key, idx = _count++);
+                write(CONSTANT_UTF8);
+                try {
+                    _pool.writeUTF(value);
+                } catch (IOException e) {
+                    throw new RuntimeException(e); // won't happen with a byte array
+                }
+            }
+            return idx;
+        }
+
+        /**
+         * Returns the index of a class constant.
+         */
+        protected int classRef (String name)
+        {
+            String key = "C" + name;
+            Integer idx = _indices.get(key);
+            if (idx == null) {
+                int nidx = utf8(name);
+                _indices.put(key, idx = _count++);
+                write(CONSTANT_CLASS);
+                writeShort(nidx);
+            }
+            return idx;
+        }
+
+        /**
+         * Returns the index of a field or method reference constant.
+         */
+        protected int memberRef (int tag, String owner, String name, String desc)
+        {
+            String key = tag + owner + "." + name + ":" + desc;
+            Integer idx = _indices.get(key);
+            if (idx == null) {
+                int cidx = classRef(owner);
+                String ntkey = "N" + name + ":" + desc;
+                Integer ntidx = _indices.get(ntkey);
+                if (ntidx == null) {
+                    int nidx = utf8(name), didx = utf8(desc);
+                    _indices.put(ntkey, ntidx = _count++);
+                    write(CONSTANT_NAME_AND_TYPE);
+                    writeShort(nidx);
+                    writeShort(didx);
+                }
+                _indices.put(key, idx = _count++);
+                write(tag);
+                writeShort(cidx);
+                writeShort(ntidx);
+            }
+            return idx;
+        }
+
+        /**
+         * Writes a byte to the constant pool.
+         */
+        protected void write (int value)
+        {
+            _poolBytes.write(value);
+        }
+
+        /**
+         * Writes a short to the constant pool.
+         */
+        protected void writeShort (int value)
+        {
+            _poolBytes.write(value >>> 8);
+            _poolBytes.write(value);
+        }
+
+        /** The indices of this class and its superclass. */
+        protected int _this, _super;
+
+        /** The encoded constant pool. */
+        protected ByteArrayOutputStream _poolBytes = new ByteArrayOutputStream();
+
+        /** A data stream writing to the constant pool. */
+        protected DataOutputStream _pool = new DataOutputStream(_poolBytes);
+
+        /** Maps constant keys to their indices. */
+        protected HashMap<String, Integer> _indices = Maps.newHashMap();
+
+        /** The number of constants in the pool (plus one). */
+        protected int _count = 1;
+
+        /** The name and descriptor indices of the fields. */
+        protected List<int[]> _fields = Lists.newArrayList();
+
+        /** The name and descriptor indices, stack sizes and code of the methods. */
+        protected List<Object[]> _methods = Lists.newArrayList();
+    }
+
+    /**
+     * Defines a generated class.
+     */
+    protected static class Loader extends ClassLoader
+    {
+        public Loader ()
+        {
+            super(FloatCompiler.class.getClassLoader());
+        }
+
+        /**
+         * Defines a class with the supplied bytecode.
+         */
+        public Class<?> define (String name, byte[] bytes)
+        {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    /** The scope in which we resolve references. */
+    protected Scope _scope;
+
+    /** The emitted instructions: opcodes in the low bits, arguments in the high bits. */
+    protected ArrayList<Integer> _ops = Lists.newArrayList();
+
+    /** The constants referenced by the instructions. */
+    protected ArrayList<Float> _constants = Lists.newArrayList();
+
+    /** The resolved references. */
+    protected ArrayList<MutableFloat> _references = Lists.newArrayList();
+
+    /** The resolved variables. */
+    protected ArrayList<Variable> _variables = Lists.newArrayList();
+
+    /** The resolved clock timestamps, as (epoch, now) pairs. */
+    protected ArrayList<MutableLong> _clocks = Lists.newArrayList();
+
+    /** The fallback evaluators. */
+    protected ArrayList<FloatExpression.Evaluator> _evaluators = Lists.newArrayList();
+
+    /** The current and maximum stack depths. */
+    protected int _depth, _maxDepth;
+
+    /** Whether or not compilation is enabled. */
+    protected static volatile boolean _enabled = Boolean.getBoolean("compile_expressions");
+
+    /** The maximum number of generated classes to retain for reuse. */
+    protected static final int MAX_CLASSES = 512;
+
+    /** The most recently used generated classes mapped by instruction signature. */
+    protected static Cache<String, Class<?>> _classes =
+        CacheBuilder.newBuilder().maximumSize(MAX_CLASSES).<String, Class<?>>build();
+
+    /** The number of classes generated, which we use to name the next. */
+    protected static int _generated;
+
+    /** The prefix for the names of generated classes. */
+    protected static final String GENERATED_PREFIX =
+        "com.threerings.expr.CompiledFloatEvaluator";
+
+    /** Internal names of the classes referenced by generated code. */
+    protected static final String EVALUATOR_CLASS =
+        "com/threerings/expr/FloatExpression$Evaluator",
+        MUTABLE_FLOAT_CLASS = "com/threerings/expr/MutableFloat",
+        MUTABLE_LONG_CLASS = "com/threerings/expr/MutableLong",
+        VARIABLE_CLASS = "com/threerings/expr/Variable";
+
+    /** The instruction opcodes. */
+    protected static final int CONSTANT = 0, REFERENCE = 1, VARIABLE = 2, CLOCK = 3,
+        EVALUATOR = 4, NEGATE = 5, ADD = 6, SUBTRACT = 7, MULTIPLY = 8, DIVIDE = 9,
+        REMAINDER = 10, EXP = 11, SIN = 12, COS = 13, TAN = 14, SQUARE = 15, TRIANGLE = 16,
+        RAMP = 17, SAW = 18, NOISE1 = 19, POW = 20, NOISE2 = 21;
+
+    /** The first of the opcodes implemented as static method calls. */
+    protected static final int FIRST_METHOD = EXP;
+
+    /** The owners, names and descriptors of the static methods, starting at
+     * {@link #FIRST_METHOD}. */
+    protected static final String[][] METHODS = {
+        { "com/threerings/math/FloatMath", "exp", "(F)F" },
+        { "com/threerings/math/FloatMath", "sin", "(F)F" },
+        { "com/threerings/math/FloatMath", "cos", "(F)F" },
+        { "com/threerings/math/FloatMath", "tan", "(F)F" },
+        { "com/threerings/expr/FloatExpression$Square", "compute", "(F)F" },
+        { "com/threerings/expr/FloatExpression$Triangle", "compute", "(F)F" },
+        { "com/threerings/expr/FloatExpression$Ramp", "compute", "(F)F" },
+        { "com/threerings/expr/FloatExpression$Saw", "compute", "(F)F" },
+        { "com/threerings/util/NoiseUtil", "getNoise", "(F)F" },
+        { "com/threerings/math/FloatMath", "pow", "(FF)F" },
+        { "com/threerings/util/NoiseUtil", "getNoise", "(FF)F" } };
+
+    /** The number of instruction bits used for the opcode. */
+    protected static final int OPCODE_BITS = 5;
+
+    /** The mask for the opcode bits. */
+    protected static final int OPCODE_MASK = (1 << OPCODE_BITS) - 1;
+
+    /** Maps operation classes to their opcodes. */
+    protected static final HashMap<Class<?>, Integer> OPCODES = Maps.newHashMap();
+    static {
+        OPCODES.put(FloatExpression.Negate.class, NEGATE);
+        OPCODES.put(FloatExpression.Add.class, ADD);
+        OPCODES.put(FloatExpression.Subtract.class, SUBTRACT);
+        OPCODES.put(FloatExpression.Multiply.class, MULTIPLY);
+        OPCODES.put(FloatExpression.Divide.class, DIVIDE);
+        OPCODES.put(FloatExpression.Remainder.class, REMAINDER);
+        OPCODES.put(FloatExpression.Exp.class, EXP);
+        OPCODES.put(FloatExpression.Sin.class, SIN);
+        OPCODES.put(FloatExpression.Cos.class, COS);
+        OPCODES.put(FloatExpression.Tan.class, TAN);
+        OPCODES.put(FloatExpression.Square.class, SQUARE);
+        OPCODES.put(FloatExpression.Triangle.class, TRIANGLE);
+        OPCODES.put(FloatExpression.Ramp.class, RAMP);
+        OPCODES.put(FloatExpression.Saw.class, SAW);
+        OPCODES.put(FloatExpression.Noise1.class, NOISE1);
+        OPCODES.put(FloatExpression.Pow.class, POW);
+        OPCODES.put(FloatExpression.Noise2.class, NOISE2);
+    }
+
+    /** Class file constants. */
+    protected static final int CONSTANT_UTF8 = 1, CONSTANT_FLOAT = 4, CONSTANT_CLASS = 7,
+        CONSTANT_FIELDREF = 9, CONSTANT_METHODREF = 10, CONSTANT_NAME_AND_TYPE = 12;
+
+    /** Access flags. */
+    protected static final int ACC_PUBLIC = 0x0001, ACC_SUPER = 0x0020;
+
+    /** Bytecode instructions. */
+    protected static final int FCONST_0 = 0x0b, FCONST_1 = 0x0c, FCONST_2 = 0x0d, LDC_W = 0x13,
+        ALOAD_0 = 0x2a, FADD = 0x62, LSUB = 0x65, FSUB = 0x66, FMUL = 0x6a, FDIV = 0x6e,
+        FREM = 0x72, FNEG = 0x76, L2F = 0x89, FRETURN = 0xae, RETURN = 0xb1, GETFIELD = 0xb4,
+        INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8;
+}
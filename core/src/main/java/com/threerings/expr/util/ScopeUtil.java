@@ -47,6 +47,7 @@ import com.threerings.math.Vector3f;
 import com.threerings.opengl.renderer.Color4f;
 
 import com.threerings.expr.Bound;
+import com.threerings.expr.DynamicScope;
 import com.threerings.expr.Function;
 import com.threerings.expr.Variable;
 import com.threerings.expr.MutableBoolean;
@@ -231,8 +232,12 @@ public class ScopeUtil
             }
         }
 
-        // rise up through the scopes looking for the requested symbol
+        // rise up through the scopes looking for the requested symbol; dynamic scopes cache
+        // their resolutions, so let the first one handle the rest of the chain
         for (; scope != null; scope = scope.getParentScope()) {
+            if (scope instanceof DynamicScope) {
+                return ((DynamicScope)scope).resolve(name, defvalue, clazz);
+            }
             T value = scope.get(name, clazz);
             if (value != null) {
                 return value;
@@ -25,31 +25,111 @@
 
 package com.threerings.openal;
 
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.io.ByteStreams;
 
 import org.lwjgl.BufferUtils;
 import org.lwjgl.openal.AL10;
 import org.lwjgl.util.WaveData;
 
+import com.samskivert.util.StringUtil;
+
 import com.threerings.resource.ResourceManager;
+import com.threerings.util.WorkerPool;
+
+import static com.threerings.openal.Log.log;
 
 /**
- * Loads clips from resources.
+ * Loads clips from resources.  Clips may be requested in advance through {@link #preloadClip},
+ * in which case they are decoded on the shared {@link WorkerPool}.  If configured with a cache
+ * directory, decoded Ogg clips are also written to disk so that later runs can simply map them
+ * into memory.
  */
 public class ResourceClipProvider
     implements ClipProvider
 {
+    /** The default directory in which to cache decoded clips, or <code>null</code> for none. */
+    public static final File DEFAULT_CACHE_DIR = getDefaultCacheDir();
+
+    /** The default maximum number of pool threads decoding preloaded clips at once (zero to
+     * ignore preload requests). */
+    public static final int DEFAULT_DECODE_THREADS = Integer.getInteger(
+        "clip_decode_threads", Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+
     /**
      * Creates a new resource clip provider that will obtain resources from the given manager.
      */
     public ResourceClipProvider (ResourceManager rsrcmgr)
+    {
+        this(rsrcmgr, DEFAULT_CACHE_DIR, DEFAULT_DECODE_THREADS);
+    }
+
+    /**
+     * Creates a new resource clip provider that decodes preloaded clips on the shared
+     * {@link WorkerPool}.
+     *
+     * @param cacheDir the directory in which to cache decoded clips, or <code>null</code> to
+     * decode them every time they're loaded.
+     * @param decodeThreads the maximum number of the pool's threads to occupy at once decoding
+     * preloaded clips, or zero to ignore preload requests.
+     */
+    public ResourceClipProvider (ResourceManager rsrcmgr, File cacheDir, int decodeThreads)
+    {
+        this(rsrcmgr, cacheDir, createDecodeExecutor(decodeThreads));
+    }
+
+    /**
+     * Creates a new resource clip provider.
+     *
+     * @param cacheDir the directory in which to cache decoded clips, or <code>null</code> to
+     * decode them every time they're loaded.
+     * @param executor the executor with which to decode preloaded clips, or <code>null</code>
+     * to ignore preload requests.
+     */
+    public ResourceClipProvider (ResourceManager rsrcmgr, File cacheDir, Executor executor)
     {
         _rsrcmgr = rsrcmgr;
+        _cacheDir = cacheDir;
+        _executor = executor;
+    }
+
+    /**
+     * Starts decoding the specified clip on a worker thread, if it isn't already being decoded.
+     * The clip will be retained until requested through {@link #loadClip} (or until pushed out by
+     * later preloads).
+     */
+    public void preloadClip (final String path)
+    {
+        if (_executor == null || _preloaded.containsKey(path)) {
+            return;
+        }
+        FutureTask<Clip> task = new FutureTask<Clip>(new Callable<Clip>() {
+            public Clip call () throws IOException {
+                return decodeClip(path);
+            }
+        });
+        if (_preloaded.putIfAbsent(path, task) == null) {
+            _executor.execute(task);
+        }
     }
 
     /**
@@ -57,10 +137,39 @@ public class ResourceClipProvider
      */
     public Clip loadClip (String path)
         throws IOException
+    {
+        Future<Clip> preloaded = _preloaded.remove(path);
+        if (preloaded == null) {
+            return decodeClip(path);
+        }
+        try {
+            return preloaded.get();
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted waiting for " + path, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            }
+            throw new IOException("Error loading " + path, cause);
+        }
+    }
+
+    /**
+     * Decodes the specified clip (or maps it from the cache).
+     */
+    protected Clip decodeClip (String path)
+        throws IOException
     {
         InputStream in = _rsrcmgr.getResource(path);
         if (path.endsWith(".ogg")) {
-            return loadOggClip(in);
+            byte[] encoded;
+            try {
+                encoded = ByteStreams.toByteArray(in);
+            } finally {
+                in.close();
+            }
+            return loadOggClip(path, encoded);
         }
         WaveData data = WaveData.create(in);
         if (data == null) {
@@ -69,38 +178,253 @@ public class ResourceClipProvider
         return new Clip(data);
     }
 
+    /**
+     * Loads an Ogg sound clip, using the cached decoded data if possible.
+     */
+    protected Clip loadOggClip (String path, byte[] encoded)
+        throws IOException
+    {
+        if (_cacheDir == null || encoded.length == 0) {
+            return loadOggClip(encoded);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(encoded);
+        File file = new File(_cacheDir, path + ".pcm");
+        Clip clip = readCachedClip(file, encoded.length, crc.getValue());
+        if (clip == null) {
+            clip = loadOggClip(encoded);
+            writeCachedClip(file, encoded.length, crc.getValue(), clip);
+        }
+        return clip;
+    }
+
+    /**
+     * Maps a clip from the cache.
+     *
+     * @return the mapped clip, or <code>null</code> if the cache file doesn't exist or doesn't
+     * match the encoded data.
+     */
+    protected Clip readCachedClip (File file, int length, long crc)
+    {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                long size = channel.size();
+                if (size < CACHE_HEADER_SIZE) {
+                    return null;
+                }
+                ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+                if (buf.getInt() != CACHE_MAGIC ||
+                        buf.get() != (NATIVE_ORDER == ByteOrder.BIG_ENDIAN ? 1 : 0) ||
+                        buf.getInt() != length || buf.getLong() != crc) {
+                    return null;
+                }
+                Clip clip = new Clip();
+                clip.format = buf.getInt();
+                clip.frequency = buf.getInt();
+                int dlength = buf.getInt();
+                if (dlength != size - CACHE_HEADER_SIZE) {
+                    return null;
+                }
+                buf.position(CACHE_HEADER_SIZE);
+                clip.data = buf.slice().order(NATIVE_ORDER);
+                return clip;
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            log.warning("Failed to read cached clip.", "file", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes a decoded clip to the cache.
+     */
+    protected void writeCachedClip (File file, int length, long crc, Clip clip)
+    {
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            log.warning("Failed to create clip cache directory.", "dir", dir);
+            return;
+        }
+        // write to a temporary file and move it into place so that concurrent readers never see
+        // a partial file
+        File tmp = new File(dir, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            ByteBuffer header = ByteBuffer.allocate(CACHE_HEADER_SIZE);
+            header.putInt(CACHE_MAGIC);
+            header.put((byte)(NATIVE_ORDER == ByteOrder.BIG_ENDIAN ? 1 : 0));
+            header.putInt(length).putLong(crc);
+            header.putInt(clip.format).putInt(clip.frequency).putInt(clip.data.remaining());
+            header.rewind();
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                FileChannel channel = out.getChannel();
+                channel.write(header);
+                channel.write(clip.data.duplicate());
+            } finally {
+                out.close();
+            }
+            if (!(tmp.renameTo(file) || (file.delete() && tmp.renameTo(file)))) {
+                log.warning("Failed to move cached clip into place.", "file", file);
+                tmp.delete();
+            }
+        } catch (IOException e) {
+            log.warning("Failed to write cached clip.", "file", file, e);
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Returns the cache directory configured through the <code>clip_cache_dir</code> system
+     * property, or <code>null</code> if not set.
+     */
+    protected static File getDefaultCacheDir ()
+    {
+        String dir = System.getProperty("clip_cache_dir");
+        return StringUtil.isBlank(dir) ? null : new File(dir);
+    }
+
     /**
      * Loads an Ogg sound clip.
      */
-    protected static Clip loadOggClip (InputStream in)
+    protected static Clip loadOggClip (byte[] encoded)
         throws IOException
     {
-        OggStreamDecoder decoder = new OggStreamDecoder();
         Clip clip = new Clip();
-        if (in.available() == 0) {
+        if (encoded.length == 0) {
             // if it's a 0-length file then we just cope
             clip.format = AL10.AL_FORMAT_MONO8;
             clip.data = BufferUtils.createByteBuffer(0);
             return clip;
         }
-        decoder.init(in);
+        OggStreamDecoder decoder = new OggStreamDecoder();
+        decoder.init(new ByteArrayInputStream(encoded));
         clip.format = decoder.getFormat();
         clip.frequency = decoder.getFrequency();
 
-        // decode the stream piece by piece
-        ByteBuffer buf = ByteBuffer.allocate(1024).order(ByteOrder.nativeOrder());
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        int read;
-        while ((read = decoder.read(buf)) > 0) {
-            out.write(buf.array(), 0, read);
-            buf.clear();
+        // the granule position of the last page tells us how many samples to expect, so we can
+        // usually decode straight into a buffer of the exact size
+        int channels = (clip.format == AL10.AL_FORMAT_STEREO16) ? 2 : 1;
+        long samples = getLastGranulePosition(encoded);
+        long expected = samples * channels * 2;
+        ByteBuffer data = BufferUtils.createByteBuffer(
+            (samples > 0 && expected <= (long)encoded.length * MAX_COMPRESSION_RATIO) ?
+                (int)expected : DEFAULT_BUFFER_SIZE);
+        ByteBuffer probe = null;
+        while (true) {
+            readFully(decoder, data);
+            if (data.hasRemaining()) {
+                break; // end of stream
+            }
+            // the buffer is full; make sure there's nothing left before assuming we're done
+            if (probe == null) {
+                probe = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE).order(NATIVE_ORDER);
+            }
+            probe.clear();
+            readFully(decoder, probe);
+            if (probe.position() == 0) {
+                break;
+            }
+            probe.flip();
+            ByteBuffer ndata = BufferUtils.createByteBuffer(
+                data.capacity() + Math.max(data.capacity() / 2, probe.remaining()));
+            data.flip();
+            data = ndata.put(data).put(probe);
+        }
+        data.flip();
+        if (data.limit() != data.capacity()) {
+            // our estimate was wrong; copy into a buffer of the right size
+            data = BufferUtils.createByteBuffer(data.limit()).put(data);
+            data.flip();
         }
-        byte[] bytes = out.toByteArray();
-        clip.data = BufferUtils.createByteBuffer(bytes.length);
-        clip.data.put(bytes).rewind();
+        clip.data = data;
         return clip;
     }
 
+    /**
+     * Decodes into the supplied buffer until it is full or the stream is exhausted (the decoder
+     * advances the buffer's position past the decoded data).
+     */
+    protected static void readFully (OggStreamDecoder decoder, ByteBuffer buf)
+        throws IOException
+    {
+        int read;
+        do {
+            read = decoder.read(buf);
+        } while (read > 0 && buf.hasRemaining());
+    }
+
+    /**
+     * Finds the granule position (the number of samples per channel, for Vorbis) of the last
+     * page in the supplied Ogg data.
+     *
+     * @return the position, or -1 if it couldn't be determined.
+     */
+    protected static long getLastGranulePosition (byte[] data)
+    {
+        for (int ii = data.length - OGG_PAGE_HEADER_SIZE; ii >= 0; ii--) {
+            // look for the capture pattern of a page with the end of stream flag
+            if (data[ii] == 'O' && data[ii + 1] == 'g' && data[ii + 2] == 'g' &&
+                    data[ii + 3] == 'S' && data[ii + 4] == 0 && (data[ii + 5] & 0x04) != 0) {
+                long position = 0L;
+                for (int jj = 7; jj >= 0; jj--) {
+                    position = (position << 8) | (data[ii + 6 + jj] & 0xFF);
+                }
+                return position;
+            }
+        }
+        return -1L;
+    }
+
     /** The resource manager from which we load resources. */
     protected ResourceManager _rsrcmgr;
+
+    /**
+     * Creates the executor with which to decode preloaded clips.
+     *
+     * @return the executor, or <code>null</code> if preloading is disabled.
+     */
+    protected static Executor createDecodeExecutor (int threads)
+    {
+        WorkerPool.Limiter limiter = new WorkerPool.Limiter(threads);
+        return limiter.isEnabled() ? limiter : null;
+    }
+
+    /** The directory in which we cache decoded clips, if any. */
+    protected File _cacheDir;
+
+    /** The executor that decodes preloaded clips, if any. */
+    protected Executor _executor;
+
+    /** Clips preloaded (or being preloaded), mapped by path. */
+    protected ConcurrentMap<String, Future<Clip>> _preloaded =
+        CacheBuilder.newBuilder().maximumSize(MAX_PRELOADED_CLIPS).<String, Future<Clip>>build()
+            .asMap();
+
+    /** The byte order of decoded data. */
+    protected static final ByteOrder NATIVE_ORDER = ByteOrder.nativeOrder();
+
+    /** The size of the buffer to use when we can't predict the size of the decoded data. */
+    protected static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /** The maximum number of preloaded clips to retain until requested. */
+    protected static final int MAX_PRELOADED_CLIPS = 64;
+
+    /** The largest ratio of decoded to encoded size that we believe when estimating. */
+    protected static final int MAX_COMPRESSION_RATIO = 64;
+
+    /** The size of the fixed portion of an Ogg page header. */
+    protected static final int OGG_PAGE_HEADER_SIZE = 27;
+
+    /** Identifies clip cache files ("CLIP"). */
+    protected static final int CACHE_MAGIC = 0x434C4950;
+
+    /** The size of the header of clip cache files. */
+    protected static final int CACHE_HEADER_SIZE = 32;
 }
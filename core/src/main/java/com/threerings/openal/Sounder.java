@@ -29,6 +29,8 @@ import java.io.IOException;
 
 import java.nio.ByteBuffer;
 
+import java.util.HashSet;
+
 import org.lwjgl.openal.AL10;
 
 import com.samskivert.util.RandomUtil;
@@ -1346,6 +1348,28 @@ public class Sounder extends SimpleScope
         protected Sounder _sounder;
     }
 
+    /**
+     * Requests that the clips the specified sounder may play be loaded in advance, so that they
+     * don't have to be decoded when the sounder first starts.  If the clip provider is a
+     * {@link ResourceClipProvider}, the clips are decoded in parallel on its worker threads.
+     */
+    public static void preloadClips (AlContext ctx, SounderConfig config)
+    {
+        SoundManager soundmgr = ctx.getSoundManager();
+        if (config == null || !soundmgr.isInitialized()) {
+            return;
+        }
+        HashSet<String> paths = new HashSet<String>();
+        config.getClipPaths(ctx.getConfigManager(), paths);
+        ClipProvider provider = ctx.getClipProvider();
+        for (String path : paths) {
+            if (provider instanceof ResourceClipProvider) {
+                ((ResourceClipProvider)provider).preloadClip(path);
+            }
+            soundmgr.loadClip(provider, path);
+        }
+    }
+
     /**
      * Creates a new sounder with a null configuration.
      *
@@ -27,8 +27,11 @@ package com.threerings.openal.config;
 
 import java.util.HashSet;
 
+import com.samskivert.util.Tuple;
+
 import com.threerings.io.Streamable;
 
+import com.threerings.config.ConfigManager;
 import com.threerings.config.ConfigReference;
 import com.threerings.config.ConfigReferenceSet;
 import com.threerings.config.ParameterizedConfig;
@@ -75,6 +78,14 @@ public class SounderConfig extends ParameterizedConfig
             // nothing by default
         }
 
+        /**
+         * Adds the paths of the clips played directly by the implementation to the provided set.
+         */
+        public void getClipPaths (HashSet<String> paths)
+        {
+            // nothing by default
+        }
+
         /**
          * Creates or updates a sounder implementation for this configuration.
          *
@@ -230,6 +241,12 @@ public class SounderConfig extends ParameterizedConfig
 
         @Override
         public void getUpdateResources (HashSet<String> paths)
+        {
+            getClipPaths(paths);
+        }
+
+        @Override
+        public void getClipPaths (HashSet<String> paths)
         {
             if (file != null) {
                 paths.add(file);
@@ -263,6 +280,12 @@ public class SounderConfig extends ParameterizedConfig
 
         @Override
         public void getUpdateResources (HashSet<String> paths)
+        {
+            getClipPaths(paths);
+        }
+
+        @Override
+        public void getClipPaths (HashSet<String> paths)
         {
             for (WeightedFile wfile : files) {
                 if (wfile.file != null) {
@@ -306,6 +329,12 @@ public class SounderConfig extends ParameterizedConfig
 
         @Override
         public void getUpdateResources (HashSet<String> paths)
+        {
+            getClipPaths(paths);
+        }
+
+        @Override
+        public void getClipPaths (HashSet<String> paths)
         {
             if (file != null) {
                 paths.add(file);
@@ -775,6 +804,25 @@ public class SounderConfig extends ParameterizedConfig
         return implementation.getSounderImplementation(ctx, scope, impl);
     }
 
+    /**
+     * Adds the paths of the clips that this sounder (or any of the sounders it references) may
+     * play to the provided set.
+     */
+    public void getClipPaths (ConfigManager cfgmgr, HashSet<String> paths)
+    {
+        implementation.getClipPaths(paths);
+        ConfigReferenceSet refs = new ConfigReferenceSet();
+        implementation.getUpdateReferences(refs);
+        for (Tuple<Class<?>, ConfigReference> ref : refs) {
+            @SuppressWarnings("unchecked") ConfigReference<SounderConfig> sref =
+                (ConfigReference<SounderConfig>)ref.right;
+            SounderConfig config = cfgmgr.getConfig(SounderConfig.class, sref);
+            if (config != null) {
+                config.getClipPaths(cfgmgr, paths);
+            }
+        }
+    }
+
     @Override
     protected void fireConfigUpdated ()
     {
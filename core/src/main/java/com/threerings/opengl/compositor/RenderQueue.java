@@ -35,6 +35,7 @@ import com.samskivert.util.ComparableArrayList;
 import com.samskivert.util.HashIntMap;
 import com.samskivert.util.IntMaps;
 
+import com.threerings.opengl.geometry.ParallelUpdater;
 import com.threerings.opengl.renderer.Batch;
 import com.threerings.opengl.renderer.Renderer;
 import com.threerings.opengl.util.GlContext;
@@ -117,6 +118,9 @@ public class RenderQueue
             for (int ii = 0, nn = _queues.size(); ii < nn; ii++) {
                 _queues.get(ii).sort();
             }
+
+            // make sure any geometry updated in parallel is ready to draw
+            ParallelUpdater.finish();
         }
 
         /**
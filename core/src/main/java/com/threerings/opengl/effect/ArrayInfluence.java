@@ -0,0 +1,56 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package com.threerings.opengl.effect;
+
+/**
+ * Base class for influences that operate directly on the particle arrays, processing all of
+ * the living particles of a layer in a single call.
+ */
+public abstract class ArrayInfluence
+    implements Influence
+{
+    /**
+     * Applies this influence to the particles in the specified slots.
+     *
+     * @param slots the slots of the particles to update.
+     * @param count the number of slots to process.
+     */
+    public abstract void apply (ParticleArrays arrays, int[] slots, int count);
+
+    // documentation inherited from interface Influence
+    public void apply (Particle particle)
+    {
+        // write out the particle's working state, update it in place, and read it back
+        particle.store();
+        _slot[0] = particle.getSlot();
+        apply(particle.getArrays(), _slot, 1);
+        particle.load();
+    }
+
+    /** Holds the slot of the particle passed to {@link #apply(Particle)}. */
+    protected int[] _slot = new int[1];
+}
@@ -38,6 +38,7 @@ import com.threerings.math.Box;
 import com.threerings.math.Quaternion;
 import com.threerings.math.Transform3D;
 import com.threerings.math.Vector3f;
+import com.threerings.util.WorkerPool;
 
 import com.threerings.opengl.camera.Camera;
 import com.threerings.opengl.compositor.Enqueueable;
@@ -78,13 +79,19 @@ public abstract class BaseParticleSystem extends Model.Implementation
         {
             _config = config;
 
-            // recreate the particles and adjust the counts
+            // recreate the particles and their arrays and adjust the counts
             Particle[] oparts = _particles;
+            ParticleArrays arrays = new ParticleArrays(config.particleCount);
             _particles = new Particle[config.particleCount];
             for (int ii = 0; ii < _particles.length; ii++) {
-                _particles[ii] = (oparts == null || oparts.length <= ii) ?
-                    new Particle() : oparts[ii];
+                if (oparts == null || oparts.length <= ii) {
+                    _particles[ii] = new Particle(arrays, ii);
+                } else {
+                    (_particles[ii] = oparts[ii]).moveTo(arrays, ii);
+                }
             }
+            _particleArrays = arrays;
+            _slots = new int[_particles.length];
             if (oparts == null) {
                 _living.value = 0;
                 _preliving = _particles.length;
@@ -160,6 +167,23 @@ public abstract class BaseParticleSystem extends Model.Implementation
          */
         public boolean tick (float elapsed)
         {
+            boolean completed = simulate(elapsed);
+            if (_pendingBounds) {
+                addBounds();
+            }
+            return completed;
+        }
+
+        /**
+         * Updates the particle state without touching any state shared with the other layers of
+         * the system, so that the layers may be simulated in parallel.  If the layer's bounds
+         * should be added to those of the system, {@link #_pendingBounds} will be set.
+         *
+         * @return true if this layer has completed, false if it is still active.
+         */
+        public boolean simulate (float elapsed)
+        {
+            _pendingBounds = false;
             if (!_config.visible || _completed) {
                 return true;
             } else if ((_total += elapsed) <= _config.startTime) {
@@ -186,21 +210,7 @@ public abstract class BaseParticleSystem extends Model.Implementation
             for (int ii = 0; ii < _living.value; ii++) {
                 Particle particle = _particles[ii];
                 if (particle.tick(elapsed)) {
-                    // apply the influences
-                    for (Influence influence : _influences) {
-                        influence.apply(particle);
-                    }
-                    // modulate by the inherited color, if any
-                    if (_colorState != null) {
-                        particle.getColor().multLocal(_colorState.getColor());
-                    }
-                    // multiply by the inherited scale, if any
-                    if (!_config.moveParticlesWithEmitter) {
-                        particle.setSize(particle.getSize() * scale);
-                    }
-                    // add to bounds
-                    _bounds.addLocal(particle.getPosition());
-                    msize = Math.max(msize, particle.getSize());
+                    _slots[ii] = particle.getSlot();
 
                 } else {
                     killParticle(ii);
@@ -217,6 +227,45 @@ public abstract class BaseParticleSystem extends Model.Implementation
                 }
             }
 
+            // apply the influences to the survivors
+            ParticleArrays arrays = _particleArrays;
+            int living = _living.value;
+            for (Influence influence : _influences) {
+                if (influence instanceof ArrayInfluence) {
+                    ((ArrayInfluence)influence).apply(arrays, _slots, living);
+                } else {
+                    for (int ii = 0; ii < living; ii++) {
+                        Particle particle = _particles[ii];
+                        particle.load();
+                        influence.apply(particle);
+                        particle.store();
+                    }
+                }
+            }
+
+            // modulate by the inherited color and scale, if any, and find the bounds
+            Color4f color = (_colorState == null) ? null : _colorState.getColor();
+            float[] positions = arrays.positions, colors = arrays.colors, sizes = arrays.sizes;
+            Vector3f min = _bounds.getMinimumExtent(), max = _bounds.getMaximumExtent();
+            for (int ii = 0; ii < living; ii++) {
+                int slot = _slots[ii];
+                if (color != null) {
+                    int cidx = slot << 2;
+                    colors[cidx] *= color.r;
+                    colors[cidx + 1] *= color.g;
+                    colors[cidx + 2] *= color.b;
+                    colors[cidx + 3] *= color.a;
+                }
+                if (!_config.moveParticlesWithEmitter) {
+                    sizes[slot] *= scale;
+                }
+                int pidx = slot * 3;
+                float x = positions[pidx], y = positions[pidx + 1], z = positions[pidx + 2];
+                min.set(Math.min(min.x, x), Math.min(min.y, y), Math.min(min.z, z));
+                max.set(Math.max(max.x, x), Math.max(max.y, y), Math.max(max.z, z));
+                msize = Math.max(msize, sizes[slot]);
+            }
+
             // check for completion
             if (_living.value == 0 && _preliving == 0 && !_config.respawnDeadParticles) {
                 return (_completed = true);
@@ -229,6 +278,7 @@ public abstract class BaseParticleSystem extends Model.Implementation
             // spawn those particles
             for (int ii = _living.value, nn = _living.value + count; ii < nn; ii++) {
                 Particle particle = _particles[ii];
+                particle.load();
                 _placer.place(particle);
                 _config.orientation.getValue(particle.getOrientation());
                 vectorToLayer(
@@ -240,6 +290,7 @@ public abstract class BaseParticleSystem extends Model.Implementation
                     rotationToLayer(particle.getOrientation(), emitter);
                     vectorToLayer(particle.getAngularVelocity(), emitter);
                 }
+                particle.store();
                 initParticle(ii);
                 _living.value++;
                 _preliving = Math.max(_preliving - 1, 0);
@@ -254,8 +305,8 @@ public abstract class BaseParticleSystem extends Model.Implementation
             float amount = _geometryRadius * msize;
             _bounds.expandLocal(amount, amount, amount);
 
-            // add bounds to parent
-            addBounds();
+            // the bounds will be added to the parent's after the simulation
+            _pendingBounds = true;
 
             return false;
         }
@@ -405,6 +456,13 @@ public abstract class BaseParticleSystem extends Model.Implementation
         @Scoped
         protected Particle[] _particles;
 
+        /** The arrays holding the state of the particles. */
+        @Scoped
+        protected ParticleArrays _particleArrays;
+
+        /** The slots of the living particles, in order (filled in by {@link #simulate}). */
+        protected int[] _slots;
+
         /** The particle counter. */
         protected Counter _counter;
 
@@ -430,6 +488,9 @@ public abstract class BaseParticleSystem extends Model.Implementation
         /** Whether or not the layer has completed. */
         protected boolean _completed;
 
+        /** Set by {@link #simulate} when the layer's bounds should be added to the parent's. */
+        protected boolean _pendingBounds;
+
         /** Holds the world/world inverse rotation. */
         protected Quaternion _wrot = new Quaternion();
     }
@@ -554,8 +615,18 @@ public abstract class BaseParticleSystem extends Model.Implementation
         }
 
         // the first non-zero elapsed interval triggers the warmup
+        float warmup = 0f;
         if (!_warmed && elapsed > 0f) {
-            float remaining = _config.warmupTime;
+            warmup = _config.warmupTime;
+            _warmed = true;
+        }
+
+        // tick the layers (they will expand the bounds)
+        if (shouldTickInParallel()) {
+            resetBounds();
+            _completed = tickParallel(warmup, elapsed);
+        } else {
+            float remaining = warmup;
             while (remaining > 0f) {
                 float welapsed = Math.min(remaining, _config.warmupGranularity);
                 for (Layer layer : _layers) {
@@ -563,16 +634,12 @@ public abstract class BaseParticleSystem extends Model.Implementation
                 }
                 remaining -= welapsed;
             }
-            _warmed = true;
-        }
-
-        // reset the bounds
-        resetBounds();
-
-        // tick the layers (they will expand the bounds)
-        _completed = true;
-        for (Layer layer : _layers) {
-            _completed &= layer.tick(elapsed);
+            // reset the bounds
+            resetBounds();
+            _completed = true;
+            for (Layer layer : _layers) {
+                _completed &= layer.tick(elapsed);
+            }
         }
 
         // update the bounds if necessary
@@ -671,6 +738,91 @@ public abstract class BaseParticleSystem extends Model.Implementation
      */
     protected abstract Layer createLayer (BaseParticleSystemConfig.Layer config);
 
+    /**
+     * Determines whether the layers should be simulated in parallel on this tick.
+     */
+    protected boolean shouldTickInParallel ()
+    {
+        if (!_tickGroup.isParallel() || _layers.length < 2) {
+            return false;
+        }
+        int particles = 0;
+        for (Layer layer : _layers) {
+            particles += layer._particles.length;
+        }
+        return particles >= MIN_PARALLEL_PARTICLES;
+    }
+
+    /**
+     * Simulates the layers in parallel, then adds their bounds to those of the system.
+     *
+     * @param warmup the amount of warmup time to simulate before the elapsed interval.
+     * @return true if all layers have completed.
+     */
+    protected boolean tickParallel (float warmup, float elapsed)
+    {
+        if (_tickTasks == null || _tickTasks.length != _layers.length) {
+            _tickTasks = new TickTask[_layers.length];
+        }
+        for (int ii = 0; ii < _layers.length; ii++) {
+            TickTask task = _tickTasks[ii];
+            if (task == null) {
+                task = _tickTasks[ii] = new TickTask();
+            }
+            task.init(_layers[ii], warmup, _config.warmupGranularity, elapsed);
+        }
+        _tickGroup.invoke(_tickTasks);
+
+        // the shared bounds are only updated once all layers are done
+        boolean completed = true;
+        for (TickTask task : _tickTasks) {
+            if (task.layer._pendingBounds) {
+                task.layer.addBounds();
+            }
+            completed &= task.completed;
+            task.layer = null;
+        }
+        return completed;
+    }
+
+    /**
+     * Simulates a single layer as part of a parallel tick.
+     */
+    protected static class TickTask
+        implements Runnable
+    {
+        /** The layer to simulate. */
+        public Layer layer;
+
+        /** Whether or not the layer completed. */
+        public boolean completed;
+
+        /**
+         * (Re)initializes the task.
+         */
+        public void init (Layer layer, float warmup, float granularity, float elapsed)
+        {
+            this.layer = layer;
+            _warmup = warmup;
+            _granularity = granularity;
+            _elapsed = elapsed;
+        }
+
+        // documentation inherited from interface Runnable
+        public void run ()
+        {
+            for (float remaining = _warmup; remaining > 0f; ) {
+                float welapsed = Math.min(remaining, _granularity);
+                layer.simulate(welapsed);
+                remaining -= welapsed;
+            }
+            completed = layer.simulate(_elapsed);
+        }
+
+        /** The warmup time, warmup granularity, and elapsed time. */
+        protected float _warmup, _granularity, _elapsed;
+    }
+
     /**
      * Resets the bounds before the tick.
      */
@@ -735,6 +887,19 @@ public abstract class BaseParticleSystem extends Model.Implementation
     /** If true, the particle system has completed. */
     protected boolean _completed;
 
+    /** The tasks used to simulate the layers in parallel, if any. */
+    protected TickTask[] _tickTasks;
+
+    /** The group with which we simulate layers in parallel.  The particle_tick_threads property
+     * sets the number of the pool's threads it may occupy (by default, one fewer than the number
+     * of processors; zero disables parallel simulation). */
+    protected static WorkerPool.TaskGroup _tickGroup = new WorkerPool.TaskGroup(
+        new WorkerPool.Limiter("particle_tick_threads",
+            Runtime.getRuntime().availableProcessors() - 1));
+
+    /** The minimum total number of particles for which to simulate the layers in parallel. */
+    protected static final int MIN_PARALLEL_PARTICLES = 512;
+
     /** Working vector. */
     protected static Vector3f _vector = new Vector3f();
 }
@@ -0,0 +1,146 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package com.threerings.opengl.effect;
+
+import java.util.Arrays;
+
+/**
+ * Sorts an array of items by increasing depth, where the depths are stored in a parallel array.
+ * Because the order changes little from frame to frame, the sorter first tries an insertion sort
+ * and falls back to a radix sort if that requires too many moves.  The sorter retains its
+ * scratch arrays between sorts.
+ */
+public class DepthSorter<T>
+{
+    /**
+     * Sorts the first <code>count</code> items and their depths.
+     */
+    public void sort (float[] depths, T[] items, int count)
+    {
+        if (!insertionSort(depths, items, count, count * INSERTION_SORT_MOVES)) {
+            radixSort(depths, items, count);
+        }
+    }
+
+    /**
+     * Sorts the items (and their depths) by increasing depth, giving up if the sort requires
+     * more than the specified number of moves.
+     *
+     * @return true if the items were sorted, false if we gave up.
+     */
+    protected boolean insertionSort (float[] depths, T[] items, int count, int maxMoves)
+    {
+        for (int ii = 1, moves = 0; ii < count; ii++) {
+            float depth = depths[ii];
+            int jj = ii - 1;
+            if (!(depths[jj] > depth)) {
+                continue;
+            }
+            T item = items[ii];
+            do {
+                depths[jj + 1] = depths[jj];
+                items[jj + 1] = items[jj];
+                jj--;
+            } while (jj >= 0 && depths[jj] > depth);
+            depths[jj + 1] = depth;
+            items[jj + 1] = item;
+            if ((moves += ii - jj - 1) > maxMoves) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sorts the items (and their depths) by increasing depth using a three-pass least
+     * significant digit radix sort on the bits of the depths.
+     */
+    @SuppressWarnings("unchecked")
+    protected void radixSort (float[] depths, T[] items, int count)
+    {
+        if (_keys.length < count) {
+            _keys = new int[items.length];
+            _skeys = new int[items.length];
+            _sitems = new Object[items.length];
+        }
+        // convert the depths to keys whose unsigned order matches the float order
+        int[] keys = _keys, skeys = _skeys, counts = _counts;
+        Object[] sitems = _sitems, oitems = items;
+        for (int ii = 0; ii < count; ii++) {
+            int bits = Float.floatToIntBits(depths[ii]);
+            keys[ii] = bits ^ ((bits >> 31) | Integer.MIN_VALUE);
+        }
+        for (int pass = 0, shift = 0; pass < 3; pass++, shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int ii = 0; ii < count; ii++) {
+                counts[(keys[ii] >>> shift) & RADIX_MASK]++;
+            }
+            for (int ii = 0, total = 0; ii < counts.length; ii++) {
+                int bucket = counts[ii];
+                counts[ii] = total;
+                total += bucket;
+            }
+            for (int ii = 0; ii < count; ii++) {
+                int idx = counts[(keys[ii] >>> shift) & RADIX_MASK]++;
+                skeys[idx] = keys[ii];
+                sitems[idx] = oitems[ii];
+            }
+            int[] tkeys = keys;
+            keys = skeys;
+            skeys = tkeys;
+            Object[] titems = oitems;
+            oitems = sitems;
+            sitems = titems;
+        }
+        // after an odd number of passes, the results are in the scratch arrays; copy them back
+        // and recover the depths from the keys
+        for (int ii = 0; ii < count; ii++) {
+            items[ii] = (T)oitems[ii];
+            int key = keys[ii];
+            depths[ii] = Float.intBitsToFloat(key < 0 ? (key ^ Integer.MIN_VALUE) : ~key);
+        }
+        Arrays.fill(_sitems, 0, count, null);
+    }
+
+    /** Radix sort keys and scratch keys. */
+    protected int[] _keys = new int[0], _skeys = new int[0];
+
+    /** Radix sort scratch items. */
+    protected Object[] _sitems = new Object[0];
+
+    /** Radix sort bucket counts. */
+    protected int[] _counts = new int[1 << RADIX_BITS];
+
+    /** The number of moves per item after which we abandon the insertion sort. */
+    protected static final int INSERTION_SORT_MOVES = 4;
+
+    /** The number of key bits handled by each radix sort pass. */
+    protected static final int RADIX_BITS = 11;
+
+    /** The mask for each radix sort digit. */
+    protected static final int RADIX_MASK = (1 << RADIX_BITS) - 1;
+}
@@ -89,7 +89,8 @@ public class MetaParticleSystem extends BaseParticleSystem
                 if (alignment != Alignment.FIXED) {
                     Particle particle = _particles[ii];
                     if (alignment == Alignment.VELOCITY) {
-                        Vector3f velocity = particle.getVelocity();
+                        Vector3f velocity = _particleArrays.getVelocity(
+                            particle.getSlot(), _velocity);
                         _view.cross(velocity, _t);
                         float length = _t.length();
                         if (length > FloatMath.EPSILON) {
@@ -167,12 +168,14 @@ public class MetaParticleSystem extends BaseParticleSystem
                 return true;
             }
             // update and tick the models
+            ParticleArrays arrays = _particleArrays;
             for (int ii = 0; ii < _living.value; ii++) {
                 Particle particle = _particles[ii];
+                int slot = particle.getSlot();
                 Model model = _models[ii];
-                model.getLocalTransform().set(
-                    particle.getPosition(), particle.getOrientation(), particle.getSize());
-                model.getColorState().getColor().set(particle.getColor());
+                model.getLocalTransform().set(arrays.getPosition(slot, _position),
+                    particle.getOrientation(), particle.getSize());
+                arrays.getColor(slot, model.getColorState().getColor());
                 model.tick(elapsed);
                 _parentBounds.addLocal(model.getBounds());
             }
@@ -247,6 +250,9 @@ public class MetaParticleSystem extends BaseParticleSystem
 
         /** Holds the axis vectors. */
         protected Vector3f _s = new Vector3f(), _t = new Vector3f(), _r = new Vector3f();
+
+        /** Holds particle positions and velocities read from the arrays. */
+        protected Vector3f _position = new Vector3f(), _velocity = new Vector3f();
     }
 
     /**
@@ -258,6 +264,13 @@ public class MetaParticleSystem extends BaseParticleSystem
         setConfig(ctx, config);
     }
 
+    @Override
+    protected boolean shouldTickInParallel ()
+    {
+        // the layers add, remove, and tick models, which must happen on the calling thread
+        return false;
+    }
+
     @Override
     protected BaseParticleSystem.Layer createLayer (BaseParticleSystemConfig.Layer config)
     {
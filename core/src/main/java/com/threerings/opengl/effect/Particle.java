@@ -35,7 +35,9 @@ import com.threerings.probs.FloatFunctionVariable;
 import com.threerings.opengl.renderer.Color4f;
 
 /**
- * Contains the state of a single particle.
+ * Contains the state of a single particle.  The position, velocity, angular velocity, color, size
+ * and age are stored in the layer's {@link ParticleArrays}; the vector and color accessors
+ * return working copies that are only valid while the particle is {@link #load}ed.
  */
 public final class Particle
 {
@@ -43,11 +45,76 @@ public final class Particle
     public float depth;
 
     /**
-     * Returns a reference to the particle's position.
+     * Creates a particle whose state is stored in the specified slot of the given arrays.
+     */
+    public Particle (ParticleArrays arrays, int slot)
+    {
+        _arrays = arrays;
+        _slot = slot;
+        arrays.ids[slot] = System.identityHashCode(this);
+    }
+
+    /**
+     * Returns a reference to the arrays in which the particle's state is stored.
+     */
+    public ParticleArrays getArrays ()
+    {
+        return _arrays;
+    }
+
+    /**
+     * Returns the index of the particle's slot in its arrays.
+     */
+    public int getSlot ()
+    {
+        return _slot;
+    }
+
+    /**
+     * Moves the particle's state to a slot in another set of arrays.
+     */
+    public void moveTo (ParticleArrays arrays, int slot)
+    {
+        _arrays.copy(_slot, arrays, slot);
+        _arrays = arrays;
+        _slot = slot;
+    }
+
+    /**
+     * Copies the particle's stored position, velocity, angular velocity and color into the
+     * working copies returned by {@link #getPosition()}, {@link #getVelocity()},
+     * {@link #getAngularVelocity()} and {@link #getColor()}.  The working copies are shared by
+     * all of the particles in the arrays, so only one particle may be loaded at a time.
+     */
+    public void load ()
+    {
+        ParticleArrays arrays = _arrays;
+        int slot = _slot;
+        arrays.getPosition(slot, arrays._position);
+        arrays.getVelocity(slot, arrays._velocity);
+        arrays.getAngularVelocity(slot, arrays._angularVelocity);
+        arrays.getColor(slot, arrays._color);
+    }
+
+    /**
+     * Copies the working copies of the particle's vectors and color back into its arrays.
+     */
+    public void store ()
+    {
+        ParticleArrays arrays = _arrays;
+        int slot = _slot;
+        arrays.setPosition(slot, arrays._position);
+        arrays.setVelocity(slot, arrays._velocity);
+        arrays.setAngularVelocity(slot, arrays._angularVelocity);
+        arrays.setColor(slot, arrays._color);
+    }
+
+    /**
+     * Returns a reference to the working copy of the particle's position.
      */
     public Vector3f getPosition ()
     {
-        return _position;
+        return _arrays._position;
     }
 
     /**
@@ -56,7 +123,8 @@ public final class Particle
      */
     public Vector3f getPosition (float t, Vector3f result)
     {
-        return (_lengthfunc == null) ? result.set(_position) : _history.get(t, result);
+        return (_lengthfunc == null) ?
+            _arrays.getPosition(_slot, result) : _history.get(t, result);
     }
 
     /**
@@ -64,15 +132,15 @@ public final class Particle
      */
     public float getSize (float t)
     {
-        return _sizefunc.getValue(Math.max(_age - t*_length*_lifescale, 0f));
+        return _sizefunc.getValue(Math.max(_arrays.ages[_slot] - t*_length*_lifescale, 0f));
     }
 
     /**
-     * Returns a reference to the particle's (linear) velocity.
+     * Returns a reference to the working copy of the particle's (linear) velocity.
      */
     public Vector3f getVelocity ()
     {
-        return _velocity;
+        return _arrays._velocity;
     }
 
     /**
@@ -84,19 +152,19 @@ public final class Particle
     }
 
     /**
-     * Returns a reference to the particle's angular velocity.
+     * Returns a reference to the working copy of the particle's angular velocity.
      */
     public Vector3f getAngularVelocity ()
     {
-        return _angularVelocity;
+        return _arrays._angularVelocity;
     }
 
     /**
-     * Returns a reference to the particle's color.
+     * Returns a reference to the working copy of the particle's color.
      */
     public Color4f getColor ()
     {
-        return _color;
+        return _arrays._color;
     }
 
     /**
@@ -104,7 +172,7 @@ public final class Particle
      */
     public void setSize (float size)
     {
-        _size = size;
+        _arrays.sizes[_slot] = size;
     }
 
     /**
@@ -112,7 +180,7 @@ public final class Particle
      */
     public float getSize ()
     {
-        return _size;
+        return _arrays.sizes[_slot];
     }
 
     /**
@@ -124,21 +192,23 @@ public final class Particle
     }
 
     /**
-     * Initializes the particle.
+     * Initializes the particle.  Its stored position is used to initialize its history.
      */
     public void init (
         float lifespan, AlphaMode alphaMode, ColorFunctionVariable color,
         FloatFunctionVariable size, FloatFunctionVariable length,
         FloatFunctionVariable frame, Transform3D historyTransform)
     {
-        _age = 0f;
+        ParticleArrays arrays = _arrays;
+        int slot = _slot;
+        arrays.ages[slot] = 0f;
         _lifescale = 1f / lifespan;
-        _history.init(_position, historyTransform);
+        _history.init(arrays.getPosition(slot, arrays._scratchVector), historyTransform);
         _alphaMode = alphaMode;
         _colorfunc = color.getValue(_colorfunc);
-        _alphaMode.apply(_colorfunc.getValue(0f, _color));
+        arrays.setColor(slot, _alphaMode.apply(_colorfunc.getValue(0f, arrays._scratchColor)));
         _sizefunc = size.getValue(_sizefunc);
-        _size = _sizefunc.getValue(0f);
+        arrays.sizes[slot] = _sizefunc.getValue(0f);
         if (length == null) {
             _lengthfunc = null;
             _length = 0f;
@@ -162,66 +232,62 @@ public final class Particle
      */
     public boolean tick (float elapsed)
     {
-        if ((_age += elapsed * _lifescale) >= 1f) {
+        ParticleArrays arrays = _arrays;
+        int slot = _slot;
+        float age = (arrays.ages[slot] += elapsed * _lifescale);
+        if (age >= 1f) {
             return false;
         }
         // take an Euler step
-        _position.addScaledLocal(_velocity, elapsed);
-        _orientation.integrateLocal(_angularVelocity, elapsed);
+        float[] positions = arrays.positions, velocities = arrays.velocities;
+        int idx = slot * 3;
+        positions[idx] += velocities[idx] * elapsed;
+        positions[idx + 1] += velocities[idx + 1] * elapsed;
+        positions[idx + 2] += velocities[idx + 2] * elapsed;
+        _orientation.integrateLocal(
+            arrays.getAngularVelocity(slot, arrays._scratchVector), elapsed);
 
         // update color, size
-        _alphaMode.apply(_colorfunc.getValue(_age, _color));
-        _size = _sizefunc.getValue(_age);
+        arrays.setColor(slot, _alphaMode.apply(_colorfunc.getValue(age, arrays._scratchColor)));
+        arrays.sizes[slot] = _sizefunc.getValue(age);
 
         // update length and record the new position if we have a tail
         if (_lengthfunc != null) {
-            _length = _lengthfunc.getValue(_age);
-            _history.record(_position, elapsed, _length);
+            _length = _lengthfunc.getValue(age);
+            _history.record(arrays.getPosition(slot, arrays._scratchVector), elapsed, _length);
         }
 
         // update texture frame
         if (_framefunc != null) {
-            _frame = _framefunc.getValue(_age);
+            _frame = _framefunc.getValue(age);
         }
         return true;
     }
 
-    /** The particle's proportional age (0 to 1). */
-    protected float _age;
+    /** The arrays in which the particle's state is stored. */
+    protected ParticleArrays _arrays;
+
+    /** The index of the particle's slot in the arrays. */
+    protected int _slot;
 
     /** The reciprocal of the particle's lifespan. */
     protected float _lifescale;
 
-    /** The particle's position. */
-    protected Vector3f _position = new Vector3f();
-
     /** The particle's position history. */
     protected PositionHistory _history = new PositionHistory();
 
-    /** The particle's (linear) velocity. */
-    protected Vector3f _velocity = new Vector3f();
-
     /** The particle's orientation. */
     protected Quaternion _orientation = new Quaternion();
 
-    /** The particle's angular velocity. */
-    protected Vector3f _angularVelocity = new Vector3f();
-
     /** The particle's alpha mode. */
     protected AlphaMode _alphaMode = AlphaMode.TRANSLUCENT;
 
     /** The particle's color as a function of its proportional age. */
     protected ColorFunction _colorfunc;
 
-    /** The particle's current color. */
-    protected Color4f _color = new Color4f(0f, 0f, 0f, 0f);
-
     /** The particle's size as a function of its proportional age. */
     protected FloatFunction _sizefunc;
 
-    /** The particle's current size. */
-    protected float _size;
-
     /** The particle's length as a function of its proportional age. */
     protected FloatFunction _lengthfunc;
 
@@ -0,0 +1,207 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package com.threerings.opengl.effect;
+
+import com.threerings.math.Vector3f;
+
+import com.threerings.opengl.renderer.Color4f;
+
+/**
+ * Stores the frequently updated state of a layer's particles in parallel arrays, so that the
+ * influences and geometry can process it in tight loops rather than through the individual
+ * {@link Particle} objects.  Each particle occupies a fixed slot in the arrays: vectors take up
+ * three consecutive elements, colors four.
+ */
+public final class ParticleArrays
+{
+    /** The particles' positions. */
+    public final float[] positions;
+
+    /** The particles' (linear) velocities. */
+    public final float[] velocities;
+
+    /** The particles' angular velocities. */
+    public final float[] angularVelocities;
+
+    /** The particles' colors. */
+    public final float[] colors;
+
+    /** The particles' sizes. */
+    public final float[] sizes;
+
+    /** The particles' proportional ages (0 to 1). */
+    public final float[] ages;
+
+    /** Identifiers for the particles that are unique and consistent for their lifetimes. */
+    public final int[] ids;
+
+    /**
+     * Creates a set of arrays with room for the specified number of particles.
+     */
+    public ParticleArrays (int capacity)
+    {
+        positions = new float[capacity * 3];
+        velocities = new float[capacity * 3];
+        angularVelocities = new float[capacity * 3];
+        colors = new float[capacity * 4];
+        sizes = new float[capacity];
+        ages = new float[capacity];
+        ids = new int[capacity];
+    }
+
+    /**
+     * Returns the number of particles for which the arrays have room.
+     */
+    public int getCapacity ()
+    {
+        return sizes.length;
+    }
+
+    /**
+     * Retrieves the position in the specified slot.
+     *
+     * @return a reference to the result, for chaining.
+     */
+    public Vector3f getPosition (int slot, Vector3f result)
+    {
+        return get(positions, slot, result);
+    }
+
+    /**
+     * Sets the position in the specified slot.
+     */
+    public void setPosition (int slot, Vector3f position)
+    {
+        set(positions, slot, position);
+    }
+
+    /**
+     * Retrieves the velocity in the specified slot.
+     *
+     * @return a reference to the result, for chaining.
+     */
+    public Vector3f getVelocity (int slot, Vector3f result)
+    {
+        return get(velocities, slot, result);
+    }
+
+    /**
+     * Sets the velocity in the specified slot.
+     */
+    public void setVelocity (int slot, Vector3f velocity)
+    {
+        set(velocities, slot, velocity);
+    }
+
+    /**
+     * Retrieves the angular velocity in the specified slot.
+     *
+     * @return a reference to the result, for chaining.
+     */
+    public Vector3f getAngularVelocity (int slot, Vector3f result)
+    {
+        return get(angularVelocities, slot, result);
+    }
+
+    /**
+     * Sets the angular velocity in the specified slot.
+     */
+    public void setAngularVelocity (int slot, Vector3f angularVelocity)
+    {
+        set(angularVelocities, slot, angularVelocity);
+    }
+
+    /**
+     * Retrieves the color in the specified slot.
+     *
+     * @return a reference to the result, for chaining.
+     */
+    public Color4f getColor (int slot, Color4f result)
+    {
+        int idx = slot << 2;
+        return result.set(colors[idx], colors[idx + 1], colors[idx + 2], colors[idx + 3]);
+    }
+
+    /**
+     * Sets the color in the specified slot.
+     */
+    public void setColor (int slot, Color4f color)
+    {
+        int idx = slot << 2;
+        colors[idx] = color.r;
+        colors[idx + 1] = color.g;
+        colors[idx + 2] = color.b;
+        colors[idx + 3] = color.a;
+    }
+
+    /**
+     * Copies the state in one of our slots to a slot in another set of arrays.
+     */
+    public void copy (int slot, ParticleArrays other, int oslot)
+    {
+        System.arraycopy(positions, slot * 3, other.positions, oslot * 3, 3);
+        System.arraycopy(velocities, slot * 3, other.velocities, oslot * 3, 3);
+        System.arraycopy(angularVelocities, slot * 3, other.angularVelocities, oslot * 3, 3);
+        System.arraycopy(colors, slot << 2, other.colors, oslot << 2, 4);
+        other.sizes[oslot] = sizes[slot];
+        other.ages[oslot] = ages[slot];
+        other.ids[oslot] = ids[slot];
+    }
+
+    /**
+     * Retrieves a vector from one of the arrays.
+     */
+    protected static Vector3f get (float[] array, int slot, Vector3f result)
+    {
+        int idx = slot * 3;
+        return result.set(array[idx], array[idx + 1], array[idx + 2]);
+    }
+
+    /**
+     * Stores a vector in one of the arrays.
+     */
+    protected static void set (float[] array, int slot, Vector3f value)
+    {
+        int idx = slot * 3;
+        array[idx] = value.x;
+        array[idx + 1] = value.y;
+        array[idx + 2] = value.z;
+    }
+
+    /** The working copies of the loaded particle's vectors (see {@link Particle#load}). */
+    protected Vector3f _position = new Vector3f(), _velocity = new Vector3f(),
+        _angularVelocity = new Vector3f();
+
+    /** The working copy of the loaded particle's color. */
+    protected Color4f _color = new Color4f();
+
+    /** A scratch vector used when updating the particles. */
+    protected Vector3f _scratchVector = new Vector3f();
+
+    /** A scratch color used when updating the particles. */
+    protected Color4f _scratchColor = new Color4f();
+}
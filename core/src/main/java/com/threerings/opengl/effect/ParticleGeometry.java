@@ -111,6 +111,8 @@ public abstract class ParticleGeometry extends DynamicGeometry
         {
             // get everything into local variables
             Particle[] particles = _particles;
+            ParticleArrays arrays = _particleArrays;
+            float[] colors = arrays.colors;
             float[] data = _data;
             int stride = _stride;
             Vector3f n = _n;
@@ -128,6 +130,7 @@ public abstract class ParticleGeometry extends DynamicGeometry
             int vertexIdx = _vertexOffset;
             for (int ii = 0, nn = _living.value; ii < nn; ii++) {
                 Particle particle = particles[ii];
+                int slot = particle.getSlot();
 
                 // determine the texture coordinate offsets
                 int frame = FloatMath.round(particle.getFrame());
@@ -135,12 +138,14 @@ public abstract class ParticleGeometry extends DynamicGeometry
 
                 // write the vertex attributes and advance the positions
                 texCoordIdx = write(data, texCoordIdx, stride, uoff, voff);
-                colorIdx = write(data, colorIdx, stride, particle.getColor());
+                int cidx = slot << 2;
+                colorIdx = write(data, colorIdx, stride,
+                    colors[cidx], colors[cidx + 1], colors[cidx + 2], colors[cidx + 3]);
                 if (normals) {
                     normalIdx = write(data, normalIdx, stride,
                         particle.getOrientation().transformUnitZ(n));
                 }
-                vertexIdx = write(data, vertexIdx, stride, particle.getPosition());
+                vertexIdx = write(data, vertexIdx, stride, arrays.getPosition(slot, _position));
             }
         }
     }
@@ -185,6 +190,8 @@ public abstract class ParticleGeometry extends DynamicGeometry
         {
             // get everything in local variables
             Particle[] particles = _particles;
+            ParticleArrays arrays = _particleArrays;
+            float[] positions = arrays.positions, colors = arrays.colors, sizes = arrays.sizes;
             float[] data = _data;
             int stride = _stride;
             Vector3f s = _s, n = _n;
@@ -209,27 +216,29 @@ public abstract class ParticleGeometry extends DynamicGeometry
             int vertexIdx = _vertexOffset;
             for (int ii = 0, nn = _living.value; ii < nn; ii++) {
                 Particle particle = particles[ii];
+                int slot = particle.getSlot();
 
                 // determine the texture coordinate offsets
                 int frame = FloatMath.round(particle.getFrame());
                 float uoff = (frame % udivs) * uscale, voff = (frame / udivs) * vscale;
 
                 // extract the color
-                Color4f color = particle.getColor();
-                float cr = color.r, cg = color.g, cb = color.b, ca = color.a;
+                int cidx = slot << 2;
+                float cr = colors[cidx], cg = colors[cidx + 1];
+                float cb = colors[cidx + 2], ca = colors[cidx + 3];
 
                 // and the position
-                Vector3f position = particle.getPosition();
-                float px = position.x, py = position.y, pz = position.z;
+                int pidx = slot * 3;
+                float px = positions[pidx], py = positions[pidx + 1], pz = positions[pidx + 2];
 
                 // compute the offset
                 if (alignment == Alignment.VELOCITY) {
-                    Vector3f velocity = particle.getVelocity();
+                    Vector3f velocity = arrays.getVelocity(slot, _velocity);
                     float length = velocity.length();
                     if (length < FloatMath.EPSILON) {
                         s.set(Vector3f.ZERO);
                     } else {
-                        velocity.mult(particle.getSize() / length, s);
+                        velocity.mult(sizes[slot] / length, s);
                     }
                     if (normals) {
                         particle.getOrientation().transformUnitZ(n);
@@ -238,7 +247,7 @@ public abstract class ParticleGeometry extends DynamicGeometry
                     Quaternion rot = (alignment == Alignment.BILLBOARD) ?
                         vrot.mult(particle.getOrientation(), rotation) :
                         particle.getOrientation();
-                    rot.transformUnitX(s).multLocal(particle.getSize());
+                    rot.transformUnitX(s).multLocal(sizes[slot]);
                     if (normals) {
                         rot.transformUnitZ(n);
                     }
@@ -320,6 +329,7 @@ public abstract class ParticleGeometry extends DynamicGeometry
         {
             // get everything in local variables
             Particle[] particles = _particles;
+            float[] colors = _particleArrays.colors;
             float[] data = _data;
             int stride = _stride;
             int segments = _segments;
@@ -339,14 +349,16 @@ public abstract class ParticleGeometry extends DynamicGeometry
             int vertexIdx = _vertexOffset;
             for (int ii = 0, nn = _living.value; ii < nn; ii++) {
                 Particle particle = particles[ii];
+                int slot = particle.getSlot();
 
                 // determine the texture coordinate offsets
                 int frame = FloatMath.round(particle.getFrame());
                 float uoff = (frame % udivs) * uscale, voff = (frame / udivs) * vscale;
 
                 // extract the color
-                Color4f color = particle.getColor();
-                float cr = color.r, cg = color.g, cb = color.b, ca = color.a;
+                int cidx = slot << 2;
+                float cr = colors[cidx], cg = colors[cidx + 1];
+                float cb = colors[cidx + 2], ca = colors[cidx + 3];
 
                 // write the initial segments, then the final one
                 if (normals) {
@@ -417,6 +429,8 @@ public abstract class ParticleGeometry extends DynamicGeometry
         {
             // get everything in local variables
             Particle[] particles = _particles;
+            ParticleArrays arrays = _particleArrays;
+            float[] positions = arrays.positions, colors = arrays.colors, sizes = arrays.sizes;
             float[] data = _data;
             int stride = _stride;
             Vector3f s = _s, t = _t, n = _n, view = _view;
@@ -446,23 +460,25 @@ public abstract class ParticleGeometry extends DynamicGeometry
             int vertexIdx = _vertexOffset;
             for (int ii = 0, nn = _living.value; ii < nn; ii++) {
                 Particle particle = particles[ii];
+                int slot = particle.getSlot();
 
                 // determine the texture coordinate offsets
                 int frame = FloatMath.round(particle.getFrame());
                 float uoff = (frame % udivs) * uscale, voff = (frame / udivs) * vscale;
 
                 // extract the color
-                Color4f color = particle.getColor();
-                float cr = color.r, cg = color.g, cb = color.b, ca = color.a;
+                int cidx = slot << 2;
+                float cr = colors[cidx], cg = colors[cidx + 1];
+                float cb = colors[cidx + 2], ca = colors[cidx + 3];
 
                 // and the position
-                Vector3f position = particle.getPosition();
-                float px = position.x, py = position.y, pz = position.z;
+                int pidx = slot * 3;
+                float px = positions[pidx], py = positions[pidx + 1], pz = positions[pidx + 2];
 
                 // compute the offsets
-                float size = particle.getSize();
+                float size = sizes[slot];
                 if (alignment == Alignment.VELOCITY) {
-                    Vector3f velocity = particle.getVelocity();
+                    Vector3f velocity = arrays.getVelocity(slot, _velocity);
                     view.cross(velocity, t);
                     float length = t.length();
                     if (length > FloatMath.EPSILON) {
@@ -586,6 +602,7 @@ public abstract class ParticleGeometry extends DynamicGeometry
         {
             // get everything in local variables
             Particle[] particles = _particles;
+            float[] colors = _particleArrays.colors, sizes = _particleArrays.sizes;
             float[] data = _data;
             int stride = _stride;
             int segments = _segments;
@@ -610,11 +627,13 @@ public abstract class ParticleGeometry extends DynamicGeometry
             int vertexIdx = _vertexOffset;
             for (int ii = 0, nn = _living.value; ii < nn; ii++) {
                 Particle particle = particles[ii];
+                int slot = particle.getSlot();
 
                 // extract the color and size
-                Color4f color = particle.getColor();
-                float cr = color.r, cg = color.g, cb = color.b, ca = color.a;
-                float size = particle.getSize();
+                int cidx = slot << 2;
+                float cr = colors[cidx], cg = colors[cidx + 1];
+                float cb = colors[cidx + 2], ca = colors[cidx + 3];
+                float size = sizes[slot];
 
                 // compute the position
                 particle.getPosition(0f, position);
@@ -809,6 +828,8 @@ public abstract class ParticleGeometry extends DynamicGeometry
         {
             // get everything in local variables
             Particle[] particles = _particles;
+            ParticleArrays arrays = _particleArrays;
+            float[] colors = arrays.colors, sizes = arrays.sizes;
             float[] data = _data, source = _source;
             int stride = _stride, sourceStride = _sourceStride;
             Transform3D xform = _xform;
@@ -840,22 +861,24 @@ public abstract class ParticleGeometry extends DynamicGeometry
             int vertexIdx = _vertexOffset;
             for (int ii = 0, nn = _living.value; ii < nn; ii++) {
                 Particle particle = particles[ii];
+                int slot = particle.getSlot();
 
                 // determine the texture coordinate offsets
                 int frame = FloatMath.round(particle.getFrame());
                 float uoff = (frame % udivs) * uscale, voff = (frame / udivs) * vscale;
 
                 // extract the color
-                Color4f color = particle.getColor();
-                float cr = color.r, cg = color.g, cb = color.b, ca = color.a;
+                int cidx = slot << 2;
+                float cr = colors[cidx], cg = colors[cidx + 1];
+                float cb = colors[cidx + 2], ca = colors[cidx + 3];
 
                 // compute the particle transform matrix
                 float m00, m10, m20, m30;
                 float m01, m11, m21, m31;
                 float m02, m12, m22, m32;
-                float size = particle.getSize();
+                float size = sizes[slot];
                 if (alignment == Alignment.VELOCITY) {
-                    Vector3f velocity = particle.getVelocity();
+                    Vector3f velocity = arrays.getVelocity(slot, _velocity);
                     view.cross(velocity, t);
                     float length = t.length();
                     if (length > FloatMath.EPSILON) {
@@ -867,14 +890,14 @@ public abstract class ParticleGeometry extends DynamicGeometry
                         t.set(Vector3f.ZERO);
                         r.set(Vector3f.ZERO);
                     }
-                    Vector3f position = particle.getPosition();
+                    Vector3f position = arrays.getPosition(slot, _position);
                     m00 = s.x*size; m10 = t.x*size; m20 = r.x*size; m30 = position.x;
                     m01 = s.y*size; m11 = t.y*size; m21 = r.y*size; m31 = position.y;
                     m02 = s.z*size; m12 = t.z*size; m22 = r.z*size; m32 = position.z;
 
                 } else {
                     xform.set(
-                        particle.getPosition(),
+                        arrays.getPosition(slot, _position),
                         (alignment == Alignment.BILLBOARD) ?
                             vrot.mult(particle.getOrientation(), rotation) :
                             particle.getOrientation(),
@@ -890,7 +913,7 @@ public abstract class ParticleGeometry extends DynamicGeometry
                 int sourceVertexIdx = _sourceVertexOffset;
                 if (normals) {
                     int sourceNormalIdx = _sourceNormalOffset;
-                    float rsize = 1f / particle.getSize();
+                    float rsize = 1f / sizes[slot];
                     float n00 = m00*rsize, n10 = m10*rsize, n20 = m20*rsize;
                     float n01 = m01*rsize, n11 = m11*rsize, n21 = m21*rsize;
                     float n02 = m02*rsize, n12 = m12*rsize, n22 = m22*rsize;
@@ -1205,6 +1228,10 @@ public abstract class ParticleGeometry extends DynamicGeometry
     @Bound
     protected Particle[] _particles;
 
+    /** The arrays holding the state of the particles. */
+    @Bound
+    protected ParticleArrays _particleArrays;
+
     /** The number of particles currently active. */
     @Bound
     protected MutableInteger _living;
@@ -1247,6 +1274,9 @@ public abstract class ParticleGeometry extends DynamicGeometry
     /** Used to store the view vector. */
     protected Vector3f _view = new Vector3f();
 
+    /** Used to store particle velocities. */
+    protected Vector3f _velocity = new Vector3f();
+
     /** Used to compute particle rotations. */
     protected Quaternion _rotation = new Quaternion(), _vrot = new Quaternion();
 
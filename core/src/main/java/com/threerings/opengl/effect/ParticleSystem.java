@@ -25,10 +25,6 @@
 
 package com.threerings.opengl.effect;
 
-import java.util.Comparator;
-
-import com.samskivert.util.QuickSort;
-
 import com.threerings.expr.Scope;
 import com.threerings.expr.Scoped;
 import com.threerings.expr.util.ScopeUtil;
@@ -74,15 +70,21 @@ public class ParticleSystem extends BaseParticleSystem
                 _transformState.setDirty(true);
             }
 
-            // sort by depth if so required (TODO: radix or incremental sort?)
+            // sort by depth if so required
             ParticleSystemConfig.Layer psconfig = (ParticleSystemConfig.Layer)_config;
             if (psconfig.depthSort) {
+                int living = _living.value;
+                if (_depths.length < living) {
+                    _depths = new float[_particles.length];
+                }
                 Transform3D xform = _transformState.getModelview();
-                for (int ii = 0, nn = _living.value; ii < nn; ii++) {
+                ParticleArrays arrays = _particleArrays;
+                for (int ii = 0; ii < living; ii++) {
                     Particle particle = _particles[ii];
-                    particle.depth = xform.transformPointZ(particle.getPosition());
+                    _depths[ii] = particle.depth = xform.transformPointZ(
+                        arrays.getPosition(particle.getSlot(), _vector));
                 }
-                QuickSort.sort(_particles, 0, _living.value - 1, DEPTH_COMP);
+                _sorter.sort(_depths, _particles, living);
             }
 
             // update the center if necessary
@@ -189,6 +191,12 @@ public class ParticleSystem extends BaseParticleSystem
 
         /** Whether or not we're using a transform state of our own (as opposed to inheriting). */
         protected boolean _ownTransformState;
+
+        /** The depths of the living particles, in the same order as the particles. */
+        protected float[] _depths = new float[0];
+
+        /** Sorts the particles by depth. */
+        protected DepthSorter<Particle> _sorter = new DepthSorter<Particle>();
     }
 
     /**
@@ -233,11 +241,4 @@ public class ParticleSystem extends BaseParticleSystem
 
     /** World space bounds of each group. */
     protected Box[] _groupBounds = new Box[0];
-
-    /** Sorts particles by decreasing depth. */
-    protected static final Comparator<Particle> DEPTH_COMP = new Comparator<Particle>() {
-        public int compare (Particle p1, Particle p2) {
-            return Float.compare(p1.depth, p2.depth);
-        }
-    };
 }
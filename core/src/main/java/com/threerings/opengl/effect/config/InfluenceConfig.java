@@ -35,9 +35,10 @@ import com.threerings.math.Vector3f;
 import com.threerings.util.DeepObject;
 import com.threerings.util.NoiseUtil;
 
+import com.threerings.opengl.effect.ArrayInfluence;
 import com.threerings.opengl.effect.BaseParticleSystem.Layer;
 import com.threerings.opengl.effect.Influence;
-import com.threerings.opengl.effect.Particle;
+import com.threerings.opengl.effect.ParticleArrays;
 
 /**
  * Modifies the state of a set of particles.
@@ -67,12 +68,12 @@ public abstract class InfluenceConfig extends DeepObject
         @Override
         public Influence createInfluence (final Layer layer)
         {
-            return new Influence() {
+            return new ArrayInfluence() {
                 public void tick (float elapsed) {
                     layer.vectorToLayer(acceleration.mult(elapsed, _delta), rotateWithEmitter);
                 }
-                public void apply (Particle particle) {
-                    particle.getVelocity().addLocal(_delta);
+                public void apply (ParticleArrays arrays, int[] slots, int count) {
+                    addToAll(arrays.velocities, slots, count, _delta);
                 }
                 protected Vector3f _delta = new Vector3f();
             };
@@ -99,13 +100,13 @@ public abstract class InfluenceConfig extends DeepObject
         @Override
         public Influence createInfluence (final Layer layer)
         {
-            return new Influence() {
+            return new ArrayInfluence() {
                 public void tick (float elapsed) {
                     layer.vectorToLayer(direction.mult(strength * elapsed, _delta),
                         rotateWithEmitter);
                 }
-                public void apply (Particle particle) {
-                    particle.getVelocity().addLocal(_delta);
+                public void apply (ParticleArrays arrays, int[] slots, int count) {
+                    addToAll(arrays.velocities, slots, count, _delta);
                 }
                 protected Vector3f _delta = new Vector3f();
             };
@@ -124,12 +125,18 @@ public abstract class InfluenceConfig extends DeepObject
         @Override
         public Influence createInfluence (Layer layer)
         {
-            return new Influence() {
+            return new ArrayInfluence() {
                 public void tick (float elapsed) {
                     _drag = Math.max(0f, 1f - amount*elapsed);
                 }
-                public void apply (Particle particle) {
-                    particle.getVelocity().multLocal(_drag);
+                public void apply (ParticleArrays arrays, int[] slots, int count) {
+                    float[] velocities = arrays.velocities;
+                    for (int ii = 0; ii < count; ii++) {
+                        int idx = slots[ii] * 3;
+                        velocities[idx] *= _drag;
+                        velocities[idx + 1] *= _drag;
+                        velocities[idx + 2] *= _drag;
+                    }
                 }
                 protected float _drag;
             };
@@ -149,13 +156,22 @@ public abstract class InfluenceConfig extends DeepObject
         @Override
         public Influence createInfluence (Layer layer)
         {
-            return new Influence() {
+            return new ArrayInfluence() {
                 public void tick (float elapsed) {
                     _drag = amount * elapsed;
                 }
-                public void apply (Particle particle) {
-                    Vector3f velocity = particle.getVelocity();
-                    velocity.multLocal(Math.max(0f, 1f - _drag*velocity.length()));
+                public void apply (ParticleArrays arrays, int[] slots, int count) {
+                    float[] velocities = arrays.velocities;
+                    for (int ii = 0; ii < count; ii++) {
+                        int idx = slots[ii] * 3;
+                        float vx = velocities[idx], vy = velocities[idx + 1],
+                            vz = velocities[idx + 2];
+                        float scale = Math.max(0f,
+                            1f - _drag*FloatMath.sqrt(vx*vx + vy*vy + vz*vz));
+                        velocities[idx] = vx * scale;
+                        velocities[idx + 1] = vy * scale;
+                        velocities[idx + 2] = vz * scale;
+                    }
                 }
                 protected float _drag;
             };
@@ -186,7 +202,7 @@ public abstract class InfluenceConfig extends DeepObject
         @Override
         public Influence createInfluence (final Layer layer)
         {
-            return new Influence() {
+            return new ArrayInfluence() {
                 public void tick (float elapsed) {
                     // compute the delta amount
                     _delta = strength * elapsed;
@@ -198,16 +214,20 @@ public abstract class InfluenceConfig extends DeepObject
                     // find divergence rotation
                     _rotation.setToRotation(-divergence, _taxis);
                 }
-                public void apply (Particle particle) {
-                    // cross product of vortex axis and relative position is direction
-                    _taxis.cross(particle.getPosition().subtract(_torigin, _vector), _vector);
-                    float length = _vector.length();
-                    if (length < FloatMath.EPSILON) {
-                        return; // particle is on the axis
+                public void apply (ParticleArrays arrays, int[] slots, int count) {
+                    for (int ii = 0; ii < count; ii++) {
+                        int slot = slots[ii];
+                        // cross product of vortex axis and relative position is direction
+                        _taxis.cross(
+                            arrays.getPosition(slot, _vector).subtractLocal(_torigin), _vector);
+                        float length = _vector.length();
+                        if (length < FloatMath.EPSILON) {
+                            continue; // particle is on the axis
+                        }
+                        // normalize direction, scale by delta, rotate, add to velocity
+                        add(arrays.velocities, slot,
+                            _rotation.transformLocal(_vector.multLocal(_delta / length)));
                     }
-                    // normalize direction, scale by delta, rotate, add to velocity
-                    particle.getVelocity().addLocal(
-                        _rotation.transformLocal(_vector.multLocal(_delta / length)));
                 }
                 protected float _delta;
                 protected Vector3f _torigin = new Vector3f();
@@ -250,7 +270,7 @@ public abstract class InfluenceConfig extends DeepObject
         @Override
         public Influence createInfluence (final Layer layer)
         {
-            return new Influence() {
+            return new ArrayInfluence() {
                 public void tick (float elapsed) {
                     // compute the delta amount
                     _delta = strength * elapsed;
@@ -259,9 +279,14 @@ public abstract class InfluenceConfig extends DeepObject
                     layer.pointToLayer(_torigin.set(Vector3f.ZERO), true);
                     layer.vectorToLayer(_taxis.set(axis), rotateWithEmitter);
                 }
-                public void apply (Particle particle) {
+                public void apply (ParticleArrays arrays, int[] slots, int count) {
+                    for (int ii = 0; ii < count; ii++) {
+                        apply(arrays, slots[ii]);
+                    }
+                }
+                protected void apply (ParticleArrays arrays, int slot) {
                     // cross product of ring axis and particle position is tangent
-                    particle.getPosition().subtract(_torigin, _position);
+                    arrays.getPosition(slot, _position).subtractLocal(_torigin);
                     _taxis.cross(_position, _tangent);
                     float length = _tangent.length();
                     if (length < FloatMath.EPSILON) {
@@ -285,7 +310,7 @@ public abstract class InfluenceConfig extends DeepObject
                     _rotation.fromAngleAxis(-divergence, _tangent);
 
                     // cross product of vector and tangent is direction
-                    particle.getVelocity().addLocal(
+                    add(arrays.velocities, slot,
                         _rotation.transformLocal(_vector.crossLocal(_tangent).multLocal(_delta)));
                 }
                 protected float _delta;
@@ -315,23 +340,15 @@ public abstract class InfluenceConfig extends DeepObject
         @Override
         public Influence createInfluence (Layer layer)
         {
-            return new Influence() {
+            return new ArrayInfluence() {
                 public void tick (float elapsed) {
                     // the unscaled strength was based on an expected frame rate of sixty
                     // frames per second
                     _time += elapsed * frequency;
                     _sstrength = strength * elapsed * 60f;
                 }
-                public void apply (Particle particle) {
-                    // using the system hash gives each particle a consistent unique identity;
-                    // adding an offset to the time prevents synchronization of the zero points
-                    // (the noise function is always zero at integers)
-                    int pid = System.identityHashCode(particle);
-                    float time = _time + (pid & 255) / 256f;
-                    particle.getVelocity().addLocal(
-                        NoiseUtil.getNoise(time, pid) * _sstrength,
-                        NoiseUtil.getNoise(time, pid + 1) * _sstrength,
-                        NoiseUtil.getNoise(time, pid + 2) * _sstrength);
+                public void apply (ParticleArrays arrays, int[] slots, int count) {
+                    addNoise(arrays.velocities, arrays.ids, slots, count, _time, _sstrength);
                 }
                 protected float _time, _sstrength;
             };
@@ -354,19 +371,14 @@ public abstract class InfluenceConfig extends DeepObject
         @Override
         public Influence createInfluence (Layer layer)
         {
-            return new Influence() {
+            return new ArrayInfluence() {
                 public void tick (float elapsed) {
                     _time += elapsed * frequency;
                     _sstrength = strength * elapsed * 60f;
                 }
-                public void apply (Particle particle) {
+                public void apply (ParticleArrays arrays, int[] slots, int count) {
                     // jitter is just like wander, except it directly influences the position
-                    int pid = System.identityHashCode(particle);
-                    float time = _time + (pid & 255) / 256f;
-                    particle.getPosition().addLocal(
-                        NoiseUtil.getNoise(time, pid) * _sstrength,
-                        NoiseUtil.getNoise(time, pid + 1) * _sstrength,
-                        NoiseUtil.getNoise(time, pid + 2) * _sstrength);
+                    addNoise(arrays.positions, arrays.ids, slots, count, _time, _sstrength);
                 }
                 protected float _time, _sstrength;
             };
@@ -385,12 +397,12 @@ public abstract class InfluenceConfig extends DeepObject
         @Override
         public Influence createInfluence (final Layer layer)
         {
-            return new Influence() {
+            return new ArrayInfluence() {
                 public void tick (float elapsed) {
                     acceleration.mult(elapsed, _delta);
                 }
-                public void apply (Particle particle) {
-                    particle.getAngularVelocity().addLocal(_delta);
+                public void apply (ParticleArrays arrays, int[] slots, int count) {
+                    addToAll(arrays.angularVelocities, slots, count, _delta);
                 }
                 protected Vector3f _delta = new Vector3f();
             };
@@ -401,4 +413,48 @@ public abstract class InfluenceConfig extends DeepObject
      * Creates the influence corresponding to this config for the specified layer.
      */
     public abstract Influence createInfluence (Layer layer);
+
+    /**
+     * Adds a vector to the one stored in the specified slot of a particle array.
+     */
+    protected static void add (float[] array, int slot, Vector3f vector)
+    {
+        int idx = slot * 3;
+        array[idx] += vector.x;
+        array[idx + 1] += vector.y;
+        array[idx + 2] += vector.z;
+    }
+
+    /**
+     * Adds a vector to those stored in the specified slots of a particle array.
+     */
+    protected static void addToAll (float[] array, int[] slots, int count, Vector3f vector)
+    {
+        float x = vector.x, y = vector.y, z = vector.z;
+        for (int ii = 0; ii < count; ii++) {
+            int idx = slots[ii] * 3;
+            array[idx] += x;
+            array[idx + 1] += y;
+            array[idx + 2] += z;
+        }
+    }
+
+    /**
+     * Adds a noise vector to those stored in the specified slots of a particle array.
+     */
+    protected static void addNoise (
+        float[] array, int[] ids, int[] slots, int count, float time, float strength)
+    {
+        for (int ii = 0; ii < count; ii++) {
+            int slot = slots[ii];
+            // the particle ids are consistent and unique; adding an offset to the time prevents
+            // synchronization of the zero points (the noise function is always zero at integers)
+            int pid = ids[slot];
+            float ptime = time + (pid & 255) / 256f;
+            int idx = slot * 3;
+            array[idx] += NoiseUtil.getNoise(ptime, pid) * strength;
+            array[idx + 1] += NoiseUtil.getNoise(ptime, pid + 1) * strength;
+            array[idx + 2] += NoiseUtil.getNoise(ptime, pid + 2) * strength;
+        }
+    }
 }
@@ -86,15 +86,7 @@ public abstract class DynamicGeometry extends Geometry
     {
         // update the vertex data
         updateData();
-
-        // copy from array to buffer
-        _floatArray.clear();
-        _floatArray.put(_data).flip();
-
-        // copy from buffer to vbo if using one
-        if (_arrayBuffer != null) {
-            _arrayBuffer.setData(_floatArray, ARBBufferObject.GL_STREAM_DRAW_ARB);
-        }
+        copyData();
     }
 
     /**
@@ -109,6 +101,21 @@ public abstract class DynamicGeometry extends Geometry
      */
     protected abstract void updateData ();
 
+    /**
+     * Copies the vertex data to the buffer and (if using one) the VBO.
+     */
+    protected void copyData ()
+    {
+        // copy from array to buffer
+        _floatArray.clear();
+        _floatArray.put(_data).flip();
+
+        // copy from buffer to vbo if using one
+        if (_arrayBuffer != null) {
+            _arrayBuffer.setData(_floatArray, ARBBufferObject.GL_STREAM_DRAW_ARB);
+        }
+    }
+
     /**
      * Returns a reference to the scratch buffer, (re)creating it if necessary to provide the
      * supplied size.
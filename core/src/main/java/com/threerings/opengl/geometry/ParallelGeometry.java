@@ -0,0 +1,93 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.geometry;
+
+import java.nio.FloatBuffer;
+
+import com.threerings.opengl.renderer.BufferObject;
+
+/**
+ * Base class for dynamic geometry whose units (vertices) may be updated independently, so that
+ * the update may be divided among the threads of the {@link ParallelUpdater}.
+ */
+public abstract class ParallelGeometry extends DynamicGeometry
+{
+    /**
+     * Creates a new parallel geometry.
+     *
+     * @param data the array from which vertex data will be copied at each update.  If the
+     * geometry is to be updated in parallel, the array must not be shared with other geometries.
+     * @param arrayBuffer the VBO into which the vertex data will be copied, or <code>null</code>
+     * for none.
+     * @param floatArray the buffer into which vertex data will be copied, or <code>null</code>
+     * if using a VBO.
+     * @param units the number of units in the geometry.
+     * @param parallel whether or not to update the geometry in parallel (when enabled).
+     */
+    public ParallelGeometry (
+        float[] data, BufferObject arrayBuffer, FloatBuffer floatArray, int units,
+        boolean parallel)
+    {
+        super(data, arrayBuffer, floatArray);
+        _units = units;
+        _parallel = parallel;
+    }
+
+    @Override
+    public void update ()
+    {
+        // hand the update off to the workers if possible; they'll call copyData when done
+        if (_parallel && ParallelUpdater.isEnabled()) {
+            if (!_submitted) {
+                _submitted = true;
+                ParallelUpdater.submit(this, _units);
+            }
+            return;
+        }
+        super.update();
+    }
+
+    @Override
+    protected void updateData ()
+    {
+        updateData(0, _units);
+    }
+
+    /**
+     * Updates the vertex data for the specified range of units.  Called from the update threads
+     * when updating in parallel.
+     */
+    protected abstract void updateData (int start, int end);
+
+    /** The number of units in the geometry. */
+    protected int _units;
+
+    /** Whether or not to update the geometry in parallel. */
+    protected boolean _parallel;
+
+    /** Set when the geometry has been submitted for a parallel update not yet finished. */
+    protected boolean _submitted;
+}
@@ -0,0 +1,126 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.geometry;
+
+import java.util.ArrayList;
+
+import com.google.common.collect.Lists;
+
+import com.threerings.util.WorkerPool;
+
+import static com.threerings.opengl.Log.log;
+
+/**
+ * Performs the data updates of {@link ParallelGeometry} instances on the shared
+ * {@link WorkerPool}.  Geometries are submitted as they are enqueued, divided into tasks by range
+ * of vertices, and the updates are completed (and their results copied to the geometries'
+ * buffers) when the render queues are sorted, before any batches are drawn.
+ */
+public class ParallelUpdater
+{
+    /**
+     * Checks whether parallel updates are enabled.
+     */
+    public static boolean isEnabled ()
+    {
+        return _group.isParallel();
+    }
+
+    /**
+     * Submits a geometry for updating.  Should only be called from the render thread.
+     *
+     * @param units the number of independently updatable units (vertices) in the geometry.
+     */
+    public static void submit (ParallelGeometry geometry, int units)
+    {
+        _submitted.add(geometry);
+        for (int start = 0; start < units; start += UNITS_PER_TASK) {
+            _group.submit(new Task(geometry, start, Math.min(start + UNITS_PER_TASK, units)));
+        }
+    }
+
+    /**
+     * Completes the submitted updates, helping the workers with any tasks not yet started, then
+     * copies the results to the geometries' buffers.  Should only be called from the render
+     * thread.
+     */
+    public static void finish ()
+    {
+        if (_submitted.isEmpty()) {
+            return;
+        }
+        _group.finish();
+        for (int ii = 0, nn = _submitted.size(); ii < nn; ii++) {
+            ParallelGeometry geometry = _submitted.get(ii);
+            geometry.copyData();
+            geometry._submitted = false;
+        }
+        _submitted.clear();
+    }
+
+    /**
+     * Updates a range of units within a geometry.
+     */
+    protected static class Task
+        implements Runnable
+    {
+        public Task (ParallelGeometry geometry, int start, int end)
+        {
+            _geometry = geometry;
+            _start = start;
+            _end = end;
+        }
+
+        // documentation inherited from interface Runnable
+        public void run ()
+        {
+            try {
+                _geometry.updateData(_start, _end);
+            } catch (Throwable t) {
+                log.warning("Failed to update geometry.", "geometry", _geometry, t);
+            }
+        }
+
+        /** The geometry to update. */
+        protected ParallelGeometry _geometry;
+
+        /** The range of units to update. */
+        protected int _start, _end;
+    }
+
+    /** The geometries submitted since the last call to {@link #finish}. */
+    protected static ArrayList<ParallelGeometry> _submitted = Lists.newArrayList();
+
+    /** The group containing the submitted tasks.  The geometry_update_threads property sets the
+     * number of the pool's threads it may occupy (by default, one fewer than the number of
+     * processors; zero disables parallel updates). */
+    protected static WorkerPool.TaskGroup _group = new WorkerPool.TaskGroup(
+        new WorkerPool.Limiter("geometry_update_threads",
+            Runtime.getRuntime().availableProcessors() - 1));
+
+    /** The number of units to update in each task. */
+    protected static final int UNITS_PER_TASK = 1024;
+}
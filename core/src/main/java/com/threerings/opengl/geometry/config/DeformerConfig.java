@@ -41,8 +41,9 @@ import com.threerings.math.Matrix4f;
 import com.threerings.math.Vector3f;
 import com.threerings.util.DeepObject;
 
-import com.threerings.opengl.geometry.DynamicGeometry;
 import com.threerings.opengl.geometry.Geometry;
+import com.threerings.opengl.geometry.ParallelGeometry;
+import com.threerings.opengl.geometry.ParallelUpdater;
 import com.threerings.opengl.renderer.BufferObject;
 import com.threerings.opengl.renderer.ClientArray;
 import com.threerings.opengl.renderer.SimpleBatch.DrawCommand;
@@ -120,6 +121,15 @@ public abstract class DeformerConfig extends DeepObject
             float[] dest = config.getFloatArray(
                 true, destArrays.toArray(new ClientArrayConfig[destArrays.size()]));
 
+            // large meshes may be skinned in parallel, in which case each instance needs its
+            // own copy of the dest data
+            final int vertexCount = source.length / ((tangents ? 3 : 0) + (normals ? 3 : 0) + 3);
+            final boolean parallel = ParallelUpdater.isEnabled() &&
+                vertexCount >= MIN_PARALLEL_VERTICES;
+            if (parallel) {
+                dest = dest.clone();
+            }
+
             // create the array states and, if possible, a VBO to hold the skinned data
             BufferObject arrayBuffer = null;
             FloatBuffer floatArray = null;
@@ -140,7 +150,7 @@ public abstract class DeformerConfig extends DeepObject
             // finally, create the draw command and the geometry itself
             final Vector3f center = config.bounds.getCenter();
             final DrawCommand drawCommand = config.createDrawCommand(vbos);
-            return new DynamicGeometry(dest, arrayBuffer, floatArray) {
+            return new ParallelGeometry(dest, arrayBuffer, floatArray, vertexCount, parallel) {
                 public CoordSpace getCoordSpace (int pass) {
                     return CoordSpace.EYE;
                 }
@@ -153,20 +163,20 @@ public abstract class DeformerConfig extends DeepObject
                 public DrawCommand getDrawCommand (int pass) {
                     return drawCommand;
                 }
-                protected void updateData () {
+                protected void updateData (int start, int end) {
                     // skin based on attributes
                     if (tangents && normals) {
                         skinVertices(
                             source, _data, boneMatrices, boneIndices, boneWeights,
-                            tangentOffset, normalOffset, vertexOffset, vertexStride);
+                            tangentOffset, normalOffset, vertexOffset, vertexStride, start, end);
                     } else if (normals) {
                         skinVertices(
                             source, _data, boneMatrices, boneIndices, boneWeights,
-                            normalOffset, vertexOffset, vertexStride);
+                            normalOffset, vertexOffset, vertexStride, start, end);
                     } else {
                         skinVertices(
                             source, _data, boneMatrices, boneIndices,
-                            boneWeights, vertexOffset, vertexStride);
+                            boneWeights, vertexOffset, vertexStride, start, end);
                     }
                 }
             };
@@ -214,12 +224,17 @@ public abstract class DeformerConfig extends DeepObject
      * @param nidx the index of the first normal in the destination array.
      * @param vidx the index of the first vertex in the destination array.
      * @param dinc the stride between adjacent vertices in the destination array.
+     * @param first the index of the first vertex to skin.
+     * @param last one past the index of the last vertex to skin.
      */
     protected static void skinVertices (
         float[] source, float[] dest, Matrix4f[] boneMatrices, int[] boneIndices,
-        float[] boneWeights, int tidx, int nidx, int vidx, int dinc)
+        float[] boneWeights, int tidx, int nidx, int vidx, int dinc, int first, int last)
     {
-        for (int sidx = 0, bidx = 0; sidx < source.length; ) {
+        tidx += first*dinc;
+        nidx += first*dinc;
+        vidx += first*dinc;
+        for (int sidx = first*9, bidx = first*4, send = last*9; sidx < send; ) {
             // retrieve the source tangent, normal, and vertex
             float stx = source[sidx++], sty = source[sidx++], stz = source[sidx++];
             float snx = source[sidx++], sny = source[sidx++], snz = source[sidx++];
@@ -275,12 +290,16 @@ public abstract class DeformerConfig extends DeepObject
      * @param nidx the index of the first normal in the destination array.
      * @param vidx the index of the first vertex in the destination array.
      * @param dinc the stride between adjacent vertices in the destination array.
+     * @param first the index of the first vertex to skin.
+     * @param last one past the index of the last vertex to skin.
      */
     protected static void skinVertices (
-        float[] source, float[] dest, Matrix4f[] boneMatrices,
-        int[] boneIndices, float[] boneWeights, int nidx, int vidx, int dinc)
+        float[] source, float[] dest, Matrix4f[] boneMatrices, int[] boneIndices,
+        float[] boneWeights, int nidx, int vidx, int dinc, int first, int last)
     {
-        for (int sidx = 0, bidx = 0; sidx < source.length; ) {
+        nidx += first*dinc;
+        vidx += first*dinc;
+        for (int sidx = first*6, bidx = first*4, send = last*6; sidx < send; ) {
             // retrieve the source normal and vertex
             float snx = source[sidx++], sny = source[sidx++], snz = source[sidx++];
             float svx = source[sidx++], svy = source[sidx++], svz = source[sidx++];
@@ -323,12 +342,15 @@ public abstract class DeformerConfig extends DeepObject
      *
      * @param vidx the index of the first vertex in the destination array.
      * @param dinc the stride between adjacent vertices in the destination array.
+     * @param first the index of the first vertex to skin.
+     * @param last one past the index of the last vertex to skin.
      */
     protected static void skinVertices (
-        float[] source, float[] dest, Matrix4f[] boneMatrices,
-        int[] boneIndices, float[] boneWeights, int vidx, int dinc)
+        float[] source, float[] dest, Matrix4f[] boneMatrices, int[] boneIndices,
+        float[] boneWeights, int vidx, int dinc, int first, int last)
     {
-        for (int sidx = 0, bidx = 0; sidx < source.length; ) {
+        vidx += first*dinc;
+        for (int sidx = first*3, bidx = first*4, send = last*3; sidx < send; ) {
             // retrieve the source vertex
             float svx = source[sidx++], svy = source[sidx++], svz = source[sidx++];
 
@@ -350,4 +372,7 @@ public abstract class DeformerConfig extends DeepObject
             vidx += dinc;
         }
     }
+
+    /** The minimum number of vertices for which to skin in parallel. */
+    protected static final int MIN_PARALLEL_VERTICES = 512;
 }
@@ -462,16 +462,21 @@ public abstract class GeometryConfig extends DeepObject
             for (int ii = merge.size() - 1; ii >= 0; ii--) {
                 TransformedGeometry tgeom = merge.get(ii);
                 Stored stored = (Stored)tgeom.geometry;
-                merged.bounds.addLocal(stored.bounds.transform(tgeom.transform));
-
-                // perform a bulk transfer of the array data
-                FloatBuffer obuf = stored.vertexArray.floatArray;
-                int olimit = obuf.limit(), opos = obuf.position();
-                int npos = opos + stored.getFirst() * stride;
+                boolean identity = (tgeom.transform.getType() == Transform3D.IDENTITY);
+                merged.bounds.addLocal(
+                    identity ? stored.bounds : stored.bounds.transform(tgeom.transform));
+
+                // perform a bulk transfer of the array data (through a duplicate, so that the
+                // source buffer's position and limit are never disturbed)
+                FloatBuffer obuf = stored.vertexArray.floatArray.duplicate();
+                int npos = obuf.position() + stored.getFirst() * stride;
                 int count = stored.getCount();
                 obuf.limit(npos + count * stride).position(npos);
-                vbuf.put(stored.vertexArray.floatArray);
-                obuf.limit(olimit).position(opos);
+                vbuf.put(obuf);
+                if (identity) {
+                    vpos += count * stride;
+                    continue;
+                }
 
                 // then transform the vertices and normals in-place
                 tgeom.transform.update(Transform3D.AFFINE);
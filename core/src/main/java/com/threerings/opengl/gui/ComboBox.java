@@ -356,6 +356,7 @@ public class ComboBox<T> extends Label
             _menu = null;
         }
         _psize = null;
+        clearPreferredSizes();
     }
 
     protected boolean invalidIndex (int index)
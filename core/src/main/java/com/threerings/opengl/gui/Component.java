@@ -25,6 +25,7 @@
 
 package com.threerings.opengl.gui;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Iterator;
@@ -36,8 +37,6 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 
 import org.lwjgl.input.Keyboard;
-import org.lwjgl.opengl.GL11;
-
 import com.threerings.config.ArgumentMap;
 import com.threerings.config.ConfigEvent;
 import com.threerings.config.ConfigReference;
@@ -48,6 +47,7 @@ import com.threerings.math.Transform2D;
 import com.threerings.math.Vector2f;
 
 import com.threerings.opengl.renderer.Color4f;
+import com.threerings.opengl.renderer.QuadBatch;
 import com.threerings.opengl.renderer.Renderer;
 import com.threerings.opengl.util.GlContext;
 
@@ -298,58 +298,16 @@ public class Component
      */
     public Dimension getPreferredSize (int whint, int hhint)
     {
-        Dimension ps;
-        // if we have a fully specified preferred size, just use it
-        if (_preferredSize != null && _preferredSize.width != -1 && _preferredSize.height != -1) {
-            ps = new Dimension(_preferredSize);
-
-        } else {
-            // override hints with preferred size
-            if (_preferredSize != null) {
-                if (_preferredSize.width > 0) {
-                    whint = _preferredSize.width;
-                }
-                if (_preferredSize.height > 0) {
-                    hhint = _preferredSize.height;
-                }
-            }
-
-            // extract space from the hints for our insets
-            Insets insets = getInsets();
-            if (whint > 0) {
-                whint -= insets.getHorizontal();
-            }
-            if (hhint > 0) {
-                hhint -= insets.getVertical();
-            }
-
-            // compute our "natural" preferred size
-            ps = computePreferredSize(whint, hhint);
-
-            // now add our insets back in
-            ps.width += insets.getHorizontal();
-            ps.height += insets.getVertical();
-
-            // then override it with user supplied values
-            if (_preferredSize != null) {
-                if (_preferredSize.width != -1) {
-                    ps.width = _preferredSize.width;
-                }
-                if (_preferredSize.height != -1) {
-                    ps.height = _preferredSize.height;
-                }
-            }
+        // sizes are cached until the component is invalidated
+        Dimension ps = _psizes.get(whint, hhint);
+        if (ps == null) {
+            _psizes.put(whint, hhint, ps = resolvePreferredSize(whint, hhint));
         }
-
-        // now make sure we're not smaller in either dimension than our
-        // background will allow
-        Background background = getBackground();
-        if (background != null) {
-            ps.width = Math.max(ps.width, background.getMinimumWidth());
-            ps.height = Math.max(ps.height, background.getMinimumHeight());
+        // note the size reported so that our parent can tell whether it has changed
+        if (_reportedPsizes.get(whint, hhint) == null) {
+            _reportedPsizes.put(whint, hhint, ps);
         }
-
-        return ps;
+        return new Dimension(ps);
     }
 
     /**
@@ -361,6 +319,7 @@ public class Component
     public void setPreferredSize (Dimension preferredSize)
     {
         _preferredSize = preferredSize;
+        clearPreferredSizes();
     }
 
     /**
@@ -464,6 +423,7 @@ public class Component
     public void setBackground (int state, Background background)
     {
         _backgrounds[state] = background;
+        clearPreferredSizes();
     }
 
     /**
@@ -536,6 +496,11 @@ public class Component
             _visible = visible;
             invalidate();
 
+            // our parent must lay out its children again even if our preferred size is unchanged
+            if (_parent != null) {
+                _parent.invalidate();
+            }
+
             // make sure we no longer have the input focus
             if (!visible && hasFocus()) {
                 getWindow().getRoot().requestFocus(null);
@@ -865,20 +830,31 @@ public class Component
                 layout();
             }
             _valid = true;
+            _layoutCurrent = false;
         }
     }
 
     /**
      * Marks this component as invalid and needing a relayout. If the component is valid, its
-     * parent will also be marked as invalid.
+     * parent will also be marked as invalid, although the parent will only lay itself out again
+     * if our preferred size turns out to have changed.
      */
     public void invalidate ()
     {
-        if (_valid) {
-            _valid = false;
-            if (_parent != null) {
-                _parent.invalidate();
-            }
+        if (markInvalid() && _parent != null) {
+            _parent.childInvalidated(this);
+        }
+    }
+
+    /**
+     * Flushes the cached preferred sizes of this component and of its ancestors.  Components whose
+     * computed preferred size depends on state that changes without invalidation must call this
+     * when that state changes.
+     */
+    public void clearPreferredSizes ()
+    {
+        for (Component comp = this; comp != null; comp = comp._parent) {
+            comp._psizes.clear();
         }
     }
 
@@ -891,11 +867,12 @@ public class Component
         if (!_visible) {
             return;
         }
+        QuadBatch batch = renderer.getQuadBatch();
         if (_offset != null) {
-            GL11.glPushMatrix();
-            applyTransform();
+            batch.pushTransform();
+            applyTransform(batch);
         } else {
-            GL11.glTranslatef(_x, _y, 0);
+            batch.translate(_x, _y);
         }
 
         try {
@@ -910,9 +887,9 @@ public class Component
 
         } finally {
             if (_offset != null) {
-                GL11.glPopMatrix();
+                batch.popTransform();
             } else {
-                GL11.glTranslatef(-_x, -_y, 0);
+                batch.translate(-_x, -_y);
             }
         }
     }
@@ -1100,6 +1077,105 @@ public class Component
         // we have nothing to do by default
     }
 
+    /**
+     * Marks this component as needing a relayout without notifying its parent, flushing its
+     * cached preferred sizes.
+     *
+     * @return true if the component was valid before the call.
+     */
+    protected boolean markInvalid ()
+    {
+        _layoutCurrent = false;
+        _psizes.clear();
+        if (!_valid) {
+            return false;
+        }
+        _valid = false;
+        return true;
+    }
+
+    /**
+     * Checks whether any of the preferred sizes reported by this component since its parent last
+     * laid it out differ from the sizes it would report now.
+     */
+    protected boolean preferredSizeChanged ()
+    {
+        PreferredSizes reported = _reportedPsizes;
+        if (reported.overflowed) {
+            return true;
+        }
+        for (int ii = 0; ii < reported.count; ii++) {
+            Dimension osize = reported.sizes[ii];
+            Dimension nsize = getPreferredSize(
+                reported.hints[ii << 1], reported.hints[(ii << 1) + 1]);
+            if (osize.width != nsize.width || osize.height != nsize.height) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Resolves the preferred size of this component for the supplied hints, taking into account
+     * the user supplied preferred size, the insets, and the background.  The result is cached by
+     * {@link #getPreferredSize} until the component is invalidated.
+     */
+    protected Dimension resolvePreferredSize (int whint, int hhint)
+    {
+        Dimension ps;
+        // if we have a fully specified preferred size, just use it
+        if (_preferredSize != null && _preferredSize.width != -1 && _preferredSize.height != -1) {
+            ps = new Dimension(_preferredSize);
+
+        } else {
+            // override hints with preferred size
+            if (_preferredSize != null) {
+                if (_preferredSize.width > 0) {
+                    whint = _preferredSize.width;
+                }
+                if (_preferredSize.height > 0) {
+                    hhint = _preferredSize.height;
+                }
+            }
+
+            // extract space from the hints for our insets
+            Insets insets = getInsets();
+            if (whint > 0) {
+                whint -= insets.getHorizontal();
+            }
+            if (hhint > 0) {
+                hhint -= insets.getVertical();
+            }
+
+            // compute our "natural" preferred size
+            ps = computePreferredSize(whint, hhint);
+
+            // now add our insets back in
+            ps.width += insets.getHorizontal();
+            ps.height += insets.getVertical();
+
+            // then override it with user supplied values
+            if (_preferredSize != null) {
+                if (_preferredSize.width != -1) {
+                    ps.width = _preferredSize.width;
+                }
+                if (_preferredSize.height != -1) {
+                    ps.height = _preferredSize.height;
+                }
+            }
+        }
+
+        // now make sure we're not smaller in either dimension than our
+        // background will allow
+        Background background = getBackground();
+        if (background != null) {
+            ps.width = Math.max(ps.width, background.getMinimumWidth());
+            ps.height = Math.max(ps.height, background.getMinimumHeight());
+        }
+
+        return ps;
+    }
+
     /**
      * Computes and returns a preferred size for this component. This method is called if no
      * overriding preferred size has been supplied.
@@ -1134,6 +1210,9 @@ public class Component
         // mark ourselves as invalid so that if this component is again added to an interface
         // heirarchy it will revalidate at that time
         _valid = false;
+        _layoutCurrent = false;
+        _psizes.clear();
+        _reportedPsizes.clear();
     }
 
     /**
@@ -1148,11 +1227,11 @@ public class Component
     /**
      * Applies our configured transform.
      */
-    protected void applyTransform ()
+    protected void applyTransform (QuadBatch batch)
     {
         // normal translation
         float hwidth = _width/2f, hheight = _height/2f;
-        GL11.glTranslatef(_x + hwidth, _y + hheight, 0f);
+        batch.translate(_x + hwidth, _y + hheight);
 
         // offset transform
         int type = _offset.getType();
@@ -1162,17 +1241,16 @@ public class Component
 
             } else { // type == Transform2D.RIGID || type == Transform2D.UNIFORM
                 Vector2f translation = _offset.getTranslation();
-                GL11.glTranslatef(translation.x, translation.y, 0f);
-                GL11.glRotatef(FloatMath.toDegrees(_offset.getRotation()), 0f, 0f, 1f);
+                batch.translate(translation.x, translation.y);
+                batch.rotate(FloatMath.toDegrees(_offset.getRotation()));
                 if (type == Transform2D.UNIFORM) {
-                    float scale = _offset.getScale();
-                    GL11.glScalef(scale, scale, 1f);
+                    batch.scale(_offset.getScale());
                 }
             }
         }
 
         // centering translation
-        GL11.glTranslatef(-hwidth, -hheight, 0f);
+        batch.translate(-hwidth, -hheight);
     }
 
     /**
@@ -1376,6 +1454,61 @@ public class Component
     /** The application context. */
     protected GlContext _ctx;
 
+    /**
+     * A small cache of preferred sizes mapped by the hints for which they were computed.
+     */
+    protected static class PreferredSizes
+    {
+        /** The hints for each size, in (width, height) pairs. */
+        public int[] hints = new int[MAX_PREFERRED_SIZES * 2];
+
+        /** The cached sizes. */
+        public Dimension[] sizes = new Dimension[MAX_PREFERRED_SIZES];
+
+        /** The number of cached sizes. */
+        public int count;
+
+        /** Set when sizes have been requested that we could not retain. */
+        public boolean overflowed;
+
+        /**
+         * Returns the size cached for the specified hints, or <code>null</code> for none.
+         */
+        public Dimension get (int whint, int hhint)
+        {
+            for (int ii = 0; ii < count; ii++) {
+                if (hints[ii << 1] == whint && hints[(ii << 1) + 1] == hhint) {
+                    return sizes[ii];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Caches the size for the specified hints, if there's room.
+         */
+        public void put (int whint, int hhint, Dimension size)
+        {
+            if (count == sizes.length) {
+                overflowed = true;
+                return;
+            }
+            hints[count << 1] = whint;
+            hints[(count << 1) + 1] = hhint;
+            sizes[count++] = size;
+        }
+
+        /**
+         * Clears out the cached sizes.
+         */
+        public void clear ()
+        {
+            Arrays.fill(sizes, 0, count, null);
+            count = 0;
+            overflowed = false;
+        }
+    }
+
     /** The component's style configurations for each state. */
     protected StyleConfig[] _styleConfigs = new StyleConfig[getStateCount()];
 
@@ -1406,6 +1539,18 @@ public class Component
     /** Temporary storage for scissor box. */
     protected static Rectangle _rect = new Rectangle();
 
+    /** Whether our own layout is current and only our descendants need to be validated. */
+    protected boolean _layoutCurrent;
+
+    /** The preferred sizes computed since we were last invalidated. */
+    protected PreferredSizes _psizes = new PreferredSizes();
+
+    /** The preferred sizes reported since our parent last laid us out. */
+    protected PreferredSizes _reportedPsizes = new PreferredSizes();
+
     protected static final int STATE_COUNT = 3;
+
+    /** The maximum number of preferred sizes cached for each component. */
+    protected static final int MAX_PREFERRED_SIZES = 4;
     protected static final String[] STATE_PCLASSES = { null, "Hover", "Disabled" };
 }
@@ -66,17 +66,27 @@ public class Container extends Component
 
     /**
      * Configures this container with an entity that will set the size and
-     * position of its children.
+     * position of its children.  The container is invalidated, and will be invalidated again
+     * whenever the layout manager's policy changes.
      */
     public void setLayoutManager (LayoutManager layout)
     {
+        if (_layout == layout) {
+            return;
+        }
         if (_layout != null) {
             // clean up the old layout manager in case it's shared by multiple containers
             for (int ii = getComponentCount() - 1; ii >= 0; ii--) {
                 _layout.removeLayoutComponent(getComponent(ii));
             }
+            _layout.removeTarget(this);
+        }
+        if ((_layout = layout) != null) {
+            _layout.addTarget(this);
         }
-        _layout = layout;
+
+        // our preferred size and the positions of our children depend on the layout
+        invalidate();
     }
 
     /**
@@ -302,12 +312,20 @@ public class Container extends Component
     {
         if (!_valid) {
             if (isVisible()) {
-                layout(); // lay ourselves out
+                // lay ourselves out, unless we were only invalidated on behalf of children whose
+                // preferred sizes turned out not to have changed
+                if (!_layoutCurrent || childPreferredSizesChanged()) {
+                    for (int ii = 0, nn = _children.size(); ii < nn; ii++) {
+                        _children.get(ii)._reportedPsizes.clear();
+                    }
+                    layout();
+                }
 
                 // now validate our children
                 applyOperation(CommonChildOps.VALIDATE);
             }
             _valid = true; // finally mark ourselves as valid
+            _layoutCurrent = false;
         }
     }
 
@@ -325,6 +343,33 @@ public class Container extends Component
         }
     }
 
+    /**
+     * Called when one of our children has been invalidated.  We mark ourselves invalid so that the
+     * child will be validated along with us, but if our own layout was current, it remains so
+     * until we determine that the child's preferred size has actually changed.
+     */
+    protected void childInvalidated (Component child)
+    {
+        boolean current = (_valid || _layoutCurrent);
+        invalidate();
+        _layoutCurrent = current && !_valid;
+    }
+
+    /**
+     * Checks whether the preferred size of any of our invalid children has changed since we were
+     * last laid out.
+     */
+    protected boolean childPreferredSizesChanged ()
+    {
+        for (int ii = 0, nn = _children.size(); ii < nn; ii++) {
+            Component child = _children.get(ii);
+            if (!child.isValid() && child.preferredSizeChanged()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     // documentation inherited
     protected void renderComponent (Renderer renderer)
     {
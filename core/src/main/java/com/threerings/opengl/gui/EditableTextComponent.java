@@ -30,10 +30,10 @@ import javax.swing.undo.UndoManager;
 import com.google.common.base.Strings;
 
 import org.lwjgl.input.IME.State;
-import org.lwjgl.opengl.GL11;
 
 import com.samskivert.util.IntTuple;
 
+import com.threerings.opengl.renderer.Color4f;
 import com.threerings.opengl.renderer.Renderer;
 import com.threerings.opengl.util.GlContext;
 
@@ -165,6 +165,7 @@ public abstract class EditableTextComponent extends TextComponent
     public void setPreferredWidth (int width)
     {
         _prefWidth = width;
+        clearPreferredSizes();
     }
 
     /**
@@ -555,12 +556,9 @@ public abstract class EditableTextComponent extends TextComponent
      */
     protected void renderCursor (Renderer renderer, int x, int y, int height)
     {
-        renderer.setColorState(getColor());
-        renderer.setTextureState(null);
-        GL11.glBegin(GL11.GL_LINE_STRIP);
-        GL11.glVertex2f(x, y);
-        GL11.glVertex2f(x, y + height);
-        GL11.glEnd();
+        Color4f color = getColor();
+        renderer.getQuadBatch().add(null, color.r, color.g, color.b, color.a,
+            x, y, x + 1, y + height, 0f, 0f, 0f, 0f);
     }
 
     /**
@@ -673,6 +671,7 @@ public abstract class EditableTextComponent extends TextComponent
     protected void recreateGlyphs ()
     {
         clearGlyphs();
+        clearPreferredSizes();
 
         if ("".equals(getDisplayText())) {
             setSelection(0, 0);
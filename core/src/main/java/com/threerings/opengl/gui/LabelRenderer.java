@@ -25,9 +25,8 @@
 
 package com.threerings.opengl.gui;
 
-import org.lwjgl.opengl.GL11;
-
 import com.threerings.opengl.renderer.Color4f;
+import com.threerings.opengl.renderer.QuadBatch;
 import com.threerings.opengl.renderer.Renderer;
 
 import com.threerings.opengl.gui.icon.Icon;
@@ -155,6 +154,7 @@ public class LabelRenderer
     public void setPreferredWidth (int width)
     {
         _prefWidth = width;
+        _container.clearPreferredSizes();
     }
 
     /**
@@ -266,7 +266,8 @@ public class LabelRenderer
      */
     public void render (Renderer renderer, int x, int y, int contWidth, int contHeight, float alpha)
     {
-        GL11.glTranslatef(x, y, 0);
+        QuadBatch batch = renderer.getQuadBatch();
+        batch.translate(x, y);
         try {
             if (_icon != null) {
                 _icon.render(renderer, _ix, _iy, alpha);
@@ -275,17 +276,17 @@ public class LabelRenderer
                 Dimension size = _config.glyphs.size;
                 int ox = getOffsetX(size.width, size.height, _textRotation) + _tx;
                 int oy = getOffsetY(size.width, size.height, _textRotation) + _ty;
-                GL11.glTranslatef(ox, oy, 0);
-                GL11.glRotatef(_textRotation * 90, 0, 0, 1);
+                batch.pushTransform();
+                batch.translate(ox, oy);
+                batch.rotate(_textRotation * 90);
                 try {
                     renderText(renderer, contWidth, contHeight, alpha);
                 } finally {
-                    GL11.glRotatef(_textRotation * -90, 0, 0, 1);
-                    GL11.glTranslatef(-ox, -oy, 0);
+                    batch.popTransform();
                 }
             }
         } finally {
-            GL11.glTranslatef(-x, -y, 0);
+            batch.translate(-x, -y);
         }
     }
 
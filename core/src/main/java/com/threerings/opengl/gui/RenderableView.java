@@ -379,8 +379,7 @@ public class RenderableView extends Component
         try {
             // push the modelview matrix
             if (!_static) {
-                renderer.setMatrixMode(GL11.GL_MODELVIEW);
-                GL11.glPushMatrix();
+                renderer.getQuadBatch().pushFrame();
                 GL11.glLoadIdentity();
             }
 
@@ -444,8 +443,7 @@ public class RenderableView extends Component
                 renderer.setStates(_root.getStates());
 
                 // pop the modelview matrix
-                renderer.setMatrixMode(GL11.GL_MODELVIEW);
-                GL11.glPopMatrix();
+                renderer.getQuadBatch().popFrame();
             }
         }
     }
@@ -49,6 +49,7 @@ import com.threerings.openal.Sound;
 import com.threerings.openal.SoundGroup;
 
 import com.threerings.opengl.renderer.Color4f;
+import com.threerings.opengl.renderer.QuadBatch;
 import com.threerings.opengl.renderer.Renderer;
 
 import com.threerings.opengl.util.GlContext;
@@ -723,23 +724,30 @@ public abstract class Root extends SimpleOverlay
         Renderer renderer = _ctx.getRenderer();
         renderer.setMatrixMode(GL11.GL_MODELVIEW);
 
-        // render all of our windows
-        for (int ii = 0, ll = _windows.size(); ii < ll; ii++) {
-            Window win = _windows.get(ii);
-            try {
-                if (win == modalWin) {
-                    renderModalShade(renderer);
+        // batch up the quads drawn by the components
+        QuadBatch batch = renderer.getQuadBatch();
+        batch.begin();
+        try {
+            // render all of our windows
+            for (int ii = 0, ll = _windows.size(); ii < ll; ii++) {
+                Window win = _windows.get(ii);
+                try {
+                    if (win == modalWin) {
+                        renderModalShade(renderer);
+                    }
+                    win.render(renderer);
+                } catch (Throwable t) {
+                    log.warning(win + " failed in render()", t);
                 }
-                win.render(renderer);
-            } catch (Throwable t) {
-                log.warning(win + " failed in render()", t);
             }
-        }
 
-        // render the drag icon, if any, at the mouse location
-        if (_dicon != null) {
-            _dicon.render(
-                renderer, _mouseX - _dicon.getWidth()/2, _mouseY - _dicon.getHeight()/2, 0.5f);
+            // render the drag icon, if any, at the mouse location
+            if (_dicon != null) {
+                _dicon.render(
+                    renderer, _mouseX - _dicon.getWidth()/2, _mouseY - _dicon.getHeight()/2, 0.5f);
+            }
+        } finally {
+            batch.end();
         }
     }
 
@@ -1137,14 +1145,8 @@ public abstract class Root extends SimpleOverlay
         int width = getDisplayWidth();
         int height = getDisplayHeight();
 
-        renderer.setColorState(_modalShade);
-        renderer.setTextureState(null);
-        GL11.glBegin(GL11.GL_QUADS);
-        GL11.glVertex2f(0, 0);
-        GL11.glVertex2f(width, 0);
-        GL11.glVertex2f(width, height);
-        GL11.glVertex2f(0, height);
-        GL11.glEnd();
+        renderer.getQuadBatch().add(null, _modalShade.r, _modalShade.g, _modalShade.b,
+            _modalShade.a, 0f, 0f, width, height, 0f, 0f, 0f, 0f);
     }
 
     /**
@@ -25,10 +25,9 @@
 
 package com.threerings.opengl.gui;
 
-import org.lwjgl.opengl.GL11;
-
 import com.threerings.config.ConfigReference;
 
+import com.threerings.opengl.renderer.QuadBatch;
 import com.threerings.opengl.renderer.Renderer;
 import com.threerings.opengl.util.GlContext;
 
@@ -261,6 +260,13 @@ public class ScrollPane extends Container
         _layingOut = false;
     }
 
+    @Override
+    protected boolean childPreferredSizesChanged ()
+    {
+        // our scroll bars may need to be added or removed whenever the target changes
+        return !_vport.getTarget().isValid() || super.childPreferredSizesChanged();
+    }
+
     /** Does all the heavy lifting for the {@link ScrollPane}. */
     protected static class Viewport extends Container
     {
@@ -518,7 +524,8 @@ public class ScrollPane extends Container
             Insets insets = getInsets();
             int yoffset = getYOffset();
             int xoffset = getXOffset();
-            GL11.glTranslatef(xoffset, yoffset, 0);
+            QuadBatch batch = renderer.getQuadBatch();
+            batch.translate(xoffset, yoffset);
             Rectangle oscissor = intersectScissor(
                 renderer, _srect,
                 (getAbsoluteX() + insets.left) - xoffset,
@@ -530,7 +537,7 @@ public class ScrollPane extends Container
                 _target.render(renderer);
             } finally {
                 renderer.setScissor(oscissor);
-                GL11.glTranslatef(-xoffset, -yoffset, 0);
+                batch.translate(-xoffset, -yoffset);
             }
         }
 
@@ -85,6 +85,7 @@ public class TextArea extends TextComponent
     public void setPreferredWidth (int width)
     {
         _prefWidth = width;
+        clearPreferredSizes();
     }
 
     /**
@@ -319,6 +320,7 @@ public class TextArea extends TextComponent
 
         // remove and recreate our existing lines
         _lines.clear();
+        clearPreferredSizes();
 
         int insets = getInsets().getHorizontal();
         int maxWidth = (width - insets);
@@ -935,6 +935,13 @@ public class UserInterface extends Container
             super(owner, name, null);
         }
 
+        @Override
+        protected boolean cacheResolutions ()
+        {
+            // component states are looked up anew each time
+            return false;
+        }
+
         @Override
         public <T> T get (String name, Class<T> clazz)
         {
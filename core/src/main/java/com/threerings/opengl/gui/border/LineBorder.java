@@ -25,8 +25,6 @@
 
 package com.threerings.opengl.gui.border;
 
-import org.lwjgl.opengl.GL11;
-
 import com.threerings.opengl.renderer.Color4f;
 import com.threerings.opengl.renderer.Renderer;
 
@@ -59,20 +57,9 @@ public class LineBorder extends Border
     public void render (Renderer renderer, int x, int y, int width, int height, float alpha)
     {
         super.render(renderer, x, y, width, height, alpha);
-        float offset = _width / 2f;
-
         float a = _color.a * alpha;
-        renderer.setColorState(_color.r * a, _color.g * a, _color.b * a, a);
-        renderer.setTextureState(null);
-        GL11.glLineWidth(_width);
-        GL11.glBegin(GL11.GL_LINE_STRIP);
-        GL11.glVertex2f(x + offset, y + offset);
-        GL11.glVertex2f(x + width - offset, y + offset);
-        GL11.glVertex2f(x + width - offset, y + height - offset);
-        GL11.glVertex2f(x + offset, y + height - offset);
-        GL11.glVertex2f(x + offset, y + offset);
-        GL11.glEnd();
-        GL11.glLineWidth(1f);
+        renderer.getQuadBatch().addOutline(_color.r * a, _color.g * a, _color.b * a, a,
+            x, y, x + width, y + height, _width);
     }
 
     protected Color4f _color = new Color4f();
@@ -25,8 +25,7 @@
 
 package com.threerings.opengl.gui.icon;
 
-import org.lwjgl.opengl.GL11;
-
+import com.threerings.opengl.renderer.QuadBatch;
 import com.threerings.opengl.renderer.Renderer;
 
 /**
@@ -67,13 +66,14 @@ public class RotatedIcon extends Icon
     public void render (Renderer renderer, int x, int y, float alpha)
     {
         int hwidth = _icon.getWidth()/2, hheight = _icon.getHeight()/2;
-        GL11.glPushMatrix();
-        GL11.glTranslatef(x + hwidth, y + hheight, 0f);
-        GL11.glRotatef(_rotation, 0f, 0f, 1f);
+        QuadBatch batch = renderer.getQuadBatch();
+        batch.pushTransform();
+        batch.translate(x + hwidth, y + hheight);
+        batch.rotate(_rotation);
         try {
             _icon.render(renderer, -hwidth, -hheight, alpha);
         } finally {
-            GL11.glPopMatrix();
+            batch.popTransform();
         }
     }
 
@@ -92,6 +92,7 @@ public class BorderLayout extends LayoutManager
     {
         _hgap = hgap;
         _vgap = vgap;
+        invalidateTargets();
     }
 
     // documentation inherited
@@ -136,6 +136,7 @@ public abstract class GroupLayout extends LayoutManager
     public GroupLayout setPolicy (Policy policy)
     {
         _policy = policy;
+        invalidateTargets();
         return this;
     }
 
@@ -147,6 +148,7 @@ public abstract class GroupLayout extends LayoutManager
     public GroupLayout setOffAxisPolicy (Policy offpolicy)
     {
         _offpolicy = offpolicy;
+        invalidateTargets();
         return this;
     }
 
@@ -158,6 +160,7 @@ public abstract class GroupLayout extends LayoutManager
     public GroupLayout setGap (int gap)
     {
         _gap = gap;
+        invalidateTargets();
         return this;
     }
 
@@ -169,6 +172,7 @@ public abstract class GroupLayout extends LayoutManager
     public GroupLayout setJustification (Justification justification)
     {
         _justification = justification;
+        invalidateTargets();
         return this;
     }
 
@@ -180,6 +184,7 @@ public abstract class GroupLayout extends LayoutManager
     public GroupLayout setOffAxisJustification (Justification justification)
     {
         _offjust = justification;
+        invalidateTargets();
         return this;
     }
 
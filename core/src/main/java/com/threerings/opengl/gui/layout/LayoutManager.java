@@ -25,6 +25,9 @@
 
 package com.threerings.opengl.gui.layout;
 
+import java.util.Map;
+import java.util.WeakHashMap;
+
 import com.threerings.opengl.gui.Component;
 import com.threerings.opengl.gui.Container;
 import com.threerings.opengl.gui.util.Dimension;
@@ -79,4 +82,42 @@ public abstract class LayoutManager
      * target's insets must be accounted for when laying out the children.
      */
     public abstract void layoutContainer (Container target);
+
+    /**
+     * Called by {@link Container#setLayoutManager} when a container adopts this layout manager.
+     */
+    public void addTarget (Container target)
+    {
+        if (_targets == null) {
+            _targets = new WeakHashMap<Container, Boolean>(1);
+        }
+        _targets.put(target, Boolean.TRUE);
+    }
+
+    /**
+     * Called by {@link Container#setLayoutManager} when a container abandons this layout manager.
+     */
+    public void removeTarget (Container target)
+    {
+        if (_targets != null) {
+            _targets.remove(target);
+        }
+    }
+
+    /**
+     * Invalidates the containers using this layout manager, flushing their cached preferred
+     * sizes.  Setters that change the layout policy must call this so that the containers are
+     * laid out again.
+     */
+    protected void invalidateTargets ()
+    {
+        if (_targets != null) {
+            for (Container target : _targets.keySet().toArray(new Container[_targets.size()])) {
+                target.invalidate();
+            }
+        }
+    }
+
+    /** The containers using this layout manager, if any. */
+    protected Map<Container, Boolean> _targets;
 }
@@ -93,22 +93,22 @@ public class TableLayout extends LayoutManager
     }
 
     /**
-     * Configures the horizontal alignment (or stretching) of this table. This must be called
-     * before the container using this layout is validated.
+     * Configures the horizontal alignment (or stretching) of this table.
      */
     public TableLayout setHorizontalAlignment (Alignment align)
     {
         _halign = align;
+        invalidateTargets();
         return this;
     }
 
     /**
-     * Configures the vertical alignment of this table. This must be called before the container
-     * using this layout is validated.
+     * Configures the vertical alignment of this table.
      */
     public TableLayout setVerticalAlignment (Alignment align)
     {
         _valign = align;
+        invalidateTargets();
         return this;
     }
 
@@ -120,16 +120,17 @@ public class TableLayout extends LayoutManager
     public TableLayout setFixedColumn (int column, boolean fixed)
     {
         _fixedColumns[column] = fixed;
+        invalidateTargets();
         return this;
     }
 
     /**
-     * Configures whether or not the table will force all rows to be a uniform size. This must be
-     * called before the container using this layout is validated.
+     * Configures whether or not the table will force all rows to be a uniform size.
      */
     public TableLayout setEqualRows (boolean equalRows)
     {
         _equalRows = equalRows;
+        invalidateTargets();
         return this;
     }
 
@@ -50,7 +50,6 @@ import com.samskivert.util.ObjectUtil;
 
 import com.threerings.opengl.renderer.Color4f;
 import com.threerings.opengl.renderer.Renderer;
-import com.threerings.opengl.renderer.Texture2D;
 import com.threerings.opengl.renderer.TextureUnit;
 
 import com.threerings.opengl.gui.UIConstants;
@@ -121,9 +120,10 @@ public class CharacterTextFactory extends TextFactory
      */
     public void render (Renderer renderer, String text, int x, int y, Color4f color)
     {
+        float a = color.a;
         for (int ii = 0, nn = text.length(); ii < nn; ii++) {
             Glyph glyph = getGlyph(text.charAt(ii));
-            glyph.render(renderer, x, y);
+            glyph.render(renderer, x, y, color.r * a, color.g * a, color.b * a, a);
             x += glyph.width;
         }
     }
@@ -209,9 +209,9 @@ public class CharacterTextFactory extends TextFactory
             protected void renderGlyphs (
                 Renderer renderer, Glyph[] glyphs, Color4f color, int x, int y, float alpha) {
                 float a = color.a * alpha;
-                renderer.setColorState(color.r * a, color.g * a, color.b * a, a);
+                float r = color.r * a, g = color.g * a, b = color.b * a;
                 for (Glyph glyph : glyphs) {
-                    glyph.render(renderer, x, y);
+                    glyph.render(renderer, x, y, r, g, b, a);
                     x += glyph.width;
                 }
             }
@@ -334,10 +334,12 @@ public class CharacterTextFactory extends TextFactory
         height = Math.min(Math.max(height, 0), _scratch.getHeight());
 
         // try to add to the current texture; if there's not enough room, create a new one
-        TextureUnit[] units = (_texture == null) ? null : _texture.add(width, height, tcoords);
+        TextureUnit[] units = (_texture == null) ?
+            null : _texture.add(_scratch, width, height, tcoords);
         if (units == null) {
-            _texture = new GlyphTexture(renderer);
-            units = _texture.add(width, height, tcoords);
+            _texture = new TextureAtlas(
+                renderer, TEXTURE_SIZE, GL11.GL_LINEAR, GL11.GL_NEAREST, 0);
+            units = _texture.add(_scratch, width, height, tcoords);
         }
         return units;
     }
@@ -367,9 +369,9 @@ public class CharacterTextFactory extends TextFactory
         }
 
         /**
-         * Renders this glyph at the specified position.
+         * Renders this glyph at the specified position with the given (premultiplied) color.
          */
-        public void render (Renderer renderer, int x, int y)
+        public void render (Renderer renderer, int x, int y, float r, float g, float b, float a)
         {
             if (_units == null) {
                 if (_bounds == null) {
@@ -395,21 +397,8 @@ public class CharacterTextFactory extends TextFactory
             }
             int lx = x + _bounds.x;
             int ly = y + _bounds.y;
-            int ux = lx + _bounds.width;
-            int uy = ly + _bounds.height;
-
-            renderer.setTextureState(_units);
-            renderer.setMatrixMode(GL11.GL_MODELVIEW);
-            GL11.glBegin(GL11.GL_QUADS);
-            GL11.glTexCoord2f(_s1, _t1);
-            GL11.glVertex2f(lx, ly);
-            GL11.glTexCoord2f(_s2, _t1);
-            GL11.glVertex2f(ux, ly);
-            GL11.glTexCoord2f(_s2, _t2);
-            GL11.glVertex2f(ux, uy);
-            GL11.glTexCoord2f(_s1, _t2);
-            GL11.glVertex2f(lx, uy);
-            GL11.glEnd();
+            renderer.getQuadBatch().add(_units, r, g, b, a, lx, ly,
+                lx + _bounds.width, ly + _bounds.height, _s1, _t1, _s2, _t2);
         }
 
         /** The glyph character. */
@@ -431,65 +420,6 @@ public class CharacterTextFactory extends TextFactory
         protected float _s1, _t1, _s2, _t2;
     }
 
-    /**
-     * A shared texture.
-     */
-    protected class GlyphTexture
-    {
-        public GlyphTexture (Renderer renderer)
-        {
-            _texture = new Texture2D(renderer);
-            _texture.setImage(GL11.GL_RGBA, TEXTURE_SIZE, TEXTURE_SIZE, false, false);
-            _texture.setFilters(GL11.GL_LINEAR, GL11.GL_NEAREST);
-            _units = new TextureUnit[] { new TextureUnit(_texture) };
-        }
-
-        /**
-         * Attempts to copy the glyph in the scratch image into this texture.
-         */
-        public TextureUnit[] add (int width, int height, float[] tcoords)
-        {
-            // move up to the next row if necessary
-            if (_x + width > TEXTURE_SIZE) {
-                _y += _height;
-                _x = 0;
-                _height = 0;
-            }
-            if (_y + height > TEXTURE_SIZE) {
-                return null; // out of room in this texture
-            }
-
-            // copy the scratch image into the texture
-            _texture.setSubimage(
-                _scratch.getSubimage(0, 0, width, height), true, _x, _y, width, height);
-
-            // set the texture coordinates
-            tcoords[0] = (float)_x / TEXTURE_SIZE;
-            tcoords[1] = (float)_y / TEXTURE_SIZE;
-            tcoords[2] = (float)(_x + width) / TEXTURE_SIZE;
-            tcoords[3] = (float)(_y + height) / TEXTURE_SIZE;
-
-            // advance to the next position
-            _x += width;
-            _height = Math.max(_height, height);
-
-            // return the texture units
-            return _units;
-        }
-
-        /** The shared texture unit array. */
-        protected TextureUnit[] _units;
-
-        /** The casted texture. */
-        protected Texture2D _texture;
-
-        /** The current x and y position within the texture. */
-        protected int _x, _y;
-
-        /** The height of the current row. */
-        protected int _height;
-    }
-
     protected static class FactoryKey
     {
         public Font font;
@@ -548,7 +478,7 @@ public class CharacterTextFactory extends TextFactory
     protected HashIntMap<Glyph> _glyphs = new HashIntMap<Glyph>();
 
     /** The glyph texture currently being populated. */
-    protected GlyphTexture _texture;
+    protected TextureAtlas _texture;
 
     /** The offset for the descent value. */
     protected int _descentOffset;
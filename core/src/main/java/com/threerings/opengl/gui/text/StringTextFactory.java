@@ -42,14 +42,26 @@ import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.text.AttributedString;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+
+import org.lwjgl.opengl.GL11;
+
+import com.google.common.base.Objects;
+
+import com.samskivert.util.LRUHashMap;
 import com.samskivert.util.RunAnywhere;
 import com.samskivert.util.StringUtil;
 
 import com.threerings.opengl.renderer.Color4f;
 import com.threerings.opengl.renderer.Renderer;
+import com.threerings.opengl.renderer.TextureUnit;
 
 import com.threerings.opengl.gui.UIConstants;
 import com.threerings.opengl.gui.Image;
@@ -59,7 +71,10 @@ import static com.threerings.opengl.gui.Log.log;
 
 /**
  * Formats text by using the AWT to render runs of text into a bitmap and then texturing a quad
- * with the result.  This text factory handles a simple styled text syntax:
+ * with the result.  The bitmaps are packed into shared atlas textures, and recently created
+ * texts are cached (weakly, so that the cache doesn't keep their atlas space in use) so that
+ * repeated text requires no new rendering or uploading.  This text factory handles a simple
+ * styled text syntax:
  *
  * <pre>
  * &#064;=b(this text would be bold)
@@ -95,6 +110,32 @@ public class StringTextFactory extends TextFactory
         return _height;
     }
 
+    /**
+     * Returns the number of images uploaded to textures (either to the shared atlases or to
+     * dedicated textures for texts too large for the atlases).
+     */
+    public int getUploadCount ()
+    {
+        return _uploadCount;
+    }
+
+    /**
+     * Returns the number of textures created (atlases and dedicated textures).
+     */
+    public int getTextureCount ()
+    {
+        return _textureCount;
+    }
+
+    /**
+     * Returns the fraction of text requests satisfied by the cache.
+     */
+    public float getCacheHitRate ()
+    {
+        int total = _cacheHits + _cacheMisses;
+        return (total == 0) ? 1f : (float)_cacheHits / total;
+    }
+
     // documentation inherited
     public Text createText (String text, Color4f color, int effect, int effectSize,
                             Color4f effectColor, boolean useAdvance)
@@ -103,6 +144,15 @@ public class StringTextFactory extends TextFactory
             text = " ";
         }
 
+        // check the cache
+        TextKey key = new TextKey(text, color, effect, effectSize, effectColor, useAdvance, 0);
+        Text[] cached = getCached(key);
+        if (cached != null) {
+            _cacheHits++;
+            return cached[0];
+        }
+        _cacheMisses++;
+
         Graphics2D gfx = _stub.createGraphics();
         TextLayout layout;
         try {
@@ -117,8 +167,10 @@ public class StringTextFactory extends TextFactory
             gfx.dispose();
         }
 
-        return createText(text, layout, color, effect, effectSize, effectColor,
-                          text.length(), useAdvance);
+        Text result = createText(text, layout, color, effect, effectSize, effectColor,
+                                 text.length(), useAdvance);
+        _cache.put(key, new CachedTexts(result));
+        return result;
     }
 
     // documentation inherited
@@ -130,6 +182,15 @@ public class StringTextFactory extends TextFactory
             text = " ";
         }
 
+        // check the cache
+        TextKey key = new TextKey(text, color, effect, effectSize, effectColor, true, maxWidth);
+        Text[] cached = getCached(key);
+        if (cached != null) {
+            _cacheHits++;
+            return cached;
+        }
+        _cacheMisses++;
+
         ArrayList<Text> texts = new ArrayList<Text>();
         Graphics2D gfx = _stub.createGraphics();
         TextLayout layout;
@@ -172,7 +233,9 @@ public class StringTextFactory extends TextFactory
             gfx.dispose();
         }
 
-        return texts.toArray(new Text[texts.size()]);
+        Text[] result = texts.toArray(new Text[texts.size()]);
+        _cache.put(key, new CachedTexts(result));
+        return result;
     }
 
     /** Helper function. */
@@ -310,43 +373,292 @@ public class StringTextFactory extends TextFactory
             gfx.dispose();
         }
 
-        // TODO: render into a properly sized image in the first place and create a JME Image
-        // directly
-        final Image image = new Image(bimage);
+        // the image will be copied into an atlas when first rendered
+        return new AtlasText(layout, size, length, bimage);
+    }
+
+    /**
+     * Returns the cached texts for the specified key, or <code>null</code> if they aren't cached
+     * or have been collected.
+     */
+    protected Text[] getCached (TextKey key)
+    {
+        CachedTexts cached = _cache.get(key);
+        if (cached == null) {
+            return null;
+        }
+        Text[] texts = cached.get();
+        if (texts == null) {
+            _cache.remove(key);
+        }
+        return texts;
+    }
+
+    /**
+     * Copies the image of a text into an atlas (or, if it's too large, a dedicated texture).
+     */
+    protected void addToAtlas (Renderer renderer, AtlasText text)
+    {
+        BufferedImage image = text._bimage;
+        text._bimage = null;
+        _uploadCount++;
+        int width = image.getWidth(), height = image.getHeight();
+        if (width > ATLAS_SIZE || height > MAX_ATLAS_HEIGHT) {
+            text._image = new Image(image);
+            _textureCount++;
+            return;
+        }
+
+        // free up the space used by any texts that have been collected
+        reclaimAtlasSpace();
+
+        float[] tcoords = new float[4];
+        TextureUnit[] units = (_atlas == null) ? null : _atlas.add(image, width, height, tcoords);
+        if (units == null) {
+            // start over with the current atlas if nothing uses it, else use a free one
+            if (_atlas != null && _atlas.live == 0) {
+                _atlas.clear();
+            } else if (!_freeAtlases.isEmpty()) {
+                _atlas = _freeAtlases.remove(_freeAtlases.size() - 1);
+            } else {
+                _atlas = new TextAtlas(renderer);
+                _textureCount++;
+            }
+            units = _atlas.add(image, width, height, tcoords);
+        }
+        text._units = units;
+        text._s1 = tcoords[0];
+        text._t1 = tcoords[1];
+        text._s2 = tcoords[2];
+        text._t2 = tcoords[3];
+        _atlas.live++;
+        _atlasRefs.add(new AtlasReference(text, _atlas, _collected));
+    }
+
+    /**
+     * Releases the atlas space held by texts that have been garbage collected.  Atlases with no
+     * remaining texts are cleared and added to the free list, or deleted if the free list is full.
+     */
+    protected void reclaimAtlasSpace ()
+    {
+        for (AtlasReference ref; (ref = (AtlasReference)_collected.poll()) != null; ) {
+            _atlasRefs.remove(ref);
+            TextAtlas atlas = ref.atlas;
+            if (--atlas.live > 0 || atlas == _atlas) {
+                continue;
+            }
+            if (_freeAtlases.size() < MAX_FREE_ATLASES) {
+                atlas.clear();
+                _freeAtlases.add(atlas);
+            } else {
+                atlas.delete();
+            }
+        }
+    }
+
+    /**
+     * A text whose image is stored in an atlas shared with other texts.
+     */
+    protected class AtlasText extends Text
+    {
+        public AtlasText (TextLayout layout, Dimension size, int length, BufferedImage bimage)
+        {
+            _layout = layout;
+            _size = size;
+            _length = length;
+            _bimage = bimage;
+        }
+
+        @Override
+        public int getLength ()
+        {
+            return _length;
+        }
+
+        @Override
+        public Dimension getSize ()
+        {
+            return _size;
+        }
+
+        @Override
+        public int getHitPos (int x, int y)
+        {
+            TextHitInfo info = _layout.hitTestChar(x, y);
+            return info.getInsertionIndex();
+        }
+
+        @Override
+        public int getCursorPos (int index)
+        {
+            Shape[] carets = _layout.getCaretShapes(index);
+            Rectangle2D bounds = carets[0].getBounds2D();
+            return (int)Math.round(bounds.getX() + bounds.getWidth()/2);
+        }
 
-//         final ByteBuffer idata =
-//             ByteBuffer.allocateDirect(4 * image.getWidth() * image.getHeight());
-//         idata.order(ByteOrder.nativeOrder());
-//         byte[] data = (byte[])image.getRaster().getDataElements(
-//             0, 0, image.getWidth(), image.getHeight(), null);
-//         idata.clear();
-//         idata.put(data);
-//         idata.flip();
+        @Override
+        public void render (Renderer renderer, int x, int y, float alpha)
+        {
+            render(renderer, x, y, _size.width, _size.height, alpha);
+        }
 
-        // wrap it all up in the right object
-        return new Text() {
-            public int getLength () {
-                return length;
+        @Override
+        public void render (Renderer renderer, int x, int y, int w, int h, float alpha)
+        {
+            if (alpha == 0f) {
+                return;
             }
-            public Dimension getSize () {
-                return size;
+            if (_bimage != null) {
+                addToAtlas(renderer, this);
             }
-            public int getHitPos (int x, int y) {
-                TextHitInfo info = layout.hitTestChar(x, y);
-                return info.getInsertionIndex();
+            if (_image != null) {
+                _image.render(renderer, x, y, w, h, alpha);
+            } else {
+                renderer.getQuadBatch().add(
+                    _units, alpha, alpha, alpha, alpha, x, y, x + w, y + h, _s1, _t1, _s2, _t2);
             }
-            public int getCursorPos (int index) {
-                Shape[] carets = layout.getCaretShapes(index);
-                Rectangle2D bounds = carets[0].getBounds2D();
-                return (int)Math.round(bounds.getX() + bounds.getWidth()/2);
+        }
+
+        /** The layout of the text. */
+        protected TextLayout _layout;
+
+        /** The size of the text. */
+        protected Dimension _size;
+
+        /** The length of the text. */
+        protected int _length;
+
+        /** The rendered image, until it has been added to an atlas. */
+        protected BufferedImage _bimage;
+
+        /** The image with its own texture, if the text was too large for the atlases. */
+        protected Image _image;
+
+        /** The atlas texture units. */
+        protected TextureUnit[] _units;
+
+        /** The texture coordinates of the text within the atlas. */
+        protected float _s1, _t1, _s2, _t2;
+    }
+
+    /**
+     * An atlas that tracks the number of texts using it.
+     */
+    protected static class TextAtlas extends TextureAtlas
+    {
+        /** The number of uncollected texts stored in the atlas. */
+        public int live;
+
+        public TextAtlas (Renderer renderer)
+        {
+            super(renderer, ATLAS_SIZE, GL11.GL_LINEAR, GL11.GL_LINEAR, 1);
+        }
+    }
+
+    /**
+     * Notes the collection of a text stored in an atlas.
+     */
+    protected static class AtlasReference extends WeakReference<AtlasText>
+    {
+        /** The atlas containing the text. */
+        public TextAtlas atlas;
+
+        public AtlasReference (AtlasText text, TextAtlas atlas, ReferenceQueue<AtlasText> queue)
+        {
+            super(text, queue);
+            this.atlas = atlas;
+        }
+    }
+
+    /**
+     * Holds weak references to a cached text (or array of wrapped texts).
+     */
+    protected static class CachedTexts
+    {
+        public CachedTexts (Text[] texts)
+        {
+            _refs = new ArrayList<WeakReference<Text>>(texts.length);
+            for (Text text : texts) {
+                _refs.add(new WeakReference<Text>(text));
             }
-            public void render (Renderer renderer, int x, int y, float alpha) {
-                image.render(renderer, x, y, alpha);
+        }
+
+        public CachedTexts (Text text)
+        {
+            _refs = new ArrayList<WeakReference<Text>>(1);
+            _refs.add(new WeakReference<Text>(text));
+        }
+
+        /**
+         * Returns a new array containing the texts, or <code>null</code> if any have been
+         * collected.
+         */
+        public Text[] get ()
+        {
+            Text[] texts = new Text[_refs.size()];
+            for (int ii = 0; ii < texts.length; ii++) {
+                if ((texts[ii] = _refs.get(ii).get()) == null) {
+                    return null;
+                }
             }
-            public void render (Renderer renderer, int x, int y, int w, int h, float alpha) {
-                image.render(renderer, x, y, w, h, alpha);
+            return texts;
+        }
+
+        /** References to the texts. */
+        protected ArrayList<WeakReference<Text>> _refs;
+    }
+
+    /**
+     * Identifies a cached text (or array of wrapped texts).
+     */
+    protected static class TextKey
+    {
+        public TextKey (
+            String text, Color4f color, int effect, int effectSize, Color4f effectColor,
+            boolean useAdvance, int maxWidth)
+        {
+            _text = text;
+            _color = new Color4f(color);
+            _effect = effect;
+            _effectSize = effectSize;
+            _effectColor = (effectColor == null) ? null : new Color4f(effectColor);
+            _useAdvance = useAdvance;
+            _maxWidth = maxWidth;
+        }
+
+        @Override
+        public int hashCode ()
+        {
+            return 31 * (31 * _text.hashCode() + _color.hashCode()) + _effect + _maxWidth;
+        }
+
+        @Override
+        public boolean equals (Object other)
+        {
+            if (!(other instanceof TextKey)) {
+                return false;
             }
-        };
+            TextKey okey = (TextKey)other;
+            return _text.equals(okey._text) && _color.equals(okey._color) &&
+                _effect == okey._effect && _effectSize == okey._effectSize &&
+                Objects.equal(_effectColor, okey._effectColor) &&
+                _useAdvance == okey._useAdvance && _maxWidth == okey._maxWidth;
+        }
+
+        /** The text. */
+        protected String _text;
+
+        /** The colors. */
+        protected Color4f _color, _effectColor;
+
+        /** The effect and effect size. */
+        protected int _effect, _effectSize;
+
+        /** Whether or not to use the advance for the width. */
+        protected boolean _useAdvance;
+
+        /** The maximum width for wrapped text, or zero. */
+        protected int _maxWidth;
     }
 
     /** Helper function. */
@@ -645,6 +957,37 @@ public class StringTextFactory extends TextFactory
     // to avoid exercising the garbage collector
     protected GlowKey _gkey = new GlowKey();
 
+    /** Recently created texts (and arrays of wrapped texts), mapped by their parameters. */
+    protected LRUHashMap<TextKey, CachedTexts> _cache =
+        new LRUHashMap<TextKey, CachedTexts>(CACHE_SIZE);
+
+    /** The atlas currently being populated. */
+    protected TextAtlas _atlas;
+
+    /** Atlases no longer in use, available for reuse. */
+    protected ArrayList<TextAtlas> _freeAtlases = new ArrayList<TextAtlas>();
+
+    /** References to the texts stored in atlases. */
+    protected Set<AtlasReference> _atlasRefs = new HashSet<AtlasReference>();
+
+    /** Receives the references of collected texts. */
+    protected ReferenceQueue<AtlasText> _collected = new ReferenceQueue<AtlasText>();
+
+    /** Upload, texture, and cache counters. */
+    protected int _uploadCount, _textureCount, _cacheHits, _cacheMisses;
+
+    /** The maximum number of texts to keep in the cache. */
+    protected static final int CACHE_SIZE = 256;
+
+    /** The maximum number of empty atlases to keep for reuse. */
+    protected static final int MAX_FREE_ATLASES = 1;
+
+    /** The width and height of the text atlases. */
+    protected static final int ATLAS_SIZE = 512;
+
+    /** The maximum height of a text stored in an atlas. */
+    protected static final int MAX_ATLAS_HEIGHT = ATLAS_SIZE / 4;
+
     protected static final char NONE = '!';
     protected static final char BOLD = 'b';
     protected static final char ITALIC = 'i';
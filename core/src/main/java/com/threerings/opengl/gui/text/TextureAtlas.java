@@ -0,0 +1,148 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.gui.text;
+
+import java.awt.image.BufferedImage;
+
+import org.lwjgl.opengl.GL11;
+
+import com.threerings.opengl.renderer.Renderer;
+import com.threerings.opengl.renderer.Texture2D;
+import com.threerings.opengl.renderer.TextureUnit;
+
+/**
+ * A texture shared between many small images (such as glyphs or runs of text), which are packed
+ * into it in rows.
+ */
+public class TextureAtlas
+{
+    /**
+     * Creates a new atlas.
+     *
+     * @param size the width and height of the texture.
+     * @param padding the number of pixels to leave between images.
+     */
+    public TextureAtlas (Renderer renderer, int size, int minFilter, int magFilter, int padding)
+    {
+        _size = size;
+        _padding = padding;
+        _texture = new Texture2D(renderer);
+        _texture.setImage(GL11.GL_RGBA, size, size, false, false);
+        _texture.setFilters(minFilter, magFilter);
+        _units = new TextureUnit[] { new TextureUnit(_texture) };
+    }
+
+    /**
+     * Returns the texture units with which to render the atlas.
+     */
+    public TextureUnit[] getUnits ()
+    {
+        return _units;
+    }
+
+    /**
+     * Returns the width and height of the atlas texture.
+     */
+    public int getSize ()
+    {
+        return _size;
+    }
+
+    /**
+     * Attempts to copy the upper left corner of the supplied image into the atlas.
+     *
+     * @param tcoords an array to populate with the texture coordinates of the lower left and
+     * upper right corners of the image.
+     * @return the texture units, or <code>null</code> if there wasn't enough room.
+     */
+    public TextureUnit[] add (BufferedImage image, int width, int height, float[] tcoords)
+    {
+        // move up to the next row if necessary
+        if (_x + width > _size) {
+            _y += _height;
+            _x = 0;
+            _height = 0;
+        }
+        if (_x + width > _size || _y + height > _size) {
+            return null; // out of room in this texture
+        }
+
+        // copy the image into the texture
+        if (width > 0 && height > 0) {
+            _texture.setSubimage(
+                image.getSubimage(0, 0, width, height), true, _x, _y, width, height);
+        }
+
+        // set the texture coordinates
+        tcoords[0] = (float)_x / _size;
+        tcoords[1] = (float)_y / _size;
+        tcoords[2] = (float)(_x + width) / _size;
+        tcoords[3] = (float)(_y + height) / _size;
+
+        // advance to the next position
+        _x += width + _padding;
+        _height = Math.max(_height, height + _padding);
+
+        // return the texture units
+        return _units;
+    }
+
+    /**
+     * Clears the atlas so that its space may be reused.  The caller must ensure that none of
+     * the images previously added are still in use.
+     */
+    public void clear ()
+    {
+        _x = _y = _height = 0;
+    }
+
+    /**
+     * Deletes the atlas texture.  The caller must ensure that none of the images previously added
+     * are still in use.
+     */
+    public void delete ()
+    {
+        _texture.delete();
+    }
+
+    /** The shared texture unit array. */
+    protected TextureUnit[] _units;
+
+    /** The atlas texture. */
+    protected Texture2D _texture;
+
+    /** The width and height of the texture. */
+    protected int _size;
+
+    /** The padding between images. */
+    protected int _padding;
+
+    /** The current x and y position within the texture. */
+    protected int _x, _y;
+
+    /** The height of the current row. */
+    protected int _height;
+}
@@ -35,6 +35,7 @@ import com.threerings.config.ConfigUpdateListener;
 import com.threerings.expr.Bound;
 import com.threerings.expr.Executor;
 import com.threerings.expr.Function;
+import com.threerings.expr.MutableInteger;
 import com.threerings.expr.MutableLong;
 import com.threerings.expr.ObjectExpression.Evaluator;
 import com.threerings.expr.Scope;
@@ -256,8 +257,8 @@ public class Animation extends SimpleScope
                     _snapshot[ii] = new Transform3D();
                 }
             }
-            if (config.modifiers.length == 0) {
-                _transforms = config.transforms;
+            if (_sharedTracks = (config.modifiers.length == 0)) {
+                _tracks = config.getTracks();
             } else {
                 Transform3D[] nodeDefaults = new Transform3D[_targets.length];
                 for (int ii = 0; ii < _targets.length; ii++) {
@@ -265,7 +266,7 @@ public class Animation extends SimpleScope
                         new Transform3D() : _targets[ii].getConfig().transform)
                         .promote(Transform3D.UNIFORM);
                 }
-                _transforms = config.getModifiedTransforms(nodeDefaults);
+                _tracks = config.getModifiedTracks(nodeDefaults);
             }
 
             // create the executors
@@ -276,7 +277,7 @@ public class Animation extends SimpleScope
                     action.frame, action.action.createExecutor(_ctx, this));
             }
 
-            if (_fidx > _transforms.length) {
+            if (_fidx > _tracks.getFrameCount()) {
                 _fidx = 0;
                 _eidx = 0;
             }
@@ -287,7 +288,7 @@ public class Animation extends SimpleScope
         {
             // initialize frame counter
             int offset = Math.round(_config.offset.getValue() * getFrameRate());
-            _fidx = _eidx = Math.max(0, offset) % _transforms.length;
+            _fidx = _eidx = Math.max(0, offset) % _tracks.getFrameCount();
             _accum = 0f;
             _completed = false;
 
@@ -359,7 +360,7 @@ public class Animation extends SimpleScope
             executeActions();
 
             // check for loop or completion
-            int fcount = _transforms.length;
+            int fcount = _tracks.getFrameCount();
             if (_config.loop) {
                 if (_fidx >= fcount) {
                     _fidx %= fcount;
@@ -385,43 +386,34 @@ public class Animation extends SimpleScope
         @Override
         public void updateTransforms ()
         {
-            Transform3D[] t1, t2;
-            if (_transitioning) {
-                t1 = _snapshot;
-                t2 = _transforms[_fidx];
-            } else {
-                t1 = _transforms[_fidx];
-                t2 = _transforms[(_fidx + 1) % _transforms.length];
-            }
+            Transform3D[] pose = getSharedPose();
+            int count = 0;
             for (int ii = 0; ii < _targets.length; ii++) {
                 // lerp into the target transform
                 Articulated.Node target = _targets[ii];
-                if (target != null) {
-                    t1[ii].lerp(t2[ii], _accum, target.getLocalTransform());
+                if (target != null && !target.skipAnimation) {
+                    getTransform(ii, pose, target.getLocalTransform());
+                    count++;
                 }
             }
+            Articulated.noteAnimatedNodes(count, _poseShared);
         }
 
         @Override
         public void blendTransforms (int update)
         {
-            Transform3D[] t1, t2;
-            if (_transitioning) {
-                t1 = _snapshot;
-                t2 = _transforms[_fidx];
-            } else {
-                t1 = _transforms[_fidx];
-                t2 = _transforms[(_fidx + 1) % _transforms.length];
-            }
+            Transform3D[] pose = getSharedPose();
+            int count = 0;
             for (int ii = 0; ii < _targets.length; ii++) {
-                // first make sure the target exists
+                // first make sure the target exists and needs updating
                 Articulated.Node target = _targets[ii];
-                if (target == null) {
+                if (target == null || target.skipAnimation) {
                     continue;
                 }
                 // then see if we're the first to touch it, in which case we can lerp directly
+                count++;
                 if (target.lastUpdate != update) {
-                    t1[ii].lerp(t2[ii], _accum, target.getLocalTransform());
+                    getTransform(ii, pose, target.getLocalTransform());
                     target.lastUpdate = update;
                     target.totalWeight = _weight;
                     continue;
@@ -432,10 +424,11 @@ public class Animation extends SimpleScope
                     continue;
                 }
                 float mweight = Math.min(_weight, 1f - target.totalWeight);
-                t1[ii].lerp(t2[ii], _accum, _xform);
+                getTransform(ii, pose, _xform);
                 target.getLocalTransform().lerpLocal(
                     _xform, mweight / (target.totalWeight += mweight));
             }
+            Articulated.noteAnimatedNodes(count, _poseShared);
         }
 
         @Override
@@ -455,6 +448,58 @@ public class Animation extends SimpleScope
             return _config.getScaledRate() * ((Animation)_parentScope).getSpeed();
         }
 
+        /**
+         * Returns the pose shared by all instances of the animation at the current point, if the
+         * model is at a reduced level of detail (in which case the point is rounded to a half or
+         * whole frame so that instances are likely to coincide).  Returns <code>null</code> if
+         * the transforms must be evaluated individually.
+         */
+        protected Transform3D[] getSharedPose ()
+        {
+            _poseShared = false;
+            int lod = (_animationLod == null) ? Articulated.FULL_LOD : _animationLod.value;
+            if (!_sharedTracks || _transitioning ||
+                    (lod != Articulated.REDUCED_LOD && lod != Articulated.MINIMAL_LOD)) {
+                return null;
+            }
+            float alpha = (lod == Articulated.REDUCED_LOD) ?
+                Math.round(_accum * 2f) * 0.5f : Math.round(_accum);
+            Transform3D[] pose = _tracks.getPose(_fidx, alpha);
+            if (pose == null) {
+                return _tracks.createPose(_fidx, alpha);
+            }
+            _poseShared = true;
+            return pose;
+        }
+
+        /**
+         * Retrieves the current transform of the specified target from the shared pose, if there
+         * is one, or else computes it.
+         */
+        protected void getTransform (int idx, Transform3D[] pose, Transform3D result)
+        {
+            if (pose == null) {
+                getTransform(idx, result);
+            } else {
+                result.set(pose[idx]);
+            }
+        }
+
+        /**
+         * Computes the current transform of the specified target, interpolating between the
+         * current frame and the next (or between the snapshot and the first frame, when
+         * transitioning).
+         */
+        protected void getTransform (int idx, Transform3D result)
+        {
+            AnimationTracks.Track track = _tracks.getTrack(idx);
+            if (_transitioning) {
+                _snapshot[idx].lerp(track.getTransform(_fidx, _frame), _accum, result);
+            } else {
+                track.getTransform(_fidx, (_fidx + 1) % _tracks.getFrameCount(), _accum, result);
+            }
+        }
+
         /**
          * Executes all actions scheduled before or at the current frame.
          */
@@ -472,8 +517,18 @@ public class Animation extends SimpleScope
         /** The targets of the animation. */
         protected Articulated.Node[] _targets;
 
-        /** The animation transforms after modifications are applied. */
-        protected Transform3D[][] _transforms;
+        /** The animation tracks after modifications are applied. */
+        protected AnimationTracks _tracks;
+
+        /** Whether the tracks are those of the config (and thus shared by all instances). */
+        protected boolean _sharedTracks;
+
+        /** Whether the last pose retrieved was shared with another instance. */
+        protected boolean _poseShared;
+
+        /** The animation level of detail of the model. */
+        @Bound("animationLod")
+        protected MutableInteger _animationLod;
 
         /** A snapshot of the original transforms of the targets, for transitioning. */
         protected Transform3D[] _snapshot;
@@ -504,6 +559,9 @@ public class Animation extends SimpleScope
 
         /** A temporary transform for interpolation. */
         protected Transform3D _xform = new Transform3D();
+
+        /** A temporary transform for the first frame when transitioning. */
+        protected Transform3D _frame = new Transform3D();
     }
 
     /**
@@ -0,0 +1,571 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.model;
+
+import com.threerings.export.Exportable;
+import com.threerings.math.FloatMath;
+import com.threerings.math.Quaternion;
+import com.threerings.math.Transform3D;
+import com.threerings.math.Vector3f;
+
+/**
+ * A compact representation of the frames of an imported animation, with one track of packed
+ * keyframes for each target.  Rather than storing a {@link Transform3D} object per target per
+ * frame, each track stores its translations and scales in float arrays and its rotations as
+ * quantized quaternions in a short array.  Tracks that never change are reduced to a single
+ * key, and frames that can be reproduced (within a tolerance) by interpolating between their
+ * neighbors are dropped.  The tracks are created when the animation is imported and stored in
+ * place of the frames.
+ */
+public class AnimationTracks
+    implements Exportable
+{
+    /**
+     * The keyframes of a single target.
+     */
+    public static class Track
+        implements Exportable
+    {
+        /**
+         * Creates a track from the transforms of the specified target.
+         *
+         * @param tolerance the maximum difference between a dropped frame and the value
+         * interpolated from its neighbors.
+         */
+        public Track (Transform3D[][] transforms, int target, float tolerance)
+        {
+            // find the most general type of the target's transforms
+            int nframes = transforms.length;
+            for (Transform3D[] frame : transforms) {
+                _type = Math.max(_type, frame[target].getType());
+            }
+            if (_type == Transform3D.IDENTITY) {
+                return;
+            }
+
+            // matrix transforms are stored as they are
+            if (_type >= Transform3D.AFFINE) {
+                _frames = new Transform3D[nframes];
+                for (int ii = 0; ii < nframes; ii++) {
+                    _frames[ii] = transforms[ii][target];
+                }
+                return;
+            }
+
+            // extract the components, keeping successive rotations in the same hemisphere
+            float[] translations = new float[nframes * 3];
+            float[] rotations = new float[nframes * 4];
+            float[] scales = (_type == Transform3D.UNIFORM) ? new float[nframes] : null;
+            Transform3D xform = new Transform3D();
+            for (int ii = 0; ii < nframes; ii++) {
+                xform.set(transforms[ii][target]);
+                xform.update(_type);
+                Vector3f translation = xform.getTranslation();
+                int tidx = ii * 3;
+                translations[tidx] = translation.x;
+                translations[tidx + 1] = translation.y;
+                translations[tidx + 2] = translation.z;
+                Quaternion rotation = xform.getRotation();
+                int ridx = ii * 4;
+                float sign = (ii > 0 && rotation.x*rotations[ridx - 4] +
+                    rotation.y*rotations[ridx - 3] + rotation.z*rotations[ridx - 2] +
+                    rotation.w*rotations[ridx - 1] < 0f) ? -1f : +1f;
+                rotations[ridx] = rotation.x * sign;
+                rotations[ridx + 1] = rotation.y * sign;
+                rotations[ridx + 2] = rotation.z * sign;
+                rotations[ridx + 3] = rotation.w * sign;
+                if (scales != null) {
+                    scales[ii] = (xform.getType() == Transform3D.UNIFORM) ? xform.getScale() : 1f;
+                }
+            }
+
+            // choose the keyframes and pack their values
+            int[] keys = getKeys(translations, rotations, scales, nframes, tolerance);
+            int nkeys = keys.length;
+            if (nkeys < nframes) {
+                _keys = keys;
+            }
+            _translations = new float[nkeys * 3];
+            _rotations = new short[nkeys * 4];
+            _scales = (scales == null) ? null : new float[nkeys];
+            for (int ii = 0; ii < nkeys; ii++) {
+                int frame = keys[ii];
+                System.arraycopy(translations, frame * 3, _translations, ii * 3, 3);
+                for (int jj = 0; jj < 4; jj++) {
+                    _rotations[ii*4 + jj] = quantize(rotations[frame*4 + jj]);
+                }
+                if (_scales != null) {
+                    _scales[ii] = scales[frame];
+                }
+            }
+        }
+
+        /**
+         * No-arg constructor for deserialization.
+         */
+        public Track ()
+        {
+        }
+
+        /**
+         * Returns the number of keyframes stored for the track.
+         */
+        public int getKeyCount ()
+        {
+            return (_type == Transform3D.IDENTITY) ? 0 :
+                (_frames != null ? _frames.length : _translations.length / 3);
+        }
+
+        /**
+         * Computes the transform of the target at the specified frame.
+         *
+         * @return a reference to the result transform, for chaining.
+         */
+        public Transform3D getTransform (int frame, Transform3D result)
+        {
+            return getTransform(frame, frame, 0f, result);
+        }
+
+        /**
+         * Computes the transform of the target between two frames.
+         *
+         * @param alpha the interpolation parameter: zero for the first frame, one for the
+         * second.
+         * @return a reference to the result transform, for chaining.
+         */
+        public Transform3D getTransform (int f1, int f2, float alpha, Transform3D result)
+        {
+            if (_type == Transform3D.IDENTITY) {
+                return result.setToIdentity();
+            } else if (_frames != null) {
+                return _frames[f1].lerp(_frames[f2], alpha, result);
+            }
+            float p1 = getKeyPosition(f1), p2 = getKeyPosition(f2);
+            if (p1 == p2) {
+                alpha = 0f;
+            }
+            result.setType(_type);
+            result.getTranslation().set(
+                lerp(sample(_translations, 3, 0, p1), sample(_translations, 3, 0, p2), alpha),
+                lerp(sample(_translations, 3, 1, p1), sample(_translations, 3, 1, p2), alpha),
+                lerp(sample(_translations, 3, 2, p1), sample(_translations, 3, 2, p2), alpha));
+            Quaternion rotation = getRotation(p1, result.getRotation());
+            if (alpha != 0f) {
+                float x1 = rotation.x, y1 = rotation.y, z1 = rotation.z, w1 = rotation.w;
+                getRotation(p2, rotation);
+                slerp(x1, y1, z1, w1, rotation.x, rotation.y, rotation.z, rotation.w,
+                    alpha, rotation);
+            }
+            if (_scales != null) {
+                result.setScale(
+                    lerp(sample(_scales, 1, 0, p1), sample(_scales, 1, 0, p2), alpha));
+            }
+            return result;
+        }
+
+        /**
+         * Returns the position of the specified frame in terms of keys: the integer part is
+         * the index of the last key at or before the frame, and the fractional part is the
+         * frame's progress towards the next key.
+         */
+        protected float getKeyPosition (int frame)
+        {
+            if (_keys == null) {
+                return frame;
+            }
+            int low = 0, high = _keys.length - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (_keys[mid] <= frame) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return (_keys[low] == frame || low == _keys.length - 1) ? low :
+                low + (float)(frame - _keys[low]) / (_keys[low + 1] - _keys[low]);
+        }
+
+        /**
+         * Computes the rotation at the specified key position.
+         *
+         * @return a reference to the result, for chaining.
+         */
+        protected Quaternion getRotation (float pos, Quaternion result)
+        {
+            int k1 = (int)pos, r1 = k1 * 4;
+            float alpha = pos - k1;
+            if (alpha == 0f) {
+                return result.set(dequantize(_rotations[r1]), dequantize(_rotations[r1 + 1]),
+                    dequantize(_rotations[r1 + 2]), dequantize(_rotations[r1 + 3]))
+                        .normalizeLocal();
+            }
+            int r2 = r1 + 4;
+            return nlerp(dequantize(_rotations[r1]), dequantize(_rotations[r1 + 1]),
+                dequantize(_rotations[r1 + 2]), dequantize(_rotations[r1 + 3]),
+                dequantize(_rotations[r2]), dequantize(_rotations[r2 + 1]),
+                dequantize(_rotations[r2 + 2]), dequantize(_rotations[r2 + 3]),
+                alpha, result);
+        }
+
+        /** The most general type of the target's transforms. */
+        protected int _type = Transform3D.IDENTITY;
+
+        /** The frame index of each key, or <code>null</code> if every frame is a key. */
+        protected int[] _keys;
+
+        /** The translation of each key (three components each). */
+        protected float[] _translations;
+
+        /** The quantized rotation of each key (four components each). */
+        protected short[] _rotations;
+
+        /** The scale of each key, for uniform tracks. */
+        protected float[] _scales;
+
+        /** The transforms of each frame, for tracks with non-uniform scale. */
+        protected Transform3D[] _frames;
+    }
+
+    /**
+     * Creates the tracks for the specified frames.
+     *
+     * @param transforms the transforms for each target, each frame.
+     * @param tolerance the maximum difference between a dropped frame and the value
+     * interpolated from its neighbors: zero to drop only those frames reproduced exactly.
+     */
+    public AnimationTracks (Transform3D[][] transforms, float tolerance)
+    {
+        _frameCount = transforms.length;
+        _tracks = new Track[_frameCount == 0 ? 0 : transforms[0].length];
+        for (int ii = 0; ii < _tracks.length; ii++) {
+            _tracks[ii] = new Track(transforms, ii, tolerance);
+        }
+    }
+
+    /**
+     * No-arg constructor for deserialization.
+     */
+    public AnimationTracks ()
+    {
+        _tracks = new Track[0];
+    }
+
+    /**
+     * Returns the number of frames in the animation.
+     */
+    public int getFrameCount ()
+    {
+        return _frameCount;
+    }
+
+    /**
+     * Returns the number of tracks (one per target).
+     */
+    public int getTrackCount ()
+    {
+        return _tracks.length;
+    }
+
+    /**
+     * Returns the track at the specified index.
+     */
+    public Track getTrack (int idx)
+    {
+        return _tracks[idx];
+    }
+
+    /**
+     * Evaluates the tracks at every frame.
+     *
+     * @return the transforms for each target, each frame.
+     */
+    public Transform3D[][] getTransforms ()
+    {
+        Transform3D[][] transforms = new Transform3D[_frameCount][_tracks.length];
+        for (int ii = 0; ii < _frameCount; ii++) {
+            for (int jj = 0; jj < _tracks.length; jj++) {
+                transforms[ii][jj] = _tracks[jj].getTransform(ii, new Transform3D());
+            }
+        }
+        return transforms;
+    }
+
+    /**
+     * Returns the cached pose for the specified point in the animation, or <code>null</code> if
+     * the pose has not been evaluated (or has since been displaced from the cache).
+     *
+     * @param alpha the interpolation parameter between the frame and the next.
+     */
+    public Transform3D[] getPose (int frame, float alpha)
+    {
+        if (_poses == null) {
+            return null;
+        }
+        if (alpha >= 1f) {
+            frame = (frame + 1) % _frameCount;
+            alpha = 0f;
+        }
+        Pose pose = _poses[getPoseIndex(frame, alpha)];
+        return (pose != null && pose.frame == frame && pose.alpha == alpha) ?
+            pose.transforms : null;
+    }
+
+    /**
+     * Evaluates every track at the specified point in the animation, caching the result so that
+     * other instances at the same point can share it.  The interpolation parameter should be
+     * quantized, so that instances are likely to share poses.  A parameter of one is treated
+     * as the start of the next frame.
+     *
+     * @param alpha the interpolation parameter between the frame and the next.
+     * @return the transforms of each target, which must not be modified.
+     */
+    public Transform3D[] createPose (int frame, float alpha)
+    {
+        if (_poses == null) {
+            _poses = new Pose[POSE_CACHE_SIZE];
+        }
+        if (alpha >= 1f) {
+            frame = (frame + 1) % _frameCount;
+            alpha = 0f;
+        }
+        int idx = getPoseIndex(frame, alpha);
+        Pose pose = _poses[idx];
+        if (pose == null) {
+            _poses[idx] = pose = new Pose(_tracks.length);
+        }
+        pose.frame = frame;
+        pose.alpha = alpha;
+        int next = (frame + 1) % _frameCount;
+        for (int ii = 0; ii < _tracks.length; ii++) {
+            _tracks[ii].getTransform(frame, next, alpha, pose.transforms[ii]);
+        }
+        return pose.transforms;
+    }
+
+    /**
+     * An evaluated pose.
+     */
+    protected static class Pose
+    {
+        /** The frame and interpolation parameter at which the pose was evaluated. */
+        public int frame;
+        public float alpha;
+
+        /** The transform of each target. */
+        public Transform3D[] transforms;
+
+        public Pose (int count)
+        {
+            transforms = new Transform3D[count];
+            for (int ii = 0; ii < count; ii++) {
+                transforms[ii] = new Transform3D();
+            }
+        }
+    }
+
+    /**
+     * Returns the index in the pose cache of the specified point in the animation.  The
+     * interpolation parameter must be less than one (the end of a frame being the start of the
+     * next), or the pose would share an index with the next frame's.
+     */
+    protected static int getPoseIndex (int frame, float alpha)
+    {
+        return (frame*POSE_STEPS + (int)(alpha*POSE_STEPS)) & (POSE_CACHE_SIZE - 1);
+    }
+
+    /**
+     * Chooses the keyframes for a track: the first and last frames, plus every frame that
+     * cannot be reproduced by interpolating between the previous key and the following frame.
+     * If the track does not change at all, the first frame is the only key.
+     */
+    protected static int[] getKeys (
+        float[] translations, float[] rotations, float[] scales, int nframes, float tolerance)
+    {
+        boolean constant = true;
+        for (int ii = 1; ii < nframes && constant; ii++) {
+            constant = interpolates(translations, rotations, scales, 0, 0, ii, tolerance);
+        }
+        if (constant) {
+            return new int[] { 0 };
+        }
+        int[] keys = new int[nframes];
+        int nkeys = 0, start = 0;
+        keys[nkeys++] = 0;
+        for (int end = 2; end < nframes; end++) {
+            for (int mid = start + 1; mid < end; mid++) {
+                if (!interpolates(translations, rotations, scales, start, end, mid, tolerance)) {
+                    keys[nkeys++] = start = end - 1;
+                    break;
+                }
+            }
+        }
+        keys[nkeys++] = nframes - 1;
+        int[] result = new int[nkeys];
+        System.arraycopy(keys, 0, result, 0, nkeys);
+        return result;
+    }
+
+    /**
+     * Determines whether interpolating between the start and end frames reproduces the middle
+     * frame within the given tolerance.
+     */
+    protected static boolean interpolates (
+        float[] translations, float[] rotations, float[] scales,
+        int start, int end, int mid, float tolerance)
+    {
+        float alpha = (start == end) ? 0f : (float)(mid - start) / (end - start);
+        float ttol = tolerance + FloatMath.EPSILON;
+        for (int ii = 0; ii < 3; ii++) {
+            float value = lerp(translations[start*3 + ii], translations[end*3 + ii], alpha);
+            if (Math.abs(value - translations[mid*3 + ii]) > ttol) {
+                return false;
+            }
+        }
+        int s = start * 4, e = end * 4, m = mid * 4;
+        Quaternion rotation = nlerp(
+            rotations[s], rotations[s + 1], rotations[s + 2], rotations[s + 3],
+            rotations[e], rotations[e + 1], rotations[e + 2], rotations[e + 3],
+            alpha, new Quaternion());
+
+        // the rotations are quantized anyway, so allow for the quantization error
+        float rtol = tolerance + 1f / QUANTIZATION_SCALE;
+        if (Math.abs(rotation.x - rotations[m]) > rtol ||
+                Math.abs(rotation.y - rotations[m + 1]) > rtol ||
+                Math.abs(rotation.z - rotations[m + 2]) > rtol ||
+                Math.abs(rotation.w - rotations[m + 3]) > rtol) {
+            return false;
+        }
+        return scales == null ||
+            Math.abs(lerp(scales[start], scales[end], alpha) - scales[mid]) <= ttol;
+    }
+
+    /**
+     * Linearly interpolates between two values.
+     */
+    protected static float lerp (float v1, float v2, float alpha)
+    {
+        return v1 + alpha*(v2 - v1);
+    }
+
+    /**
+     * Linearly interpolates between two rotations (taking the short way) and normalizes the
+     * result.
+     *
+     * @return a reference to the result, for chaining.
+     */
+    protected static Quaternion nlerp (
+        float x1, float y1, float z1, float w1, float x2, float y2, float z2, float w2,
+        float alpha, Quaternion result)
+    {
+        if (x1*x2 + y1*y2 + z1*z2 + w1*w2 < 0f) {
+            x2 = -x2;
+            y2 = -y2;
+            z2 = -z2;
+            w2 = -w2;
+        }
+        return result.set(lerp(x1, x2, alpha), lerp(y1, y2, alpha),
+            lerp(z1, z2, alpha), lerp(w1, w2, alpha)).normalizeLocal();
+    }
+
+    /**
+     * Samples a component of the values at the specified key position.
+     */
+    protected static float sample (float[] values, int stride, int offset, float pos)
+    {
+        int key = (int)pos;
+        float alpha = pos - key, value = values[key*stride + offset];
+        return (alpha == 0f) ? value : lerp(value, values[(key + 1)*stride + offset], alpha);
+    }
+
+    /**
+     * Spherically interpolates between two rotations, in the manner of
+     * {@link Quaternion#slerp(Quaternion, float, Quaternion)}.  Rotations close enough that
+     * the difference is negligible (as between most successive frames) are interpolated
+     * linearly and normalized, which avoids the trigonometric functions.
+     *
+     * @return a reference to the result, for chaining.
+     */
+    protected static Quaternion slerp (
+        float x1, float y1, float z1, float w1, float x2, float y2, float z2, float w2,
+        float alpha, Quaternion result)
+    {
+        float cosa = x1*x2 + y1*y2 + z1*z2 + w1*w2;
+        if (Math.abs(cosa) >= NLERP_THRESHOLD) {
+            return nlerp(x1, y1, z1, w1, x2, y2, z2, w2, alpha, result);
+        }
+        if (cosa < 0f) {
+            cosa = -cosa;
+            x2 = -x2;
+            y2 = -y2;
+            z2 = -z2;
+            w2 = -w2;
+        }
+        float angle = FloatMath.acos(cosa), sina = FloatMath.sin(angle);
+        float s0 = FloatMath.sin((1f - alpha) * angle) / sina;
+        float s1 = FloatMath.sin(alpha * angle) / sina;
+        return result.set(s0*x1 + s1*x2, s0*y1 + s1*y2, s0*z1 + s1*z2, s0*w1 + s1*w2);
+    }
+
+    /**
+     * Quantizes a quaternion component.
+     */
+    protected static short quantize (float value)
+    {
+        return (short)Math.round(Math.max(-1f, Math.min(+1f, value)) * QUANTIZATION_SCALE);
+    }
+
+    /**
+     * Restores a quantized quaternion component.
+     */
+    protected static float dequantize (short value)
+    {
+        return value / QUANTIZATION_SCALE;
+    }
+
+    /** The number of frames in the animation. */
+    protected int _frameCount;
+
+    /** The track for each target. */
+    protected Track[] _tracks;
+
+    /** Recently evaluated poses, indexed by point in the animation. */
+    protected transient Pose[] _poses;
+
+    /** The number of distinct poses per frame that are expected to be cached. */
+    protected static final int POSE_STEPS = 2;
+
+    /** The number of poses cached (must be a power of two). */
+    protected static final int POSE_CACHE_SIZE = 64;
+
+    /** The cosine of half the angle between two rotations above which we use linear rather
+     * than spherical interpolation (about five degrees, where the error is under a thousandth
+     * of a degree). */
+    protected static final float NLERP_THRESHOLD = 0.999f;
+
+    /** The scale by which quaternion components are multiplied when quantized. */
+    protected static final float QUANTIZATION_SCALE = Short.MAX_VALUE;
+}
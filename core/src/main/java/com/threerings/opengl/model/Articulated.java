@@ -37,6 +37,7 @@ import com.google.common.collect.Maps;
 
 import com.threerings.expr.Bound;
 import com.threerings.expr.Function;
+import com.threerings.expr.MutableInteger;
 import com.threerings.expr.Scope;
 import com.threerings.expr.Scoped;
 import com.threerings.expr.SimpleScope;
@@ -48,6 +49,7 @@ import com.threerings.math.Ray3D;
 import com.threerings.math.Transform3D;
 import com.threerings.math.Vector3f;
 
+import com.threerings.opengl.camera.Camera;
 import com.threerings.opengl.compositor.Enqueueable;
 import com.threerings.opengl.material.Surface;
 import com.threerings.opengl.material.config.MaterialConfig;
@@ -74,6 +76,78 @@ import static com.threerings.opengl.Log.log;
 public class Articulated extends Model.Implementation
     implements Enqueueable
 {
+    /** Animation level of detail: animations update every node on every tick. */
+    public static final int FULL_LOD = 0;
+
+    /** Animation level of detail: animations update the nodes that affect the skin, meshes, or
+     * attachments every other tick, at half-frame resolution. */
+    public static final int REDUCED_LOD = 1;
+
+    /** Animation level of detail: animations update the nodes that affect the skin, meshes, or
+     * attachments every fourth tick, at whole-frame resolution. */
+    public static final int MINIMAL_LOD = 2;
+
+    /** Animation level of detail: the model wasn't visible on the last frame, so the pose isn't
+     * updated until it is composited. */
+    public static final int FROZEN_LOD = 3;
+
+    /**
+     * Enables or disables the animation level of detail policy, which reduces the rate and
+     * resolution at which animations are updated for articulated models that occupy a small
+     * portion of the view and freezes the animations of those that are not visible.  Disabled by
+     * default.
+     */
+    public static void setAnimationLodEnabled (boolean enabled)
+    {
+        _animationLodEnabled = enabled;
+    }
+
+    /**
+     * Checks whether the animation level of detail policy is enabled.
+     */
+    public static boolean isAnimationLodEnabled ()
+    {
+        return _animationLodEnabled;
+    }
+
+    /**
+     * Returns the number of node transforms updated by animations since the counters were last
+     * reset.
+     */
+    public static int getAnimatedNodeCount ()
+    {
+        return _animatedNodeCount;
+    }
+
+    /**
+     * Returns the number of animation updates satisfied by a shared pose since the counters were
+     * last reset.
+     */
+    public static int getSharedPoseCount ()
+    {
+        return _sharedPoseCount;
+    }
+
+    /**
+     * Resets the animation counters.
+     */
+    public static void resetAnimationCounters ()
+    {
+        _animatedNodeCount = _sharedPoseCount = 0;
+    }
+
+    /**
+     * Notes that animations have updated the specified number of node transforms, using a shared
+     * pose or not.
+     */
+    public static void noteAnimatedNodes (int count, boolean shared)
+    {
+        _animatedNodeCount += count;
+        if (shared) {
+            _sharedPoseCount++;
+        }
+    }
+
     /**
      * A node in the model.
      */
@@ -87,6 +161,10 @@ public class Articulated extends Model.Implementation
         /** The total weight of the animation transforms applied to this node. */
         public float totalWeight;
 
+        /** If true, animations need not update this node's transform (because it affects neither
+         * the skin nor any mesh or attachment and the model is at a reduced level of detail). */
+        public boolean skipAnimation;
+
         /**
          * Creates a new node.
          */
@@ -176,6 +254,14 @@ public class Articulated extends Model.Implementation
             return _boneTransform.getMatrix();
         }
 
+        /**
+         * Checks whether this node has been flagged as a bone.
+         */
+        public boolean isBone ()
+        {
+            return _boneTransform != null;
+        }
+
         /**
          * Sets the updater to call after updating the view transform.
          */
@@ -184,6 +270,14 @@ public class Articulated extends Model.Implementation
             _updater = updater;
         }
 
+        /**
+         * Checks whether this node has an updater.
+         */
+        public boolean hasUpdater ()
+        {
+            return _updater != null;
+        }
+
         /**
          * Creates the surfaces of this node.
          */
@@ -473,6 +567,7 @@ public class Articulated extends Model.Implementation
             return;
         }
         _userAttachments.add(model);
+        _helperNodes = null;
         Scene scene = ((Model)_parentScope).getScene(this);
         if (scene != null) {
             model.wasAdded(scene);
@@ -489,6 +584,7 @@ public class Articulated extends Model.Implementation
                     model.willBeRemoved();
                 }
                 _userAttachments.remove(ii);
+                _helperNodes = null;
                 return;
             }
         }
@@ -664,8 +760,21 @@ public class Articulated extends Model.Implementation
             tracksCompleted |= _playingArray[ii].tick(elapsed);
         }
 
-        // update the local node transforms
-        updateTransforms();
+        // update the local node transforms if required at our level of detail
+        int lod = _animationLodEnabled ? getAnimationLod() : FULL_LOD;
+        if (lod != _animationLod.value || _helperNodes == null) {
+            setAnimationLod(lod);
+        }
+        _composited = false;
+        boolean posed = !_posed || lod == FULL_LOD ||
+            (lod != FROZEN_LOD && _lodCounter++ % LOD_UPDATE_INTERVALS[lod] == 0);
+        if (posed) {
+            updateTransforms();
+            _posed = true;
+            _poseStale = false;
+        } else {
+            _poseStale |= (lod == FROZEN_LOD && !_playing.isEmpty());
+        }
 
         // if any tracks have completed, remove them
         if (tracksCompleted) {
@@ -677,9 +786,16 @@ public class Articulated extends Model.Implementation
             }
         }
 
-        // update the nodes and expand the bounds
-        for (Node node : _nodes) {
-            node.update();
+        // update the nodes and expand the bounds, unless neither the pose nor the world transform
+        // has changed
+        if (posed || _hasUpdaters || !_worldTransform.equals(_nodesWorldTransform)) {
+            for (Node node : _nodes) {
+                node.update();
+            }
+            _nodesWorldTransform.set(_worldTransform);
+            _nodesBounds.set(_nbounds);
+        } else {
+            _nbounds.set(_nodesBounds);
         }
 
         // tick the configured attachments
@@ -748,6 +864,17 @@ public class Articulated extends Model.Implementation
     @Override
     public void composite ()
     {
+        // bring the pose (and the node world transforms) up to date if it was frozen while we
+        // were out of view
+        _composited = true;
+        if (_poseStale) {
+            updateTransforms();
+            for (Node node : _nodes) {
+                node.update();
+            }
+            _poseStale = false;
+        }
+
         // add an enqueueable to initialize the shared state
         _ctx.getCompositor().addEnqueueable(this);
 
@@ -811,10 +938,12 @@ public class Articulated extends Model.Implementation
         }
 
         // set the node transform updaters
+        _hasUpdaters = false;
         for (NodeTransform transform : _config.nodeTransforms) {
             Node node = _nodesByName.get(transform.node);
             if (node != null) {
                 node.setUpdater(transform.createUpdater(_ctx, node));
+                _hasUpdaters = true;
             }
         }
 
@@ -917,6 +1046,10 @@ public class Articulated extends Model.Implementation
             ((Model)_parentScope).tickPolicyDidChange(this);
         }
 
+        // the helper nodes must be found again, and the pose updated on the next tick
+        _helperNodes = null;
+        _posed = false;
+
         // update the bounds
         updateBounds();
     }
@@ -993,6 +1126,7 @@ public class Articulated extends Model.Implementation
                     model.willBeRemoved();
                 }
                 _userAttachments.remove(ii);
+                _helperNodes = null;
             }
         }
     }
@@ -1018,6 +1152,86 @@ public class Articulated extends Model.Implementation
         }
     }
 
+    /**
+     * Determines the animation level of detail from the model's size in the view.
+     */
+    protected int getAnimationLod ()
+    {
+        if (!_composited) {
+            return FROZEN_LOD;
+        }
+        Camera camera = _ctx.getCompositor().getCamera();
+        float extent;
+        if (camera.isOrtho()) {
+            extent = camera.getTop() - camera.getBottom();
+        } else {
+            float distance = camera.getWorldTransform().getTranslation().distance(
+                _bounds.getCenter(_center));
+            extent = 2f * distance * camera.getTop() / camera.getNear();
+        }
+        float size = _bounds.getDiagonalLength() / extent;
+        return (size >= REDUCED_LOD_SIZE) ? FULL_LOD :
+            (size >= MINIMAL_LOD_SIZE ? REDUCED_LOD : MINIMAL_LOD);
+    }
+
+    /**
+     * Sets the animation level of detail, flagging the helper nodes that animations may skip.
+     */
+    protected void setAnimationLod (int lod)
+    {
+        _animationLod.value = lod;
+        if (_helperNodes == null) {
+            _helperNodes = findHelperNodes();
+        }
+        boolean skip = (lod == REDUCED_LOD || lod == MINIMAL_LOD);
+        for (int ii = 0; ii < _nodes.length; ii++) {
+            _nodes[ii].skipAnimation = skip && _helperNodes[ii];
+        }
+    }
+
+    /**
+     * Determines which nodes are helpers: those that aren't bones, meshes, or attachment points,
+     * have no updaters, and have no such nodes beneath them.
+     */
+    protected boolean[] findHelperNodes ()
+    {
+        // find the nodes that are needed in their own right
+        IdentityHashMap<Object, Integer> indices = Maps.newIdentityHashMap();
+        boolean[] needed = new boolean[_nodes.length];
+        for (int ii = 0; ii < _nodes.length; ii++) {
+            Node node = _nodes[ii];
+            indices.put(node, ii);
+            indices.put(node.getWorldTransform(), ii);
+            needed[ii] = node.isBone() || node.hasUpdater() || node instanceof MeshNode;
+        }
+        for (Model model : _configAttachments) {
+            Integer idx = indices.get(model.getParentScope());
+            if (idx != null) {
+                needed[idx] = true;
+            }
+        }
+        for (int ii = 0, nn = _userAttachments.size(); ii < nn; ii++) {
+            Integer idx = indices.get(_userAttachments.get(ii).getParentScope());
+            if (idx != null) {
+                needed[idx] = true;
+            }
+        }
+
+        // then their ancestors (children always follow their parents in the preorder traversal)
+        boolean[] helpers = new boolean[_nodes.length];
+        for (int ii = _nodes.length - 1; ii >= 0; ii--) {
+            if (needed[ii]) {
+                Integer pidx = indices.get(_nodes[ii].getParentWorldTransform());
+                if (pidx != null) {
+                    needed[pidx] = true;
+                }
+            } else {
+                helpers[ii] = true;
+            }
+        }
+        return helpers;
+    }
+
     /**
      * Checks for an intersection with the skin mesh.
      */
@@ -1127,4 +1341,47 @@ public class Articulated extends Model.Implementation
 
     /** If true, the model has completed. */
     protected boolean _completed;
+
+    /** The current animation level of detail. */
+    @Scoped
+    protected MutableInteger _animationLod = new MutableInteger(FULL_LOD);
+
+    /** For each node, whether it is a helper that animations may skip at reduced detail (or
+     * <code>null</code> if not yet determined). */
+    protected boolean[] _helperNodes;
+
+    /** Whether any of the nodes have updaters. */
+    protected boolean _hasUpdaters;
+
+    /** Whether the model has been composited since the last tick. */
+    protected boolean _composited;
+
+    /** Whether the pose has been updated since the configuration was. */
+    protected boolean _posed;
+
+    /** Whether the pose must be updated when the model is next composited. */
+    protected boolean _poseStale;
+
+    /** Counts ticks at reduced detail in order to space out the pose updates. */
+    protected int _lodCounter;
+
+    /** The world transform and bounds at which the nodes were last updated. */
+    protected Transform3D _nodesWorldTransform = new Transform3D();
+    protected Box _nodesBounds = new Box();
+
+    /** A temporary vector. */
+    protected Vector3f _center = new Vector3f();
+
+    /** Whether the animation level of detail policy is enabled. */
+    protected static boolean _animationLodEnabled;
+
+    /** The animation counters. */
+    protected static int _animatedNodeCount, _sharedPoseCount;
+
+    /** The model size (as a fraction of the view height) below which we use each level of
+     * detail. */
+    protected static final float REDUCED_LOD_SIZE = 0.1f, MINIMAL_LOD_SIZE = 0.03f;
+
+    /** The number of ticks between pose updates at each level of detail. */
+    protected static final int[] LOD_UPDATE_INTERVALS = { 1, 2, 4 };
 }
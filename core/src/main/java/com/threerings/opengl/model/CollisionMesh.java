@@ -25,20 +25,28 @@
 
 package com.threerings.opengl.model;
 
-import java.util.Comparator;
+import java.io.IOException;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.collect.Lists;
 
-import com.samskivert.util.ArrayUtil;
 import com.threerings.math.Box;
+import com.threerings.math.FloatMath;
 import com.threerings.math.Ray3D;
 import com.threerings.math.Triangle;
 import com.threerings.math.Vector3f;
 
 import com.threerings.export.Exportable;
-
-import com.threerings.opengl.util.GlUtil;
+import com.threerings.export.Exporter;
+import com.threerings.export.Importer;
 
 /**
- * A mesh used for collision detection.
+ * A mesh used for collision detection.  The triangles are held in a bounding volume hierarchy
+ * built according to the surface area heuristic and flattened into arrays in depth-first order.
+ * Each node records the index of the node following its subtree, so that the hierarchy can be
+ * traversed without a stack: on a miss, we skip to that index; otherwise, we move to the next.
  */
 public class CollisionMesh
     implements Exportable
@@ -49,11 +57,14 @@ public class CollisionMesh
      */
     public CollisionMesh (Vector3f... vertices)
     {
-        Triangle[] triangles = new Triangle[vertices.length / 3];
-        for (int ii = 0; ii < triangles.length; ii++) {
-            triangles[ii] = new Triangle(vertices[ii*3], vertices[ii*3+1], vertices[ii*3+2]);
+        float[] coords = new float[(vertices.length / 3) * 9];
+        for (int ii = 0, idx = 0; idx < coords.length; ii++) {
+            Vector3f vertex = vertices[ii];
+            coords[idx++] = vertex.x;
+            coords[idx++] = vertex.y;
+            coords[idx++] = vertex.z;
         }
-        _root = createNode(triangles);
+        build(coords);
     }
 
     /**
@@ -68,7 +79,7 @@ public class CollisionMesh
      */
     public Box getBounds ()
     {
-        return _root.getBounds();
+        return _box;
     }
 
     /**
@@ -80,86 +91,564 @@ public class CollisionMesh
      */
     public boolean getIntersection (Ray3D ray, Vector3f result)
     {
-        return _root.getIntersection(ray, result);
+        Query query = new Query(ray, Float.MAX_VALUE);
+        if (!findIntersection(query, false)) {
+            return false;
+        }
+        ray.getOrigin().addScaled(ray.getDirection(), query.limit, result);
+        return true;
+    }
+
+    /**
+     * Checks whether the given ray hits this mesh within the specified distance of its origin,
+     * stopping at the first hit found (as for line-of-sight tests).
+     */
+    public boolean intersects (Ray3D ray, float distance)
+    {
+        return findIntersection(new Query(ray, distance), true);
+    }
+
+    /**
+     * Finds the intersections of a batch of rays with this mesh (as when picking).
+     *
+     * @param results the objects in which to place the intersection of each ray that hits the
+     * mesh.
+     * @param hits an array to populate with whether or not each ray hit the mesh.
+     * @return the number of rays that hit the mesh.
+     */
+    public int getIntersections (Ray3D[] rays, Vector3f[] results, boolean[] hits)
+    {
+        int count = 0;
+        Query query = new Query();
+        for (int ii = 0; ii < rays.length; ii++) {
+            Ray3D ray = rays[ii];
+            if (hits[ii] = findIntersection(query.set(ray, Float.MAX_VALUE), false)) {
+                ray.getOrigin().addScaled(ray.getDirection(), query.limit, results[ii]);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks a batch of rays for hits within the specified distances of their origins (as when
+     * testing lines of sight).
+     *
+     * @param hits an array to populate with whether or not each ray hit the mesh.
+     * @return the number of rays that hit the mesh.
+     */
+    public int intersects (Ray3D[] rays, float[] distances, boolean[] hits)
+    {
+        int count = 0;
+        Query query = new Query();
+        for (int ii = 0; ii < rays.length; ii++) {
+            if (hits[ii] = findIntersection(query.set(rays[ii], distances[ii]), true)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Custom field write method.
+     */
+    public void writeFields (Exporter out)
+        throws IOException
+    {
+        out.write("vertices", _vertices);
+        out.write("bounds", _bounds);
+        out.write("links", _links);
     }
 
     /**
-     * Creates a node to hold the given array of triangles.
+     * Custom field read method.
      */
-    protected static Node createNode (Triangle[] triangles)
+    public void readFields (Importer in)
+        throws IOException
     {
-        // compute the triangles' bounding box
-        Box bounds = new Box(Vector3f.MAX_VALUE, Vector3f.MIN_VALUE);
-        for (Triangle triangle : triangles) {
-            bounds.addLocal(triangle.getFirstVertex());
-            bounds.addLocal(triangle.getSecondVertex());
-            bounds.addLocal(triangle.getThirdVertex());
+        _vertices = in.read("vertices", (float[])null);
+        if (_vertices != null) {
+            _bounds = in.read("bounds", (float[])null);
+            _links = in.read("links", (int[])null);
+            updateBox();
+            return;
         }
 
-        // if there's only one triangle, we can create a leaf
-        if (triangles.length == 1) {
-            return new LeafNode(bounds, triangles[0]);
+        // rebuild meshes stored as trees of node objects
+        List<Triangle> triangles = Lists.newArrayList();
+        Node root = in.read("root", null, Node.class);
+        if (root != null) {
+            root.getTriangles(triangles);
+        }
+        float[] coords = new float[triangles.size() * 9];
+        for (int ii = 0, idx = 0; idx < coords.length; ii++) {
+            Triangle triangle = triangles.get(ii);
+            idx = put(triangle.getFirstVertex(), coords, idx);
+            idx = put(triangle.getSecondVertex(), coords, idx);
+            idx = put(triangle.getThirdVertex(), coords, idx);
         }
+        build(coords);
+    }
 
-        // otherwise, we must create an internal node that splits the list in two
-        // on the largest axis
-        Vector3f bsize = bounds.getMaximumExtent().subtract(bounds.getMinimumExtent());
-        float max = Math.max(bsize.x, Math.max(bsize.y, bsize.z));
-        if (bsize.x == max) {
-            GlUtil.divide(triangles, Triangle.X_COMPARATOR);
-        } else if (bsize.y == max) {
-            GlUtil.divide(triangles, Triangle.Y_COMPARATOR);
-        } else { // bsize.z == max
-            GlUtil.divide(triangles, Triangle.Z_COMPARATOR);
+    /**
+     * Builds the hierarchy for the given triangle coordinates (nine per triangle).
+     */
+    protected void build (float[] coords)
+    {
+        // find the bounds and center of each triangle
+        int count = coords.length / 9;
+        float[] tbounds = new float[count * 6], centers = new float[count * 3];
+        int[] indices = new int[count];
+        for (int ii = 0; ii < count; ii++) {
+            int voff = ii * 9, boff = ii * 6, coff = ii * 3;
+            for (int jj = 0; jj < 3; jj++) {
+                float c1 = coords[voff + jj], c2 = coords[voff + jj + 3];
+                float c3 = coords[voff + jj + 6];
+                float min = Math.min(c1, Math.min(c2, c3)), max = Math.max(c1, Math.max(c2, c3));
+                tbounds[boff + jj] = min;
+                tbounds[boff + jj + 3] = max;
+                centers[coff + jj] = (min + max) * 0.5f;
+            }
+            indices[ii] = ii;
+        }
+
+        // build the nodes, reordering the triangle indices so that each leaf's are contiguous
+        Builder builder = new Builder(tbounds, centers, indices);
+        if (count > 0) {
+            builder.build(0, count);
         }
-        return new InternalNode(bounds,
-            createNode(ArrayUtil.splice(triangles, triangles.length / 2)),
-            createNode(ArrayUtil.splice(triangles, 0, triangles.length / 2)));
+        _bounds = Arrays.copyOf(builder.bounds, builder.nodes * 6);
+        _links = Arrays.copyOf(builder.links, builder.nodes * 3);
+
+        // store the vertices in leaf order
+        _vertices = new float[coords.length];
+        for (int ii = 0; ii < count; ii++) {
+            System.arraycopy(coords, indices[ii] * 9, _vertices, ii * 9, 9);
+        }
+        updateBox();
     }
 
     /**
-     * A node in the axis-aligned bounding box tree.
+     * Sets the bounds box from those of the root node.
      */
-    protected static abstract class Node
-        implements Exportable
+    protected void updateBox ()
+    {
+        _box = (_links.length == 0) ? new Box(Vector3f.MAX_VALUE, Vector3f.MIN_VALUE) : new Box(
+            new Vector3f(_bounds[0], _bounds[1], _bounds[2]),
+            new Vector3f(_bounds[3], _bounds[4], _bounds[5]));
+    }
+
+    /**
+     * Traverses the hierarchy looking for the closest intersection within the query's limit
+     * (or any intersection, if so specified), lowering the limit to the distance of each hit.
+     *
+     * @return true if the ray hit the mesh.
+     */
+    protected boolean findIntersection (Query query, boolean any)
     {
-        public Node (Box bounds)
+        boolean hit = false;
+        for (int ii = 0, nn = _links.length / 3; ii < nn; ) {
+            int loff = ii * 3;
+            if (!query.intersectsBounds(_bounds, ii * 6)) {
+                ii = _links[loff];
+                continue;
+            }
+            for (int jj = _links[loff + 1], end = jj + _links[loff + 2]; jj < end; jj++) {
+                float distance = query.getTriangleDistance(_vertices, jj * 9);
+                if (distance < query.limit) {
+                    if (any) {
+                        return true;
+                    }
+                    query.limit = distance;
+                    hit = true;
+                }
+            }
+            ii++;
+        }
+        return hit;
+    }
+
+    /**
+     * Stores the coordinates of a vector in the given array.
+     *
+     * @return the index following the stored coordinates.
+     */
+    protected static int put (Vector3f vector, float[] array, int idx)
+    {
+        array[idx++] = vector.x;
+        array[idx++] = vector.y;
+        array[idx++] = vector.z;
+        return idx;
+    }
+
+    /**
+     * Builds the flattened hierarchy.
+     */
+    protected static class Builder
+    {
+        /** The bounds (min x, y, z, max x, y, z) of each node. */
+        public float[] bounds;
+
+        /** The links of each node (escape index, first triangle, triangle count). */
+        public int[] links;
+
+        /** The number of nodes created. */
+        public int nodes;
+
+        public Builder (float[] tbounds, float[] centers, int[] indices)
+        {
+            _tbounds = tbounds;
+            _centers = centers;
+            _indices = indices;
+            int max = Math.max(1, indices.length * 2 - 1);
+            bounds = new float[max * 6];
+            links = new int[max * 3];
+        }
+
+        /**
+         * Creates the nodes for the specified range of triangle indices.  The nodes are created in
+         * depth-first order using an explicit stack rather than recursion, since splits of
+         * degenerate meshes may leave the hierarchy nearly as deep as it has triangles.
+         */
+        public void build (int start, int end)
         {
-            _bounds = bounds;
+            // each entry holds the range of a node yet to be created and the index of its parent
+            // if it is the parent's second child, whose escape index is that of the child
+            int[] stack = new int[Math.max(1, end - start) * 3];
+            int size = 0;
+            stack[size++] = start;
+            stack[size++] = end;
+            stack[size++] = -1;
+            while (size > 0) {
+                int parent = stack[--size];
+                end = stack[--size];
+                start = stack[--size];
+                int node = nodes;
+                int mid = buildNode(start, end);
+                if (parent != -1) {
+                    links[parent * 3] = node;
+                }
+                if (mid != -1) {
+                    // push the second child first so that the first is created next
+                    stack[size++] = mid;
+                    stack[size++] = end;
+                    stack[size++] = node;
+                    stack[size++] = start;
+                    stack[size++] = mid;
+                    stack[size++] = -1;
+                }
+            }
+
+            // the escape index of each internal node is that of its second child, which follows
+            // it in the arrays; for now its link holds the index of that child
+            for (int ii = nodes - 1; ii >= 0; ii--) {
+                int loff = ii * 3;
+                if (links[loff + 2] == 0) {
+                    links[loff] = links[links[loff] * 3];
+                }
+            }
         }
 
-        public Node ()
+        /**
+         * Creates a single node for the specified range of triangle indices, partitioning the
+         * triangles if the node is to have children.
+         *
+         * @return the index dividing the ranges of the node's children, or -1 if the node is a
+         * leaf.
+         */
+        protected int buildNode (int start, int end)
         {
+            // find the bounds of the triangles and of their centers
+            int node = nodes++, boff = node * 6;
+            for (int ii = 0; ii < 3; ii++) {
+                bounds[boff + ii] = _cmin[ii] = Float.MAX_VALUE;
+                bounds[boff + ii + 3] = _cmax[ii] = -Float.MAX_VALUE;
+            }
+            for (int ii = start; ii < end; ii++) {
+                int idx = _indices[ii];
+                addBounds(_tbounds, idx * 6, bounds, boff);
+                for (int jj = 0; jj < 3; jj++) {
+                    float center = _centers[idx*3 + jj];
+                    _cmin[jj] = Math.min(_cmin[jj], center);
+                    _cmax[jj] = Math.max(_cmax[jj], center);
+                }
+            }
+
+            // look for the split with the lowest cost, comparing against that of a leaf (unless
+            // the node has too many triangles to be a leaf)
+            int count = end - start;
+            float area = getSurfaceArea(bounds, boff);
+            float bestCost = (count > MAX_LEAF_TRIANGLES) ? Float.MAX_VALUE : count * area;
+            int bestAxis = -1, bestBin = 0;
+            float bestScale = 0f;
+            for (int axis = 0; axis < 3 && count > 1; axis++) {
+                float extent = _cmax[axis] - _cmin[axis];
+                if (extent <= 0f) {
+                    continue;
+                }
+                float scale = BIN_COUNT / extent;
+                int bin = findBestSplit(start, end, axis, scale, area);
+                if (bin != -1 && _cost < bestCost) {
+                    bestCost = _cost;
+                    bestAxis = axis;
+                    bestBin = bin;
+                    bestScale = scale;
+                }
+            }
+
+            // create a leaf if it's cheaper than any split
+            int loff = node * 3;
+            if (bestAxis == -1 && count <= MAX_LEAF_TRIANGLES) {
+                links[loff] = node + 1;
+                links[loff + 1] = start;
+                links[loff + 2] = count;
+                return -1;
+            }
+
+            // partition the triangles according to the chosen split (or simply divide them in
+            // half if the centers coincide); internal nodes have no triangles of their own
+            links[loff + 2] = 0;
+            return (bestAxis == -1) ? (start + end) / 2 :
+                partition(start, end, bestAxis, bestScale, bestBin);
         }
 
         /**
-         * Returns a reference to the bounds of the node.
+         * Sorts the triangle centers into bins along the specified axis and finds the bin
+         * boundary with the lowest cost.
+         *
+         * @return the index of the first bin on the right side of the best split, or -1 if no
+         * split divides the triangles.  The cost of the split is stored in {@link #_cost}.
          */
-        public Box getBounds ()
+        protected int findBestSplit (int start, int end, int axis, float scale, float area)
         {
-            return _bounds;
+            Arrays.fill(_binCounts, 0);
+            for (int ii = 0; ii < BIN_COUNT; ii++) {
+                int boff = ii * 6;
+                for (int jj = 0; jj < 3; jj++) {
+                    _binBounds[boff + jj] = Float.MAX_VALUE;
+                    _binBounds[boff + jj + 3] = -Float.MAX_VALUE;
+                }
+            }
+            float cmin = _cmin[axis];
+            for (int ii = start; ii < end; ii++) {
+                int idx = _indices[ii];
+                int bin = getBin(_centers[idx*3 + axis], cmin, scale);
+                _binCounts[bin]++;
+                addBounds(_tbounds, idx * 6, _binBounds, bin * 6);
+            }
+
+            // sweep from the right to find the area and count on the right of each boundary
+            Arrays.fill(_sweepBounds, 0, 3, Float.MAX_VALUE);
+            Arrays.fill(_sweepBounds, 3, 6, -Float.MAX_VALUE);
+            for (int ii = BIN_COUNT - 1, rcount = 0; ii > 0; ii--) {
+                addBounds(_binBounds, ii * 6, _sweepBounds, 0);
+                _rightCounts[ii] = (rcount += _binCounts[ii]);
+                _rightAreas[ii] = getSurfaceArea(_sweepBounds, 0);
+            }
+
+            // then from the left to compute the costs
+            Arrays.fill(_sweepBounds, 0, 3, Float.MAX_VALUE);
+            Arrays.fill(_sweepBounds, 3, 6, -Float.MAX_VALUE);
+            int bestBin = -1;
+            _cost = Float.MAX_VALUE;
+            for (int ii = 1, lcount = 0; ii < BIN_COUNT; ii++) {
+                addBounds(_binBounds, (ii - 1) * 6, _sweepBounds, 0);
+                lcount += _binCounts[ii - 1];
+                int rcount = _rightCounts[ii];
+                if (lcount == 0 || rcount == 0) {
+                    continue;
+                }
+                float cost = TRAVERSAL_COST*area +
+                    getSurfaceArea(_sweepBounds, 0)*lcount + _rightAreas[ii]*rcount;
+                if (cost < _cost) {
+                    _cost = cost;
+                    bestBin = ii;
+                }
+            }
+            return bestBin;
         }
 
         /**
-         * Finds the intersection of the given ray with this node and places it in the supplied
-         * result object.
+         * Partitions the triangles so that those whose centers lie in bins before the specified
+         * one come first.
          *
-         * @return true if the ray hit a triangle within the node, in which case the result will be
-         * placed in the object supplied.
+         * @return the index of the first triangle in the second partition.
          */
-        public boolean getIntersection (Ray3D ray, Vector3f result)
+        protected int partition (int start, int end, int axis, float scale, int bin)
+        {
+            float cmin = _cmin[axis];
+            int ii = start, jj = end - 1;
+            while (ii <= jj) {
+                int idx = _indices[ii];
+                if (getBin(_centers[idx*3 + axis], cmin, scale) < bin) {
+                    ii++;
+                } else {
+                    _indices[ii] = _indices[jj];
+                    _indices[jj--] = idx;
+                }
+            }
+            return ii;
+        }
+
+        /** The bounds, centers, and indices of the triangles. */
+        protected float[] _tbounds, _centers;
+        protected int[] _indices;
+
+        /** The bounds of the centers of the current node. */
+        protected float[] _cmin = new float[3], _cmax = new float[3];
+
+        /** The number of triangles and the bounds of each bin. */
+        protected int[] _binCounts = new int[BIN_COUNT];
+        protected float[] _binBounds = new float[BIN_COUNT * 6];
+
+        /** The number of triangles and the surface area to the right of each bin boundary. */
+        protected int[] _rightCounts = new int[BIN_COUNT];
+        protected float[] _rightAreas = new float[BIN_COUNT];
+
+        /** Accumulates bounds during the sweeps. */
+        protected float[] _sweepBounds = new float[6];
+
+        /** The cost of the last split found. */
+        protected float _cost;
+    }
+
+    /**
+     * Holds the state of a ray query.
+     */
+    protected static class Query
+    {
+        /** The origin and direction of the ray. */
+        public float ox, oy, oz, dx, dy, dz;
+
+        /** The reciprocal of the direction. */
+        public float rx, ry, rz;
+
+        /** The distance beyond which hits are ignored (lowered as closer hits are found). */
+        public float limit;
+
+        public Query (Ray3D ray, float limit)
+        {
+            set(ray, limit);
+        }
+
+        public Query ()
         {
-            return _bounds.intersects(ray) && computeIntersection(ray, result);
         }
 
         /**
-         * Computes the actual intersection between the ray and this node's geometry, once it has
-         * been established that the ray intersects the node's bounding box.
+         * Sets the query's ray and limit, so that one query may be used for a batch of rays.
          *
-         * @return true if the ray hit a triangle within the node, in which case the result will be
-         * placed in the object supplied.
+         * @return a reference to this query, for chaining.
+         */
+        public Query set (Ray3D ray, float limit)
+        {
+            Vector3f origin = ray.getOrigin(), direction = ray.getDirection();
+            ox = origin.x;
+            oy = origin.y;
+            oz = origin.z;
+            dx = direction.x;
+            dy = direction.y;
+            dz = direction.z;
+            rx = 1f / dx;
+            ry = 1f / dy;
+            rz = 1f / dz;
+            this.limit = limit;
+            return this;
+        }
+
+        /**
+         * Checks whether the ray passes through the bounds at the specified offset before
+         * reaching the limit.
+         */
+        public boolean intersectsBounds (float[] bounds, int off)
+        {
+            float tmin = 0f, tmax = limit;
+            if (Math.abs(dx) < FloatMath.EPSILON) {
+                if (ox < bounds[off] || ox > bounds[off + 3]) {
+                    return false;
+                }
+            } else {
+                float t1 = (bounds[off] - ox) * rx, t2 = (bounds[off + 3] - ox) * rx;
+                tmin = Math.max(tmin, Math.min(t1, t2));
+                tmax = Math.min(tmax, Math.max(t1, t2));
+            }
+            if (Math.abs(dy) < FloatMath.EPSILON) {
+                if (oy < bounds[off + 1] || oy > bounds[off + 4]) {
+                    return false;
+                }
+            } else {
+                float t1 = (bounds[off + 1] - oy) * ry, t2 = (bounds[off + 4] - oy) * ry;
+                tmin = Math.max(tmin, Math.min(t1, t2));
+                tmax = Math.min(tmax, Math.max(t1, t2));
+            }
+            if (Math.abs(dz) < FloatMath.EPSILON) {
+                if (oz < bounds[off + 2] || oz > bounds[off + 5]) {
+                    return false;
+                }
+            } else {
+                float t1 = (bounds[off + 2] - oz) * rz, t2 = (bounds[off + 5] - oz) * rz;
+                tmin = Math.max(tmin, Math.min(t1, t2));
+                tmax = Math.min(tmax, Math.max(t1, t2));
+            }
+            return tmin <= tmax;
+        }
+
+        /**
+         * Returns the distance along the ray to its intersection with the (front face of the)
+         * triangle at the specified offset, or {@link Float#MAX_VALUE} if there is none.  Uses
+         * the same algorithm as {@link Triangle#getIntersection}.
          */
-        protected abstract boolean computeIntersection (Ray3D ray, Vector3f result);
+        public float getTriangleDistance (float[] vertices, int off)
+        {
+            // compute edges
+            float v1x = vertices[off], v1y = vertices[off + 1], v1z = vertices[off + 2];
+            float e1x = vertices[off + 3] - v1x, e1y = vertices[off + 4] - v1y,
+                e1z = vertices[off + 5] - v1z;
+            float e2x = vertices[off + 6] - v1x, e2y = vertices[off + 7] - v1y,
+                e2z = vertices[off + 8] - v1z;
+
+            // P = D x E2
+            float px = dy*e2z - dz*e2y, py = dz*e2x - dx*e2z, pz = dx*e2y - dy*e2x;
+
+            // if determinant is near zero, ray lies in triangle plane
+            float determinant = e1x*px + e1y*py + e1z*pz;
+            if (determinant < FloatMath.EPSILON) {
+                return Float.MAX_VALUE;
+            }
+
+            // T = O - V0
+            float tx = ox - v1x, ty = oy - v1y, tz = oz - v1z;
+
+            // calculate u parameter and test bounds
+            float u = tx*px + ty*py + tz*pz;
+            if (u < 0f || u > determinant) {
+                return Float.MAX_VALUE;
+            }
+
+            // calculate v parameter and test bounds
+            float qx = ty*e1z - tz*e1y, qy = tz*e1x - tx*e1z, qz = tx*e1y - ty*e1x;
+            float v = dx*qx + dy*qy + dz*qz;
+            if (v < 0f || (u + v) > determinant) {
+                return Float.MAX_VALUE;
+            }
+
+            // calculate t, ignoring intersections behind the origin
+            float t = (e2x*qx + e2y*qy + e2z*qz) / determinant;
+            return (t < 0f) ? Float.MAX_VALUE : t;
+        }
+    }
+
+    /**
+     * A node in the axis-aligned bounding box tree in which meshes were previously stored.
+     * Retained so that such meshes may be read and converted.
+     */
+    protected static abstract class Node
+        implements Exportable
+    {
+        /**
+         * Adds the triangles under this node to the supplied list.
+         */
+        public abstract void getTriangles (List<Triangle> triangles);
 
         /** The bounds of the node. */
         protected Box _bounds;
@@ -170,32 +659,15 @@ public class CollisionMesh
      */
     protected static class InternalNode extends Node
     {
-        public InternalNode (Box bounds, Node left, Node right)
-        {
-            super(bounds);
-            _left = left;
-            _right = right;
-        }
-
         public InternalNode ()
         {
         }
 
         @Override
-        protected boolean computeIntersection (Ray3D ray, Vector3f result)
+        public void getTriangles (List<Triangle> triangles)
         {
-            // check both children; if they both intersect, use closest intersection
-            if (_left.getIntersection(ray, result)) {
-                Vector3f lresult = new Vector3f(result);
-                if (_right.getIntersection(ray, result)) {
-                    Vector3f origin = ray.getOrigin();
-                    if (lresult.distanceSquared(origin) < result.distanceSquared(origin)) {
-                        result.set(lresult);
-                    }
-                }
-                return true;
-            }
-            return _right.getIntersection(ray, result);
+            _left.getTriangles(triangles);
+            _right.getTriangles(triangles);
         }
 
         /** The children of this node. */
@@ -207,20 +679,14 @@ public class CollisionMesh
      */
     protected static class LeafNode extends Node
     {
-        public LeafNode (Box bounds, Triangle triangle)
-        {
-            super(bounds);
-            _triangle = triangle;
-        }
-
         public LeafNode ()
         {
         }
 
         @Override
-        public boolean computeIntersection (Ray3D ray, Vector3f result)
+        public void getTriangles (List<Triangle> triangles)
         {
-            return _triangle.getIntersection(ray, result);
+            triangles.add(_triangle);
         }
 
         /** The triangle in the leaf. */
@@ -228,26 +694,54 @@ public class CollisionMesh
     }
 
     /**
-     * Compares triangles based on one of the coordinates of their centers.
+     * Expands the bounds at the specified offset in the destination array to include those at
+     * the specified offset in the source array.
      */
-    protected static class CenterComparator
-        implements Comparator<Triangle>
+    protected static void addBounds (float[] src, int soff, float[] dest, int doff)
     {
-        public CenterComparator (int idx)
-        {
-            _idx = idx;
+        for (int ii = 0; ii < 3; ii++) {
+            dest[doff + ii] = Math.min(dest[doff + ii], src[soff + ii]);
+            dest[doff + ii + 3] = Math.max(dest[doff + ii + 3], src[soff + ii + 3]);
         }
+    }
 
-        // documentation inherited from interface Comparator
-        public int compare (Triangle t1, Triangle t2)
-        {
-            return Float.compare(t1.getCenter().get(_idx), t2.getCenter().get(_idx));
-        }
+    /**
+     * Returns the surface area of the bounds at the specified offset.
+     */
+    protected static float getSurfaceArea (float[] bounds, int off)
+    {
+        float sx = bounds[off + 3] - bounds[off], sy = bounds[off + 4] - bounds[off + 1];
+        float sz = bounds[off + 5] - bounds[off + 2];
+        return 2f * (sx*sy + sy*sz + sz*sx);
+    }
 
-        /** The index of the coordinate to compare. */
-        protected int _idx;
+    /**
+     * Returns the index of the bin containing the specified coordinate.
+     */
+    protected static int getBin (float coord, float min, float scale)
+    {
+        return Math.min((int)((coord - min) * scale), BIN_COUNT - 1);
     }
 
-    /** The root node of the AABB tree. */
-    protected Node _root;
+    /** The vertices of the triangles, nine coordinates per triangle, in leaf order. */
+    protected float[] _vertices;
+
+    /** The bounds of each node (min x, y, z, max x, y, z), in depth-first order. */
+    protected float[] _bounds;
+
+    /** For each node, the index of the node following its subtree, the index of its first
+     * triangle, and its number of triangles (zero for internal nodes). */
+    protected int[] _links;
+
+    /** The bounds of the mesh. */
+    protected transient Box _box;
+
+    /** The number of bins into which we sort triangles when looking for a split. */
+    protected static final int BIN_COUNT = 16;
+
+    /** The maximum number of triangles in a leaf. */
+    protected static final int MAX_LEAF_TRIANGLES = 4;
+
+    /** The cost of traversing a node relative to that of testing a triangle. */
+    protected static final float TRAVERSAL_COST = 1f;
 }
@@ -25,6 +25,8 @@
 
 package com.threerings.opengl.model.config;
 
+import java.io.IOException;
+
 import com.samskivert.util.ArrayUtil;
 
 import com.threerings.config.ConfigReference;
@@ -35,6 +37,7 @@ import com.threerings.editor.EditorTypes;
 import com.threerings.editor.FileConstraints;
 import com.threerings.editor.util.EditorContext;
 import com.threerings.export.Exportable;
+import com.threerings.export.Importer;
 import com.threerings.expr.Scope;
 import com.threerings.expr.Transform3DExpression;
 import com.threerings.math.Transform3D;
@@ -44,6 +47,7 @@ import com.threerings.util.DeepOmit;
 import com.threerings.util.Shallow;
 
 import com.threerings.opengl.model.Animation;
+import com.threerings.opengl.model.AnimationTracks;
 import com.threerings.opengl.model.tools.AnimationDef;
 import com.threerings.opengl.model.tools.xml.AnimationParser;
 import com.threerings.opengl.util.Preloadable;
@@ -154,6 +158,11 @@ public class AnimationConfig extends ParameterizedConfig
         @Editable(hgroup="l")
         public boolean skipLastFrame = true;
 
+        /** The tolerance within which to drop frames that can be reproduced by interpolating
+         * between their neighbors (zero to drop only those reproduced exactly). */
+        @Editable(min=0, step=0.001, hgroup="l")
+        public float keyframeTolerance;
+
         /** A (possibly random) offset to apply when the animation starts. */
         @Editable(min=0, step=0.01, weight=2)
         public FloatVariable offset = new FloatVariable.Constant(0f);
@@ -173,9 +182,14 @@ public class AnimationConfig extends ParameterizedConfig
         @Shallow
         public String[] targets;
 
-        /** The transforms for each target, each frame. */
+        /** The transforms for each target, each frame, as imported.  These are only retained
+         * (so that the tracks may be repacked) until the config is saved. */
+        @Shallow
+        public transient Transform3D[][] transforms;
+
+        /** The packed keyframes of each target. */
         @Shallow
-        public Transform3D[][] transforms;
+        public AnimationTracks tracks;
 
         /**
          * Sets the source file from which to load the animation data.
@@ -217,7 +231,7 @@ public class AnimationConfig extends ParameterizedConfig
         public float getDuration ()
         {
             return transition +
-                (transforms == null ? 0f : (transforms.length - 1) / getScaledRate());
+                (tracks == null ? 0f : (tracks.getFrameCount() - 1) / getScaledRate());
         }
 
         /**
@@ -280,12 +294,17 @@ public class AnimationConfig extends ParameterizedConfig
          */
         public Transform3D[][] getModifiedTransforms (Transform3D[] defaults)
         {
-            if (modifiers.length == 0) {
-                return transforms;
-            }
-            Transform3D[][] result = new Transform3D[transforms.length][];
-            for (int ii = 0; ii < result.length; ii++) {
-                result[ii] = transforms[ii].clone();
+            Transform3D[][] result;
+            if (transforms != null) {
+                if (modifiers.length == 0) {
+                    return transforms;
+                }
+                result = new Transform3D[transforms.length][];
+                for (int ii = 0; ii < result.length; ii++) {
+                    result[ii] = transforms[ii].clone();
+                }
+            } else {
+                result = tracks.getTransforms();
             }
             for (TargetModifier modifier : modifiers) {
                 int idx = ArrayUtil.indexOf(targets, modifier.target);
@@ -299,6 +318,52 @@ public class AnimationConfig extends ParameterizedConfig
             return result;
         }
 
+        /**
+         * Returns the packed tracks of the animation, which are shared by all instances of the
+         * animation.
+         */
+        public AnimationTracks getTracks ()
+        {
+            return tracks;
+        }
+
+        /**
+         * Returns the packed tracks of the animation as applied to targets with the supplied
+         * default transforms.  If there are no modifiers then this simply returns the shared
+         * tracks.
+         */
+        public AnimationTracks getModifiedTracks (Transform3D[] defaults)
+        {
+            return (modifiers.length == 0) ? getTracks() :
+                new AnimationTracks(getModifiedTransforms(defaults), keyframeTolerance);
+        }
+
+        @Override
+        public void invalidate ()
+        {
+            // repack the tracks in case the tolerance changed
+            if (transforms != null) {
+                tracks = new AnimationTracks(transforms, keyframeTolerance);
+            }
+        }
+
+        /**
+         * Custom field read method.
+         */
+        public void readFields (Importer in)
+            throws IOException
+        {
+            in.defaultReadFields();
+
+            // pack the frames of configs saved before the tracks were stored
+            if (tracks == null) {
+                Transform3D[][] frames = in.read("transforms", null, Transform3D[][].class);
+                if (frames != null) {
+                    tracks = new AnimationTracks(frames, keyframeTolerance);
+                }
+            }
+        }
+
         /**
          * Updates from a parsed animation definition.
          */
@@ -307,6 +372,7 @@ public class AnimationConfig extends ParameterizedConfig
             if (def == null) {
                 targets = null;
                 transforms = null;
+                tracks = null;
             } else {
                 def.update(this);
             }
@@ -27,9 +27,12 @@ package com.threerings.opengl.model.config;
 
 import java.lang.ref.SoftReference;
 
+import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -44,6 +47,7 @@ import com.threerings.math.Ray3D;
 import com.threerings.math.Transform3D;
 import com.threerings.math.Vector3f;
 import com.threerings.util.DeepOmit;
+import com.threerings.util.WorkerPool;
 
 import com.threerings.opengl.geometry.config.GeometryConfig;
 import com.threerings.opengl.geometry.config.TransformedGeometry;
@@ -62,7 +66,12 @@ import com.threerings.opengl.util.Preloadable;
 import static com.threerings.opengl.Log.log;
 
 /**
- * A merged static implementation.
+ * A merged static implementation.  The config lookups required to resolve the merged model are
+ * performed on the render thread, but the geometry is merged on the shared {@link WorkerPool}
+ * (when enabled), with the models continuing to display the previous merge until the new one is
+ * ready.
+ * The geometry of each material is merged in a fixed number of chunks, each of which is retained
+ * (softly) and reused until one of its component models changes.
  */
 public class MergedStaticConfig extends ModelConfig.Implementation
 {
@@ -70,6 +79,15 @@ public class MergedStaticConfig extends ModelConfig.Implementation
     @Editable
     public ComponentModel[] models;
 
+    /**
+     * Returns the number of merges submitted to the workers whose results have yet to be applied.
+     * Should only be called from the render thread.
+     */
+    public static int getPendingBuildCount ()
+    {
+        return _pending;
+    }
+
     /**
      * Default constructor.
      */
@@ -107,13 +125,25 @@ public class MergedStaticConfig extends ModelConfig.Implementation
         GlContext ctx, Scope scope, Model.Implementation impl)
     {
         Resolved resolved = (_resolved == null) ? null : _resolved.get();
-        if (resolved == null) {
-            _resolved = new SoftReference<Resolved>(resolved = resolve(ctx));
+        if (resolved == null || _stale) {
+            if (_builder.isEnabled()) {
+                if (_build == null) {
+                    submit(_build = new Build(ctx, gather(ctx)));
+                }
+                if (resolved == null) {
+                    resolved = new Resolved(new Box(), null, new GeometryMaterial[0], 0);
+                }
+            } else {
+                Build build = new Build(ctx, gather(ctx));
+                _resolved = new SoftReference<Resolved>(resolved = build.merge());
+                _chunks = new SoftReference<Map<MaterialConfig, Chunk[]>>(build._nchunks);
+                _stale = false;
+            }
         }
-        if (impl instanceof Static) {
-            ((Static)impl).setConfig(ctx, resolved);
+        if (impl instanceof Merged) {
+            ((Merged)impl).setConfig(ctx, resolved);
         } else {
-            impl = new Static(ctx, scope, resolved);
+            impl = new Merged(ctx, scope, resolved);
         }
         return impl;
     }
@@ -121,22 +151,23 @@ public class MergedStaticConfig extends ModelConfig.Implementation
     @Override
     public void invalidate ()
     {
-        _resolved = null;
+        // keep the stale data around for display until we've rebuilt
+        _stale = true;
+        if (_build != null) {
+            _build.cancelled = true;
+            _build = null;
+        }
     }
 
     /**
-     * (Re)resolves the data.
+     * Looks up the configs of the component models and the materials of their meshes, which
+     * must happen on the render thread.
      */
-    protected Resolved resolve (GlContext ctx)
+    protected List<Component> gather (GlContext ctx)
     {
-        // process the component models, mapping geometry by material
         ConfigManager cfgmgr = ctx.getConfigManager();
-        IdentityHashMap<MaterialConfig, List<TransformedGeometry>> glists =
-            Maps.newIdentityHashMap();
         Map<String, MaterialConfig> mmap = Maps.newHashMap();
-        List<TransformedCollision> cmeshes = Lists.newArrayList();
-        final Box bounds = new Box();
-        int influenceFlags = 0;
+        List<Component> components = Lists.newArrayListWithCapacity(models.length);
         for (ComponentModel cmodel : models) {
             ModelConfig config = cfgmgr.getConfig(ModelConfig.class, cmodel.model);
             ModelConfig.Implementation original = (config == null) ? null : config.getOriginal();
@@ -156,63 +187,322 @@ public class MergedStaticConfig extends ModelConfig.Implementation
             if (mset == null) {
                 continue;
             }
-            bounds.addLocal(mset.bounds.transform(cmodel.transform));
-            if (mset.collision != null) {
-                cmeshes.add(new TransformedCollision(mset.collision, cmodel.transform));
-            }
             ModelConfig.Imported imported = (ModelConfig.Imported)original;
-            for (VisibleMesh mesh : mset.visible) {
-                MaterialConfig material = Model.getMaterialConfig(
+            MaterialConfig[] materials = new MaterialConfig[mset.visible.length];
+            for (int ii = 0; ii < materials.length; ii++) {
+                VisibleMesh mesh = mset.visible[ii];
+                materials[ii] = Model.getMaterialConfig(
                     ctx, mesh.texture, mesh.tag, imported.materialMappings, mmap);
-                List<TransformedGeometry> glist = glists.get(material);
-                if (glist == null) {
-                    glists.put(material, glist = Lists.newArrayList());
-                }
-                glist.add(new TransformedGeometry(mesh.geometry, cmodel.transform));
             }
             mmap.clear();
-            influenceFlags |= imported.influences.getFlags();
+            components.add(new Component(cmodel, mset, materials, imported.influences.getFlags()));
         }
+        return components;
+    }
 
-        // merge geometry of the same material
-        List<GeometryMaterial> gmats = Lists.newArrayList();
-        for (Map.Entry<MaterialConfig, List<TransformedGeometry>> entry : glists.entrySet()) {
-            MaterialConfig material = entry.getKey();
-            List<TransformedGeometry> glist = entry.getValue();
-            while (!glist.isEmpty()) {
-                GeometryConfig merged = glist.get(0).geometry.merge(glist);
-                if (merged != null) {
+    /**
+     * Submits a build to the worker pool.
+     */
+    protected static void submit (Build build)
+    {
+        _pending++;
+        _builder.execute(build);
+    }
+
+    /**
+     * The static implementation used for merged models, which tracks the live implementations so
+     * that they can be updated when a merge completes.  The implementations are tracked weakly, so
+     * that those discarded without being disposed are not kept alive.
+     */
+    protected class Merged extends Static
+    {
+        public Merged (GlContext ctx, Scope parentScope, Resolved config)
+        {
+            super(ctx, parentScope, config);
+            if (_impls == null) {
+                _impls = Collections.newSetFromMap(new WeakHashMap<Merged, Boolean>());
+            }
+            _impls.add(this);
+        }
+
+        @Override
+        public void dispose ()
+        {
+            super.dispose();
+            _impls.remove(this);
+        }
+    }
+
+    /**
+     * The resolved configs of a component model.
+     */
+    protected static class Component
+    {
+        /** The mesh set of the model. */
+        public final MeshSet mset;
+
+        /** A private copy of the model transform. */
+        public final Transform3D transform;
+
+        /** The materials of the visible meshes. */
+        public final MaterialConfig[] materials;
+
+        /** The model's influence flags. */
+        public final int influenceFlags;
+
+        /** The index of the chunk in which to merge the model's geometry. */
+        public final int chunk;
+
+        public Component (
+            ComponentModel cmodel, MeshSet mset, MaterialConfig[] materials, int influenceFlags)
+        {
+            this.mset = mset;
+            this.materials = materials;
+            this.influenceFlags = influenceFlags;
+
+            // promote the copy now so that the workers' reads don't modify it
+            transform = new Transform3D(cmodel.transform);
+            transform.update(Transform3D.AFFINE);
+
+            // the component models persist across edits, so their identities give us chunk
+            // assignments that don't shift as other models are added or removed
+            chunk = (System.identityHashCode(cmodel) & Integer.MAX_VALUE) % CHUNKS;
+        }
+    }
+
+    /**
+     * A chunk of geometry merged from a set of sources.
+     */
+    protected static class Chunk
+    {
+        /** The source geometry. */
+        public final List<TransformedGeometry> sources;
+
+        /** The merged geometry. */
+        public final List<GeometryConfig> merged;
+
+        public Chunk (List<TransformedGeometry> sources, List<GeometryConfig> merged)
+        {
+            this.sources = sources;
+            this.merged = merged;
+        }
+
+        /**
+         * Checks whether this chunk was merged from the specified sources.
+         */
+        public boolean matches (List<TransformedGeometry> osources)
+        {
+            int size = sources.size();
+            if (osources.size() != size) {
+                return false;
+            }
+            for (int ii = 0; ii < size; ii++) {
+                TransformedGeometry source = sources.get(ii), osource = osources.get(ii);
+                if (source.geometry != osource.geometry ||
+                        !source.transform.equals(osource.transform)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Merges the gathered component models and posts the result back to the render thread.
+     */
+    protected class Build
+        implements Runnable
+    {
+        /** Set when the result of the build is no longer needed. */
+        public volatile boolean cancelled;
+
+        public Build (GlContext ctx, List<Component> components)
+        {
+            _ctx = ctx;
+            _components = components;
+            _ochunks = (_chunks == null) ? null : _chunks.get();
+        }
+
+        /**
+         * Merges the component models.
+         */
+        public Resolved merge ()
+        {
+            // map geometry by material and chunk
+            IdentityHashMap<MaterialConfig, List<List<TransformedGeometry>>> glists =
+                Maps.newIdentityHashMap();
+            List<TransformedCollision> cmeshes = Lists.newArrayList();
+            final Box bounds = new Box();
+            int influenceFlags = 0;
+            for (Component component : _components) {
+                MeshSet mset = component.mset;
+                bounds.addLocal(mset.bounds.transform(component.transform));
+                if (mset.collision != null) {
+                    cmeshes.add(new TransformedCollision(mset.collision, component.transform));
+                }
+                for (int ii = 0; ii < mset.visible.length; ii++) {
+                    MaterialConfig material = component.materials[ii];
+                    List<List<TransformedGeometry>> chunks = glists.get(material);
+                    if (chunks == null) {
+                        glists.put(material, chunks = Lists.newArrayList(
+                            Collections.<List<TransformedGeometry>>nCopies(CHUNKS, null)));
+                    }
+                    List<TransformedGeometry> glist = chunks.get(component.chunk);
+                    if (glist == null) {
+                        glist = Lists.newArrayList();
+                        chunks.set(component.chunk, glist);
+                    }
+                    glist.add(new TransformedGeometry(
+                        mset.visible[ii].geometry, component.transform));
+                }
+                influenceFlags |= component.influenceFlags;
+            }
+
+            // merge each chunk that changed, then the chunks of each material
+            List<GeometryMaterial> gmats = Lists.newArrayList();
+            for (Map.Entry<MaterialConfig, List<List<TransformedGeometry>>> entry :
+                    glists.entrySet()) {
+                MaterialConfig material = entry.getKey();
+                List<List<TransformedGeometry>> chunks = entry.getValue();
+                Chunk[] ochunks = (_ochunks == null) ? null : _ochunks.get(material);
+                Chunk[] nchunks = new Chunk[CHUNKS];
+                List<TransformedGeometry> combined = Lists.newArrayList();
+                for (int ii = 0; ii < CHUNKS; ii++) {
+                    List<TransformedGeometry> sources = chunks.get(ii);
+                    if (sources == null) {
+                        continue;
+                    }
+                    Chunk chunk = (ochunks == null) ? null : ochunks[ii];
+                    if (chunk == null || !chunk.matches(sources)) {
+                        chunk = new Chunk(sources, mergeGeometry(sources));
+                    }
+                    nchunks[ii] = chunk;
+                    for (GeometryConfig geom : chunk.merged) {
+                        combined.add(new TransformedGeometry(geom, new Transform3D()));
+                    }
+                }
+                _nchunks.put(material, nchunks);
+                if (combined.size() == 1) {
+                    gmats.add(new GeometryMaterial(combined.get(0).geometry, material));
+                    continue;
+                }
+                for (GeometryConfig merged : mergeGeometry(combined)) {
                     gmats.add(new GeometryMaterial(merged, material));
-                } else {
-                    glist.remove(0);
                 }
             }
+
+            // create the combined collision mesh
+            final TransformedCollision[] tcollisions = cmeshes.toArray(
+                new TransformedCollision[cmeshes.size()]);
+            CollisionMesh collision = new CollisionMesh() {
+                @Override public Box getBounds () {
+                    return bounds;
+                }
+                @Override public boolean getIntersection (Ray3D ray, Vector3f result) {
+                    // check the component meshes (transforming the ray into their space and
+                    // back out again if we detect a hit)
+                    Vector3f closest = result;
+                    for (TransformedCollision tcoll : tcollisions) {
+                        if (tcoll.bounds.intersects(ray) && tcoll.collision.getIntersection(
+                                ray.transform(tcoll.invTransform), result)) {
+                            tcoll.transform.transformPointLocal(result);
+                            result = FloatMath.updateClosest(ray.getOrigin(), result, closest);
+                        }
+                    }
+                    // if we ever changed the result reference, that means we hit something
+                    return (result != closest);
+                }
+                @Override public boolean intersects (Ray3D ray, float distance) {
+                    // the component rays are renormalized, so compare distances in our space
+                    Vector3f result = new Vector3f();
+                    for (TransformedCollision tcoll : tcollisions) {
+                        if (tcoll.bounds.intersects(ray) && tcoll.collision.getIntersection(
+                                ray.transform(tcoll.invTransform), result) &&
+                                tcoll.transform.transformPointLocal(result).distance(
+                                    ray.getOrigin()) < distance) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+            };
+            return new Resolved(bounds, collision,
+                gmats.toArray(new GeometryMaterial[gmats.size()]), influenceFlags);
         }
 
-        // create the combined collision mesh
-        final TransformedCollision[] tcollisions = cmeshes.toArray(
-            new TransformedCollision[cmeshes.size()]);
-        CollisionMesh collision = new CollisionMesh() {
-            @Override public Box getBounds () {
-                return bounds;
+        // documentation inherited from interface Runnable
+        public void run ()
+        {
+            Resolved resolved = null;
+            if (!cancelled) {
+                try {
+                    resolved = merge();
+                } catch (Throwable t) {
+                    log.warning("Failed to merge static models.", t);
+                }
             }
-            @Override public boolean getIntersection (Ray3D ray, Vector3f result) {
-                // check the component meshes (transforming the ray into their space and back out
-                // again if we detect a hit)
-                Vector3f closest = result;
-                for (TransformedCollision tcoll : tcollisions) {
-                    if (tcoll.bounds.intersects(ray) && tcoll.collision.getIntersection(
-                            ray.transform(tcoll.invTransform), result)) {
-                        tcoll.transform.transformPointLocal(result);
-                        result = FloatMath.updateClosest(ray.getOrigin(), result, closest);
+            final Resolved fresolved = resolved;
+            _ctx.getApp().getRunQueue().postRunnable(new Runnable() {
+                public void run () {
+                    _pending--;
+                    if (cancelled) {
+                        return;
                     }
+                    if (fresolved != null) {
+                        apply(fresolved);
+                    } else {
+                        // clear the failed build so that the next resolution tries again
+                        _build = null;
+                    }
+                }
+            });
+        }
+
+        /**
+         * Applies the result of the build.  Called on the render thread.
+         */
+        protected void apply (Resolved resolved)
+        {
+            _build = null;
+            _stale = false;
+            _chunks = new SoftReference<Map<MaterialConfig, Chunk[]>>(_nchunks);
+            _resolved = new SoftReference<Resolved>(resolved);
+            if (_impls != null) {
+                for (Merged impl : Lists.newArrayList(_impls)) {
+                    impl.setConfig(_ctx, resolved);
                 }
-                // if we ever changed the result reference, that means we hit something
-                return (result != closest);
             }
-        };
-        return new Resolved(bounds, collision,
-            gmats.toArray(new GeometryMaterial[gmats.size()]), influenceFlags);
+        }
+
+        /**
+         * Merges the supplied geometry (which will be left untouched).
+         */
+        protected List<GeometryConfig> mergeGeometry (List<TransformedGeometry> sources)
+        {
+            List<TransformedGeometry> glist = Lists.newArrayList(sources);
+            List<GeometryConfig> merged = Lists.newArrayList();
+            while (!glist.isEmpty()) {
+                GeometryConfig geom = glist.get(0).geometry.merge(glist);
+                if (geom != null) {
+                    merged.add(geom);
+                } else {
+                    glist.remove(0);
+                }
+            }
+            return merged;
+        }
+
+        /** The application context. */
+        protected GlContext _ctx;
+
+        /** The gathered component models. */
+        protected List<Component> _components;
+
+        /** The chunks from the previous merge, if any. */
+        protected Map<MaterialConfig, Chunk[]> _ochunks;
+
+        /** The chunks from this merge. */
+        protected Map<MaterialConfig, Chunk[]> _nchunks = Maps.newIdentityHashMap();
     }
 
     /**
@@ -244,4 +534,32 @@ public class MergedStaticConfig extends ModelConfig.Implementation
     /** The cached resolved config bits. */
     @DeepOmit
     protected transient SoftReference<Resolved> _resolved;
+
+    /** Set when the resolved config bits are out of date. */
+    @DeepOmit
+    protected transient boolean _stale;
+
+    /** The build in progress, if any. */
+    @DeepOmit
+    protected transient Build _build;
+
+    /** The merged chunks of the last build, mapped by material. */
+    @DeepOmit
+    protected transient SoftReference<Map<MaterialConfig, Chunk[]>> _chunks;
+
+    /** The live implementations using this config. */
+    @DeepOmit
+    protected transient Set<Merged> _impls;
+
+    /** The number of builds whose results have yet to be applied. */
+    protected static int _pending;
+
+    /** The number of chunks into which the geometry of each material is divided. */
+    protected static final int CHUNKS = 8;
+
+    /** Runs the builds on the worker pool, occupying at most as many of its threads as the
+     * merged_static_build_threads property allows (two by default; zero to merge
+     * synchronously). */
+    protected static final WorkerPool.Limiter _builder = new WorkerPool.Limiter(
+        "merged_static_build_threads", Math.min(2, Runtime.getRuntime().availableProcessors()));
 }
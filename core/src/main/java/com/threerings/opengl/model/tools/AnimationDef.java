@@ -29,6 +29,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import com.threerings.math.Transform3D;
+import com.threerings.opengl.model.AnimationTracks;
 import com.threerings.opengl.model.config.AnimationConfig;
 
 /**
@@ -111,6 +112,7 @@ public class AnimationDef
         config.targets = getTargets();
         config.transforms = getTransforms(
             config.targets, config.scale, config.loop && config.skipLastFrame);
+        config.tracks = new AnimationTracks(config.transforms, config.keyframeTolerance);
     }
 
     /**
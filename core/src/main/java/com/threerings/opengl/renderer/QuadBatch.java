@@ -0,0 +1,594 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.opengl.renderer;
+
+import java.nio.FloatBuffer;
+
+import java.util.Arrays;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+
+import com.threerings.math.FloatMath;
+
+/**
+ * Accumulates the textured, colored quads drawn by the user interface and draws them in as few
+ * calls as possible.  Quads are held until the renderer's state is changed by anything other
+ * than the batch (at which point the renderer flushes the batch), or until the end of the
+ * batch; they are then grouped by texture, reordering them where they do not overlap, and drawn
+ * from a single vertex array.
+ *
+ * <p>Because quads are drawn after the fact, the batch must know about any changes to the
+ * modelview matrix made while rendering: translations, rotations and scales should be made
+ * through {@link #translate}, {@link #rotate} and {@link #scale} (bracketed, if necessary, by
+ * {@link #pushTransform} and {@link #popTransform}), which apply them both to the matrix and to
+ * the quads added afterwards.  Any other changes to the matrix should be bracketed by
+ * {@link #pushFrame} and {@link #popFrame}, which draw the pending quads.
+ */
+public class QuadBatch
+{
+    /**
+     * Creates a new batch for the specified renderer.
+     */
+    public QuadBatch (Renderer renderer)
+    {
+        _renderer = renderer;
+    }
+
+    /**
+     * Starts batching quads.  Until the matching call to {@link #end}, quads will be held until
+     * the batch is flushed, rather than drawn immediately.
+     */
+    public void begin ()
+    {
+        flush();
+        pushTransformState();
+        _depth++;
+    }
+
+    /**
+     * Draws any pending quads and stops batching (unless the call to {@link #begin} was nested).
+     */
+    public void end ()
+    {
+        flush();
+        popTransformState();
+        _depth--;
+    }
+
+    /**
+     * Draws any pending quads and pushes the modelview matrix, after which the caller may apply
+     * arbitrary transforms (before adding any quads).  Must be matched by a call to
+     * {@link #popFrame}.
+     */
+    public void pushFrame ()
+    {
+        flush();
+        pushTransformState();
+        _renderer.setMatrixMode(GL11.GL_MODELVIEW);
+        GL11.glPushMatrix();
+    }
+
+    /**
+     * Draws any pending quads and pops the modelview matrix pushed in {@link #pushFrame}.
+     */
+    public void popFrame ()
+    {
+        flush();
+        _renderer.setMatrixMode(GL11.GL_MODELVIEW);
+        GL11.glPopMatrix();
+        popTransformState();
+    }
+
+    /**
+     * Pushes the modelview matrix (without drawing the pending quads) so that the transform may
+     * be modified through {@link #translate}, {@link #rotate} and {@link #scale}.  Must be matched
+     * by a call to {@link #popTransform}.
+     */
+    public void pushTransform ()
+    {
+        GL11.glPushMatrix();
+        saveTransform();
+    }
+
+    /**
+     * Pops the modelview matrix pushed in {@link #pushTransform}.
+     */
+    public void popTransform ()
+    {
+        GL11.glPopMatrix();
+        restoreTransform();
+    }
+
+    /**
+     * Translates the modelview matrix, noting the translation so that quads added afterwards
+     * will be positioned correctly.
+     */
+    public void translate (float x, float y)
+    {
+        GL11.glTranslatef(x, y, 0f);
+        _tx += _m00*x + _m10*y;
+        _ty += _m01*x + _m11*y;
+    }
+
+    /**
+     * Rotates the modelview matrix about the z axis, noting the rotation so that quads added
+     * afterwards will be positioned correctly.
+     *
+     * @param angle the rotation angle in degrees.
+     */
+    public void rotate (float angle)
+    {
+        if (angle == 0f) {
+            return;
+        }
+        GL11.glRotatef(angle, 0f, 0f, 1f);
+        float radians = FloatMath.toRadians(angle);
+        float cosa = FloatMath.cos(radians), sina = FloatMath.sin(radians);
+        float m00 = _m00*cosa + _m10*sina, m01 = _m01*cosa + _m11*sina;
+        _m10 = _m10*cosa - _m00*sina;
+        _m11 = _m11*cosa - _m01*sina;
+        _m00 = m00;
+        _m01 = m01;
+        _linear = true;
+    }
+
+    /**
+     * Scales the modelview matrix uniformly in x and y, noting the scale so that quads added
+     * afterwards will be positioned correctly.
+     */
+    public void scale (float scale)
+    {
+        if (scale == 1f) {
+            return;
+        }
+        if (scale == 0f) {
+            flush(); // the pending quads can't be drawn through a singular transform
+        }
+        GL11.glScalef(scale, scale, 1f);
+        _m00 *= scale;
+        _m01 *= scale;
+        _m10 *= scale;
+        _m11 *= scale;
+        _linear = true;
+    }
+
+    /**
+     * Adds an untextured outline to the batch, given its (premultiplied) color, the coordinates
+     * of the lower left and upper right corners of its outer edge, and its width.
+     */
+    public void addOutline (
+        float r, float g, float b, float a, float x1, float y1, float x2, float y2, float width)
+    {
+        add(null, r, g, b, a, x1, y1, x2, y1 + width, 0f, 0f, 0f, 0f);
+        add(null, r, g, b, a, x1, y2 - width, x2, y2, 0f, 0f, 0f, 0f);
+        add(null, r, g, b, a, x1, y1 + width, x1 + width, y2 - width, 0f, 0f, 0f, 0f);
+        add(null, r, g, b, a, x2 - width, y1 + width, x2, y2 - width, 0f, 0f, 0f, 0f);
+    }
+
+    /**
+     * Adds a quad to the batch, given its (premultiplied) color, the coordinates of its lower
+     * left and upper right corners, and the texture coordinates at those corners.
+     *
+     * @param units the texture units with which to draw the quad, or <code>null</code> for none.
+     */
+    public void add (
+        TextureUnit[] units, float r, float g, float b, float a,
+        float x1, float y1, float x2, float y2, float s1, float t1, float s2, float t2)
+    {
+        if (_quadCount == _units.length) {
+            int ncapacity = _quadCount * 2;
+            _vertices = Arrays.copyOf(_vertices, ncapacity * QUAD_SIZE);
+            _bounds = Arrays.copyOf(_bounds, ncapacity * 4);
+            _units = Arrays.copyOf(_units, ncapacity);
+        }
+        int idx = _quadCount * QUAD_SIZE;
+        int bidx = _quadCount * 4;
+        if (_linear) {
+            // transform the corners, which may no longer be axis-aligned
+            float x1x = _m00*x1 + _tx, x1y = _m01*x1 + _ty;
+            float x2x = _m00*x2 + _tx, x2y = _m01*x2 + _ty;
+            float y1x = _m10*y1, y1y = _m11*y1;
+            float y2x = _m10*y2, y2y = _m11*y2;
+            float ax = x1x + y1x, ay = x1y + y1y, bx = x2x + y1x, by = x2y + y1y;
+            float cx = x2x + y2x, cy = x2y + y2y, dx = x1x + y2x, dy = x1y + y2y;
+            idx = putVertex(idx, s1, t1, r, g, b, a, ax, ay);
+            idx = putVertex(idx, s2, t1, r, g, b, a, bx, by);
+            idx = putVertex(idx, s2, t2, r, g, b, a, cx, cy);
+            putVertex(idx, s1, t2, r, g, b, a, dx, dy);
+            _bounds[bidx] = Math.min(Math.min(ax, bx), Math.min(cx, dx));
+            _bounds[bidx + 1] = Math.min(Math.min(ay, by), Math.min(cy, dy));
+            _bounds[bidx + 2] = Math.max(Math.max(ax, bx), Math.max(cx, dx));
+            _bounds[bidx + 3] = Math.max(Math.max(ay, by), Math.max(cy, dy));
+        } else {
+            x1 += _tx;
+            y1 += _ty;
+            x2 += _tx;
+            y2 += _ty;
+            idx = putVertex(idx, s1, t1, r, g, b, a, x1, y1);
+            idx = putVertex(idx, s2, t1, r, g, b, a, x2, y1);
+            idx = putVertex(idx, s2, t2, r, g, b, a, x2, y2);
+            putVertex(idx, s1, t2, r, g, b, a, x1, y2);
+            _bounds[bidx] = Math.min(x1, x2);
+            _bounds[bidx + 1] = Math.min(y1, y2);
+            _bounds[bidx + 2] = Math.max(x1, x2);
+            _bounds[bidx + 3] = Math.max(y1, y2);
+        }
+        _units[_quadCount++] = units;
+
+        // if we're not batching, draw immediately
+        if (_depth == 0) {
+            flush();
+        }
+    }
+
+    /**
+     * Checks whether the batch holds quads that have yet to be drawn.
+     */
+    public boolean isPending ()
+    {
+        return _quadCount > 0 && !_flushing;
+    }
+
+    /**
+     * Draws any pending quads.
+     */
+    public void flush ()
+    {
+        if (_quadCount == 0 || _flushing) {
+            return;
+        }
+        _flushing = true;
+        try {
+            int runs = groupQuads();
+
+            // copy the vertices to the array in run order
+            int size = _quadCount * QUAD_SIZE;
+            if (_buffer == null || _buffer.capacity() < size) {
+                createArrays(Math.max(size, _vertices.length));
+            }
+            _buffer.clear();
+            for (int ii = 0; ii < runs; ii++) {
+                for (int qq = _runFirst[ii]; qq != -1; qq = _next[qq]) {
+                    _buffer.put(_vertices, qq * QUAD_SIZE, QUAD_SIZE);
+                }
+            }
+            _buffer.rewind();
+
+            // draw the runs, undoing the transform applied since the start of the frame
+            _renderer.setArrayState(
+                0, null, _texCoordArrays, _colorArray, null, _vertexArray, null);
+            _renderer.setMatrixMode(GL11.GL_MODELVIEW);
+            boolean translated = (_tx != 0f || _ty != 0f);
+            if (_linear) {
+                GL11.glPushMatrix();
+                GL11.glMultMatrix(getInverseMatrix());
+            } else if (translated) {
+                GL11.glTranslatef(-_tx, -_ty, 0f);
+            }
+            for (int ii = 0, first = 0; ii < runs; ii++) {
+                int count = _runCounts[ii];
+                _renderer.setTextureState(_units[_runFirst[ii]]);
+                GL11.glDrawArrays(GL11.GL_QUADS, first * 4, count * 4);
+                first += count;
+            }
+            if (_linear) {
+                GL11.glPopMatrix();
+            } else if (translated) {
+                GL11.glTranslatef(_tx, _ty, 0f);
+            }
+            _drawCount += runs;
+            _quadsDrawn += _quadCount;
+
+            // the current color is undefined after drawing with a color array
+            _renderer.invalidateColorState();
+
+        } finally {
+            Arrays.fill(_units, 0, _quadCount, null);
+            _quadCount = 0;
+            _flushing = false;
+        }
+    }
+
+    /**
+     * Returns the number of draw calls made since the last call to {@link #resetStats}.
+     */
+    public int getDrawCount ()
+    {
+        return _drawCount;
+    }
+
+    /**
+     * Returns the number of quads drawn since the last call to {@link #resetStats}.
+     */
+    public int getQuadCount ()
+    {
+        return _quadsDrawn;
+    }
+
+    /**
+     * Resets the per-frame stats.
+     */
+    public void resetStats ()
+    {
+        _drawCount = 0;
+        _quadsDrawn = 0;
+    }
+
+    /**
+     * Stores a vertex in the vertex array.
+     *
+     * @return the index following the vertex.
+     */
+    protected int putVertex (
+        int idx, float s, float t, float r, float g, float b, float a, float x, float y)
+    {
+        _vertices[idx++] = s;
+        _vertices[idx++] = t;
+        _vertices[idx++] = r;
+        _vertices[idx++] = g;
+        _vertices[idx++] = b;
+        _vertices[idx++] = a;
+        _vertices[idx++] = x;
+        _vertices[idx++] = y;
+        return idx;
+    }
+
+    /**
+     * Groups the pending quads into runs that share texture state.  A quad may join an earlier
+     * run only if it doesn't overlap any of the runs that follow, so that the result looks the
+     * same as drawing the quads in order.
+     *
+     * @return the number of runs.
+     */
+    protected int groupQuads ()
+    {
+        if (_next.length < _quadCount) {
+            _next = new int[_units.length];
+            _runFirst = new int[_units.length];
+            _runLast = new int[_units.length];
+            _runCounts = new int[_units.length];
+            _runBounds = new float[_units.length * 4];
+        }
+        int runs = 0;
+        for (int ii = 0; ii < _quadCount; ii++) {
+            TextureUnit[] units = _units[ii];
+            int bidx = ii * 4;
+            float lx = _bounds[bidx], ly = _bounds[bidx + 1];
+            float ux = _bounds[bidx + 2], uy = _bounds[bidx + 3];
+            int run = -1;
+            for (int rr = runs - 1, rend = Math.max(runs - MAX_LOOKBACK, 0); rr >= rend; rr--) {
+                if (sameUnits(_units[_runFirst[rr]], units)) {
+                    run = rr;
+                    break;
+                }
+                int ridx = rr * 4;
+                if (lx < _runBounds[ridx + 2] && ux > _runBounds[ridx] &&
+                        ly < _runBounds[ridx + 3] && uy > _runBounds[ridx + 1]) {
+                    break; // can't move the quad past an overlapping run
+                }
+            }
+            _next[ii] = -1;
+            int ridx;
+            if (run == -1) {
+                run = runs++;
+                _runFirst[run] = _runLast[run] = ii;
+                _runCounts[run] = 1;
+                ridx = run * 4;
+                _runBounds[ridx] = lx;
+                _runBounds[ridx + 1] = ly;
+                _runBounds[ridx + 2] = ux;
+                _runBounds[ridx + 3] = uy;
+            } else {
+                _next[_runLast[run]] = ii;
+                _runLast[run] = ii;
+                _runCounts[run]++;
+                ridx = run * 4;
+                _runBounds[ridx] = Math.min(_runBounds[ridx], lx);
+                _runBounds[ridx + 1] = Math.min(_runBounds[ridx + 1], ly);
+                _runBounds[ridx + 2] = Math.max(_runBounds[ridx + 2], ux);
+                _runBounds[ridx + 3] = Math.max(_runBounds[ridx + 3], uy);
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * (Re)creates the vertex buffer and the client arrays that reference it.
+     */
+    protected void createArrays (int size)
+    {
+        _buffer = BufferUtils.createFloatBuffer(size);
+        _texCoordArrays = new ClientArray[] { new ClientArray(2, STRIDE, 0, _buffer) };
+        _colorArray = new ClientArray(4, STRIDE, 8, _buffer);
+        _vertexArray = new ClientArray(2, STRIDE, 24, _buffer);
+    }
+
+    /**
+     * Returns the inverse of the transform applied since the start of the frame, in a buffer
+     * suitable for passing to GL.
+     */
+    protected FloatBuffer getInverseMatrix ()
+    {
+        float rdet = 1f / (_m00*_m11 - _m01*_m10);
+        float i00 = _m11*rdet, i01 = -_m01*rdet, i10 = -_m10*rdet, i11 = _m00*rdet;
+        _matrix.put(i00).put(i01).put(0f).put(0f);
+        _matrix.put(i10).put(i11).put(0f).put(0f);
+        _matrix.put(0f).put(0f).put(1f).put(0f);
+        _matrix.put(-(i00*_tx + i10*_ty)).put(-(i01*_tx + i11*_ty)).put(0f).put(1f);
+        _matrix.rewind();
+        return _matrix;
+    }
+
+    /**
+     * Saves the current transform and starts a new frame with the identity transform.
+     */
+    protected void pushTransformState ()
+    {
+        saveTransform();
+        _m00 = _m11 = 1f;
+        _m01 = _m10 = _tx = _ty = 0f;
+        _linear = false;
+    }
+
+    /**
+     * Restores the transform saved by the last call to {@link #pushTransformState}.
+     */
+    protected void popTransformState ()
+    {
+        restoreTransform();
+    }
+
+    /**
+     * Saves the current transform on the stack.
+     */
+    protected void saveTransform ()
+    {
+        int idx = _transformCount * TRANSFORM_SIZE;
+        if (_transforms.length == idx) {
+            _transforms = Arrays.copyOf(_transforms, idx * 2);
+        }
+        _transforms[idx++] = _m00;
+        _transforms[idx++] = _m01;
+        _transforms[idx++] = _m10;
+        _transforms[idx++] = _m11;
+        _transforms[idx++] = _tx;
+        _transforms[idx] = _ty;
+        _transformCount++;
+    }
+
+    /**
+     * Restores the transform at the top of the stack.
+     */
+    protected void restoreTransform ()
+    {
+        int idx = --_transformCount * TRANSFORM_SIZE;
+        _m00 = _transforms[idx++];
+        _m01 = _transforms[idx++];
+        _m10 = _transforms[idx++];
+        _m11 = _transforms[idx++];
+        _tx = _transforms[idx++];
+        _ty = _transforms[idx];
+        _linear = (_m00 != 1f || _m01 != 0f || _m10 != 0f || _m11 != 1f);
+    }
+
+    /**
+     * Checks whether the two sets of texture units are the same.
+     */
+    protected static boolean sameUnits (TextureUnit[] u1, TextureUnit[] u2)
+    {
+        if (u1 == u2) {
+            return true;
+        }
+        if (u1 == null || u2 == null || u1.length != u2.length) {
+            return false;
+        }
+        for (int ii = 0; ii < u1.length; ii++) {
+            if (u1[ii] != u2[ii]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** The renderer that owns the batch. */
+    protected Renderer _renderer;
+
+    /** The number of nested calls to {@link #begin}. */
+    protected int _depth;
+
+    /** The linear part of the transform applied since the start of the current frame. */
+    protected float _m00 = 1f, _m01, _m10, _m11 = 1f;
+
+    /** The translation applied since the start of the current frame. */
+    protected float _tx, _ty;
+
+    /** Whether the transform has a linear part other than the identity. */
+    protected boolean _linear;
+
+    /** The transforms saved by {@link #saveTransform}. */
+    protected float[] _transforms = new float[8 * TRANSFORM_SIZE];
+
+    /** The number of transforms saved. */
+    protected int _transformCount;
+
+    /** Holds the inverse transform for GL. */
+    protected FloatBuffer _matrix = BufferUtils.createFloatBuffer(16);
+
+    /** The number of pending quads. */
+    protected int _quadCount;
+
+    /** The vertices of the pending quads (texture coordinates, color, position). */
+    protected float[] _vertices = new float[INITIAL_CAPACITY * QUAD_SIZE];
+
+    /** The bounds of the pending quads (minimum x, minimum y, maximum x, maximum y). */
+    protected float[] _bounds = new float[INITIAL_CAPACITY * 4];
+
+    /** The texture units of the pending quads. */
+    protected TextureUnit[][] _units = new TextureUnit[INITIAL_CAPACITY][];
+
+    /** For each quad, the index of the next quad in its run (or -1). */
+    protected int[] _next = new int[0];
+
+    /** The first and last quad of each run. */
+    protected int[] _runFirst, _runLast;
+
+    /** The number of quads in each run. */
+    protected int[] _runCounts;
+
+    /** The bounds of each run. */
+    protected float[] _runBounds;
+
+    /** Set while we're flushing, when renderer state changes are our own. */
+    protected boolean _flushing;
+
+    /** The buffer from which we draw. */
+    protected FloatBuffer _buffer;
+
+    /** The client arrays referencing the buffer. */
+    protected ClientArray[] _texCoordArrays;
+
+    /** The client arrays referencing the buffer. */
+    protected ClientArray _colorArray, _vertexArray;
+
+    /** The draw calls and quads since the stats were reset. */
+    protected int _drawCount, _quadsDrawn;
+
+    /** The number of floats in each saved transform. */
+    protected static final int TRANSFORM_SIZE = 6;
+
+    /** The number of floats in each quad. */
+    protected static final int QUAD_SIZE = 4 * 8;
+
+    /** The number of bytes in each vertex. */
+    protected static final int STRIDE = 8 * 4;
+
+    /** The initial quad capacity. */
+    protected static final int INITIAL_CAPACITY = 256;
+
+    /** The maximum number of runs to search back when looking for one to join. */
+    protected static final int MAX_LOOKBACK = 16;
+}
@@ -29,6 +29,7 @@ import java.nio.DoubleBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 
+import java.util.ArrayDeque;
 import java.util.List;
 
 import org.lwjgl.BufferUtils;
@@ -342,6 +343,15 @@ public class Renderer
         _textureChangeCount = 0;
         _batchCount = 0;
         _primitiveCount = 0;
+        _quadBatch.resetStats();
+    }
+
+    /**
+     * Returns a reference to the batch used to accumulate user interface quads.
+     */
+    public QuadBatch getQuadBatch ()
+    {
+        return _quadBatch;
     }
 
     /**
@@ -399,6 +409,40 @@ public class Renderer
     {
         // delete any finalized objects
         deleteFinalizedObjects();
+
+        // perform queued uploads (at least one per frame) within the budget
+        if (!_uploads.isEmpty()) {
+            long end = System.currentTimeMillis() + _uploadBudget;
+            do {
+                _uploads.poll().run();
+            } while (!_uploads.isEmpty() && System.currentTimeMillis() < end);
+        }
+    }
+
+    /**
+     * Queues an upload (such as a texture level) to be performed in a subsequent call to
+     * {@link #cleanup}, subject to the per-frame upload budget.  Uploads are performed in the
+     * order queued.
+     */
+    public void queueUpload (Runnable upload)
+    {
+        _uploads.add(upload);
+    }
+
+    /**
+     * Sets the maximum amount of time to spend on queued uploads each frame.
+     */
+    public void setUploadBudget (long budget)
+    {
+        _uploadBudget = budget;
+    }
+
+    /**
+     * Returns the maximum amount of time to spend on queued uploads each frame.
+     */
+    public long getUploadBudget ()
+    {
+        return _uploadBudget;
     }
 
     /**
@@ -631,6 +675,7 @@ public class Renderer
      */
     public void setScissor (Rectangle box)
     {
+        flushQuads();
         boolean scissorTestEnabled = (box != null);
         if (_scissorTestEnabled != Boolean.valueOf(scissorTestEnabled)) {
             setCapability(GL11.GL_SCISSOR_TEST, _scissorTestEnabled = scissorTestEnabled);
@@ -714,6 +759,7 @@ public class Renderer
      */
     public void setStates (RenderState[] states)
     {
+        flushQuads();
         for (int ii = 0; ii < RenderState.STATE_COUNT; ii++) {
             RenderState state = states[ii];
             if (state != null && (_states[ii] != state || state.isDirty())) {
@@ -729,6 +775,7 @@ public class Renderer
      */
     public void setState (RenderState state)
     {
+        flushQuads();
         int type = state.getType();
         if (_states[type] != state || state.isDirty()) {
             state.apply(this);
@@ -930,6 +977,7 @@ public class Renderer
      */
     public void setColorState (Color4f color)
     {
+        flushQuads();
         if (!_color.equals(color)) {
             GL11.glColor4f(color.r, color.g, color.b, color.a);
             _color.set(color);
@@ -942,6 +990,7 @@ public class Renderer
      */
     public void setColorState (float r, float g, float b, float a)
     {
+        flushQuads();
         if (_color.r != r || _color.g != g || _color.b != b || _color.a != a) {
             GL11.glColor4f(r, g, b, a);
             _color.set(r, g, b, a);
@@ -1489,6 +1538,8 @@ public class Renderer
      */
     public void setTextureState (TextureUnit[] units)
     {
+        flushQuads();
+
         // clear any cached reference
         _states[RenderState.TEXTURE_STATE] = null;
 
@@ -1836,6 +1887,7 @@ public class Renderer
      */
     public void setTransformState (Transform3D modelview)
     {
+        flushQuads();
         if (!_modelview.equals(modelview)) {
             setMatrixMode(GL11.GL_MODELVIEW);
             loadTransformMatrix(_modelview.set(modelview));
@@ -1874,16 +1926,30 @@ public class Renderer
      */
     public void setMatrixMode (int matrixMode)
     {
+        flushQuads();
         if (_matrixMode != matrixMode) {
             GL11.glMatrixMode(_matrixMode = matrixMode);
         }
     }
 
+    /**
+     * Draws any quads pending in the quad batch, which must happen before the renderer's state
+     * is changed by anything other than the batch itself.
+     */
+    protected void flushQuads ()
+    {
+        if (_quadBatch.isPending()) {
+            _quadBatch.flush();
+        }
+    }
+
     /**
      * Renders the provided list of batches.
      */
     public void render (List<Batch> batches)
     {
+        flushQuads();
+
         // for each batch, set the states and call its draw command
         int size = batches.size();
         for (int ii = 0; ii < size; ii++) {
@@ -2730,6 +2796,9 @@ public class Renderer
     /** The number of primitives rendered in the current frame. */
     protected int _primitiveCount;
 
+    /** Accumulates user interface quads. */
+    protected QuadBatch _quadBatch = new QuadBatch(this);
+
     /** References to the last states applied. */
     protected RenderState[] _states = RenderState.createDefaultSet();
 
@@ -3036,6 +3105,12 @@ public class Renderer
     /** The total number of bytes in textures. */
     protected int _textureBytes;
 
+    /** Uploads queued for subsequent frames. */
+    protected ArrayDeque<Runnable> _uploads = new ArrayDeque<Runnable>();
+
+    /** The maximum amount of time to spend on queued uploads each frame. */
+    protected long _uploadBudget = 2L;
+
     /** The list of buffer objects to be deleted. */
     protected int[] _finalizedBufferObjects;
 
@@ -258,6 +258,25 @@ public abstract class Texture
         }
     }
 
+    /**
+     * Sets the lowest defined mipmap level, as when the larger levels have yet to be loaded.
+     */
+    public void setBaseLevel (int baseLevel)
+    {
+        if (_baseLevel != baseLevel) {
+            _renderer.setTexture(this);
+            GL11.glTexParameteri(_target, GL12.GL_TEXTURE_BASE_LEVEL, _baseLevel = baseLevel);
+        }
+    }
+
+    /**
+     * Returns the lowest defined mipmap level.
+     */
+    public int getBaseLevel ()
+    {
+        return _baseLevel;
+    }
+
     /**
      * Convenience method to set both compare parameters at once.
      */
@@ -521,6 +540,9 @@ public abstract class Texture
     /** Whether or not mipmaps should be automatically generated. */
     protected boolean _generateMipmaps;
 
+    /** The lowest defined mipmap level. */
+    protected int _baseLevel;
+
     /** The texture compare mode. */
     protected int _compareMode = GL11.GL_NONE;
 
@@ -92,6 +92,18 @@ public class Texture2D extends Texture
         }
     }
 
+    /**
+     * Sets the format and dimensions of the first mipmap level in advance of the level itself,
+     * as when the smaller levels are loaded first.
+     */
+    public void setBaseDimensions (int format, int width, int height)
+    {
+        _imageGeneration++;
+        _format = format;
+        _width = width;
+        _height = height;
+    }
+
     /**
      * Sets a single mipmap level of this texture.
      */
@@ -113,6 +125,7 @@ public class Texture2D extends Texture
             height = GlUtil.nextPowerOfTwo(height);
         }
         if (level == 0) {
+            firstLevelReplaced();
             _format = format;
             _width = width;
             _height = height;
@@ -131,6 +144,7 @@ public class Texture2D extends Texture
         int level, int format, int width, int height, boolean border, ByteBuffer data)
     {
         if (level == 0) {
+            firstLevelReplaced();
             _format = format;
             _width = width;
             _height = height;
@@ -166,6 +180,7 @@ public class Texture2D extends Texture
             width = GlUtil.nextPowerOfTwo(width);
             height = GlUtil.nextPowerOfTwo(height);
         }
+        firstLevelReplaced();
         _format = format;
         _width = width;
         _height = height;
@@ -190,6 +205,7 @@ public class Texture2D extends Texture
             height = GlUtil.nextPowerOfTwo(height);
         }
         if (level == 0) {
+            firstLevelReplaced();
             _format = format;
             _width = width;
             _height = height;
@@ -240,6 +256,7 @@ public class Texture2D extends Texture
             width = GlUtil.nextPowerOfTwo(width);
             height = GlUtil.nextPowerOfTwo(height);
         }
+        firstLevelReplaced();
         _renderer.setTexture(this);
         ByteBuffer data = getData(image, premultiply, width, height, rescale);
         if (mipmap && !isRectangle()) { // rectangles cannot be mipmapped
@@ -295,6 +312,16 @@ public class Texture2D extends Texture
         GL11.glCopyTexSubImage2D(_target, level, xoffset, yoffset, x, y, width, height);
     }
 
+    /**
+     * Returns the generation of the texture's image, which changes whenever the first mipmap
+     * level is replaced (or its dimensions set in advance).  Levels streamed in for one image
+     * must not be uploaded once the generation has changed.
+     */
+    public int getImageGeneration ()
+    {
+        return _imageGeneration;
+    }
+
     @Override
     public int getWidth ()
     {
@@ -307,6 +334,19 @@ public class Texture2D extends Texture
         return _height;
     }
 
+    /**
+     * Notes that the first mipmap level is being replaced, which supersedes any levels still
+     * being streamed in for the previous image and makes the first level the base again.
+     */
+    protected void firstLevelReplaced ()
+    {
+        _imageGeneration++;
+        setBaseLevel(0);
+    }
+
     /** The dimensions of the texture. */
     protected int _width, _height;
+
+    /** The generation of the texture's image. */
+    protected int _imageGeneration;
 }
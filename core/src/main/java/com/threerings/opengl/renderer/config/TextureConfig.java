@@ -760,8 +760,9 @@ public class TextureConfig extends ParameterizedConfig
                 }
                 if (file.endsWith(".dds")) {
                     try {
+                        // stream in the larger levels of mipmapped textures
                         DDSLoader.load(ctx.getResourceManager().getResourceFile(file),
-                            texture, border);
+                            texture, border, mipmap ? ctx.getRenderer() : null);
                         return;
                     } catch (IOException e) {
                         e.printStackTrace();
@@ -31,13 +31,21 @@ import java.io.IOException;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
 import org.lwjgl.opengl.EXTBgra;
 import org.lwjgl.opengl.EXTTextureCompressionS3TC;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GLContext;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+import com.threerings.opengl.renderer.Renderer;
 import com.threerings.opengl.renderer.Texture1D;
 import com.threerings.opengl.renderer.Texture2D;
 import com.threerings.opengl.renderer.Texture3D;
@@ -83,40 +91,87 @@ public class DDSLoader
      */
     public static void load (File file, Texture2D texture, boolean border)
         throws IOException
+    {
+        load(file, texture, border, null);
+    }
+
+    /**
+     * Loads a 2D texture from the supplied file, optionally streaming in its larger mipmap levels.
+     *
+     * @param renderer if non-null, the renderer through which to stream the levels larger than
+     * {@link #STREAM_INITIAL_SIZE}.  Only the smaller levels are loaded immediately; the others
+     * are queued with the renderer, largest last, and the base level lowered as each arrives.
+     */
+    public static void load (
+        File file, final Texture2D texture, final boolean border, Renderer renderer)
+        throws IOException
     {
         ByteBuffer buf = load(file);
         Header header = new Header(buf);
         if ((header.caps2 & (DDSCAPS2_VOLUME | DDSCAPS2_CUBEMAP)) != 0) {
             throw new IOException("Not a 2D texture: " + file);
         }
+        int width = header.width;
+        int height = header.height;
+        Level2D[] levels = new Level2D[header.getLevels()];
         if (header.fourCC == null) {
-            int width = header.width;
-            int height = header.height;
             int format = ((header.pixelFormatFlags & DDPF_ALPHAPIXELS) == 0) ?
                 GL11.GL_RGB : GL11.GL_RGBA;
             int dformat = header.getUncompressedFormat();
-            for (int ii = 0, nn = header.getLevels(); ii < nn; ii++) {
+            for (int ii = 0; ii < levels.length; ii++) {
                 int pitch = width * (format == GL11.GL_RGB ? 3 : 4);
-                buf.limit(buf.position() + height*pitch);
-                texture.setImage(ii, format, width, height, border, dformat, GL11.GL_UNSIGNED_BYTE, buf);
+                levels[ii] = new Level2D(
+                    ii, format, dformat, width, height, slice(buf, height*pitch));
                 width = Math.max(width/2, 1);
                 height = Math.max(height/2, 1);
-                buf.position(buf.limit());
             }
         } else {
-            int width = header.width;
-            int height = header.height;
             int format = header.getCompressedFormat();
-            for (int ii = 0, nn = header.getLevels(); ii < nn; ii++) {
+            for (int ii = 0; ii < levels.length; ii++) {
                 int size = Math.max(width/4, 1) * Math.max(height/4, 1) *
                     (format == EXTTextureCompressionS3TC.GL_COMPRESSED_RGB_S3TC_DXT1_EXT ? 8 : 16);
-                buf.limit(buf.position() + size);
-                texture.setCompressedImage(ii, format, width, height, border, buf);
+                levels[ii] = new Level2D(ii, format, 0, width, height, slice(buf, size));
                 width = Math.max(width/2, 1);
                 height = Math.max(height/2, 1);
-                buf.position(buf.limit());
             }
         }
+
+        // find the first level small enough to load immediately
+        int first = 0;
+        if (renderer != null && !texture.isRectangle()) {
+            while (first < levels.length - 1 &&
+                    Math.max(levels[first].width, levels[first].height) > STREAM_INITIAL_SIZE) {
+                first++;
+            }
+        }
+        if (first == 0) {
+            for (Level2D level : levels) {
+                level.upload(texture, border);
+            }
+            return;
+        }
+        Level2D base = levels[0];
+        texture.setBaseDimensions(base.format, base.width, base.height);
+        for (int ii = first; ii < levels.length; ii++) {
+            levels[ii].upload(texture, border);
+        }
+        texture.setBaseLevel(first);
+
+        // queue the rest, making sure that the texture hasn't been deleted or given another
+        // image (through this or any other path) when it comes time to upload them
+        final int generation = texture.getImageGeneration();
+        for (int ii = first - 1; ii >= 0; ii--) {
+            final Level2D level = levels[ii];
+            renderer.queueUpload(new Runnable() {
+                public void run () {
+                    if (texture.getImageGeneration() != generation || texture.getId() == 0) {
+                        return;
+                    }
+                    level.upload(texture, border);
+                    texture.setBaseLevel(level.level);
+                }
+            });
+        }
     }
 
     /**
@@ -196,16 +251,54 @@ public class DDSLoader
     }
 
     /**
-     * Loads the entire file into a (direct, little-endian) byte buffer.
+     * Reads the supplied file in advance of its being loaded into a texture, so that the I/O may
+     * be done outside of the render thread.  May be called from any thread.
+     */
+    public static void prefetch (File file)
+    {
+        if (_prefetched.containsKey(file)) {
+            return;
+        }
+        try {
+            ByteBuffer buf = read(file);
+            if (buf instanceof MappedByteBuffer) {
+                ((MappedByteBuffer)buf).load(); // bring the pages into memory
+            }
+            _prefetched.put(file, buf);
+        } catch (IOException e) {
+            // we'll report the error if and when the file is loaded
+        }
+    }
+
+    /**
+     * Retrieves the contents of the specified file, using the prefetched contents if available.
      */
     protected static ByteBuffer load (File file)
         throws IOException
+    {
+        ByteBuffer buf = _prefetched.remove(file);
+        return (buf == null) ? read(file) : buf;
+    }
+
+    /**
+     * Reads the entire file into a (direct, little-endian) byte buffer.  Files of at least
+     * {@link #MAP_THRESHOLD} bytes are mapped rather than copied, so that their levels may be
+     * sliced directly from the mapping.
+     */
+    protected static ByteBuffer read (File file)
+        throws IOException
     {
         FileInputStream in = new FileInputStream(file);
         try {
             FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                // the mapping remains valid after the channel is closed
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0L, size).order(
+                    ByteOrder.LITTLE_ENDIAN);
+            }
             ByteBuffer buf =
-                ByteBuffer.allocateDirect((int)channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+                ByteBuffer.allocateDirect((int)size).order(ByteOrder.LITTLE_ENDIAN);
             channel.read(buf);
             buf.rewind();
             return buf;
@@ -215,6 +308,63 @@ public class DDSLoader
         }
     }
 
+    /**
+     * Returns a buffer containing the next <code>length</code> bytes of the supplied buffer and
+     * advances its position past them.
+     */
+    protected static ByteBuffer slice (ByteBuffer buf, int length)
+    {
+        int limit = buf.limit();
+        buf.limit(buf.position() + length);
+        ByteBuffer slice = buf.slice();
+        buf.position(buf.limit()).limit(limit);
+        return slice;
+    }
+
+    /**
+     * A single level of a 2D texture.
+     */
+    protected static class Level2D
+    {
+        /** The mipmap level. */
+        public final int level;
+
+        /** The internal format. */
+        public final int format;
+
+        /** The data format, or zero if the data is compressed. */
+        public final int dformat;
+
+        /** The dimensions of the level. */
+        public final int width, height;
+
+        /** The level data. */
+        public final ByteBuffer data;
+
+        public Level2D (int level, int format, int dformat, int width, int height, ByteBuffer data)
+        {
+            this.level = level;
+            this.format = format;
+            this.dformat = dformat;
+            this.width = width;
+            this.height = height;
+            this.data = data;
+        }
+
+        /**
+         * Uploads the level to the specified texture.
+         */
+        public void upload (Texture2D texture, boolean border)
+        {
+            if (dformat == 0) {
+                texture.setCompressedImage(level, format, width, height, border, data);
+            } else {
+                texture.setImage(
+                    level, format, width, height, border, dformat, GL11.GL_UNSIGNED_BYTE, data);
+            }
+        }
+    }
+
     /**
      * The DDS file header.
      */
@@ -388,4 +538,30 @@ public class DDSLoader
 
     /** Caps flag indicating that the texture is a volume texture. */
     protected static final int DDSCAPS2_VOLUME = 0x00200000;
+
+    /** The maximum size of the levels of streamed textures to load immediately. */
+    protected static final int STREAM_INITIAL_SIZE = 64;
+
+    /** Files at least this large are mapped rather than read. */
+    protected static final long MAP_THRESHOLD = 64 * 1024;
+
+    /** The maximum total size in bytes of the prefetched file contents. */
+    protected static final long MAX_PREFETCHED_BYTES = 64L * 1024 * 1024;
+
+    /** The number of seconds after which unconsumed prefetched contents are discarded. */
+    protected static final long PREFETCH_TIMEOUT = 60L;
+
+    /** File contents read in advance of loading, removed when loaded.  Because the buffers are
+     * direct (and so small on the heap), soft references wouldn't be cleared in time to bound
+     * their memory: instead, we limit the total size and discard those not loaded in time. */
+    protected static final ConcurrentMap<File, ByteBuffer> _prefetched =
+        CacheBuilder.newBuilder()
+            .maximumWeight(MAX_PREFETCHED_BYTES)
+            .weigher(new Weigher<File, ByteBuffer>() {
+                public int weigh (File file, ByteBuffer buf) {
+                    return buf.capacity();
+                }
+            })
+            .expireAfterWrite(PREFETCH_TIMEOUT, TimeUnit.SECONDS)
+            .<File, ByteBuffer>build().asMap();
 }
@@ -30,6 +30,12 @@ import java.awt.image.BufferedImage;
 import java.io.IOException;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.cache.CacheBuilder;
 
 import com.threerings.media.image.Colorization;
 import com.threerings.media.image.ImageUtil;
@@ -73,6 +79,33 @@ public class ImageCache extends ResourceCache
         return _buffered.getResource(new ImageKey(path, zations));
     }
 
+    /**
+     * Reads and decodes the specified image in advance of its being requested, so that the work
+     * may be done outside of the render thread.  Paths that don't refer to images are ignored.
+     * Unlike the other methods of the cache, this may be called from any thread.
+     */
+    public void prefetch (String path)
+    {
+        String lpath = path.toLowerCase();
+        if (lpath.endsWith(".dds")) {
+            DDSLoader.prefetch(_ctx.getResourceManager().getResourceFile(path));
+            return;
+        }
+        if (!(lpath.endsWith(".png") || lpath.endsWith(".jpg") || lpath.endsWith(".jpeg") ||
+                lpath.endsWith(".gif") || lpath.endsWith(".bmp")) ||
+                _loaded.contains(path) || _prefetched.containsKey(path)) {
+            return;
+        }
+        try {
+            BufferedImage image = _ctx.getResourceManager().getImageResource(path);
+            if (image != null) {
+                _prefetched.put(path, image);
+            }
+        } catch (IOException e) {
+            // we'll report the error if and when the image is loaded
+        }
+    }
+
     /**
      * Clears the cache, forcing resources to be reloaded.
      */
@@ -80,6 +113,8 @@ public class ImageCache extends ResourceCache
     {
         _images.clear();
         _buffered.clear();
+        _loaded.clear();
+        _prefetched.clear();
     }
 
     /**
@@ -141,7 +176,11 @@ public class ImageCache extends ResourceCache
             if (key.zations.length > 0) {
                 return ImageUtil.recolorImage(getBufferedImage(key.path), key.zations);
             }
-            BufferedImage image = null;
+            _loaded.add(key.path);
+            BufferedImage image = _prefetched.remove(key.path);
+            if (image != null) {
+                return image;
+            }
             try {
                 if ((image = _ctx.getResourceManager().getImageResource(key.path)) == null) {
                     log.warning("Unknown image format.", "path", key.path);
@@ -155,4 +194,12 @@ public class ImageCache extends ResourceCache
             return key.path;
         }
     };
+
+    /** The paths of the buffered images that have been loaded, which we need not prefetch. */
+    protected Set<String> _loaded = Collections.newSetFromMap(
+        new ConcurrentHashMap<String, Boolean>());
+
+    /** Images decoded in advance of loading, softly held. */
+    protected ConcurrentMap<String, BufferedImage> _prefetched =
+        CacheBuilder.newBuilder().softValues().<String, BufferedImage>build().asMap();
 }
@@ -25,12 +25,18 @@
 
 package com.threerings.opengl.util;
 
+import java.util.HashSet;
+
 import com.threerings.config.ConfigGroup;
+import com.threerings.config.ConfigManager;
 import com.threerings.config.ConfigReference;
 import com.threerings.config.ManagedConfig;
 import com.threerings.util.DeepObject;
 import com.threerings.util.DeepOmit;
 
+import com.threerings.openal.Sounder;
+import com.threerings.openal.config.SounderConfig;
+
 import com.threerings.opengl.model.config.AnimationConfig;
 import com.threerings.opengl.model.config.ArticulatedConfig;
 import com.threerings.opengl.model.config.ModelConfig;
@@ -91,12 +97,20 @@ public abstract class Preloadable extends DeepObject
             return _ref;
         }
 
+        @Override
+        public void prefetch (GlContext ctx)
+        {
+            prefetch(ctx, _clazz, _ref);
+        }
+
         @Override
         public void preload (GlContext ctx)
         {
             _config = ctx.getConfigManager().getConfig(_clazz, _ref);
             if (_config instanceof LoadableConfig) {
                 ((LoadableConfig)_config).preload(ctx);
+            } else if (_config instanceof SounderConfig) {
+                Sounder.preloadClips(ctx, (SounderConfig)_config);
             }
         }
 
@@ -138,6 +152,12 @@ public abstract class Preloadable extends DeepObject
             return _ref;
         }
 
+        @Override
+        public void prefetch (GlContext ctx)
+        {
+            prefetch(ctx, ModelConfig.class, _ref);
+        }
+
         @Override
         public void preload (GlContext ctx)
         {
@@ -186,6 +206,12 @@ public abstract class Preloadable extends DeepObject
             return _ref;
         }
 
+        @Override
+        public void prefetch (GlContext ctx)
+        {
+            prefetch(ctx, AnimationConfig.class, _ref);
+        }
+
         @Override
         public void preload (GlContext ctx)
         {
@@ -212,9 +238,37 @@ public abstract class Preloadable extends DeepObject
         protected com.threerings.opengl.model.Animation _anim;
     }
 
+    /**
+     * Performs the parts of the preload that may be done in advance on a worker thread, such as
+     * reading and decoding resource files.  Implementations must not touch the renderer or any
+     * other state confined to the render thread.
+     */
+    public void prefetch (GlContext ctx)
+    {
+        // nothing by default
+    }
+
     /**
      * Preloads this resource and creates a reference to it, preventing it from being
      * garbage-collected.
      */
     public abstract void preload (GlContext ctx);
+
+    /**
+     * Prefetches the referenced config if it is loaded from a resource, along with the images
+     * on which it depends.
+     */
+    protected static void prefetch (GlContext ctx, Class<?> clazz, ConfigReference<?> ref)
+    {
+        ConfigManager cfgmgr = ctx.getConfigManager();
+        if (ref == null || !cfgmgr.isResourceClass(clazz)) {
+            return;
+        }
+        HashSet<String> paths = new HashSet<String>();
+        cfgmgr.prefetchResourceConfig(ref.getName(), paths);
+        ImageCache cache = ctx.getImageCache();
+        for (String path : paths) {
+            cache.prefetch(path);
+        }
+    }
 }
@@ -27,20 +27,47 @@ package com.threerings.opengl.util;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import com.google.common.collect.Lists;
 
+import com.threerings.util.WorkerPool;
+
+import static com.threerings.opengl.Log.log;
+
 /**
  * Contains a set of preloadables and provides a means for incrementalling preloading them.
+ * When configured with prefetch threads, the preloadables are first prefetched on the shared
+ * {@link WorkerPool} (reading and decoding their resources) and then handed to the calling thread
+ * through a bounded queue, so that each batch performs only the work that requires the render
+ * thread.
  */
 public class PreloadableSet extends HashSet<Preloadable>
 {
+    /** The default maximum number of pool threads prefetching at once. */
+    public static final int DEFAULT_PREFETCH_THREADS =
+        Integer.getInteger("preload_threads", 1);
+
     /**
-     * Creates a new preloadable set.
+     * Creates a new preloadable set that shares the default number of prefetch threads with the
+     * other sets so created.
      */
     public PreloadableSet (GlContext ctx)
     {
         _ctx = ctx;
+        _limiter = _defaultLimiter;
+    }
+
+    /**
+     * Creates a new preloadable set.
+     *
+     * @param threads the maximum number of the worker pool's threads to use at once to prefetch
+     * the preloadables, or zero to perform all of the work in {@link #preloadBatch}.
+     */
+    public PreloadableSet (GlContext ctx, int threads)
+    {
+        _ctx = ctx;
+        _limiter = new WorkerPool.Limiter(threads);
     }
 
     /**
@@ -62,23 +89,50 @@ public class PreloadableSet extends HashSet<Preloadable>
      */
     public float preloadBatch (long duration)
     {
-        if (_remaining != null && _remaining.isEmpty()) {
-            return 1f;
-        }
         if (_remaining == null) {
             _remaining = Lists.newArrayList(this);
+            if (_limiter.isEnabled() && !_remaining.isEmpty()) {
+                _unfinished = _remaining.size();
+                _prefetched = new ConcurrentLinkedQueue<Preloadable>();
+            }
+        } else if (_unfinished == 0) {
+            return 1f;
         }
         long end = System.currentTimeMillis() + duration;
-        for (int ii = _remaining.size() - 1; ii >= 0 && System.currentTimeMillis() < end; ii--) {
-            _remaining.remove(ii).preload(_ctx);
-            _preloaded++;
+        if (_prefetched == null) {
+            for (int ii = _remaining.size() - 1;
+                    ii >= 0 && System.currentTimeMillis() < end; ii--) {
+                _remaining.remove(ii).preload(_ctx);
+                _preloaded++;
+            }
+            _unfinished = _remaining.size();
+        } else {
+            // only preload what the workers have finished prefetching; we don't wait for them
+            Preloadable preloadable;
+            while (_unfinished > 0 && System.currentTimeMillis() < end &&
+                    (preloadable = _prefetched.poll()) != null) {
+                _queued--;
+                preloadable.preload(_ctx);
+                _preloaded++;
+                _unfinished--;
+            }
+            startPrefetching();
         }
-        if (_remaining.isEmpty()) {
+        if (_unfinished == 0) {
             return 1f;
         }
         return (float)_preloaded / size();
     }
 
+    /**
+     * Stops prefetching any preloadables not yet handed over by the workers.  Should be called
+     * when the set is abandoned before it has been completely preloaded.
+     */
+    public void cancel ()
+    {
+        _cancelled = true;
+    }
+
     @Override
     public boolean add (Preloadable preloadable)
     {
@@ -93,12 +147,75 @@ public class PreloadableSet extends HashSet<Preloadable>
         return true;
     }
 
+    /**
+     * Submits prefetches for the remaining preloadables while there's room in the queue for
+     * them.  The limiter runs them on no more than the configured number of threads at once.
+     */
+    protected void startPrefetching ()
+    {
+        for (int size = _remaining.size(); !_cancelled && size > 0 &&
+                _queued < PREFETCH_QUEUE_CAPACITY; size--, _queued++) {
+            _limiter.execute(new Prefetch(_remaining.remove(size - 1)));
+        }
+    }
+
+    /**
+     * Prefetches a single preloadable and queues it for preloading.
+     */
+    protected class Prefetch
+        implements Runnable
+    {
+        public Prefetch (Preloadable preloadable)
+        {
+            _preloadable = preloadable;
+        }
+
+        // documentation inherited from interface Runnable
+        public void run ()
+        {
+            if (!_cancelled) {
+                try {
+                    _preloadable.prefetch(_ctx);
+                } catch (Throwable t) {
+                    // the preload will pick up whatever the prefetch missed
+                    log.warning("Failed to prefetch resource.", "preloadable", _preloadable, t);
+                }
+            }
+            _prefetched.add(_preloadable);
+        }
+
+        /** The preloadable to prefetch. */
+        protected Preloadable _preloadable;
+    }
+
     /** The application context. */
     protected GlContext _ctx;
 
-    /** The list of resources remaining to be preloaded. */
+    /** Runs the prefetches on the worker pool. */
+    protected WorkerPool.Limiter _limiter;
+
+    /** The list of resources remaining to be preloaded (or prefetched, when using workers). */
     protected List<Preloadable> _remaining;
 
+    /** The queue of prefetched resources awaiting preloading, if using workers. */
+    protected ConcurrentLinkedQueue<Preloadable> _prefetched;
+
+    /** The number of resources submitted for prefetching but not yet preloaded. */
+    protected int _queued;
+
+    /** The number of resources from the initial batch not yet preloaded. */
+    protected int _unfinished;
+
     /** The number of resources preloaded so far. */
     protected int _preloaded;
+
+    /** Set when the workers should stop prefetching. */
+    protected volatile boolean _cancelled;
+
+    /** The limiter shared by the sets using the default number of prefetch threads. */
+    protected static final WorkerPool.Limiter _defaultLimiter =
+        new WorkerPool.Limiter(DEFAULT_PREFETCH_THREADS);
+
+    /** The maximum number of prefetched resources awaiting preloading. */
+    protected static final int PREFETCH_QUEUE_CAPACITY = 64;
 }
@@ -30,7 +30,9 @@ import java.awt.Font;
 import com.threerings.opengl.compositor.Compositor;
 import com.threerings.opengl.gui.text.CharacterTextFactory;
 import com.threerings.opengl.gui.text.Text;
+import com.threerings.opengl.model.Articulated;
 import com.threerings.opengl.renderer.Color4f;
+import com.threerings.opengl.renderer.QuadBatch;
 import com.threerings.opengl.renderer.Renderer;
 
 /**
@@ -66,13 +68,18 @@ public class Stats extends SimpleOverlay
         if (interval >= REPORT_INTERVAL) {
             int fps = (int)((_frameCount * 1000) / interval);
             Renderer renderer = _ctx.getRenderer();
+            QuadBatch quads = renderer.getQuadBatch();
             _stats = _textFactory.createText(
                 fps + " fps (" + "b: " + renderer.getBatchCount() + "; " + "p: " +
                 renderer.getPrimitiveCount() + "; tc: " + renderer.getTextureChangeCount() +
+                "; ui: " + quads.getDrawCount() + "/" + quads.getQuadCount() +
                 ") [bo: " + renderer.getBufferObjectCount() + "/" +
                 renderer.getBufferObjectBytes()/1024 + "k, tx: " + renderer.getTextureCount() +
-                "/" + renderer.getTextureBytes()/1024 + "k]",
+                "/" + renderer.getTextureBytes()/1024 + "k] {an: " +
+                Articulated.getAnimatedNodeCount() / _frameCount + ", sp: " +
+                Articulated.getSharedPoseCount() / _frameCount + "}",
                 Color4f.WHITE, 0, 0, Color4f.BLACK, true);
+            Articulated.resetAnimationCounters();
             _lastUpdate = now;
             _frameCount = 0;
         }
@@ -81,7 +88,13 @@ public class Stats extends SimpleOverlay
     @Override
     protected void draw ()
     {
-        _stats.render(_ctx.getRenderer(), 16, getY(), 1f);
+        QuadBatch batch = _ctx.getRenderer().getQuadBatch();
+        batch.begin();
+        try {
+            _stats.render(_ctx.getRenderer(), 16, getY(), 1f);
+        } finally {
+            batch.end();
+        }
     }
 
     /**
@@ -0,0 +1,473 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package com.threerings.tudey.client;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import com.threerings.config.ConfigManager;
+import com.threerings.math.FloatMath;
+import com.threerings.math.Rect;
+import com.threerings.math.Vector2f;
+
+import com.threerings.opengl.util.PreloadableSet;
+
+import com.threerings.tudey.client.sprite.EntrySprite;
+import com.threerings.tudey.data.TudeySceneModel.Entry;
+import com.threerings.tudey.util.Coord;
+import com.threerings.tudey.util.TudeyContext;
+
+/**
+ * Creates and disposes of the sprites for a scene's entries according to their distance from the
+ * camera target, so that only the area around the target need be resident.  Entries are grouped
+ * into square regions by the centers of their bounds.  Regions within the prefetch radius have
+ * their resources prefetched in the background, those within the load radius have their sprites
+ * created, and those beyond the unload radius have their sprites disposed.  Entries without
+ * bounds or too large to fit in a region are always resident.
+ */
+public class EntryStreamer
+{
+    /**
+     * Creates a new streamer for the specified view.
+     *
+     * @param radius the distance from the camera target within which sprites are created.
+     */
+    public EntryStreamer (TudeyContext ctx, TudeySceneView view, float radius)
+    {
+        _ctx = ctx;
+        _view = view;
+        _loadRadius = radius;
+        _unloadRadius = radius + REGION_SIZE;
+        _prefetchRadius = radius + REGION_SIZE * 2f;
+        _releaseRadius = _prefetchRadius + REGION_SIZE;
+    }
+
+    /**
+     * Checks whether the specified entry will be streamed, as opposed to always resident.
+     */
+    public boolean isStreamable (Entry entry)
+    {
+        entry.getBounds(_ctx.getConfigManager(), _bounds);
+        return !_bounds.isEmpty() && _bounds.getLongestEdge() <= REGION_SIZE;
+    }
+
+    /**
+     * Checks whether the entry with the specified key is being streamed.
+     */
+    public boolean isStreamed (Object key)
+    {
+        return _entryRegions.containsKey(key);
+    }
+
+    /**
+     * Returns the number of entries being streamed.
+     */
+    public int getStreamedEntryCount ()
+    {
+        return _entryRegions.size();
+    }
+
+    /**
+     * Returns the number of regions whose sprites are currently resident.
+     */
+    public int getLoadedRegionCount ()
+    {
+        int count = 0;
+        for (Region region : _active) {
+            if (region.state == State.LOADED) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Registers an entry with the streamer.
+     *
+     * @return true if the entry's sprite should be created now, false if its creation should be
+     * deferred until its region is loaded.
+     */
+    public boolean entryAdded (Entry entry)
+    {
+        if (!isStreamable(entry)) {
+            return true;
+        }
+        Region region = getRegion(_bounds.getCenter(_center), true);
+        Object key = entry.getKey();
+        region.keys.add(key);
+        _entryRegions.put(key, region);
+        _dirty |= (region.state == State.UNLOADED);
+        if (region.preloads != null) {
+            // the set is already underway, so this will preload immediately
+            entry.getPreloads(_ctx.getConfigManager(), region.preloads);
+        }
+        return region.state == State.LOADED;
+    }
+
+    /**
+     * Notes that a streamed entry has been updated, creating, updating, or disposing of its
+     * sprite as appropriate for its new location.
+     */
+    public void entryUpdated (Entry nentry)
+    {
+        Object key = nentry.getKey();
+        Region oregion = _entryRegions.remove(key);
+        if (oregion != null) {
+            oregion.keys.remove(key);
+        }
+        boolean resident = entryAdded(nentry);
+        EntrySprite sprite = _view.getEntrySprite(key);
+        if (!resident) {
+            if (sprite != null) {
+                _view.disposeEntrySprite(key);
+            }
+        } else if (sprite != null) {
+            sprite.update(nentry);
+        } else {
+            _view.createEntrySprite(nentry);
+        }
+    }
+
+    /**
+     * Unregisters an entry.
+     *
+     * @return true if the entry was being streamed.
+     */
+    public boolean entryRemoved (Object key)
+    {
+        Region region = _entryRegions.remove(key);
+        if (region == null) {
+            return false;
+        }
+        region.keys.remove(key);
+        return true;
+    }
+
+    /**
+     * Updates the set of resident regions for the current target location.
+     *
+     * @param duration the maximum amount of time to spend preloading resources and creating
+     * sprites.
+     * @return true if all of the regions within the load radius are resident.
+     */
+    public boolean update (Vector2f target, long duration)
+    {
+        long end = System.currentTimeMillis() + duration;
+        Coord coord = getCoord(target, _coord);
+        if (_dirty || !coord.equals(_lastCoord)) {
+            _lastCoord = new Coord(coord);
+            _dirty = false;
+            retireDistantRegions(target);
+            startPrefetching(target);
+        }
+
+        // advance the prefetch waves
+        for (Iterator<Wave> it = _waves.iterator(); it.hasNext(); ) {
+            Wave wave = it.next();
+            long remaining = end - System.currentTimeMillis();
+            if (remaining <= 0L) {
+                break;
+            }
+            if (wave.preloads.preloadBatch(remaining) == 1f) {
+                for (Region region : wave.regions) {
+                    if (region.preloads == wave.preloads) {
+                        region.state = State.READY;
+                    }
+                }
+                it.remove();
+            }
+        }
+
+        // load the nearest ready regions in range
+        boolean settled = true;
+        while (true) {
+            Region nearest = null;
+            float ndist = Float.MAX_VALUE;
+            for (Region region : _active) {
+                float dist = region.getDistance(target);
+                if (region.state == State.LOADED || dist > _loadRadius) {
+                    continue;
+                }
+                settled = false;
+                if (region.state == State.READY && dist < ndist) {
+                    nearest = region;
+                    ndist = dist;
+                }
+            }
+            if (nearest == null || System.currentTimeMillis() >= end) {
+                break;
+            }
+            loadRegion(nearest);
+            settled = true;
+        }
+        return settled;
+    }
+
+    /**
+     * Disposes of the streamer, cancelling any prefetches in progress.
+     */
+    public void dispose ()
+    {
+        for (Wave wave : _waves) {
+            wave.preloads.cancel();
+        }
+        _waves.clear();
+        _active.clear();
+        _regions.clear();
+        _entryRegions.clear();
+        _lastCoord = null;
+    }
+
+    /**
+     * Unloads the loaded regions beyond the unload radius and releases the unloaded regions
+     * beyond the release radius.
+     */
+    protected void retireDistantRegions (Vector2f target)
+    {
+        for (Iterator<Region> it = _active.iterator(); it.hasNext(); ) {
+            Region region = it.next();
+            float dist = region.getDistance(target);
+            if (region.state == State.LOADED ? (dist > _unloadRadius) : (dist > _releaseRadius)) {
+                if (region.state == State.LOADED) {
+                    unloadRegion(region);
+                }
+                region.state = State.UNLOADED;
+                region.preloads = null;
+                it.remove();
+            }
+        }
+        // cancel any waves that no longer have regions waiting on them
+        for (Iterator<Wave> it = _waves.iterator(); it.hasNext(); ) {
+            Wave wave = it.next();
+            boolean needed = false;
+            for (Region region : wave.regions) {
+                needed |= (region.preloads == wave.preloads);
+            }
+            if (!needed) {
+                wave.preloads.cancel();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Starts prefetching the resources of the unloaded regions within the prefetch radius.
+     */
+    protected void startPrefetching (Vector2f target)
+    {
+        Wave wave = null;
+        ConfigManager cfgmgr = _ctx.getConfigManager();
+        int radius = (int)FloatMath.ceil(_prefetchRadius / REGION_SIZE);
+        for (int yy = _lastCoord.y - radius, ymax = _lastCoord.y + radius; yy <= ymax; yy++) {
+            for (int xx = _lastCoord.x - radius, xmax = _lastCoord.x + radius; xx <= xmax; xx++) {
+                Region region = _regions.get(_coord.set(xx, yy));
+                if (region == null || region.state != State.UNLOADED ||
+                        region.getDistance(target) > _prefetchRadius) {
+                    continue;
+                }
+                if (wave == null) {
+                    _waves.add(wave = new Wave(new PreloadableSet(_ctx)));
+                }
+                for (Object key : region.keys) {
+                    Entry entry = _view.getSceneModel().getEntry(key);
+                    if (entry != null) {
+                        entry.getPreloads(cfgmgr, wave.preloads);
+                    }
+                }
+                region.state = State.PREFETCHING;
+                region.preloads = wave.preloads;
+                wave.regions.add(region);
+                _active.add(region);
+            }
+        }
+    }
+
+    /**
+     * Creates the sprites for the entries in the specified region.
+     */
+    protected void loadRegion (Region region)
+    {
+        _view.beginMergeBatch();
+        try {
+            for (Object key : region.keys) {
+                Entry entry = _view.getSceneModel().getEntry(key);
+                if (entry != null && _view.getEntrySprite(key) == null) {
+                    _view.createEntrySprite(entry);
+                }
+            }
+        } finally {
+            _view.endMergeBatch();
+        }
+        region.state = State.LOADED;
+    }
+
+    /**
+     * Disposes of the sprites for the entries in the specified region.
+     */
+    protected void unloadRegion (Region region)
+    {
+        _view.beginMergeBatch();
+        try {
+            for (Object key : region.keys) {
+                _view.disposeEntrySprite(key);
+            }
+        } finally {
+            _view.endMergeBatch();
+        }
+    }
+
+    /**
+     * Returns the region containing the specified location.
+     *
+     * @param create if true, create the region if it doesn't exist.
+     */
+    protected Region getRegion (Vector2f location, boolean create)
+    {
+        Coord coord = getCoord(location, _coord);
+        Region region = _regions.get(coord);
+        if (region == null && create) {
+            _regions.put(coord = new Coord(coord), region = new Region(coord));
+        }
+        return region;
+    }
+
+    /**
+     * Finds the coordinates of the region containing the specified location.
+     */
+    protected static Coord getCoord (Vector2f location, Coord result)
+    {
+        return result.set(
+            (int)FloatMath.floor(location.x / REGION_SIZE),
+            (int)FloatMath.floor(location.y / REGION_SIZE));
+    }
+
+    /**
+     * The states of a region.
+     */
+    protected enum State { UNLOADED, PREFETCHING, READY, LOADED };
+
+    /**
+     * A square region of the scene.
+     */
+    protected static class Region
+    {
+        /** The coordinates of the region. */
+        public final Coord coord;
+
+        /** The keys of the entries whose bounds are centered in the region. */
+        public final Set<Object> keys = Sets.newHashSet();
+
+        /** The state of the region. */
+        public State state = State.UNLOADED;
+
+        /** The preloads that pin the region's resources, if prefetching or resident. */
+        public PreloadableSet preloads;
+
+        public Region (Coord coord)
+        {
+            this.coord = coord;
+        }
+
+        /**
+         * Returns the distance from the specified location to the closest point in the region.
+         */
+        public float getDistance (Vector2f location)
+        {
+            float half = REGION_SIZE * 0.5f;
+            float dx = Math.max(Math.abs(location.x - (coord.x * REGION_SIZE + half)) - half, 0f);
+            float dy = Math.max(Math.abs(location.y - (coord.y * REGION_SIZE + half)) - half, 0f);
+            return FloatMath.sqrt(dx*dx + dy*dy);
+        }
+    }
+
+    /**
+     * A set of regions whose resources are being prefetched together.
+     */
+    protected static class Wave
+    {
+        /** The set being prefetched. */
+        public final PreloadableSet preloads;
+
+        /** The regions waiting on the set. */
+        public final List<Region> regions = Lists.newArrayList();
+
+        public Wave (PreloadableSet preloads)
+        {
+            this.preloads = preloads;
+        }
+    }
+
+    /** The application context. */
+    protected TudeyContext _ctx;
+
+    /** The view whose sprites we manage. */
+    protected TudeySceneView _view;
+
+    /** The radius within which regions are loaded. */
+    protected float _loadRadius;
+
+    /** The radius beyond which loaded regions are unloaded. */
+    protected float _unloadRadius;
+
+    /** The radius within which regions are prefetched. */
+    protected float _prefetchRadius;
+
+    /** The radius beyond which prefetched regions are released. */
+    protected float _releaseRadius;
+
+    /** The regions containing streamed entries, mapped by coordinates. */
+    protected Map<Coord, Region> _regions = Maps.newHashMap();
+
+    /** The regions containing each streamed entry, mapped by entry key. */
+    protected Map<Object, Region> _entryRegions = Maps.newHashMap();
+
+    /** The regions that are prefetching, ready, or loaded. */
+    protected List<Region> _active = Lists.newArrayList();
+
+    /** The prefetch waves in progress. */
+    protected List<Wave> _waves = Lists.newArrayList();
+
+    /** The coordinates of the region containing the target on the last update. */
+    protected Coord _lastCoord;
+
+    /** Set when an unloaded region gains an entry, prompting a check for prefetching. */
+    protected boolean _dirty;
+
+    /** Working objects. */
+    protected Rect _bounds = new Rect();
+    protected Vector2f _center = new Vector2f();
+    protected Coord _coord = new Coord();
+
+    /** The size of the streaming regions. */
+    protected static final float REGION_SIZE = 32f;
+}
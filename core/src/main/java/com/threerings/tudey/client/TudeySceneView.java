@@ -43,6 +43,7 @@ import com.google.common.collect.TreeBasedTable;
 
 import com.samskivert.util.ArrayUtil;
 import com.samskivert.util.HashIntMap;
+import com.samskivert.util.HashIntSet;
 import com.samskivert.util.IntMap.IntEntry;
 
 import com.threerings.crowd.chat.client.ChatDisplay;
@@ -65,6 +66,7 @@ import com.threerings.math.Ray3D;
 import com.threerings.math.Transform3D;
 import com.threerings.math.Vector2f;
 import com.threerings.math.Vector3f;
+import com.threerings.util.PersistentIntMap;
 
 import com.threerings.opengl.GlView;
 import com.threerings.opengl.camera.OrbitCameraHandler;
@@ -191,6 +193,12 @@ public class TudeySceneView extends DynamicScope
         _camhand = createCameraHandler();
         _camcfg.apply(_camhand);
 
+        // create the entry streamer if streaming is enabled
+        float radius = getStreamRadius();
+        if (radius > 0f) {
+            _streamer = new EntryStreamer(ctx, this, radius);
+        }
+
         // create the input window
         if (_ctrl != null) {
             _inputWindow = new StretchWindow(ctx, null) {
@@ -230,7 +238,7 @@ public class TudeySceneView extends DynamicScope
 
         // insert the baseline (empty) update record
         _records.add(new UpdateRecord(
-            0, RunAnywhere.currentTimeMillis(), new HashIntMap<Actor>()));
+            0, RunAnywhere.currentTimeMillis(), PersistentIntMap.<Actor>empty()));
     }
 
     /**
@@ -394,6 +402,9 @@ public class TudeySceneView extends DynamicScope
             sprite.dispose();
         }
         _entrySprites.clear();
+        if (_streamer != null) {
+            _streamer.dispose();
+        }
 
         // suggest garbage collection/finalization here, because we may have OpenGL objects hanging
         // around that should be reclaimed
@@ -499,6 +510,9 @@ public class TudeySceneView extends DynamicScope
                 }
             });
             model.setUserObject(sprite);
+            if (_mergeBatch != null) {
+                _mergeBatch.add(sprite);
+            }
             model.setConfig(new ModelConfig(new MergedStaticConfig(
                 new ComponentModel[] { new ComponentModel(ref, transform) })) { {
                    _cfgmgr = _configs = _ctx.getConfigManager();
@@ -517,7 +531,11 @@ public class TudeySceneView extends DynamicScope
             ModelConfig mconfig = model.getConfig();
             MergedStaticConfig impl = (MergedStaticConfig)mconfig.implementation;
             impl.models = ArrayUtil.append(impl.models, new ComponentModel(ref, transform));
-            mconfig.wasUpdated();
+            if (_mergeBatch == null) {
+                mconfig.wasUpdated();
+            } else {
+                _mergeBatch.add(sprite);
+            }
         }
         return model;
     }
@@ -551,9 +569,16 @@ public class TudeySceneView extends DynamicScope
                     if (_loadingMerged != null) {
                         _loadingMerged.remove(sprite);
                     }
+                    if (_mergeBatch != null) {
+                        _mergeBatch.remove(sprite);
+                    }
                 } else {
                     impl.models = ArrayUtil.splice(impl.models, ii, 1);
-                    mconfig.wasUpdated();
+                    if (_mergeBatch == null) {
+                        mconfig.wasUpdated();
+                    } else {
+                        _mergeBatch.add(sprite);
+                    }
                 }
                 return true;
             }
@@ -773,17 +798,16 @@ public class TudeySceneView extends DynamicScope
         if (!pruneRecords(event.getReference())) {
             return false;
         }
-        HashIntMap<Actor> oactors = _records.get(0).getActors();
-        // start with all the old actors
-        HashIntMap<Actor> actors = oactors.clone();
-        Set<Integer> uids = Sets.newHashSet();
+        // start with all the old actors, sharing their storage
+        PersistentIntMap.Editor<Actor> editor = _records.get(0).getActors().edit();
+        HashIntSet uids = new HashIntSet();
 
         // add any new actors
         Actor[] added = event.getAddedActors();
         if (added != null) {
             for (Actor actor : added) {
                 actor.init(_ctx.getConfigManager());
-                Actor oactor = actors.put(actor.getId(), actor);
+                Actor oactor = editor.put(actor.getId(), actor);
                 uids.add(actor.getId());
                 if (oactor != null) {
                     log.warning("Replacing existing actor.", "oactor", oactor, "nactor", actor);
@@ -796,11 +820,11 @@ public class TudeySceneView extends DynamicScope
         if (updated != null) {
             for (ActorDelta delta : updated) {
                 int id = delta.getId();
-                Actor oactor = actors.get(id);
+                Actor oactor = editor.get(id);
                 if (oactor != null) {
                     Actor nactor = (Actor)delta.apply(oactor);
                     nactor.init(_ctx.getConfigManager());
-                    actors.put(id, nactor);
+                    editor.put(id, nactor);
                     uids.add(id);
                 } else {
                     log.warning("Missing actor for delta.", "delta", delta);
@@ -812,22 +836,35 @@ public class TudeySceneView extends DynamicScope
         int[] removed = event.getRemovedActorIds();
         if (removed != null) {
             for (int id : removed) {
-                actors.remove(id);
+                editor.remove(id);
             }
         }
 
         // record the update
+        PersistentIntMap<Actor> actors = editor.build();
         _records.add(new UpdateRecord(timestamp, now, actors));
 
         // at this point, if we are to preload, we have enough information to begin
         if (_loadingWindow != null && _preloads == null) {
-            ((TudeySceneModel)_ctx.getSceneDirector().getScene().getSceneModel()).getPreloads(
-                _preloads = new PreloadableSet(_ctx));
+            TudeySceneModel model =
+                (TudeySceneModel)_ctx.getSceneDirector().getScene().getSceneModel();
+            _preloads = new PreloadableSet(_ctx);
             ConfigManager cfgmgr = _ctx.getConfigManager();
+            if (_streamer == null) {
+                model.getPreloads(_preloads);
+            } else {
+                // streamed entries are prefetched as the camera approaches them
+                for (Entry entry : model.getEntries()) {
+                    if (!_streamer.isStreamable(entry)) {
+                        entry.getPreloads(cfgmgr, _preloads);
+                    }
+                }
+            }
             for (Actor actor : actors.values()) {
                 actor.getPreloads(cfgmgr, _preloads);
             }
-            _loadingActors = actors.clone();
+            _loadingActors = new HashIntMap<Actor>();
+            _loadingActors.putAll(actors);
             addExtraPreloads();
             return true;
         }
@@ -1039,6 +1076,12 @@ public class TudeySceneView extends DynamicScope
         if (_ctrl != null) {
             _ctrl.wasRemoved();
         }
+        if (_preloads != null) {
+            _preloads.cancel();
+        }
+        if (_streamer != null) {
+            _streamer.dispose();
+        }
         dispose();
         _disposed = true;
         _scene.dispose();
@@ -1063,7 +1106,8 @@ public class TudeySceneView extends DynamicScope
             float ppct = 0f, epct = 0f, mpct = 0f, apct = 0f;
             if ((ppct = _preloads.preloadBatch(BATCH_LOAD_DURATION)) == 1f) {
                 if ((epct = createEntrySpriteBatch()) == 1f) {
-                    if ((mpct = initMergedSpriteBatch()) == 1f) {
+                    if ((mpct = initMergedSpriteBatch()) == 1f &&
+                            (_streamer == null || updateStreamer(BATCH_LOAD_DURATION))) {
                         apct = createActorSpriteBatch();
                     }
                 }
@@ -1128,6 +1172,11 @@ public class TudeySceneView extends DynamicScope
             _camhand.updatePosition();
         }
 
+        // create and dispose of streamed entry sprites around the camera target
+        if (_streamer != null && _loadingWindow == null && _sceneModel != null) {
+            updateStreamer(STREAM_UPDATE_DURATION);
+        }
+
         // tick the scene
         tick = System.nanoTime();
         _scene.tick(_loadingWindow == null ? elapsed : 0f);
@@ -1187,8 +1236,12 @@ public class TudeySceneView extends DynamicScope
     // documentation inherited from interface TudeySceneModel.Observer
     public void entryUpdated (Entry oentry, Entry nentry)
     {
-        addPreloads(nentry);
         Object key = nentry.getKey();
+        if (_streamer != null && _streamer.isStreamed(key)) {
+            _streamer.entryUpdated(nentry);
+            return;
+        }
+        addPreloads(nentry);
         EntrySprite sprite = _entrySprites.get(key);
         if (sprite != null) {
             sprite.update(nentry);
@@ -1211,6 +1264,10 @@ public class TudeySceneView extends DynamicScope
     public void entryRemoved (Entry oentry)
     {
         Object key = oentry.getKey();
+        if (_streamer != null && _streamer.entryRemoved(key)) {
+            disposeEntrySprite(key);
+            return;
+        }
         EntrySprite sprite = _entrySprites.remove(key);
         if (sprite != null) {
             sprite.dispose();
@@ -1441,7 +1498,7 @@ public class TudeySceneView extends DynamicScope
         if (_loadingEntries.isEmpty()) {
             return 1f;
         }
-        return (float)_entrySprites.size() / entries.size();
+        return 1f - (float)_loadingEntries.size() / entries.size();
     }
 
     /**
@@ -1452,7 +1509,8 @@ public class TudeySceneView extends DynamicScope
     protected float initMergedSpriteBatch ()
     {
         if (_loadingMerged != null && _loadingMerged.isEmpty()) {
-            return 1f;
+            // wait for the merges to finish on the worker threads
+            return (MergedStaticConfig.getPendingBuildCount() == 0) ? 1f : MERGE_WAIT_PERCENT;
         }
         if (_loadingMerged == null) {
             _loadingMerged = Lists.newArrayList(_mergedSprites.values());
@@ -1465,7 +1523,7 @@ public class TudeySceneView extends DynamicScope
         }
         int size = _loadingMerged.size();
         if (size == 0) {
-            return 1f;
+            return (MergedStaticConfig.getPendingBuildCount() == 0) ? 1f : MERGE_WAIT_PERCENT;
         }
         return 1f - (float)size / _mergedSprites.size();
     }
@@ -1480,9 +1538,10 @@ public class TudeySceneView extends DynamicScope
         if (_loadingActors != null && _loadingActors.isEmpty()) {
             return 1f;
         }
-        HashIntMap<Actor> actors = _records.get(_records.size() - 1).getActors();
+        PersistentIntMap<Actor> actors = _records.get(_records.size() - 1).getActors();
         if (_loadingActors == null) {
-            _loadingActors = actors.clone();
+            _loadingActors = new HashIntMap<Actor>();
+            _loadingActors.putAll(actors);
         }
         long end = System.currentTimeMillis() + BATCH_LOAD_DURATION;
         for (Iterator<Actor> it = _loadingActors.values().iterator();
@@ -1515,10 +1574,80 @@ public class TudeySceneView extends DynamicScope
      */
     protected void addEntrySprite (Entry entry)
     {
-        addPreloads(entry);
+        if (_streamer == null) {
+            addPreloads(entry);
+            createEntrySprite(entry);
+
+        } else if (_streamer.entryAdded(entry)) {
+            // the preloads of streamed entries are held by the streamer
+            if (!_streamer.isStreamed(entry.getKey())) {
+                addPreloads(entry);
+            }
+            createEntrySprite(entry);
+        }
+    }
+
+    /**
+     * Creates and maps the sprite for the specified entry.
+     */
+    protected void createEntrySprite (Entry entry)
+    {
         _entrySprites.put(entry.getKey(), entry.createSprite(_ctx, this));
     }
 
+    /**
+     * Disposes of the sprite for the entry with the specified key, if it exists.
+     */
+    protected void disposeEntrySprite (Object key)
+    {
+        EntrySprite sprite = _entrySprites.remove(key);
+        if (sprite != null) {
+            sprite.dispose();
+        }
+    }
+
+    /**
+     * Starts a batch of entry sprite creation and disposal, deferring the rebuilding of the
+     * affected merged models until {@link #endMergeBatch} is called.
+     */
+    protected void beginMergeBatch ()
+    {
+        _mergeBatch = Sets.newHashSet();
+    }
+
+    /**
+     * Ends a batch started with {@link #beginMergeBatch}, rebuilding the merged models that
+     * changed.
+     */
+    protected void endMergeBatch ()
+    {
+        Set<Sprite> batch = _mergeBatch;
+        _mergeBatch = null;
+        for (Sprite sprite : batch) {
+            sprite.getModel().getConfig().wasUpdated();
+        }
+    }
+
+    /**
+     * Updates the entry streamer with the current camera target.
+     *
+     * @return true if all of the entries within the stream radius are resident.
+     */
+    protected boolean updateStreamer (long duration)
+    {
+        Vector3f target = _camhand.getTarget();
+        return _streamer.update(_streamTarget.set(target.x, target.y), duration);
+    }
+
+    /**
+     * Returns the distance from the camera target within which to create the sprites of entries
+     * small enough to be streamed, or zero to create all entry sprites up front.
+     */
+    protected float getStreamRadius ()
+    {
+        return 0f;
+    }
+
     /**
      * Adds a sprite for the specified actor.
      */
@@ -1684,7 +1813,7 @@ public class TudeySceneView extends DynamicScope
         /**
          * Creates a new update record.
          */
-        public UpdateRecord (int timestamp, long received, HashIntMap<Actor> actors)
+        public UpdateRecord (int timestamp, long received, PersistentIntMap<Actor> actors)
         {
             _timestamp = timestamp;
             _received = received;
@@ -1710,7 +1839,7 @@ public class TudeySceneView extends DynamicScope
         /**
          * Returns the map of actors.
          */
-        public HashIntMap<Actor> getActors ()
+        public PersistentIntMap<Actor> getActors ()
         {
             return _actors;
         }
@@ -1722,7 +1851,7 @@ public class TudeySceneView extends DynamicScope
         protected long _received;
 
         /** The states of the actors. */
-        protected HashIntMap<Actor> _actors;
+        protected PersistentIntMap<Actor> _actors;
     }
 
     /**
@@ -1841,6 +1970,15 @@ public class TudeySceneView extends DynamicScope
     /** When set, indicates that we should hold off on updating merged sprites. */
     protected boolean _suppressMergeUpdates;
 
+    /** The merged sprites changed during the current merge batch, if any. */
+    protected Set<Sprite> _mergeBatch;
+
+    /** Creates and disposes of entry sprites around the camera target, if streaming. */
+    protected EntryStreamer _streamer;
+
+    /** Holds the streaming target. */
+    protected Vector2f _streamTarget = new Vector2f();
+
     /** The sprite that the camera is tracking. */
     protected ActorSprite _targetSprite;
 
@@ -1889,6 +2027,12 @@ public class TudeySceneView extends DynamicScope
     /** The amount of time to spend on each batch when loading. */
     protected static final long BATCH_LOAD_DURATION = 50L;
 
+    /** The merged sprite completion percentage reported while waiting for merges to finish. */
+    protected static final float MERGE_WAIT_PERCENT = 0.99f;
+
+    /** The maximum amount of time to spend streaming entry sprites each frame. */
+    protected static final long STREAM_UPDATE_DURATION = 4L;
+
     /** The percentage of load progress devoted to preloading. */
     protected static final float PRELOAD_PERCENT = 0.4f;
 
@@ -65,8 +65,10 @@ import com.threerings.io.ObjectOutputStream;
 import com.threerings.whirled.data.AuxModel;
 import com.threerings.whirled.data.SceneModel;
 
+import com.threerings.config.ConfigGroup;
 import com.threerings.config.ConfigManager;
 import com.threerings.config.ConfigReference;
+import com.threerings.config.ManagedConfig;
 import com.threerings.editor.Editable;
 import com.threerings.editor.util.PropertyUtil;
 import com.threerings.export.Exportable;
@@ -1946,6 +1948,22 @@ public class TudeySceneModel extends SceneModel
         }
     }
 
+    /**
+     * Finds all configs and resources referenced by the entries and configs of this scene and
+     * places them in the supplied sets.
+     */
+    public void getReferences (Set<Tuple<Class<?>, String>> configs, Set<String> resources)
+    {
+        for (Entry entry : getEntries()) {
+            PropertyUtil.getReferences(_cfgmgr, entry, configs, resources);
+        }
+        for (ConfigGroup<?> group : _cfgmgr.getGroups()) {
+            for (ManagedConfig config : group.getConfigs()) {
+                PropertyUtil.getReferences(_cfgmgr, config, configs, resources);
+            }
+        }
+    }
+
     /**
      * Validates the references in the scene.
      */
@@ -53,6 +53,7 @@ import com.threerings.tudey.dobj.ActorDelta;
 import com.threerings.tudey.dobj.SceneDeltaEvent;
 import com.threerings.tudey.server.logic.ActorLogic;
 import com.threerings.tudey.server.logic.PawnLogic;
+import com.threerings.tudey.server.util.TickRecorder;
 import com.threerings.tudey.util.TruncatedAverage;
 import com.threerings.tudey.util.TudeySceneMetrics;
 
@@ -121,6 +122,15 @@ public class ClientLiaison
         return _target;
     }
 
+    /**
+     * Returns a reference to the client's area of interest in world coordinates, as of the last
+     * delta posted.  The area is empty until the client begins receiving deltas.
+     */
+    public Rect getWorldInterest ()
+    {
+        return _worldInterest;
+    }
+
     /**
      * Sets the client's camera parameters.
      */
@@ -205,6 +215,10 @@ public class ClientLiaison
             // discard any out of date frames except for the last one,
             // which we will interpret as the most recent
             if (input > timestamp || ii == frames.length - 1) {
+                TickRecorder recorder = _scenemgr.getTickRecorder();
+                if (recorder != null) {
+                    recorder.inputEnqueued(_controlled.getActor().getId(), frame);
+                }
                 _controlled.enqueueInput(frame);
             } else {
                 log.debug("Discarding out-of-date frame.", "frame", frame);
@@ -25,11 +25,19 @@
 
 package com.threerings.tudey.server;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import com.google.common.base.Predicate;
@@ -85,12 +93,16 @@ import com.threerings.tudey.data.TudeySceneObject;
 import com.threerings.tudey.data.actor.Actor;
 import com.threerings.tudey.data.effect.Effect;
 import com.threerings.tudey.server.logic.ActorLogic;
+import com.threerings.tudey.server.logic.AgentLogic;
 import com.threerings.tudey.server.logic.EffectLogic;
 import com.threerings.tudey.server.logic.EntryLogic;
 import com.threerings.tudey.server.logic.Logic;
 import com.threerings.tudey.server.logic.PawnLogic;
 import com.threerings.tudey.server.util.Pathfinder;
 import com.threerings.tudey.server.util.SceneTicker;
+import com.threerings.tudey.server.util.SceneTimer;
+import com.threerings.tudey.server.util.TickRecorder;
+import com.threerings.tudey.server.util.TimingWheel;
 import com.threerings.tudey.shape.Segment;
 import com.threerings.tudey.shape.Shape;
 import com.threerings.tudey.shape.ShapeElement;
@@ -123,6 +135,43 @@ public class TudeySceneManager extends SceneManager
         public boolean tick (int timestamp);
     }
 
+    /**
+     * An interface for tick participants and timers that act on behalf of a logic object.  When
+     * profiling, their time is attributed to that object.
+     */
+    public interface LogicDelegate
+    {
+        /**
+         * Returns the logic object on whose behalf this object acts, or <code>null</code> for
+         * none.
+         */
+        public Logic getLogic ();
+    }
+
+    /**
+     * Base class for tick participants that act on behalf of a logic object.
+     */
+    public static abstract class LogicTickParticipant
+        implements TickParticipant, LogicDelegate
+    {
+        /**
+         * Creates a new participant acting on behalf of the specified logic.
+         */
+        public LogicTickParticipant (Logic logic)
+        {
+            _logic = logic;
+        }
+
+        // documentation inherited from interface LogicDelegate
+        public Logic getLogic ()
+        {
+            return _logic;
+        }
+
+        /** The logic on whose behalf we act. */
+        protected Logic _logic;
+    }
+
     /**
      * An interface for objects to notify when actors are added or removed.
      */
@@ -177,6 +226,45 @@ public class TudeySceneManager extends SceneManager
     {
     }
 
+    /** The simulation level of detail of agents within a margin of a client's interest. */
+    public static final int FULL_LOD = 0;
+
+    /** The simulation level of detail of agents farther from the clients' interest. */
+    public static final int REDUCED_LOD = 1;
+
+    /** The simulation level of detail of agents far from the clients' interest. */
+    public static final int MINIMAL_LOD = 2;
+
+    /** The number of simulation levels of detail. */
+    public static final int LOD_COUNT = 3;
+
+    /** The tick phase in which timers are fired. */
+    public static final int TIMER_PHASE = 0;
+
+    /** The tick phase in which sleeping participants are woken. */
+    public static final int WAKE_PHASE = 1;
+
+    /** The tick phase in which the participants are ticked. */
+    public static final int PARTICIPANT_PHASE = 2;
+
+    /** The tick phase in which posted runnables are run. */
+    public static final int RUNNABLE_PHASE = 3;
+
+    /** The tick phase in which deltas are posted to the clients. */
+    public static final int DELTA_PHASE = 4;
+
+    /** The number of tick phases. */
+    public static final int PHASE_COUNT = 5;
+
+    /** The profile section for time spent computing paths. */
+    public static final String PATHFINDING_SECTION = "pathfinding";
+
+    /** The profile section for time spent in collision queries. */
+    public static final String COLLISION_SECTION = "collision";
+
+    /** The profile section for time spent triggering sensors. */
+    public static final String SENSOR_SECTION = "sensors";
+
     /**
      * Enables or disables tick participant profiling.
      */
@@ -210,14 +298,94 @@ public class TudeySceneManager extends SceneManager
     }
 
     /**
-     * Dumps the current set of tick profiles to the log.
+     * Notes the start of a section of work (pathfinding, collision queries, etc.) whose time
+     * should be attributed to the participant being ticked.  Sections may be nested (as when
+     * pathfinding performs collision queries), in which case the time of the inner sections is
+     * excluded from that of the outer, so that each section's time is counted only once.
+     *
+     * @return the value to pass to {@link #endProfileSection}: zero if the current participant
+     * is not being sampled.
+     */
+    public static long startProfileSection ()
+    {
+        if (_profileName == null) {
+            return 0L;
+        }
+        if (_sectionDepth == _sectionChildTimes.length) {
+            long[] ntimes = new long[_sectionDepth * 2];
+            System.arraycopy(_sectionChildTimes, 0, ntimes, 0, _sectionDepth);
+            _sectionChildTimes = ntimes;
+        }
+        _sectionChildTimes[_sectionDepth++] = 0L;
+        return System.nanoTime();
+    }
+
+    /**
+     * Notes the end of a section of work started with {@link #startProfileSection}.
+     */
+    public static void endProfileSection (String section, long started)
+    {
+        if (started == 0L || _profileName == null || _sectionDepth == 0) {
+            return;
+        }
+        long elapsed = System.nanoTime() - started;
+        recordTickProfile(_profileName + " > " + section,
+            elapsed - _sectionChildTimes[--_sectionDepth]);
+        if (_sectionDepth > 0) {
+            _sectionChildTimes[_sectionDepth - 1] += elapsed;
+        }
+    }
+
+    /**
+     * Returns the current tick profiles as a set of counters suitable for export to a
+     * monitoring system.  For each profile (named by logic class and config, plus the section
+     * of work, if any), the counters give the total sampled time, the number of samples, and
+     * the longest sample.
+     */
+    public static Map<String, Long> getTickProfileCounters ()
+    {
+        Map<String, Long> counters = Maps.newTreeMap();
+        for (Map.Entry<String, TickProfile> entry : _profiles.entrySet()) {
+            String name = entry.getKey();
+            TickProfile tprof = entry.getValue();
+            counters.put(name + ".total_us", tprof.getTotalElapsed());
+            counters.put(name + ".samples", (long)tprof.getCount());
+            counters.put(name + ".longest_us", tprof.getLongest());
+        }
+        for (int ii = 0; ii < LOD_COUNT; ii++) {
+            counters.put("Simulation LOD." + LOD_NAMES[ii], _lodProfile[ii]);
+        }
+        counters.put("Simulation LOD.ticks", (long)_lodProfileTicks);
+        return counters;
+    }
+
+    /**
+     * Dumps the current set of tick profiles to the log, most expensive first.  The time of each
+     * participant includes that of its sections, but the time of each section excludes that of
+     * the sections nested within it.
      */
     public static void dumpTickProfiles ()
     {
+        List<Map.Entry<String, TickProfile>> entries = Lists.newArrayList(_profiles.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, TickProfile>>() {
+            public int compare (
+                    Map.Entry<String, TickProfile> e1, Map.Entry<String, TickProfile> e2) {
+                long t1 = e1.getValue().getTotalElapsed(), t2 = e2.getValue().getTotalElapsed();
+                return (t1 < t2) ? +1 : (t1 > t2 ? -1 : 0);
+            }
+        });
         StringBuilder buf = new StringBuilder();
-        for (Map.Entry<String, TickProfile> entry : _profiles.entrySet()) {
+        for (Map.Entry<String, TickProfile> entry : entries) {
             buf.append(entry.getKey()).append(" => ").append(entry.getValue()).append('\n');
         }
+        if (_lodProfileTicks > 0) {
+            buf.append("Simulation LOD => ");
+            for (int ii = 0; ii < LOD_COUNT; ii++) {
+                buf.append(ii == 0 ? "" : ", ").append(LOD_NAMES[ii]).append(' ');
+                buf.append(String.format("%.1f", (double)_lodProfile[ii] / _lodProfileTicks));
+            }
+            buf.append(" avg agents per tick\n");
+        }
         log.info(buf.toString());
     }
 
@@ -227,6 +395,8 @@ public class TudeySceneManager extends SceneManager
     public static void clearTickProfiles ()
     {
         _profiles.clear();
+        Arrays.fill(_lodProfile, 0L);
+        _lodProfileTicks = 0;
     }
 
     /**
@@ -286,6 +456,7 @@ public class TudeySceneManager extends SceneManager
      */
     public void addTickParticipant (final TickParticipant participant, boolean withinTick)
     {
+        _sleepingParticipants.cancel(participant);
         if (withinTick && !_ticking) {
             _tickParticipants.add(new TickParticipant() {
                 public boolean tick (int timestamp) {
@@ -304,6 +475,172 @@ public class TudeySceneManager extends SceneManager
     public void removeTickParticipant (TickParticipant participant)
     {
         _tickParticipants.remove(participant);
+        _sleepingParticipants.cancel(participant);
+    }
+
+    /**
+     * Removes a participant from the tick list until the specified timestamp is reached or it is
+     * woken by {@link #wakeTickParticipant}, whichever comes first.  A participant may put
+     * itself to sleep from within its tick.
+     *
+     * @param timestamp the timestamp at which to resume ticking the participant, or
+     * {@link Integer#MAX_VALUE} to sleep until woken.
+     */
+    public void sleepTickParticipant (TickParticipant participant, int timestamp)
+    {
+        _tickParticipants.remove(participant);
+        _sleepingParticipants.schedule(participant, timestamp);
+    }
+
+    /**
+     * Returns a sleeping participant to the tick list.  If called from within the tick, the
+     * participant will resume ticking on the next one.
+     *
+     * @return true if the participant was sleeping.
+     */
+    public boolean wakeTickParticipant (TickParticipant participant)
+    {
+        if (!_sleepingParticipants.cancel(participant)) {
+            return false;
+        }
+        _tickParticipants.add(participant);
+        return true;
+    }
+
+    /**
+     * Checks whether the specified participant is sleeping.
+     */
+    public boolean isSleeping (TickParticipant participant)
+    {
+        return _sleepingParticipants.contains(participant);
+    }
+
+    /**
+     * Returns the number of participants ticked on each tick.
+     */
+    public int getTickParticipantCount ()
+    {
+        return _tickParticipants.size();
+    }
+
+    /**
+     * Returns the number of sleeping participants.
+     */
+    public int getSleepingParticipantCount ()
+    {
+        return _sleepingParticipants.size();
+    }
+
+    /**
+     * Returns the scene's random number generator, which logic should use in preference to any
+     * other source so that the scene's ticks may be replayed deterministically.
+     */
+    public Random getRandom ()
+    {
+        return _random;
+    }
+
+    /**
+     * Returns a {@link Randoms} wrapping the scene's random number generator.
+     */
+    public Randoms getRandoms ()
+    {
+        return _randoms;
+    }
+
+    /**
+     * Returns the recorder recording the scene's ticks, if any.
+     */
+    public TickRecorder getTickRecorder ()
+    {
+        return _recorder;
+    }
+
+    /**
+     * Sets the array to which the time spent in each phase of the tick (in nanoseconds) will be
+     * added, or null to stop timing the phases.
+     *
+     * @see #TIMER_PHASE
+     */
+    public void setTickPhaseTimes (long[] times)
+    {
+        _phaseTimes = times;
+    }
+
+    /**
+     * Sets the areas of interest to use in place of those of the clients when determining the
+     * agents' levels of detail, or null to use the clients' areas.  Scenes without clients (as
+     * when replaying a recording) use this to supply the areas the clients would have observed.
+     */
+    public void setLodInterests (List<Rect> interests)
+    {
+        _lodInterests = interests;
+    }
+
+    /**
+     * Returns the level of detail at which to simulate an agent at the specified location,
+     * according to its distance from the nearest client's area of interest.  Agents at reduced
+     * levels of detail are ticked less frequently (see {@link #getSimulationLodInterval}).
+     *
+     * @return {@link #FULL_LOD}, {@link #REDUCED_LOD}, or {@link #MINIMAL_LOD}.
+     */
+    public int getSimulationLod (Vector2f location)
+    {
+        float distance = Float.POSITIVE_INFINITY;
+        for (int ii = 0, nn = _lodBounds.size(); ii < nn; ii++) {
+            Rect bounds = _lodBounds.get(ii);
+            Vector2f min = bounds.getMinimumExtent(), max = bounds.getMaximumExtent();
+            float dx = Math.max(Math.max(min.x - location.x, location.x - max.x), 0f);
+            float dy = Math.max(Math.max(min.y - location.y, location.y - max.y), 0f);
+            distance = Math.min(distance, Math.max(dx, dy));
+        }
+        return (distance <= getFullLodMargin()) ? FULL_LOD :
+            (distance <= getReducedLodMargin() ? REDUCED_LOD : MINIMAL_LOD);
+    }
+
+    /**
+     * Returns the interval in milliseconds at which to tick agents at the specified level of
+     * detail.
+     */
+    public int getSimulationLodInterval (int lod)
+    {
+        return getTickInterval() * LOD_TICKS[lod];
+    }
+
+    /**
+     * Schedules a timer to fire within the tick on which the scene reaches the specified
+     * timestamp, replacing any existing schedule for the timer.  Timers fire at the start of the
+     * tick, before the participants are ticked, in order of timestamp and then of scheduling.
+     */
+    public void scheduleTimer (SceneTimer timer, int timestamp)
+    {
+        _timers.schedule(timer, timestamp);
+    }
+
+    /**
+     * Cancels a scheduled timer.
+     *
+     * @return true if the timer was scheduled.
+     */
+    public boolean cancelTimer (SceneTimer timer)
+    {
+        return _timers.cancel(timer);
+    }
+
+    /**
+     * Checks whether the specified timer is scheduled.
+     */
+    public boolean isTimerScheduled (SceneTimer timer)
+    {
+        return _timers.contains(timer);
+    }
+
+    /**
+     * Returns the number of scheduled timers.
+     */
+    public int getTimerCount ()
+    {
+        return _timers.size();
     }
 
     /**
@@ -755,22 +1092,27 @@ public class TudeySceneManager extends SceneManager
     public int triggerSensors (Class<? extends Sensor> type, int timestamp,
             Collection<Shape> shapes, int flags, ActorLogic actor)
     {
-        if (flags == 0) {
-            return 0;
-        }
-        Set<SpaceElement> elements = Sets.newHashSet();
-        for (Shape shape : shapes) {
-            _sensorSpace.getIntersecting(shape, elements);
-        }
-        int count = 0;
-        for (SpaceElement element : elements) {
-            Sensor sensor = (Sensor)element.getUserObject();
-            if (type.isInstance(sensor) && (flags & sensor.getMask()) != 0) {
-                sensor.trigger(timestamp, actor);
-                count++;
+        long started = startProfileSection();
+        try {
+            if (flags == 0) {
+                return 0;
+            }
+            Set<SpaceElement> elements = Sets.newHashSet();
+            for (Shape shape : shapes) {
+                _sensorSpace.getIntersecting(shape, elements);
+            }
+            int count = 0;
+            for (SpaceElement element : elements) {
+                Sensor sensor = (Sensor)element.getUserObject();
+                if (type.isInstance(sensor) && (flags & sensor.getMask()) != 0) {
+                    sensor.trigger(timestamp, actor);
+                    count++;
+                }
             }
+            return count;
+        } finally {
+            endProfileSection(SENSOR_SECTION, started);
         }
-        return count;
     }
 
     /**
@@ -802,25 +1144,30 @@ public class TudeySceneManager extends SceneManager
      */
     public boolean collides (Actor actor, Shape shape, int timestamp)
     {
-        // check the scene model
-        if (((TudeySceneModel)_scene.getSceneModel()).collides(actor, shape)) {
-            return true;
-        }
-
-        // look for intersecting elements
-        _actorSpace.getIntersecting(shape, _elements);
+        long started = startProfileSection();
         try {
-            for (int ii = 0, nn = _elements.size(); ii < nn; ii++) {
-                SpaceElement element = _elements.get(ii);
-                Actor oactor = ((ActorLogic)element.getUserObject()).getActor();
-                if (timestamp < oactor.getDestroyed() && actor.canCollide(oactor)) {
-                    return true;
+            // check the scene model
+            if (((TudeySceneModel)_scene.getSceneModel()).collides(actor, shape)) {
+                return true;
+            }
+
+            // look for intersecting elements
+            _actorSpace.getIntersecting(shape, _elements);
+            try {
+                for (int ii = 0, nn = _elements.size(); ii < nn; ii++) {
+                    SpaceElement element = _elements.get(ii);
+                    Actor oactor = ((ActorLogic)element.getUserObject()).getActor();
+                    if (timestamp < oactor.getDestroyed() && actor.canCollide(oactor)) {
+                        return true;
+                    }
                 }
+            } finally {
+                _elements.clear();
             }
+            return false;
         } finally {
-            _elements.clear();
+            endProfileSection(COLLISION_SECTION, started);
         }
-        return false;
     }
 
     /**
@@ -845,32 +1192,37 @@ public class TudeySceneManager extends SceneManager
     public boolean collides (
             int mask, Shape shape, int timestamp, Predicate<? super Actor> canCollidePred)
     {
-        // make sure we can actually collide with anything
-        if (mask == 0) {
-            return false;
-        }
+        long started = startProfileSection();
+        try {
+            // make sure we can actually collide with anything
+            if (mask == 0) {
+                return false;
+            }
 
-        // check the scene model
-        if (((TudeySceneModel)_scene.getSceneModel()).collides(mask, shape)) {
-            return true;
-        }
+            // check the scene model
+            if (((TudeySceneModel)_scene.getSceneModel()).collides(mask, shape)) {
+                return true;
+            }
 
-        // look for intersecting elements
-        _actorSpace.getIntersecting(shape, _elements);
-        try {
-            for (int ii = 0, nn = _elements.size(); ii < nn; ii++) {
-                SpaceElement element = _elements.get(ii);
-                Actor actor = ((ActorLogic)element.getUserObject()).getActor();
-                if ((timestamp < actor.getDestroyed()) &&
-                        ((actor.getCollisionFlags() & mask) != 0) &&
-                        canCollidePred.apply(actor)) {
-                    return true;
+            // look for intersecting elements
+            _actorSpace.getIntersecting(shape, _elements);
+            try {
+                for (int ii = 0, nn = _elements.size(); ii < nn; ii++) {
+                    SpaceElement element = _elements.get(ii);
+                    Actor actor = ((ActorLogic)element.getUserObject()).getActor();
+                    if ((timestamp < actor.getDestroyed()) &&
+                            ((actor.getCollisionFlags() & mask) != 0) &&
+                            canCollidePred.apply(actor)) {
+                        return true;
+                    }
                 }
+            } finally {
+                _elements.clear();
             }
+            return false;
         } finally {
-            _elements.clear();
+            endProfileSection(COLLISION_SECTION, started);
         }
-        return false;
     }
 
     /**
@@ -893,36 +1245,41 @@ public class TudeySceneManager extends SceneManager
         Ray2D ray, float length, int mask, int timestamp, Vector2f intersection,
         ActorLogic[] intersectingActor)
     {
-        if (mask == 0) {
-            return false;
-        }
+        long started = startProfileSection();
+        try {
+            if (mask == 0) {
+                return false;
+            }
 
-        boolean intersects = getSceneModel().getIntersection(ray, length, mask, intersection);
-        float resultDist = intersects ?
-            ray.getOrigin().distanceSquared(intersection) : length * length;
+            boolean intersects = getSceneModel().getIntersection(ray, length, mask, intersection);
+            float resultDist = intersects ?
+                ray.getOrigin().distanceSquared(intersection) : length * length;
 
-        Segment seg = new Segment(
-                ray.getOrigin(), ray.getOrigin().add(ray.getDirection().mult(length)));
-        _actorSpace.getIntersecting(seg, _elements);
-        Vector2f result = new Vector2f();
-        for (int ii = 0, nn = _elements.size(); ii < nn; ii++) {
-            SpaceElement element = _elements.get(ii);
-            ActorLogic logic = (ActorLogic)element.getUserObject();
-            Actor actor = logic.getActor();
-            if (timestamp < actor.getDestroyed() && (actor.getCollisionFlags() & mask) != 0 &&
-                    logic.getShape().getIntersection(ray, result)) {
-                float dist = ray.getOrigin().distanceSquared(result);
-                if (dist < resultDist) {
-                    intersection.set(result);
-                    resultDist = dist;
-                    if (intersectingActor != null) {
-                        intersectingActor[0] = logic;
+            Segment seg = new Segment(
+                    ray.getOrigin(), ray.getOrigin().add(ray.getDirection().mult(length)));
+            _actorSpace.getIntersecting(seg, _elements);
+            Vector2f result = new Vector2f();
+            for (int ii = 0, nn = _elements.size(); ii < nn; ii++) {
+                SpaceElement element = _elements.get(ii);
+                ActorLogic logic = (ActorLogic)element.getUserObject();
+                Actor actor = logic.getActor();
+                if (timestamp < actor.getDestroyed() && (actor.getCollisionFlags() & mask) != 0 &&
+                        logic.getShape().getIntersection(ray, result)) {
+                    float dist = ray.getOrigin().distanceSquared(result);
+                    if (dist < resultDist) {
+                        intersection.set(result);
+                        resultDist = dist;
+                        if (intersectingActor != null) {
+                            intersectingActor[0] = logic;
+                        }
                     }
                 }
             }
+            _elements.clear();
+            return resultDist < length * length;
+        } finally {
+            endProfileSection(COLLISION_SECTION, started);
         }
-        _elements.clear();
-        return resultDist < length * length;
     }
 
     /**
@@ -978,6 +1335,10 @@ public class TudeySceneManager extends SceneManager
             }
             final ActorLogic logic = spawnActor(getNextTimestamp(), translation, rotation, ref);
             if (logic != null) {
+                if (_recorder != null) {
+                    _recorder.pawnSpawned(
+                        logic.getActor().getId(), ref, translation, rotation);
+                }
                 logic.bodyWillEnter(body);
                 ((TudeyBodyObject)body).setPawnId(logic.getActor().getId());
             }
@@ -1001,7 +1362,7 @@ public class TudeySceneManager extends SceneManager
                 return entrance.getPortalTransform();
             }
         } else if (portalKey instanceof String) {
-            Logic entrance = Randoms.threadLocal().pick(getTagged((String)portalKey), null);
+            Logic entrance = _randoms.pick(getTagged((String)portalKey), null);
             if (entrance != null) {
                 return new Transform2D(entrance.getTranslation(), entrance.getRotation());
             }
@@ -1028,6 +1389,9 @@ public class TudeySceneManager extends SceneManager
         if (tbody.pawnId != 0) {
             ActorLogic logic = _actors.get(tbody.pawnId);
             if (logic != null) {
+                if (_recorder != null) {
+                    _recorder.pawnLeft(tbody.pawnId);
+                }
                 logic.bodyWillLeave(body);
             } else {
                 log.warning("Missing pawn for leaving body.", "pawnId", tbody.pawnId,
@@ -1140,6 +1504,9 @@ public class TudeySceneManager extends SceneManager
         }
 
         // process the request
+        if (_recorder != null) {
+            _recorder.actorRequested(pawnId, actorId, name);
+        }
         target.request(getNextTimestamp(), source, name);
     }
 
@@ -1171,6 +1538,9 @@ public class TudeySceneManager extends SceneManager
         }
 
         // process the request
+        if (_recorder != null) {
+            _recorder.entryRequested(pawnId, key, name);
+        }
         target.request(getNextTimestamp(), source, name);
     }
 
@@ -1243,6 +1613,13 @@ public class TudeySceneManager extends SceneManager
     {
         synchronized (_runnables) {
             _runnables.add(runnable);
+
+            // runnables posted from within the tick will be posted again on replay; we record
+            // while holding the lock so that the runnable is recorded before the tick that runs it
+            TickRecorder recorder = _recorder;
+            if (recorder != null && Thread.currentThread() != _tickThread) {
+                recorder.runnablePosted(runnable);
+            }
         }
     }
 
@@ -1279,6 +1656,14 @@ public class TudeySceneManager extends SceneManager
         // get a reference to the ticker
         _ticker = getTicker();
 
+        // seed the random number generator and start recording, if so configured, before any
+        // logic is created
+        long seed = createRandomSeed();
+        _random.setSeed(seed);
+        if ((_recorder = createTickRecorder()) != null) {
+            _recorder.start(sceneModel, seed, _timestamp);
+        }
+
         // create logic objects for scene entries and listen for changes
         createEntryLogics(sceneModel);
         sceneModel.addObserver(this);
@@ -1329,6 +1714,15 @@ public class TudeySceneManager extends SceneManager
 
         _shutdownObservers.apply(_shutdownOp);
 
+        // cancel any remaining timers
+        _timers.clear();
+
+        // finish recording
+        if (_recorder != null) {
+            _recorder.close();
+            _recorder = null;
+        }
+
         // remove from the ticker
         _ticker.remove(this);
         _ticker = null;
@@ -1397,7 +1791,7 @@ public class TudeySceneManager extends SceneManager
      */
     protected Logic getDefaultEntrance (BodyObject body)
     {
-        return Randoms.threadLocal().pick(_defaultEntrances, null);
+        return _randoms.pick(_defaultEntrances, null);
     }
 
     /**
@@ -1512,30 +1906,91 @@ public class TudeySceneManager extends SceneManager
             return;
         }
 
-        // update the scene timestamp
-        _previousTimestamp = _timestamp;
-        _timestamp += (int)(now - _lastTick);
+        // update the scene by the elapsed time
+        int elapsed = (int)(now - _lastTick);
         _lastTick = now;
+        tick(elapsed);
 
-        // copy the runnables into another list and clear
+        // note how long the tick took
+        _tickDuration = (RunAnywhere.currentTimeMillis() - _lastTick);
+    }
+
+    /**
+     * Updates the scene, advancing the timestamp by the specified number of milliseconds.  This
+     * is called by {@link #tick()} on each tick of the ticker, and may be called directly to
+     * drive a scene with no occupants (as when replaying a recording).
+     */
+    public void tick (int elapsed)
+    {
+        // copy the runnables into another list and clear, noting the tick at the same time so
+        // that the recording places each runnable before the tick that runs it
         synchronized (_runnables) {
+            if (_recorder != null) {
+                _recorder.ticked(elapsed);
+            }
             _runlist.addAll(_runnables);
             _runnables.clear();
         }
+        _tickThread = Thread.currentThread();
+
+        // update the scene timestamp
+        _previousTimestamp = _timestamp;
+        _timestamp += elapsed;
+
+        // note where the clients are looking, for the agents' levels of detail
+        updateLodBounds();
+
+        // fire any timers whose time has come
+        long phaseStarted = (_phaseTimes == null) ? 0L : System.nanoTime();
+        _timers.advance(_timestamp, _expiredTimers);
+        for (int ii = 0, nn = _expiredTimers.size(); ii < nn; ii++) {
+            SceneTimer timer = _expiredTimers.get(ii);
+            try {
+                if (_tickProfEnabled && _tickParticipantCount++ % _tickProfInterval == 0) {
+                    long started = startTickProfile(timer);
+                    try {
+                        timer.expired();
+                    } finally {
+                        endTickProfile(started);
+                    }
+                } else {
+                    timer.expired();
+                }
+            } catch (Throwable t) {
+                log.warning("Caught throwable firing timer.", "where", where(),
+                    "timer", timer, t);
+            }
+        }
+        _expiredTimers.clear();
+        phaseStarted = notePhase(TIMER_PHASE, phaseStarted);
+
+        // wake any participants whose time has come
+        _sleepingParticipants.advance(_timestamp, _wokenParticipants);
+        for (int ii = 0, nn = _wokenParticipants.size(); ii < nn; ii++) {
+            _tickParticipants.add(_wokenParticipants.get(ii));
+        }
+        _wokenParticipants.clear();
+        phaseStarted = notePhase(WAKE_PHASE, phaseStarted);
+
         _ticking = true;
         if (_tickProfEnabled) {
             // tick the participants
             _profileTickOp.init(_timestamp);
             _tickParticipants.apply(_profileTickOp);
+            profileSimulationLod();
+            phaseStarted = notePhase(PARTICIPANT_PHASE, phaseStarted);
 
             // process the runnables in the list
             for (int ii = 0, nn = _runlist.size(); ii < nn; ii++) {
                 Runnable runnable = _runlist.get(ii);
                 try {
                     if (_tickParticipantCount++ % _tickProfInterval == 0) {
-                        long started = System.nanoTime();
-                        runnable.run();
-                        updateTickProfile(runnable, started);
+                        long started = startTickProfile(runnable);
+                        try {
+                            runnable.run();
+                        } finally {
+                            endTickProfile(started);
+                        }
                     } else {
                         runnable.run();
                     }
@@ -1545,14 +2000,18 @@ public class TudeySceneManager extends SceneManager
                 }
             }
             _runlist.clear();
+            phaseStarted = notePhase(RUNNABLE_PHASE, phaseStarted);
 
             // post deltas for all clients
             for (ClientLiaison client : _clients.values()) {
                 try {
                     if (_tickParticipantCount++ % _tickProfInterval == 0) {
-                        long started = System.nanoTime();
-                        client.postDelta();
-                        updateTickProfile(client, started);
+                        long started = startTickProfile(client);
+                        try {
+                            client.postDelta();
+                        } finally {
+                            endTickProfile(started);
+                        }
                     } else {
                         client.postDelta();
                     }
@@ -1565,6 +2024,7 @@ public class TudeySceneManager extends SceneManager
             // tick the participants
             _tickOp.init(_timestamp);
             _tickParticipants.apply(_tickOp);
+            phaseStarted = notePhase(PARTICIPANT_PHASE, phaseStarted);
 
             // process the runnables in the list
             for (int ii = 0, nn = _runlist.size(); ii < nn; ii++) {
@@ -1577,6 +2037,7 @@ public class TudeySceneManager extends SceneManager
                 }
             }
             _runlist.clear();
+            phaseStarted = notePhase(RUNNABLE_PHASE, phaseStarted);
 
             // post deltas for all clients
             for (ClientLiaison client : _clients.values()) {
@@ -1589,15 +2050,25 @@ public class TudeySceneManager extends SceneManager
             }
         }
         _ticking = false;
+        notePhase(DELTA_PHASE, phaseStarted);
+
+        // record what the clients could see
+        if (_recorder != null) {
+            for (ClientLiaison client : _clients.values()) {
+                PawnLogic target = client.getTarget();
+                Rect interest = client.getWorldInterest();
+                if (target != null && !interest.isEmpty()) {
+                    _recorder.interestObserved(target.getActor().getId(), interest);
+                }
+            }
+        }
 
         // clear the lists
         _staticActorsAdded.clear();
         _staticActorsUpdated.clear();
         _staticActorsRemoved.clear();
         _effectsFired.clear();
-
-        // note how long the tick took
-        _tickDuration = (RunAnywhere.currentTimeMillis() - _lastTick);
+        _tickThread = null;
     }
 
     /**
@@ -1618,6 +2089,118 @@ public class TudeySceneManager extends SceneManager
         return 5 * 1000L;
     }
 
+    /**
+     * Returns the distance beyond the clients' areas of interest within which agents are
+     * simulated at full detail.  Returning {@link Float#POSITIVE_INFINITY} disables reduced
+     * simulation, as long as there are clients to see the agents.
+     */
+    protected float getFullLodMargin ()
+    {
+        return 8f;
+    }
+
+    /**
+     * Returns the distance beyond the clients' areas of interest within which agents are
+     * simulated at reduced, rather than minimal, detail.
+     */
+    protected float getReducedLodMargin ()
+    {
+        return 32f;
+    }
+
+    /**
+     * Updates the list of interest bounds used to determine simulation levels of detail.
+     */
+    protected void updateLodBounds ()
+    {
+        int count = 0;
+        if (_lodInterests != null) {
+            for (int ii = 0, nn = _lodInterests.size(); ii < nn; ii++) {
+                count = setLodBounds(count, _lodInterests.get(ii));
+            }
+        } else {
+            for (ClientLiaison client : _clients.values()) {
+                count = setLodBounds(count, client.getWorldInterest());
+            }
+        }
+        _lodBounds.subList(count, _lodBounds.size()).clear();
+    }
+
+    /**
+     * Sets the interest bounds at the specified index, unless the interest is empty.
+     *
+     * @return the index of the next interest bounds.
+     */
+    protected int setLodBounds (int idx, Rect interest)
+    {
+        if (interest.isEmpty()) {
+            return idx;
+        }
+        if (idx == _lodBounds.size()) {
+            _lodBounds.add(new Rect());
+        }
+        _lodBounds.get(idx).set(interest);
+        return idx + 1;
+    }
+
+    /**
+     * Adds the number of agents at each level of detail to the profile.
+     */
+    protected void profileSimulationLod ()
+    {
+        for (ActorLogic logic : _actors.values()) {
+            if (logic instanceof AgentLogic) {
+                _lodProfile[((AgentLogic)logic).getSimulationLod()]++;
+            }
+        }
+        _lodProfileTicks++;
+    }
+
+    /**
+     * Returns the seed for the scene's random number generator.  When replaying a recording, this
+     * should return the recording's seed.
+     */
+    protected long createRandomSeed ()
+    {
+        return System.nanoTime() ^ ((long)_scene.getId() << 32);
+    }
+
+    /**
+     * Creates the recorder with which to record the scene's ticks, or returns null to skip
+     * recording.  The default implementation records to a file in the directory named by the
+     * <code>tudey.tick_record_dir</code> system property, if set.
+     */
+    protected TickRecorder createTickRecorder ()
+    {
+        String dir = System.getProperty("tudey.tick_record_dir");
+        if (dir == null) {
+            return null;
+        }
+        File file = new File(dir, _scene.getId() + "-" + System.currentTimeMillis() + ".ticks");
+        try {
+            return new TickRecorder(new FileOutputStream(file));
+        } catch (IOException e) {
+            log.warning("Failed to open tick recording.", "file", file, "where", where(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Adds the time elapsed since the specified start time to the identified tick phase, if
+     * timing the phases.
+     *
+     * @return the current time, to start timing the next phase.
+     */
+    protected long notePhase (int phase, long started)
+    {
+        if (_phaseTimes == null) {
+            return 0L;
+        }
+        long now = System.nanoTime();
+        _phaseTimes[phase] += now - started;
+        return now;
+    }
+
     /**
      * Returns the ticker with which to tick the scene.
      */
@@ -1627,11 +2210,39 @@ public class TudeySceneManager extends SceneManager
     }
 
     /**
-     * Updates the tick profile for the specified participant.
+     * Starts a profiling sample for the specified participant, timer, runnable, or client.
+     *
+     * @return the time at which the sample started.
      */
-    protected static void updateTickProfile (Object participant, long started)
+    protected static long startTickProfile (Object participant)
     {
-        long elapsed = (System.nanoTime() - started) / 1000L;
+        _profileName = getProfileName(participant);
+        _sectionDepth = 0;
+        return System.nanoTime();
+    }
+
+    /**
+     * Finishes the current profiling sample.
+     */
+    protected static void endTickProfile (long started)
+    {
+        recordTickProfile(_profileName, System.nanoTime() - started);
+        _profileName = null;
+    }
+
+    /**
+     * Returns the name of the profile to which the specified object's time is attributed: the
+     * class of the logic object (or other participant) and, where applicable, the name of its
+     * config.
+     */
+    protected static String getProfileName (Object participant)
+    {
+        if (participant instanceof LogicDelegate) {
+            Logic logic = ((LogicDelegate)participant).getLogic();
+            if (logic != null) {
+                participant = logic;
+            }
+        }
         String cname;
         if (participant instanceof Interval.RunBuddy) {
             cname = StringUtil.shortClassName(
@@ -1641,25 +2252,154 @@ public class TudeySceneManager extends SceneManager
         }
         if (participant instanceof Logic) {
             Logic logic = (Logic)participant;
-            participant = logic.getSceneManager().getLogic(logic.getEntityKey());
+            Logic root = logic.getSceneManager().getLogic(logic.getEntityKey());
+            if (root != null) {
+                participant = root;
+            }
         }
-        ConfigReference ref = null;
+        ConfigReference<?> ref = null;
         if (participant instanceof ActorLogic) {
             ref = ((ActorLogic)participant).getActor().getConfig();
         } else if (participant instanceof EntryLogic) {
             ref = ((EntryLogic)participant).getEntry().getReference();
         }
         if (ref != null) {
-            String rname = ref.getName();
-            cname += ":" + rname.substring(rname.lastIndexOf('/') + 1);
+            cname += ":" + getShortName(ref);
+        }
+        if (participant instanceof AgentLogic) {
+            ref = ((AgentLogic)participant).getBehaviorConfig();
+            if (ref != null) {
+                cname += "/" + getShortName(ref);
+            }
         }
-        TickProfile tprof = _profiles.get(cname);
+        return cname;
+    }
+
+    /**
+     * Returns the last path component of the referenced config's name.
+     */
+    protected static String getShortName (ConfigReference<?> ref)
+    {
+        String rname = ref.getName();
+        return rname.substring(rname.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Records a sample in the named tick profile.
+     *
+     * @param elapsed the elapsed time of the sample in nanoseconds.
+     */
+    protected static void recordTickProfile (String name, long elapsed)
+    {
+        elapsed /= 1000L;
+        TickProfile tprof = _profiles.get(name);
         if (tprof == null) {
-            _profiles.put(cname, tprof = new TickProfile());
+            _profiles.put(name, tprof = new TickProfile());
         }
         tprof.record(elapsed);
     }
 
+    /**
+     * The list of tick participants.  Participants are ticked in the order in which they were
+     * added; those added during a tick are first ticked on the next one, and those removed
+     * during a tick are not ticked again.  Unlike an {@link ObserverList}, adding and removing
+     * participants takes constant time, so that participants may cheaply come and go as they
+     * sleep and wake.
+     */
+    protected static class TickParticipantList
+    {
+        /**
+         * Adds a participant to the end of the list.
+         *
+         * @return true if the participant was added, false if it was already present.
+         */
+        public boolean add (TickParticipant participant)
+        {
+            if (_indices.containsKey(participant)) {
+                return false;
+            }
+            _indices.put(participant, _list.size());
+            _list.add(participant);
+            return true;
+        }
+
+        /**
+         * Removes a participant from the list.
+         *
+         * @return true if the participant was removed, false if it wasn't present.
+         */
+        public boolean remove (TickParticipant participant)
+        {
+            Integer idx = _indices.remove(participant);
+            if (idx == null) {
+                return false;
+            }
+            // leave a hole to be compacted later
+            _list.set(idx, null);
+            _holes++;
+            return true;
+        }
+
+        /**
+         * Returns the number of participants in the list.
+         */
+        public int size ()
+        {
+            return _indices.size();
+        }
+
+        /**
+         * Applies the op to the participants in the list, removing any for which it returns
+         * false.
+         */
+        public void apply (ObserverList.ObserverOp<TickParticipant> op)
+        {
+            for (int ii = 0, nn = _list.size(); ii < nn; ii++) {
+                TickParticipant participant = _list.get(ii);
+                if (participant != null && !op.apply(participant) && _list.get(ii) == participant) {
+                    remove(participant);
+                }
+            }
+            // compact once the holes make up a significant fraction of the list
+            if (_holes > COMPACTION_THRESHOLD && _holes > _list.size() / 4) {
+                compact();
+            }
+        }
+
+        /**
+         * Removes the holes from the list.
+         */
+        protected void compact ()
+        {
+            int nidx = 0;
+            for (int ii = 0, nn = _list.size(); ii < nn; ii++) {
+                TickParticipant participant = _list.get(ii);
+                if (participant == null) {
+                    continue;
+                }
+                if (nidx != ii) {
+                    _list.set(nidx, participant);
+                    _indices.put(participant, nidx);
+                }
+                nidx++;
+            }
+            _list.subList(nidx, _list.size()).clear();
+            _holes = 0;
+        }
+
+        /** The participants in order, with holes where participants have been removed. */
+        protected ArrayList<TickParticipant> _list = Lists.newArrayList();
+
+        /** The index of each participant in the list. */
+        protected Map<TickParticipant, Integer> _indices = Maps.newHashMap();
+
+        /** The number of holes in the list. */
+        protected int _holes;
+
+        /** The minimum number of holes that will trigger compaction. */
+        protected static final int COMPACTION_THRESHOLD = 64;
+    }
+
     /**
      * (Re)used to tick the participants.
      */
@@ -1702,10 +2442,12 @@ public class TudeySceneManager extends SceneManager
                 if (_tickParticipantCount++ % _tickProfInterval != 0) {
                     return participant.tick(_timestamp);
                 }
-                long started = System.nanoTime();
-                boolean result = participant.tick(_timestamp);
-                updateTickProfile(participant, started);
-                return result;
+                long started = startTickProfile(participant);
+                try {
+                    return participant.tick(_timestamp);
+                } finally {
+                    endTickProfile(started);
+                }
 
             } catch (Throwable t) {
                 log.warning("Caught throwable ticking participant.",
@@ -1735,6 +2477,30 @@ public class TudeySceneManager extends SceneManager
                 StringUtil.toString(_histo.getBuckets()) + " " + _longest + "us longest";
         }
 
+        /**
+         * Returns the total elapsed time of the samples, in microseconds.
+         */
+        public long getTotalElapsed ()
+        {
+            return _totalElapsed;
+        }
+
+        /**
+         * Returns the number of samples.
+         */
+        public int getCount ()
+        {
+            return _histo.size();
+        }
+
+        /**
+         * Returns the elapsed time of the longest sample, in microseconds.
+         */
+        public long getLongest ()
+        {
+            return _longest;
+        }
+
         protected long _totalElapsed, _longest;
         protected Histogram _histo = new Histogram(0, 20000, 10);
     }
@@ -1776,7 +2542,42 @@ public class TudeySceneManager extends SceneManager
     protected HashIntMap<ClientLiaison> _clients = IntMaps.newHashIntMap();
 
     /** The list of participants in the tick. */
-    protected ObserverList<TickParticipant> _tickParticipants = ObserverList.newSafeInOrder();
+    protected TickParticipantList _tickParticipants = new TickParticipantList();
+
+    /** The participants sleeping until a later tick. */
+    protected TimingWheel<TickParticipant> _sleepingParticipants =
+        new TimingWheel<TickParticipant>(WHEEL_RESOLUTION, WHEEL_SLOTS, WHEEL_LEVELS, 0);
+
+    /** The scene's random number generator. */
+    protected Random _random = new Random();
+
+    /** Wraps the random number generator. */
+    protected Randoms _randoms = Randoms.with(_random);
+
+    /** The recorder recording the scene's ticks, if any. */
+    protected TickRecorder _recorder;
+
+    /** The thread running the current tick, if any. */
+    protected volatile Thread _tickThread;
+
+    /** If non-null, the array to which we add the time spent in each tick phase. */
+    protected long[] _phaseTimes;
+
+    /** The interest bounds of the receiving clients, used to determine levels of detail. */
+    protected List<Rect> _lodBounds = Lists.newArrayList();
+
+    /** If non-null, the areas of interest to use in place of the clients'. */
+    protected List<Rect> _lodInterests;
+
+    /** The scheduled timers. */
+    protected TimingWheel<SceneTimer> _timers =
+        new TimingWheel<SceneTimer>(WHEEL_RESOLUTION, WHEEL_SLOTS, WHEEL_LEVELS, 0);
+
+    /** Holds the timers fired at the start of the tick. */
+    protected List<SceneTimer> _expiredTimers = Lists.newArrayList();
+
+    /** Holds the participants woken at the start of the tick. */
+    protected List<TickParticipant> _wokenParticipants = Lists.newArrayList();
 
     /** Set when we're actually in the process of ticking. */
     protected boolean _ticking;
@@ -1859,9 +2660,39 @@ public class TudeySceneManager extends SceneManager
     /** Used to profile our tick participants. */
     protected static Map<String, TickProfile> _profiles = Maps.newHashMap();
 
+    /** The name of the profile of the participant being sampled, or null if none. */
+    protected static String _profileName;
+
+    /** For each open profile section, the time spent in the sections nested within it. */
+    protected static long[] _sectionChildTimes = new long[4];
+
+    /** The number of open profile sections. */
+    protected static int _sectionDepth;
+
     /** Incremented on each participant tick when profiling. */
     protected static long _tickParticipantCount;
 
+    /** The total number of agents at each simulation level of detail over the profiled ticks. */
+    protected static long[] _lodProfile = new long[LOD_COUNT];
+
+    /** The number of ticks included in the level of detail profile. */
+    protected static int _lodProfileTicks;
+
+    /** The number of ticks between updates of agents at each level of detail. */
+    protected static final int[] LOD_TICKS = { 1, 2, 4 };
+
+    /** The names of the levels of detail, for the profile. */
+    protected static final String[] LOD_NAMES = { "full", "reduced", "minimal" };
+
+    /** The duration of the timing wheels' slots, as a power of two exponent. */
+    protected static final int WHEEL_RESOLUTION = 5;
+
+    /** The number of slots in each level of the timing wheels, as a power of two exponent. */
+    protected static final int WHEEL_SLOTS = 8;
+
+    /** The number of levels in the timing wheels (together spanning about six days). */
+    protected static final int WHEEL_LEVELS = 3;
+
     /** Shutdown observer op. */
     protected static final ObserverList.ObserverOp<ShutdownObserver> _shutdownOp =
         new ObserverList.ObserverOp<ShutdownObserver>() {
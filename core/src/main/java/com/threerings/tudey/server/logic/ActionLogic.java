@@ -37,7 +37,6 @@ import com.google.common.collect.Sets;
 
 import com.google.inject.Inject;
 
-import com.samskivert.util.Interval;
 import com.samskivert.util.Randoms;
 import com.samskivert.util.RandomUtil;
 
@@ -62,6 +61,7 @@ import com.threerings.tudey.data.TudeyOccupantInfo;
 import com.threerings.tudey.data.TudeySceneObject;
 import com.threerings.tudey.server.TudeySceneManager;
 import com.threerings.tudey.server.TudeySceneRegistry;
+import com.threerings.tudey.server.util.SceneTimer;
 import com.threerings.tudey.shape.Segment;
 
 import static com.threerings.tudey.Log.log;
@@ -196,7 +196,8 @@ public abstract class ActionLogic extends Logic
             ActionConfig.SpawnRotatedActor config = (ActionConfig.SpawnRotatedActor)_config;
             float rotation = config.rotation;
             if (config.rotationVariance > 0) {
-                rotation += config.rotationVariance * (FloatMath.random() - 0.5f);
+                rotation += config.rotationVariance *
+                    (_scenemgr.getRandoms().getFloat(1f) - 0.5f);
             }
             return FloatMath.normalizeAngle(
                 (config.relative ? target.getRotation() : 0f) + rotation);
@@ -238,7 +239,7 @@ public abstract class ActionLogic extends Logic
                     translation = getTranslation(cTargets.get(0));
                 }
             }
-            Randoms r = Randoms.threadLocal();
+            Randoms r = _scenemgr.getRandoms();
             for (int ii = 0; ii < config.count; ii++) {
                 for (int jj = 0; jj < COLLISION_ATTEMPTS; jj++) {
                     Vector2f location = getTranslation(target).add(
@@ -405,7 +406,7 @@ public abstract class ActionLogic extends Logic
                 if (_locations.isEmpty()) {
                     continue;
                 }
-                Logic location = Randoms.threadLocal().pick(_locations, null);
+                Logic location = _scenemgr.getRandoms().pick(_locations, null);
                 _locations.clear();
                 ActorLogic actorTarget = (ActorLogic)target;
                 warp(actorTarget, location);
@@ -899,7 +900,7 @@ public abstract class ActionLogic extends Logic
         @Override
         public boolean execute (int timestamp, Logic activator)
         {
-            int idx = RandomUtil.getWeightedIndex(_weights);
+            int idx = RandomUtil.getWeightedIndex(_weights, _scenemgr.getRandom());
             if (idx >= 0) {
                 return _actions[idx].execute(timestamp, activator);
             }
@@ -962,7 +963,7 @@ public abstract class ActionLogic extends Logic
             int delay = (config.variance == 0)
                 ? config.delay
                 : Math.max(0, config.delay +
-                        Randoms.threadLocal().getInt(config.variance * 2) - config.variance);
+                        _scenemgr.getRandoms().getInt(config.variance * 2) - config.variance);
             new ActionInterval(_scenemgr.getTimestamp() + delay, activator);
             return true;
         }
@@ -1002,10 +1003,10 @@ public abstract class ActionLogic extends Logic
         protected Set<ActionInterval> _intervals = Sets.newIdentityHashSet();
 
         /**
-         * An interval that knows its intended exection time in the scene, so that
+         * A timer that knows its intended exection time in the scene, so that
          * a clone can be created when transferring.
          */
-        protected class ActionInterval extends Interval
+        protected class ActionInterval extends SceneTimer
         {
             /** The scene timestamp at which we should be executing. */
             public final int executionStamp;
@@ -1018,7 +1019,7 @@ public abstract class ActionLogic extends Logic
              */
             public ActionInterval (int executionStamp, Logic activator)
             {
-                super(_scenemgr);
+                super(Delayed.this._scenemgr, Delayed.this);
 //                log.info("Scheduling actionInterval",
 //                        "scenemgr", System.identityHashCode(_scenemgr),
 //                        "exectionStamp", executionStamp,
@@ -1026,18 +1027,13 @@ public abstract class ActionLogic extends Logic
                 this.executionStamp = executionStamp;
                 this.activator = activator;
                 _intervals.add(this);
-                schedule(Math.max(0, executionStamp - _scenemgr.getTimestamp()));
+                scheduleAt(executionStamp);
             }
 
             @Override public void expired () {
                 _intervals.remove(this);
                 _action.execute(_scenemgr.getTimestamp(), activator);
             }
-
-            @Override protected void noteRejected () {
-                // it's ok: the scene has ended. (we could execute a failure action here)
-                _intervals.remove(this);
-            }
         }
     }
 
@@ -332,7 +332,7 @@ public class ActorLogic extends Logic
 
             _scenemgr.getActorSpace().add(_shape);
         }
-        _scenemgr.addTickParticipant(new TudeySceneManager.TickParticipant() {
+        _scenemgr.addTickParticipant(new TudeySceneManager.LogicTickParticipant(this) {
             public boolean tick (int timestamp) {
                 _actor.clear(Actor.WARP);
                 wasUpdated();
@@ -527,7 +527,7 @@ public class ActorLogic extends Logic
      */
     protected void removeOnNextTick ()
     {
-        _scenemgr.addTickParticipant(new TudeySceneManager.TickParticipant() {
+        _scenemgr.addTickParticipant(new TudeySceneManager.LogicTickParticipant(this) {
             public boolean tick (int timestamp) {
                 remove();
                 return false;
@@ -26,6 +26,8 @@
 package com.threerings.tudey.server.logic;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.threerings.config.ConfigReference;
 import com.threerings.math.FloatMath;
@@ -33,8 +35,11 @@ import com.threerings.math.Vector2f;
 
 import com.threerings.tudey.config.ActorConfig;
 import com.threerings.tudey.config.BehaviorConfig;
+import com.threerings.tudey.data.actor.Active;
+import com.threerings.tudey.data.actor.Actor;
 import com.threerings.tudey.data.actor.Agent;
 import com.threerings.tudey.data.actor.Mobile;
+import com.threerings.tudey.server.TudeySceneManager;
 import com.threerings.tudey.util.ActiveAdvancer;
 
 /**
@@ -101,6 +106,7 @@ public class AgentLogic extends ActiveLogic
      */
     public void setTargetRotation (float rotation)
     {
+        wake();
         if ((_targetRotation = rotation) == _actor.getRotation()) {
             reachedTargetRotation();
         }
@@ -165,6 +171,7 @@ public class AgentLogic extends ActiveLogic
     public void startMoving ()
     {
         if (canMove()) {
+            wake();
             ((Mobile)_actor).setDirection(_actor.getRotation());
             _actor.set(Mobile.MOVING);
         }
@@ -178,6 +185,14 @@ public class AgentLogic extends ActiveLogic
         _actor.clear(Mobile.MOVING);
     }
 
+    /**
+     * Returns a reference to the config of the agent's behavior.
+     */
+    public ConfigReference<BehaviorConfig> getBehaviorConfig ()
+    {
+        return ((ActorConfig.Agent)_config).behavior;
+    }
+
     /**
      * Creates a behavior for this agent.
      */
@@ -200,6 +215,45 @@ public class AgentLogic extends ActiveLogic
         return logic;
     }
 
+    /**
+     * Returns the level of detail at which the agent is being simulated.
+     *
+     * @return {@link TudeySceneManager#FULL_LOD}, {@link TudeySceneManager#REDUCED_LOD}, or
+     * {@link TudeySceneManager#MINIMAL_LOD}.
+     */
+    public int getSimulationLod ()
+    {
+        return _lod;
+    }
+
+    @Override
+    public void move (float x, float y, float rotation)
+    {
+        wake();
+        super.move(x, y, rotation);
+    }
+
+    @Override
+    public void signal (int timestamp, Logic source, String name)
+    {
+        wake();
+        super.signal(timestamp, source, name);
+    }
+
+    @Override
+    public void setVariable (int timestamp, Logic source, String name, Object value)
+    {
+        wake();
+        super.setVariable(timestamp, source, name, value);
+    }
+
+    @Override
+    public void request (int timestamp, PawnLogic source, String name)
+    {
+        wake();
+        super.request(timestamp, source, name);
+    }
+
     @Override
     public void transfer (Logic source, Map<Object, Object> refs)
     {
@@ -215,6 +269,14 @@ public class AgentLogic extends ActiveLogic
     @Override
     public boolean tick (int timestamp)
     {
+        // if we've been sleeping, there's no need to step through the time we slept; if we've
+        // been skipping ticks at a reduced level of detail, the advancer catches up in substeps
+        if (_sleeping) {
+            _sleeping = false;
+            _advancer.jump(_scenemgr.getPreviousTimestamp());
+        }
+        _throttled = false;
+
         // advance to current time
         super.tick(timestamp);
 
@@ -242,9 +304,38 @@ public class AgentLogic extends ActiveLogic
             }
         }
 
+        // determine our level of detail from our distance to the clients' interest
+        if (_inStasis || _destroyed) {
+            return true;
+        }
+        _lod = (timestamp < _promotedUntil) ?
+            TudeySceneManager.FULL_LOD : _scenemgr.getSimulationLod(_actor.getTranslation());
+
+        // if we're idle, sleep until the behavior next has something to do; otherwise, skip
+        // ticks according to our level of detail
+        int wake = canSleep() ? getWakeTimestamp(timestamp) : timestamp;
+        if (wake > _scenemgr.getNextTimestamp()) {
+            _scenemgr.sleepTickParticipant(this, wake);
+            _sleeping = true;
+
+        } else if (_lod != TudeySceneManager.FULL_LOD) {
+            _scenemgr.sleepTickParticipant(
+                this, timestamp + _scenemgr.getSimulationLodInterval(_lod));
+            _throttled = true;
+        }
         return true;
     }
 
+    @Override
+    public Actor getSnapshot ()
+    {
+        // return to full detail as soon as we come into view
+        if (_throttled) {
+            wake();
+        }
+        return super.getSnapshot();
+    }
+
     @Override
     protected void wasDestroyed ()
     {
@@ -276,6 +367,62 @@ public class AgentLogic extends ActiveLogic
         _behavior.penetratedEnvironment(penetration);
     }
 
+    @Override
+    protected void wasUpdated ()
+    {
+        super.wasUpdated();
+        wake();
+    }
+
+    /**
+     * Determines whether the agent may sleep (that is, be removed from the tick) when idle.  A
+     * sleeping agent is not ticked, so subclasses that do additional work in their ticks must opt
+     * in by overriding {@link #getWakeTimestamp} to account for that work (or by overriding this
+     * method).  The default implementation allows sleeping only for agents whose class doesn't
+     * override {@link #tick}, or also overrides {@link #getWakeTimestamp} in the same class or
+     * a subclass.
+     */
+    protected boolean canSleep ()
+    {
+        Class<?> clazz = getClass();
+        Boolean sleeps = _canSleep.get(clazz);
+        if (sleeps == null) {
+            Class<?> tclass = getDeclaringClass(clazz, "tick");
+            Class<?> wclass = getDeclaringClass(clazz, "getWakeTimestamp");
+            _canSleep.put(clazz, sleeps = (tclass == AgentLogic.class ||
+                (wclass != null && tclass.isAssignableFrom(wclass))));
+        }
+        return sleeps;
+    }
+
+    /**
+     * Returns the timestamp until which the agent may sleep (that is, be removed from the tick),
+     * or the current timestamp if it must continue ticking.  The agent may only sleep while at
+     * rest, and subclasses that do additional work in their ticks should override this to
+     * return the current timestamp while that work is pending (see {@link #canSleep}).
+     */
+    protected int getWakeTimestamp (int timestamp)
+    {
+        if (_inStasis || _behavior == null || _actor.isSet(Mobile.MOVING) ||
+                _actor.getRotation() != _targetRotation || _sensorCount > 0 ||
+                ((Active)_actor).getActivity() != Active.NONE) {
+            return timestamp;
+        }
+        return _behavior.getWakeTimestamp(timestamp);
+    }
+
+    /**
+     * Returns the agent to the tick if it is sleeping or skipping ticks, and simulates it at full
+     * detail for a time in case it is the target of whatever woke it.
+     */
+    protected void wake ()
+    {
+        if (_sleeping || _throttled) {
+            _scenemgr.wakeTickParticipant(this);
+            _promotedUntil = _scenemgr.getTimestamp() + LOD_PROMOTION_DURATION;
+        }
+    }
+
     /**
      * Called when we reach our target rotation.
      */
@@ -288,6 +435,24 @@ public class AgentLogic extends ActiveLogic
         _behavior.reachedTargetRotation();
     }
 
+    /**
+     * Returns the most derived class (up to this one) that declares the named method taking a
+     * timestamp, or <code>null</code> if none does.
+     */
+    protected static Class<?> getDeclaringClass (Class<?> clazz, String name)
+    {
+        for (Class<?> cclass = clazz; AgentLogic.class.isAssignableFrom(cclass);
+                cclass = cclass.getSuperclass()) {
+            try {
+                cclass.getDeclaredMethod(name, Integer.TYPE);
+                return cclass;
+            } catch (NoSuchMethodException e) {
+                // keep looking
+            }
+        }
+        return null;
+    }
+
     /** The agent's behavior logic. */
     protected BehaviorLogic _behavior;
 
@@ -299,4 +464,23 @@ public class AgentLogic extends ActiveLogic
 
     /** The timestamp of the last tick. */
     protected int _timestamp;
+
+    /** Set when we have removed ourself from the tick until the behavior has work to do. */
+    protected boolean _sleeping;
+
+    /** Set when we have removed ourself from the tick to skip ticks at reduced detail. */
+    protected boolean _throttled;
+
+    /** The level of detail at which we're being simulated. */
+    protected int _lod = TudeySceneManager.FULL_LOD;
+
+    /** The timestamp until which we're simulated at full detail regardless of distance. */
+    protected int _promotedUntil;
+
+    /** Whether agents of each class may sleep, as determined by {@link #canSleep}. */
+    protected static ConcurrentMap<Class<?>, Boolean> _canSleep =
+        new ConcurrentHashMap<Class<?>, Boolean>();
+
+    /** The duration for which agents woken by other logic are simulated at full detail. */
+    protected static final int LOD_PROMOTION_DURATION = 2000;
 }
@@ -32,7 +32,6 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 import com.samskivert.util.ArrayUtil;
-import com.samskivert.util.Randoms;
 
 import com.threerings.math.FloatMath;
 import com.threerings.math.Vector2f;
@@ -43,6 +42,7 @@ import com.threerings.tudey.data.EntityKey;
 import com.threerings.tudey.data.actor.Actor;
 import com.threerings.tudey.data.actor.Mobile;
 import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.util.Pathfinder;
 
 import static com.threerings.tudey.Log.log;
 
@@ -65,6 +65,12 @@ public abstract class BehaviorLogic extends Logic
             _agent.stopMoving();
             _agent.clearTargetRotation();
         }
+
+        @Override
+        public int getWakeTimestamp (int timestamp)
+        {
+            return Integer.MAX_VALUE;
+        }
     }
 
     /**
@@ -87,6 +93,12 @@ public abstract class BehaviorLogic extends Logic
             }
         }
 
+        @Override
+        public int getWakeTimestamp (int timestamp)
+        {
+            return _nextEvaluation;
+        }
+
         @Override
         public void transfer (Logic source, Map<Object, Object> refs)
         {
@@ -163,6 +175,13 @@ public abstract class BehaviorLogic extends Logic
             }
         }
 
+        @Override
+        public int getWakeTimestamp (int timestamp)
+        {
+            return Math.min(super.getWakeTimestamp(timestamp),
+                Math.min(_startRotating, _startMoving));
+        }
+
         @Override
         public void reachedTargetRotation ()
         {
@@ -358,7 +377,7 @@ public abstract class BehaviorLogic extends Logic
                 rotation -= FloatMath.HALF_PI;
                 break;
             case RANDOM:
-                rotation += Randoms.threadLocal().getBoolean()
+                rotation += _scenemgr.getRandoms().getBoolean()
                     ? FloatMath.HALF_PI : -FloatMath.HALF_PI;
                 break;
             }
@@ -426,6 +445,12 @@ public abstract class BehaviorLogic extends Logic
             }
         }
 
+        @Override
+        public int getWakeTimestamp (int timestamp)
+        {
+            return (_path == null) ? super.getWakeTimestamp(timestamp) : timestamp;
+        }
+
         @Override
         public void transfer (Logic source, Map<Object, Object> refs)
         {
@@ -586,7 +611,7 @@ public abstract class BehaviorLogic extends Logic
             if (_path != null) {
                 _candidates.add(null); // represents the current path
             }
-            PathCandidate candidate = Randoms.threadLocal().pick(_candidates, null);
+            PathCandidate candidate = _scenemgr.getRandoms().pick(_candidates, null);
             _candidates.clear();
 
             // set off on that path
@@ -688,10 +713,16 @@ public abstract class BehaviorLogic extends Logic
                 return;
             }
 
-            // compute a path to the target
-            Vector2f loc = _currentTarget.getTranslation();
-            Vector2f[] path = _scenemgr.getPathfinder().getPath(
-                _agent, MAX_FOLLOW_PATH_LENGTH, loc.x, loc.y, true, true);
+            // compute a path to the target, using the shared flow field if enough other agents
+            // are following it
+            Pathfinder pathfinder = _scenemgr.getPathfinder();
+            Vector2f[] path = pathfinder.getFlowPath(
+                _agent, _currentTarget, MAX_FOLLOW_PATH_LENGTH);
+            if (path == null) {
+                Vector2f loc = _currentTarget.getTranslation();
+                path = pathfinder.getPath(
+                    _agent, MAX_FOLLOW_PATH_LENGTH, loc.x, loc.y, true, true);
+            }
             if (path == null) {
                 clearPath();
                 _agent.face(_currentTarget);
@@ -726,6 +757,13 @@ public abstract class BehaviorLogic extends Logic
             }
         }
 
+        @Override
+        public int getWakeTimestamp (int timestamp)
+        {
+            int wake = super.getWakeTimestamp(timestamp);
+            return (_active == null) ? wake : Math.min(wake, _active.getWakeTimestamp(timestamp));
+        }
+
         @Override
         public void reachedTargetRotation ()
         {
@@ -779,7 +817,7 @@ public abstract class BehaviorLogic extends Logic
         protected void evaluate ()
         {
             super.evaluate();
-            BehaviorLogic nactive = Randoms.threadLocal().pick(_behaviorWeights, null);
+            BehaviorLogic nactive = _scenemgr.getRandoms().pick(_behaviorWeights, null);
             if (nactive == _active) {
                 return;
             }
@@ -1046,6 +1084,16 @@ public abstract class BehaviorLogic extends Logic
         // nothing by default
     }
 
+    /**
+     * Returns the timestamp until which the behavior has nothing to do as long as the agent
+     * remains idle, allowing the agent to sleep until then.  The default implementation returns
+     * the current timestamp, meaning that the behavior must be ticked every tick.
+     */
+    public int getWakeTimestamp (int timestamp)
+    {
+        return timestamp;
+    }
+
     /**
      * Notifies the behavior that the agent has reached its target rotation.
      */
@@ -326,7 +326,8 @@ public abstract class ConditionLogic extends Logic
         @Override
         public boolean isSatisfied (Logic activator)
         {
-            return FloatMath.random() < ((ConditionConfig.Random)_config).probability;
+            return _scenemgr.getRandoms().getFloat(1f) <
+                ((ConditionConfig.Random)_config).probability;
         }
     }
 
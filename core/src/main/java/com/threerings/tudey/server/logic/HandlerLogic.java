@@ -33,7 +33,6 @@ import java.util.Map;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
-import com.samskivert.util.Interval;
 
 import com.threerings.presents.dobj.EntryAddedEvent;
 import com.threerings.presents.dobj.EntryRemovedEvent;
@@ -51,6 +50,7 @@ import com.threerings.tudey.config.ParameterizedHandlerConfig;
 import com.threerings.tudey.data.EntityKey;
 import com.threerings.tudey.data.TudeyOccupantInfo;
 import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.util.SceneTimer;
 import com.threerings.tudey.shape.Shape;
 import com.threerings.tudey.shape.ShapeElement;
 
@@ -200,7 +200,7 @@ public abstract class HandlerLogic extends Logic
             _limit = (config.limit == 0) ? Integer.MAX_VALUE : config.limit;
             // offset -> initialDelay: makes offset 0 behave as before and effects negative offsets.
             float initialDelay = Math.max(0f, config.interval + config.offset);
-            (_interval = new Interval(_scenemgr) {
+            (_interval = new SceneTimer(_scenemgr, Timer.this) {
                 public void expired () {
                     execute(_scenemgr.getTimestamp());
                     if (--_limit > 0 && _interval != null) {
@@ -230,7 +230,7 @@ public abstract class HandlerLogic extends Logic
         protected int _limit;
 
         /** The timer interval. */
-        protected Interval _interval;
+        protected SceneTimer _interval;
     }
 
     /**
@@ -248,7 +248,7 @@ public abstract class HandlerLogic extends Logic
                 return;
             }
             float initialDelay = config.interval - config.warn + config.offset;
-            (_warnInterval = new Interval(_scenemgr) {
+            (_warnInterval = new SceneTimer(_scenemgr, WarnTimer.this) {
                 public void expired () {
                     _warnAction.execute(_scenemgr.getTimestamp(), _source);
                     if (_limit > 1 && _warnInterval != null) {
@@ -291,7 +291,7 @@ public abstract class HandlerLogic extends Logic
         protected ActionLogic _warnAction;
 
         /** The warning interval. */
-        protected Interval _warnInterval;
+        protected SceneTimer _warnInterval;
     }
 
     /**
@@ -75,7 +75,7 @@ public class MobileLogic extends ActorLogic
 
         // update the actor's shape, notify any sensors
         updateShape();
-        _scenemgr.triggerIntersectionSensors(timestamp, this);
+        _sensorCount = _scenemgr.triggerIntersectionSensors(timestamp, this);
 
         return true;
     }
@@ -225,4 +225,7 @@ public class MobileLogic extends ActorLogic
 
     /** The penetration vector sum. */
     protected Vector2f _penetrationSum = new Vector2f();
+
+    /** The number of intersection sensors triggered on the last tick. */
+    protected int _sensorCount;
 }
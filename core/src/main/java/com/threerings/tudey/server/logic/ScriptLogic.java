@@ -243,8 +243,8 @@ public abstract class ScriptLogic extends Logic
         {
             ScriptConfig.Rotate config = (ScriptConfig.Rotate)_config;
             _agent.stopMoving();
-            float rotation = config.direction +
-                FloatMath.random(-config.rotationVariance, config.rotationVariance);
+            float rotation = config.direction + _scenemgr.getRandoms().getInRange(
+                -config.rotationVariance, config.rotationVariance);
             if (config.relative) {
                 rotation += _agent.getRotation();
             }
@@ -0,0 +1,244 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.Arrays;
+
+import com.threerings.media.util.AStarPathUtil;
+
+/**
+ * A flow field over a square region of the pathfinding grid: the cost of the cheapest path from
+ * each cell to a goal cell at the center, along with the direction of the first step on that
+ * path.  Once the field has been computed, any number of agents heading for the same goal can
+ * find their next step in constant time.  Steps are taken in the eight directions used by
+ * {@link AStarPathUtil}, with the same costs, and diagonal steps may not cut corners.
+ */
+public class FlowField
+{
+    /**
+     * Creates a new field.
+     *
+     * @param radius the number of cells between the goal cell and the edges of the region.
+     */
+    public FlowField (int radius)
+    {
+        _radius = radius;
+        _size = radius*2 + 1;
+        int cells = _size * _size;
+        _costs = new int[cells];
+        _steps = new byte[cells];
+        _traversable = new boolean[cells];
+        _heap = new long[cells];
+    }
+
+    /**
+     * Returns the x coordinate of the goal cell.
+     */
+    public int getGoalX ()
+    {
+        return _goalx;
+    }
+
+    /**
+     * Returns the y coordinate of the goal cell.
+     */
+    public int getGoalY ()
+    {
+        return _goaly;
+    }
+
+    /**
+     * (Re)computes the field for the specified goal.
+     *
+     * @param pred the predicate used to determine which cells may be traversed.
+     * @param traverser the object passed to the predicate.
+     */
+    public void compute (AStarPathUtil.TraversalPred pred, Object traverser, int goalx, int goaly)
+    {
+        _goalx = goalx;
+        _goaly = goaly;
+
+        // find the traversable cells
+        int minx = goalx - _radius, miny = goaly - _radius;
+        for (int yy = 0, idx = 0; yy < _size; yy++) {
+            for (int xx = 0; xx < _size; xx++) {
+                _traversable[idx++] = pred.canTraverse(traverser, minx + xx, miny + yy);
+            }
+        }
+        Arrays.fill(_costs, Integer.MAX_VALUE);
+
+        // expand outwards from the goal in order of cost
+        int goal = _radius*_size + _radius;
+        _costs[goal] = 0;
+        _steps[goal] = -1;
+        _hsize = 0;
+        push(0, goal);
+        while (_hsize > 0) {
+            long entry = pop();
+            int cost = (int)(entry >>> 32), idx = (int)entry;
+            if (cost > _costs[idx]) {
+                continue; // stale entry
+            }
+            int x = idx % _size, y = idx / _size;
+            for (int ii = 0; ii < STEP_X.length; ii++) {
+                int nx = x + STEP_X[ii], ny = y + STEP_Y[ii];
+                if (nx < 0 || ny < 0 || nx >= _size || ny >= _size) {
+                    continue;
+                }
+                int nidx = ny*_size + nx;
+                if (!_traversable[nidx] || (STEP_X[ii] != 0 && STEP_Y[ii] != 0 &&
+                        !(_traversable[y*_size + nx] && _traversable[ny*_size + x]))) {
+                    continue;
+                }
+                int ncost = cost + STEP_COST[ii];
+                if (ncost < _costs[nidx]) {
+                    _costs[nidx] = ncost;
+                    _steps[nidx] = (byte)REVERSE_STEP[ii];
+                    push(ncost, nidx);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the cost of the path from the specified cell to the goal, in the units of
+     * {@link AStarPathUtil#ADJACENT_COST}, or {@link Integer#MAX_VALUE} if the cell is outside
+     * the field or the goal is unreachable from it.
+     */
+    public int getCost (int x, int y)
+    {
+        int idx = getIndex(x, y);
+        return (idx == -1) ? Integer.MAX_VALUE : _costs[idx];
+    }
+
+    /**
+     * Returns the index of the first step on the path from the specified cell to the goal (an
+     * index into {@link #STEP_X} and {@link #STEP_Y}), or -1 if the cell is the goal, is
+     * outside the field, or cannot reach the goal.
+     */
+    public int getStep (int x, int y)
+    {
+        int idx = getIndex(x, y);
+        return (idx == -1 || _costs[idx] == Integer.MAX_VALUE) ? -1 : _steps[idx];
+    }
+
+    /**
+     * Returns the index of the specified cell within the arrays, or -1 if it lies outside the
+     * field.
+     */
+    protected int getIndex (int x, int y)
+    {
+        int fx = x - _goalx + _radius, fy = y - _goaly + _radius;
+        return (fx < 0 || fy < 0 || fx >= _size || fy >= _size) ? -1 : fy*_size + fx;
+    }
+
+    /**
+     * Adds an entry to the heap.
+     */
+    protected void push (int cost, int idx)
+    {
+        long entry = ((long)cost << 32) | idx;
+        if (_hsize == _heap.length) {
+            _heap = Arrays.copyOf(_heap, _hsize * 2);
+        }
+        int pos = _hsize++;
+        while (pos > 0) {
+            int parent = (pos - 1) >> 1;
+            if (_heap[parent] <= entry) {
+                break;
+            }
+            _heap[pos] = _heap[parent];
+            pos = parent;
+        }
+        _heap[pos] = entry;
+    }
+
+    /**
+     * Removes and returns the lowest-cost entry from the heap.
+     */
+    protected long pop ()
+    {
+        long result = _heap[0];
+        long last = _heap[--_hsize];
+        int pos = 0;
+        while (true) {
+            int child = pos*2 + 1;
+            if (child >= _hsize) {
+                break;
+            }
+            if (child + 1 < _hsize && _heap[child + 1] < _heap[child]) {
+                child++;
+            }
+            if (_heap[child] >= last) {
+                break;
+            }
+            _heap[pos] = _heap[child];
+            pos = child;
+        }
+        _heap[pos] = last;
+        return result;
+    }
+
+    /** The x offsets of the eight steps. */
+    public static final int[] STEP_X = { 1, 1, 0, -1, -1, -1, 0, 1 };
+
+    /** The y offsets of the eight steps. */
+    public static final int[] STEP_Y = { 0, 1, 1, 1, 0, -1, -1, -1 };
+
+    /** The distance from the goal to the edges of the region. */
+    protected int _radius;
+
+    /** The width and height of the region. */
+    protected int _size;
+
+    /** The coordinates of the goal cell. */
+    protected int _goalx, _goaly;
+
+    /** The path cost for each cell. */
+    protected int[] _costs;
+
+    /** The first step for each cell. */
+    protected byte[] _steps;
+
+    /** Whether or not each cell may be traversed. */
+    protected boolean[] _traversable;
+
+    /** The heap of cost/index pairs used to order the expansion. */
+    protected long[] _heap;
+
+    /** The number of entries in the heap. */
+    protected int _hsize;
+
+    /** The cost of each step. */
+    protected static final int[] STEP_COST = {
+        AStarPathUtil.ADJACENT_COST, AStarPathUtil.DIAGONAL_COST,
+        AStarPathUtil.ADJACENT_COST, AStarPathUtil.DIAGONAL_COST,
+        AStarPathUtil.ADJACENT_COST, AStarPathUtil.DIAGONAL_COST,
+        AStarPathUtil.ADJACENT_COST, AStarPathUtil.DIAGONAL_COST };
+
+    /** The index of the step in the opposite direction of each step. */
+    protected static final int[] REVERSE_STEP = { 4, 5, 6, 7, 0, 1, 2, 3 };
+}
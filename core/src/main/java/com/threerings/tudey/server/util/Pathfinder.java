@@ -27,9 +27,14 @@ package com.threerings.tudey.server.util;
 
 import java.awt.Point;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 import com.samskivert.util.IntMap;
 import com.samskivert.util.IntMaps;
@@ -127,7 +132,13 @@ public class Pathfinder
         ActorLogic actor, float longest, float ax, float ay,
         float bx, float by, boolean partial, boolean shortcut)
     {
-        return getPath(false, actor, longest, ax, ay, bx, by, partial, shortcut);
+        long started = TudeySceneManager.startProfileSection();
+        try {
+            return getPath(false, actor, longest, ax, ay, bx, by, partial, shortcut);
+        } finally {
+            TudeySceneManager.endProfileSection(
+                TudeySceneManager.PATHFINDING_SECTION, started);
+        }
     }
 
     /**
@@ -157,7 +168,141 @@ public class Pathfinder
         ActorLogic actor, float longest, float ax, float ay,
         float bx, float by, boolean partial, boolean shortcut)
     {
-        return getPath(true, actor, longest, ax, ay, bx, by, partial, shortcut);
+        long started = TudeySceneManager.startProfileSection();
+        try {
+            return getPath(true, actor, longest, ax, ay, bx, by, partial, shortcut);
+        } finally {
+            TudeySceneManager.endProfileSection(
+                TudeySceneManager.PATHFINDING_SECTION, started);
+        }
+    }
+
+    /**
+     * Computes a path for the specified actor towards a goal shared by a crowd of actors,
+     * considering only the scene entries.  Once enough actors of the same collision mask and
+     * size are heading for the goal, a {@link FlowField} is computed around it and shared among
+     * them, so that each actor's path can be read from the field rather than searched for.  The
+     * field is reused until the goal moves to another cell or the entries' flags change.  The
+     * steps read from the field are checked against the actors and shortened with swept shapes,
+     * as with {@link #getPath}.
+     *
+     * @param longest the maximum path length, in world units.
+     * @return the path, or null if there is no field for the goal yet or the goal cannot be
+     * reached through the field (or an actor blocks the way), in which case the caller should
+     * fall back to {@link #getPath}.
+     */
+    public Vector2f[] getFlowPath (ActorLogic logic, Logic goal, float longest)
+    {
+        // determine the actor's extents
+        Rect bounds = logic.getShape().getBounds();
+        int width = Math.max(1, FloatMath.iceil(bounds.getWidth() * SUBDIVISION));
+        int height = Math.max(1, FloatMath.iceil(bounds.getHeight() * SUBDIVISION));
+
+        // find the field, creating its record if necessary
+        int timestamp = _scenemgr.getTimestamp();
+        if (timestamp - _lastFlowFieldPrune >= FLOW_FIELD_EXPIRY) {
+            pruneFlowFields(timestamp);
+        }
+        Actor actor = logic.getActor();
+        int collisionMask = actor.getCollisionMask();
+        FlowFieldRecord record = _flowFields.get(
+            _flowFieldKey.set(goal, collisionMask, width, height));
+        if (record == null) {
+            _flowFields.put(new FlowFieldKey().set(goal, collisionMask, width, height),
+                record = new FlowFieldRecord());
+        }
+        record.lastRequested = timestamp;
+
+        // wait until enough actors are heading for the goal to make the field worthwhile
+        if (record.field == null) {
+            record.requesters.add(logic);
+            if (record.requesters.size() < FLOW_FIELD_THRESHOLD) {
+                return null;
+            }
+            record.requesters = null;
+            record.field = new FlowField(FLOW_FIELD_RADIUS * SUBDIVISION);
+        }
+
+        // recompute the field if the goal has changed cells or the flags have changed
+        FlowField field = record.field;
+        float xoff = (width % 2) * 0.5f / SUBDIVISION;
+        float yoff = (height % 2) * 0.5f / SUBDIVISION;
+        Vector2f target = goal.getTranslation();
+        int gx = Math.round(target.x * SUBDIVISION - xoff);
+        int gy = Math.round(target.y * SUBDIVISION - yoff);
+        if (!record.computed || record.version != _entryFlagsVersion ||
+                field.getGoalX() != gx || field.getGoalY() != gy) {
+            long started = TudeySceneManager.startProfileSection();
+            field.compute(createTraversalPred(false, collisionMask, width, height), actor, gx, gy);
+            TudeySceneManager.endProfileSection(TudeySceneManager.PATHFINDING_SECTION, started);
+            record.computed = true;
+            record.version = _entryFlagsVersion;
+        }
+
+        // find the actor's starting cell
+        Vector2f translation = logic.getTranslation();
+        int x = Math.round(translation.x * SUBDIVISION - xoff);
+        int y = Math.round(translation.y * SUBDIVISION - yoff);
+        if (field.getCost(x, y) == Integer.MAX_VALUE) {
+            return null;
+        }
+        int step = field.getStep(x, y);
+        if (step == -1) {
+            return new Vector2f[] { new Vector2f(translation) };
+        }
+
+        // follow the steps up to the path length, adding a waypoint wherever the direction
+        // changes; the field considers only the entries, so make sure that no actor (such as a
+        // closed door) blocks the way, removing our own flags first as when computing a path
+        AStarPathUtil.TraversalPred pred = createTraversalPred(
+            true, collisionMask, width, height);
+        boolean remove = (!logic.isRemoved() && actor.canCollide(logic.getCollisionFlags()));
+        if (remove) {
+            removeFlags(logic);
+        }
+        float length = 0f, diagonal = FloatMath.sqrt(2f);
+        boolean blocked = false;
+        while (step != -1 && length < longest) {
+            x += FlowField.STEP_X[step];
+            y += FlowField.STEP_Y[step];
+            if (!pred.canTraverse(actor, x, y)) {
+                blocked = true;
+                break;
+            }
+            length += (FlowField.STEP_X[step] != 0 && FlowField.STEP_Y[step] != 0 ?
+                diagonal : 1f) / SUBDIVISION;
+            int next = field.getStep(x, y);
+            if (next != step || length >= longest) {
+                _waypoints.add(new Vector2f((x + xoff) / SUBDIVISION, (y + yoff) / SUBDIVISION));
+            }
+            step = next;
+        }
+        if (remove) {
+            addFlags(logic);
+        }
+        if (blocked) {
+            _waypoints.clear();
+            return null;
+        }
+        Vector2f[] waypoints = _waypoints.toArray(new Vector2f[_waypoints.size()]);
+        _waypoints.clear();
+
+        // process for shortcuts
+        Vector2f current = new Vector2f(translation);
+        _waypoints.add(current);
+        for (int ii = 0; ii < waypoints.length; ) {
+            for (int jj = waypoints.length - 1; jj >= ii; jj--) {
+                Vector2f waypoint = waypoints[jj];
+                if (jj == ii || !sweptShapeCollides(true, logic, current, waypoint)) {
+                    _waypoints.add(current = waypoint);
+                    ii = jj + 1;
+                    break;
+                }
+            }
+        }
+        waypoints = _waypoints.toArray(new Vector2f[_waypoints.size()]);
+        _waypoints.clear();
+        return waypoints;
     }
 
     // documentation inherited from interface TudeySceneModel.Observer
@@ -290,65 +435,9 @@ public class Pathfinder
         int height = Math.max(1, FloatMath.iceil(bounds.getHeight() * SUBDIVISION));
 
         // create the traversal predicate
-        AStarPathUtil.TraversalPred pred;
-        final Actor actor = logic.getActor();
-        final int collisionMask = actor.getCollisionMask();
-        if (width == 1 && height == 1) {
-            // simpler predicates for the common case of 1x1 actors
-            if (collideActor) {
-                pred = new AStarPathUtil.TraversalPred() {
-                    public boolean canTraverse (Object traverser, int x, int y) {
-                        return (collisionMask & _entryFlags.get(
-                            MathUtil.floorDiv(x, SUBDIVISION),
-                            MathUtil.floorDiv(y, SUBDIVISION))) == 0 &&
-                                (collisionMask & _actorFlags.get(x, y)) == 0;
-                    }
-                };
-            } else {
-                pred = new AStarPathUtil.TraversalPred() {
-                    public boolean canTraverse (Object traverser, int x, int y) {
-                        return (collisionMask & _entryFlags.get(
-                            MathUtil.floorDiv(x, SUBDIVISION),
-                            MathUtil.floorDiv(y, SUBDIVISION))) == 0;
-                    }
-                };
-            }
-        } else {
-            final int left = width / 2, right = (width - 1) / 2;
-            final int bottom = height / 2, top = (height - 1) / 2;
-            if (collideActor) {
-                pred = new AStarPathUtil.TraversalPred() {
-                    public boolean canTraverse (Object traverser, int x, int y) {
-                        for (int yy = y - bottom, yymax = y + top; yy <= yymax; yy++) {
-                            for (int xx = x - left, xxmax = x + right; xx <= xxmax; xx++) {
-                                if ((collisionMask & _entryFlags.get(
-                                        MathUtil.floorDiv(xx, SUBDIVISION),
-                                        MathUtil.floorDiv(yy, SUBDIVISION))) != 0 ||
-                                            (collisionMask & _actorFlags.get(xx, yy)) != 0) {
-                                    return false;
-                                }
-                            }
-                        }
-                        return true;
-                    }
-                };
-            } else {
-                pred = new AStarPathUtil.TraversalPred() {
-                    public boolean canTraverse (Object traverser, int x, int y) {
-                        for (int yy = y - bottom, yymax = y + top; yy <= yymax; yy++) {
-                            for (int xx = x - left, xxmax = x + right; xx <= xxmax; xx++) {
-                                if ((collisionMask & _entryFlags.get(
-                                        MathUtil.floorDiv(xx, SUBDIVISION),
-                                        MathUtil.floorDiv(yy, SUBDIVISION))) != 0) {
-                                    return false;
-                                }
-                            }
-                        }
-                        return true;
-                    }
-                };
-            }
-        }
+        Actor actor = logic.getActor();
+        AStarPathUtil.TraversalPred pred = createTraversalPred(
+            collideActor, actor.getCollisionMask(), width, height);
 
         // compute the offsets for converting to/from integer coordinates
         float xoff = (width % 2) * 0.5f / SUBDIVISION;
@@ -406,6 +495,73 @@ public class Pathfinder
         return waypoints;
     }
 
+    /**
+     * Creates a predicate that determines whether an actor of the specified mask and dimensions
+     * (in subdivided cells) can occupy a subdivided cell.
+     *
+     * @param collideActor if true, consider the actors as well as the scene entries.
+     */
+    protected AStarPathUtil.TraversalPred createTraversalPred (
+        boolean collideActor, final int collisionMask, int width, int height)
+    {
+        if (width == 1 && height == 1) {
+            // simpler predicates for the common case of 1x1 actors
+            if (collideActor) {
+                return new AStarPathUtil.TraversalPred() {
+                    public boolean canTraverse (Object traverser, int x, int y) {
+                        return (collisionMask & _entryFlags.get(
+                            MathUtil.floorDiv(x, SUBDIVISION),
+                            MathUtil.floorDiv(y, SUBDIVISION))) == 0 &&
+                                (collisionMask & _actorFlags.get(x, y)) == 0;
+                    }
+                };
+            } else {
+                return new AStarPathUtil.TraversalPred() {
+                    public boolean canTraverse (Object traverser, int x, int y) {
+                        return (collisionMask & _entryFlags.get(
+                            MathUtil.floorDiv(x, SUBDIVISION),
+                            MathUtil.floorDiv(y, SUBDIVISION))) == 0;
+                    }
+                };
+            }
+        } else {
+            final int left = width / 2, right = (width - 1) / 2;
+            final int bottom = height / 2, top = (height - 1) / 2;
+            if (collideActor) {
+                return new AStarPathUtil.TraversalPred() {
+                    public boolean canTraverse (Object traverser, int x, int y) {
+                        for (int yy = y - bottom, yymax = y + top; yy <= yymax; yy++) {
+                            for (int xx = x - left, xxmax = x + right; xx <= xxmax; xx++) {
+                                if ((collisionMask & _entryFlags.get(
+                                        MathUtil.floorDiv(xx, SUBDIVISION),
+                                        MathUtil.floorDiv(yy, SUBDIVISION))) != 0 ||
+                                            (collisionMask & _actorFlags.get(xx, yy)) != 0) {
+                                    return false;
+                                }
+                            }
+                        }
+                        return true;
+                    }
+                };
+            } else {
+                return new AStarPathUtil.TraversalPred() {
+                    public boolean canTraverse (Object traverser, int x, int y) {
+                        for (int yy = y - bottom, yymax = y + top; yy <= yymax; yy++) {
+                            for (int xx = x - left, xxmax = x + right; xx <= xxmax; xx++) {
+                                if ((collisionMask & _entryFlags.get(
+                                        MathUtil.floorDiv(xx, SUBDIVISION),
+                                        MathUtil.floorDiv(yy, SUBDIVISION))) != 0) {
+                                    return false;
+                                }
+                            }
+                        }
+                        return true;
+                    }
+                };
+            }
+        }
+    }
+
     /**
      * Determines whether the swept shape of the specified actor collides with anything.
      */
@@ -423,11 +579,25 @@ public class Pathfinder
         }
     }
 
+    /**
+     * Removes the flow fields that haven't been requested recently.
+     */
+    protected void pruneFlowFields (int timestamp)
+    {
+        for (Iterator<FlowFieldRecord> it = _flowFields.values().iterator(); it.hasNext(); ) {
+            if (timestamp - it.next().lastRequested >= FLOW_FIELD_EXPIRY) {
+                it.remove();
+            }
+        }
+        _lastFlowFieldPrune = timestamp;
+    }
+
     /**
      * Adds the specified entry's flags to the flag maps.
      */
     protected void addFlags (Entry entry)
     {
+        _entryFlagsVersion++;
         if (!(entry instanceof TileEntry)) {
             ConfigManager cfgmgr = _scenemgr.getConfigManager();
             Shape shape = entry.createShape(cfgmgr);
@@ -454,6 +624,7 @@ public class Pathfinder
      */
     protected void removeFlags (Entry entry)
     {
+        _entryFlagsVersion++;
         if (!(entry instanceof TileEntry)) {
             ConfigManager cfgmgr = _scenemgr.getConfigManager();
             Shape shape = entry.createShape(cfgmgr);
@@ -653,6 +824,74 @@ public class Pathfinder
         _entryFlags.put(x, y, flags);
     }
 
+    /**
+     * Identifies a flow field by goal, collision mask, and actor size.
+     */
+    protected static class FlowFieldKey
+    {
+        /** The goal logic. */
+        public Logic goal;
+
+        /** The collision mask of the actors using the field. */
+        public int collisionMask;
+
+        /** The dimensions of the actors using the field, in subdivided cells. */
+        public int width, height;
+
+        /**
+         * Sets the fields of the key.
+         *
+         * @return a reference to this key, for chaining.
+         */
+        public FlowFieldKey set (Logic goal, int collisionMask, int width, int height)
+        {
+            this.goal = goal;
+            this.collisionMask = collisionMask;
+            this.width = width;
+            this.height = height;
+            return this;
+        }
+
+        @Override
+        public int hashCode ()
+        {
+            return ((System.identityHashCode(goal) * 31 + collisionMask) * 31 + width) * 31 +
+                height;
+        }
+
+        @Override
+        public boolean equals (Object other)
+        {
+            if (!(other instanceof FlowFieldKey)) {
+                return false;
+            }
+            FlowFieldKey okey = (FlowFieldKey)other;
+            return goal == okey.goal && collisionMask == okey.collisionMask &&
+                width == okey.width && height == okey.height;
+        }
+    }
+
+    /**
+     * Tracks the use of a flow field.
+     */
+    protected static class FlowFieldRecord
+    {
+        /** The field, or null if not enough actors have requested it yet. */
+        public FlowField field;
+
+        /** Whether the field has been computed. */
+        public boolean computed;
+
+        /** The entry flag version for which the field was computed. */
+        public int version;
+
+        /** The timestamp at which the field was last requested. */
+        public int lastRequested;
+
+        /** The actors that have requested the field before its creation. */
+        public Set<ActorLogic> requesters = Sets.newIdentityHashSet();
+    }
+
     /** The owning scene manager. */
     protected TudeySceneManager _scenemgr;
 
@@ -689,6 +928,27 @@ public class Pathfinder
     /** Swept shape to reuse. */
     protected Shape _sweptShape;
 
+    /** The flow fields for crowds of actors heading for the same goal. */
+    protected Map<FlowFieldKey, FlowFieldRecord> _flowFields = Maps.newHashMap();
+
+    /** Reused to look up flow fields. */
+    protected FlowFieldKey _flowFieldKey = new FlowFieldKey();
+
+    /** Incremented whenever the entry flags change, to invalidate the flow fields. */
+    protected int _entryFlagsVersion;
+
+    /** The timestamp at which the flow fields were last pruned. */
+    protected int _lastFlowFieldPrune;
+
     /** The subdivision of the actor collision map. */
     protected static final int SUBDIVISION = 2;
+
+    /** The number of actors that must head for the same goal before we create a flow field. */
+    protected static final int FLOW_FIELD_THRESHOLD = 4;
+
+    /** The distance covered by flow fields on each side of their goals. */
+    protected static final int FLOW_FIELD_RADIUS = 16;
+
+    /** The time after which flow fields that haven't been requested are discarded. */
+    protected static final int FLOW_FIELD_EXPIRY = 5000;
 }
@@ -0,0 +1,110 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.logic.Logic;
+
+/**
+ * A timer that fires within the tick of a scene, in the manner of an {@link
+ * com.samskivert.util.Interval} posted to the scene manager but ordered deterministically with
+ * respect to the other timers and the tick participants.
+ *
+ * @see TudeySceneManager#scheduleTimer
+ */
+public abstract class SceneTimer
+    implements TudeySceneManager.LogicDelegate
+{
+    /**
+     * Creates a new timer for the specified scene.
+     */
+    public SceneTimer (TudeySceneManager scenemgr)
+    {
+        this(scenemgr, null);
+    }
+
+    /**
+     * Creates a new timer for the specified scene acting on behalf of the specified logic.
+     */
+    public SceneTimer (TudeySceneManager scenemgr, Logic logic)
+    {
+        _scenemgr = scenemgr;
+        _logic = logic;
+    }
+
+    /**
+     * Schedules the timer to fire after the specified delay from the current scene timestamp,
+     * replacing any existing schedule.
+     */
+    public void schedule (long delay)
+    {
+        scheduleAt(_scenemgr.getTimestamp() + (int)delay);
+    }
+
+    /**
+     * Schedules the timer to fire once the scene reaches the specified timestamp, replacing any
+     * existing schedule.
+     */
+    public void scheduleAt (int timestamp)
+    {
+        _scenemgr.scheduleTimer(this, timestamp);
+    }
+
+    /**
+     * Cancels the timer.
+     *
+     * @return true if the timer was scheduled.
+     */
+    public boolean cancel ()
+    {
+        return _scenemgr.cancelTimer(this);
+    }
+
+    /**
+     * Checks whether the timer is scheduled.
+     */
+    public boolean isScheduled ()
+    {
+        return _scenemgr.isTimerScheduled(this);
+    }
+
+    /**
+     * Called when the timer fires.
+     */
+    public abstract void expired ();
+
+    // documentation inherited from interface TudeySceneManager.LogicDelegate
+    public Logic getLogic ()
+    {
+        return _logic;
+    }
+
+    /** The scene manager. */
+    protected TudeySceneManager _scenemgr;
+
+    /** The logic on whose behalf the timer fires, if any. */
+    protected Logic _logic;
+}
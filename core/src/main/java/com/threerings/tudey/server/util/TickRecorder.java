@@ -0,0 +1,295 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.threerings.io.ObjectOutputStream;
+import com.threerings.io.Streamable;
+
+import com.threerings.config.ConfigReference;
+import com.threerings.math.Rect;
+import com.threerings.math.Vector2f;
+
+import com.threerings.tudey.config.ActorConfig;
+import com.threerings.tudey.data.InputFrame;
+import com.threerings.tudey.data.TudeySceneModel;
+
+import static com.threerings.tudey.Log.log;
+
+/**
+ * Records everything that affects the ticks of a scene from outside of the scene's logic (the
+ * scene model and random seed with which it starts, the pawns entering and leaving, the input and
+ * requests from the clients, the runnables posted to the scene, and the time elapsed between
+ * ticks), along with the areas that the clients observe, so that the ticks can be reproduced by
+ * a {@link TickReplayer}.  If writing fails, the recorder logs a warning and stops recording.
+ */
+public class TickRecorder
+{
+    /** Identifies a tick record. */
+    public static final byte TICK = 0;
+
+    /** Identifies a spawned pawn record. */
+    public static final byte PAWN_SPAWNED = 1;
+
+    /** Identifies a departing pawn record. */
+    public static final byte PAWN_LEFT = 2;
+
+    /** Identifies an input record. */
+    public static final byte INPUT = 3;
+
+    /** Identifies an actor request record. */
+    public static final byte ACTOR_REQUEST = 4;
+
+    /** Identifies an entry request record. */
+    public static final byte ENTRY_REQUEST = 5;
+
+    /** Identifies a streamable runnable record. */
+    public static final byte RUNNABLE = 6;
+
+    /** Identifies a record of a runnable that could not be streamed. */
+    public static final byte OPAQUE_RUNNABLE = 7;
+
+    /** Identifies an observed interest record. */
+    public static final byte INTEREST = 8;
+
+    /** Identifies the end of the recording. */
+    public static final byte END = 9;
+
+    /**
+     * Creates a new recorder that will write to the specified stream.
+     */
+    public TickRecorder (OutputStream out)
+    {
+        _out = new ObjectOutputStream(new BufferedOutputStream(out));
+    }
+
+    /**
+     * Writes the initial state of the scene.  Called by the scene manager on startup, before any
+     * logic is created.
+     */
+    public synchronized void start (TudeySceneModel model, long seed, int timestamp)
+    {
+        try {
+            _out.writeInt(VERSION);
+            _out.writeObject(model);
+            _out.writeLong(seed);
+            _out.writeInt(timestamp);
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * Records the start of a tick.
+     */
+    public synchronized void ticked (int elapsed)
+    {
+        if (_out == null) {
+            return;
+        }
+        try {
+            _out.writeByte(TICK);
+            _out.writeInt(elapsed);
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * Records the spawning of a pawn for an entering body.
+     */
+    public synchronized void pawnSpawned (
+        int id, ConfigReference<ActorConfig> ref, Vector2f translation, float rotation)
+    {
+        if (_out == null) {
+            return;
+        }
+        try {
+            _out.writeByte(PAWN_SPAWNED);
+            _out.writeInt(id);
+            _out.writeObject(ref);
+            _out.writeFloat(translation.x);
+            _out.writeFloat(translation.y);
+            _out.writeFloat(rotation);
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * Records the departure of a pawn's body.
+     */
+    public synchronized void pawnLeft (int id)
+    {
+        if (_out == null) {
+            return;
+        }
+        try {
+            _out.writeByte(PAWN_LEFT);
+            _out.writeInt(id);
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * Records a frame of input enqueued for a pawn.
+     */
+    public synchronized void inputEnqueued (int pawnId, InputFrame frame)
+    {
+        if (_out == null) {
+            return;
+        }
+        try {
+            _out.writeByte(INPUT);
+            _out.writeInt(pawnId);
+            _out.writeObject(frame);
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * Records a request submitted by a client to an actor.
+     */
+    public synchronized void actorRequested (int pawnId, int actorId, String name)
+    {
+        if (_out == null) {
+            return;
+        }
+        try {
+            _out.writeByte(ACTOR_REQUEST);
+            _out.writeInt(pawnId);
+            _out.writeInt(actorId);
+            _out.writeUTF(name);
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * Records a request submitted by a client to an entry.
+     */
+    public synchronized void entryRequested (int pawnId, Object key, String name)
+    {
+        if (_out == null) {
+            return;
+        }
+        try {
+            _out.writeByte(ENTRY_REQUEST);
+            _out.writeInt(pawnId);
+            _out.writeObject(key);
+            _out.writeUTF(name);
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * Records a runnable posted to the scene from outside of its tick.  Only streamable runnables
+     * can be replayed; for the rest, we record just the class name.
+     */
+    public synchronized void runnablePosted (Runnable runnable)
+    {
+        if (_out == null) {
+            return;
+        }
+        try {
+            if (runnable instanceof Streamable) {
+                _out.writeByte(RUNNABLE);
+                _out.writeObject(runnable);
+            } else {
+                _out.writeByte(OPAQUE_RUNNABLE);
+                _out.writeUTF(runnable.getClass().getName());
+            }
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * Records the area observed by a client at the end of a tick.
+     *
+     * @param targetId the id of the client's target pawn.
+     */
+    public synchronized void interestObserved (int targetId, Rect bounds)
+    {
+        if (_out == null) {
+            return;
+        }
+        try {
+            _out.writeByte(INTEREST);
+            _out.writeInt(targetId);
+            Vector2f min = bounds.getMinimumExtent(), max = bounds.getMaximumExtent();
+            _out.writeFloat(min.x);
+            _out.writeFloat(min.y);
+            _out.writeFloat(max.x);
+            _out.writeFloat(max.y);
+        } catch (IOException e) {
+            failed(e);
+        }
+    }
+
+    /**
+     * Finishes the recording and closes the stream.
+     */
+    public synchronized void close ()
+    {
+        if (_out == null) {
+            return;
+        }
+        try {
+            _out.writeByte(END);
+            _out.close();
+        } catch (IOException e) {
+            log.warning("Failed to close tick recording.", e);
+        }
+        _out = null;
+    }
+
+    /**
+     * Notes that writing failed and stops recording.
+     */
+    protected void failed (IOException e)
+    {
+        log.warning("Failed to write tick recording.", e);
+        try {
+            _out.close();
+        } catch (IOException ce) {
+            // no need to report twice
+        }
+        _out = null;
+    }
+
+    /** The stream to which we write, or null if closed. */
+    protected ObjectOutputStream _out;
+
+    /** The recording format version. */
+    protected static final int VERSION = 1;
+}
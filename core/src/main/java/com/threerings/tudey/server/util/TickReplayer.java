@@ -0,0 +1,401 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import com.samskivert.util.HashIntMap;
+import com.samskivert.util.IntMaps;
+
+import com.threerings.io.ObjectInputStream;
+
+import com.threerings.config.ConfigReference;
+import com.threerings.math.Rect;
+import com.threerings.math.Vector2f;
+
+import com.threerings.tudey.config.ActorConfig;
+import com.threerings.tudey.data.InputFrame;
+import com.threerings.tudey.data.TudeySceneModel;
+import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.logic.ActorLogic;
+import com.threerings.tudey.server.logic.EntryLogic;
+import com.threerings.tudey.server.logic.PawnLogic;
+
+import static com.threerings.tudey.Log.log;
+
+/**
+ * Replays a recording made by a {@link TickRecorder}, driving a scene's ticks as fast as possible
+ * without any clients and timing each phase of the tick.  The scene manager should be hosting the
+ * recording's scene model (see {@link #getSceneModel}), should seed its random number generator
+ * with the recording's seed (see {@link #getSeed}), and should have no occupants, so that it is
+ * ticked only by the replayer.  The recorded areas of interest stand in for the clients' when the
+ * scene determines its agents' levels of detail.
+ */
+public class TickReplayer
+{
+    /**
+     * The timing and other statistics of a replay.
+     */
+    public static class Stats
+    {
+        /** The number of ticks replayed. */
+        public int ticks;
+
+        /** The total time spent in the ticks, in nanoseconds. */
+        public long tickTime;
+
+        /** The time spent in each phase of the tick, in nanoseconds. */
+        public long[] phaseTimes = new long[TudeySceneManager.PHASE_COUNT];
+
+        /** The time spent applying the recorded events between ticks, in nanoseconds. */
+        public long eventTime;
+
+        /** The time spent observing the clients' areas of interest, in nanoseconds. */
+        public long observeTime;
+
+        /** The duration of the longest tick, in nanoseconds. */
+        public long longestTick;
+
+        /** The index of the longest tick. */
+        public int longestTickIndex;
+
+        /** The number of runnables that could not be replayed. */
+        public int skippedRunnables;
+
+        /** The number of times the replay diverged from the recording. */
+        public int divergences;
+
+        @Override
+        public String toString ()
+        {
+            StringBuilder buf = new StringBuilder();
+            buf.append(ticks).append(" ticks, ").append(tickTime / 1000L).append("us (");
+            buf.append(ticks == 0 ? 0L : tickTime / ticks / 1000L).append("us avg, ");
+            buf.append(longestTick / 1000L).append("us longest at tick ");
+            buf.append(longestTickIndex).append(")");
+            for (int ii = 0; ii < phaseTimes.length; ii++) {
+                buf.append("\n  ").append(PHASE_NAMES[ii]).append(": ");
+                buf.append(phaseTimes[ii] / 1000L).append("us");
+            }
+            buf.append("\n  events: ").append(eventTime / 1000L).append("us");
+            buf.append("\n  observe: ").append(observeTime / 1000L).append("us");
+            buf.append("\n").append(skippedRunnables).append(" runnables skipped, ");
+            buf.append(divergences).append(" divergences");
+            return buf.toString();
+        }
+    }
+
+    /**
+     * Creates a new replayer, reading the recording's initial state from the specified stream.
+     */
+    public TickReplayer (InputStream in)
+        throws IOException
+    {
+        _in = new ObjectInputStream(new BufferedInputStream(in));
+        int version = _in.readInt();
+        if (version != TickRecorder.VERSION) {
+            throw new IOException("Unsupported recording version: " + version);
+        }
+        _sceneModel = (TudeySceneModel)readObject();
+        _seed = _in.readLong();
+        _timestamp = _in.readInt();
+    }
+
+    /**
+     * Returns the scene model with which the recorded scene started.
+     */
+    public TudeySceneModel getSceneModel ()
+    {
+        return _sceneModel;
+    }
+
+    /**
+     * Returns the seed of the recorded scene's random number generator.
+     */
+    public long getSeed ()
+    {
+        return _seed;
+    }
+
+    /**
+     * Returns the timestamp at which recording started.
+     */
+    public int getTimestamp ()
+    {
+        return _timestamp;
+    }
+
+    /**
+     * Replays the recording on the specified scene manager.
+     *
+     * @return the statistics of the replay.
+     */
+    public Stats replay (TudeySceneManager scenemgr)
+        throws IOException
+    {
+        Stats stats = new Stats();
+        if (scenemgr.getTimestamp() != _timestamp) {
+            log.warning("Replaying from a different timestamp.",
+                "recorded", _timestamp, "actual", scenemgr.getTimestamp());
+            stats.divergences++;
+        }
+        scenemgr.setTickPhaseTimes(stats.phaseTimes);
+        scenemgr.setLodInterests(_lodInterests);
+        try {
+            long started = System.nanoTime();
+            while (true) {
+                byte type;
+                try {
+                    type = _in.readByte();
+                } catch (EOFException e) {
+                    log.warning("Tick recording ended unexpectedly.");
+                    break;
+                }
+                if (type == TickRecorder.END) {
+                    break;
+                }
+                if (type == TickRecorder.TICK) {
+                    long now = System.nanoTime();
+                    stats.eventTime += now - started;
+
+                    // the areas observed after the last tick are the ones the clients had when
+                    // this tick started
+                    _lodInterests.clear();
+                    _lodInterests.addAll(_observed);
+                    _observed.clear();
+                    scenemgr.tick(_in.readInt());
+                    started = System.nanoTime();
+                    long elapsed = started - now;
+                    stats.tickTime += elapsed;
+                    if (elapsed > stats.longestTick) {
+                        stats.longestTick = elapsed;
+                        stats.longestTickIndex = stats.ticks;
+                    }
+                    stats.ticks++;
+
+                } else if (type == TickRecorder.INTEREST) {
+                    long now = System.nanoTime();
+                    stats.eventTime += now - started;
+                    observe(scenemgr, stats);
+                    started = System.nanoTime();
+                    stats.observeTime += started - now;
+
+                } else {
+                    apply(scenemgr, type, stats);
+                }
+            }
+            stats.eventTime += System.nanoTime() - started;
+        } finally {
+            scenemgr.setTickPhaseTimes(null);
+            scenemgr.setLodInterests(null);
+            _in.close();
+        }
+        return stats;
+    }
+
+    /**
+     * Reads and applies an event of the specified type.
+     */
+    protected void apply (TudeySceneManager scenemgr, byte type, Stats stats)
+        throws IOException
+    {
+        switch (type) {
+            case TickRecorder.PAWN_SPAWNED: {
+                int id = _in.readInt();
+                @SuppressWarnings("unchecked") ConfigReference<ActorConfig> ref =
+                    (ConfigReference<ActorConfig>)readObject();
+                Vector2f translation = new Vector2f(_in.readFloat(), _in.readFloat());
+                float rotation = _in.readFloat();
+                ActorLogic logic = scenemgr.spawnActor(
+                    scenemgr.getNextTimestamp(), translation, rotation, ref);
+                if (logic == null) {
+                    log.warning("Failed to spawn recorded pawn.", "id", id, "ref", ref);
+                    stats.divergences++;
+                    return;
+                }
+                int nid = logic.getActor().getId();
+                if (nid != id) {
+                    log.warning("Spawned pawn has different id.", "recorded", id, "actual", nid);
+                    stats.divergences++;
+                }
+                _pawnIds.put(id, Integer.valueOf(nid));
+                return;
+            }
+            case TickRecorder.PAWN_LEFT: {
+                ActorLogic logic = getActorLogic(scenemgr, _in.readInt(), stats);
+                if (logic != null) {
+                    logic.destroy(scenemgr.getNextTimestamp(), logic, false);
+                }
+                return;
+            }
+            case TickRecorder.INPUT: {
+                ActorLogic logic = getActorLogic(scenemgr, _in.readInt(), stats);
+                InputFrame frame = (InputFrame)readObject();
+                if (logic instanceof PawnLogic) {
+                    ((PawnLogic)logic).enqueueInput(frame);
+                }
+                return;
+            }
+            case TickRecorder.ACTOR_REQUEST: {
+                ActorLogic source = getActorLogic(scenemgr, _in.readInt(), stats);
+                ActorLogic target = getActorLogic(scenemgr, _in.readInt(), stats);
+                String name = _in.readUTF();
+                if (source instanceof PawnLogic && target != null) {
+                    target.request(scenemgr.getNextTimestamp(), (PawnLogic)source, name);
+                }
+                return;
+            }
+            case TickRecorder.ENTRY_REQUEST: {
+                ActorLogic source = getActorLogic(scenemgr, _in.readInt(), stats);
+                Object key = readObject();
+                String name = _in.readUTF();
+                EntryLogic target = scenemgr.getEntryLogic(key);
+                if (!(source instanceof PawnLogic) || target == null) {
+                    log.warning("Missing logic for recorded entry request.", "key", key);
+                    stats.divergences++;
+                    return;
+                }
+                target.request(scenemgr.getNextTimestamp(), (PawnLogic)source, name);
+                return;
+            }
+            case TickRecorder.RUNNABLE:
+                scenemgr.postRunnable((Runnable)readObject());
+                return;
+
+            case TickRecorder.OPAQUE_RUNNABLE:
+                _in.readUTF();
+                stats.skippedRunnables++;
+                return;
+
+            default:
+                throw new IOException("Unknown record type: " + type);
+        }
+    }
+
+    /**
+     * Reads an observed area of interest and requests snapshots of the actors within it, as the
+     * client would have.
+     */
+    protected void observe (TudeySceneManager scenemgr, Stats stats)
+        throws IOException
+    {
+        ActorLogic target = getActorLogic(scenemgr, _in.readInt(), stats);
+        _bounds.getMinimumExtent().set(_in.readFloat(), _in.readFloat());
+        _bounds.getMaximumExtent().set(_in.readFloat(), _in.readFloat());
+        _observed.add(new Rect(_bounds));
+        if (!(target instanceof PawnLogic)) {
+            return;
+        }
+        int id = target.getActor().getId();
+        Set<ActorLogic> visible = _visible.get(id);
+        if (visible == null) {
+            _visible.put(id, visible = Sets.newHashSet());
+        }
+        scenemgr.getVisibleActors((PawnLogic)target, _bounds, _actors);
+        for (int ii = 0, nn = _actors.size(); ii < nn; ii++) {
+            ActorLogic actor = _actors.get(ii);
+            if (visible.remove(actor)) {
+                actor.getSnapshotDelta();
+            } else {
+                actor.getSnapshot();
+            }
+        }
+        visible.clear();
+        visible.addAll(_actors);
+        _actors.clear();
+    }
+
+    /**
+     * Returns the logic for the actor with the specified recorded id, or null if it doesn't
+     * exist (which counts as a divergence).
+     */
+    protected ActorLogic getActorLogic (TudeySceneManager scenemgr, int id, Stats stats)
+    {
+        Integer nid = _pawnIds.get(id);
+        ActorLogic logic = scenemgr.getActorLogic(nid == null ? id : nid);
+        if (logic == null) {
+            log.warning("Missing actor for recorded event.", "id", id);
+            stats.divergences++;
+        }
+        return logic;
+    }
+
+    /**
+     * Reads an object from the stream.
+     */
+    protected Object readObject ()
+        throws IOException
+    {
+        try {
+            return _in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown class in recording.", e);
+        }
+    }
+
+    /** The stream from which we read the recording. */
+    protected ObjectInputStream _in;
+
+    /** The initial scene model. */
+    protected TudeySceneModel _sceneModel;
+
+    /** The random seed. */
+    protected long _seed;
+
+    /** The initial timestamp. */
+    protected int _timestamp;
+
+    /** Maps recorded pawn ids to replayed ones, in case they differ. */
+    protected HashIntMap<Integer> _pawnIds = IntMaps.newHashIntMap();
+
+    /** The actors visible to each client, mapped by target id. */
+    protected HashIntMap<Set<ActorLogic>> _visible = IntMaps.newHashIntMap();
+
+    /** Holds actors during observation. */
+    protected List<ActorLogic> _actors = Lists.newArrayList();
+
+    /** Holds bounds during observation. */
+    protected Rect _bounds = new Rect();
+
+    /** The areas of interest observed since the last tick. */
+    protected List<Rect> _observed = Lists.newArrayList();
+
+    /** The areas of interest supplied to the scene for its agents' levels of detail. */
+    protected List<Rect> _lodInterests = Lists.newArrayList();
+
+    /** The names of the tick phases, for the statistics. */
+    protected static final String[] PHASE_NAMES = {
+        "timers", "wake", "participants", "runnables", "deltas" };
+}
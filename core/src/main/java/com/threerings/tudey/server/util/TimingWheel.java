@@ -0,0 +1,291 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package com.threerings.tudey.server.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * A hierarchical timing wheel keyed on scene timestamps.  Elements are scheduled for a timestamp
+ * and collected by {@link #advance} once the scene reaches it.  Scheduling and cancelling are
+ * constant-time operations.  The first level of the wheel divides time into slots of a fixed
+ * duration; each subsequent level has slots spanning an entire revolution of the level below,
+ * and its elements are cascaded down as time reaches them, so that advancing visits only the
+ * slots covering the elapsed time.  Expired elements are returned in order of timestamp and, for
+ * equal timestamps, in the order they were scheduled.
+ */
+public class TimingWheel<T>
+{
+    /**
+     * Creates a new wheel.
+     *
+     * @param resolution the power of two exponent of the slot duration in milliseconds.
+     * @param slots the power of two exponent of the number of slots in each level.
+     * @param levels the number of levels.
+     * @param timestamp the current timestamp.
+     */
+    public TimingWheel (int resolution, int slots, int levels, int timestamp)
+    {
+        _shift = resolution;
+        _bits = slots;
+        @SuppressWarnings("unchecked")
+        Node<T>[][] nlevels = (Node<T>[][])new Node<?>[levels][1 << slots];
+        _levels = nlevels;
+        _current = timestamp >> _shift;
+    }
+
+    /**
+     * Returns the number of elements scheduled.
+     */
+    public int size ()
+    {
+        return _nodes.size();
+    }
+
+    /**
+     * Checks whether the specified element is scheduled.
+     */
+    public boolean contains (T element)
+    {
+        return _nodes.containsKey(element);
+    }
+
+    /**
+     * Returns the timestamp for which the specified element is scheduled, or
+     * {@link Integer#MAX_VALUE} if it isn't scheduled.
+     */
+    public int getTimestamp (T element)
+    {
+        Node<T> node = _nodes.get(element);
+        return (node == null) ? Integer.MAX_VALUE : node.timestamp;
+    }
+
+    /**
+     * Schedules an element, replacing any existing schedule for the element.  Elements scheduled
+     * for timestamps that have already been reached will be returned by the next advance.
+     */
+    public void schedule (T element, int timestamp)
+    {
+        Node<T> node = _nodes.get(element);
+        if (node == null) {
+            _nodes.put(element, node = new Node<T>(element));
+        } else {
+            unlink(node);
+        }
+        node.timestamp = timestamp;
+        node.seq = _seq++;
+        link(node);
+    }
+
+    /**
+     * Cancels an element's schedule.
+     *
+     * @return true if the element was scheduled.
+     */
+    public boolean cancel (T element)
+    {
+        Node<T> node = _nodes.remove(element);
+        if (node == null) {
+            return false;
+        }
+        unlink(node);
+        return true;
+    }
+
+    /**
+     * Removes all elements from the wheel.
+     */
+    public void clear ()
+    {
+        _nodes.clear();
+        for (Node<T>[] level : _levels) {
+            Arrays.fill(level, null);
+        }
+    }
+
+    /**
+     * Advances the wheel to the specified timestamp, removing the elements scheduled for or
+     * before it.
+     *
+     * @param expired the collection to which the expired elements will be added, in order.
+     */
+    public void advance (int timestamp, Collection<? super T> expired)
+    {
+        // everything in the slots we pass through has expired; the slot containing the
+        // timestamp may hold elements scheduled for later in its span, so it remains current
+        int target = timestamp >> _shift;
+        int mask = (1 << _bits) - 1;
+        while (true) {
+            Node<T>[] level = _levels[0];
+            int idx = _current & mask;
+            for (Node<T> node = level[idx], next; node != null; node = next) {
+                next = node.next;
+                if (node.timestamp <= timestamp) {
+                    unlink(node);
+                    _nodes.remove(node.element);
+                    _expired.add(node);
+                }
+            }
+            if (_current >= target) {
+                break;
+            }
+            _current++;
+
+            // cascade the elements of any higher level slots that we've reached, from the
+            // highest down so that elements can move down more than one level
+            for (int ii = _levels.length - 1; ii > 0; ii--) {
+                int shift = _bits * ii;
+                if ((_current & ((1 << shift) - 1)) != 0) {
+                    continue;
+                }
+                Node<T>[] higher = _levels[ii];
+                int hidx = (_current >> shift) & mask;
+                Node<T> node = higher[hidx];
+                higher[hidx] = null;
+                for (Node<T> next; node != null; node = next) {
+                    next = node.next;
+                    node.prev = node.next = null;
+                    link(node);
+                }
+            }
+        }
+        if (_expired.isEmpty()) {
+            return;
+        }
+        if (_expired.size() > 1) {
+            Collections.sort(_expired, EXPIRY_ORDER);
+        }
+        for (int ii = 0, nn = _expired.size(); ii < nn; ii++) {
+            expired.add(_expired.get(ii).element);
+        }
+        _expired.clear();
+    }
+
+    /**
+     * Adds a node to the slot appropriate for its timestamp.
+     */
+    protected void link (Node<T> node)
+    {
+        // find the lowest level whose span covers the timestamp
+        int tick = Math.max(node.timestamp >> _shift, _current);
+        int slots = 1 << _bits;
+        int level = 0;
+        while (level < _levels.length - 1 &&
+                (tick >> (_bits * level)) - (_current >> (_bits * level)) >= slots) {
+            level++;
+        }
+        int idx = (tick >> (_bits * level)) & (slots - 1);
+        Node<T> head = _levels[level][idx];
+        if (head != null) {
+            head.prev = node;
+        }
+        node.next = head;
+        node.level = level;
+        node.slot = idx;
+        _levels[level][idx] = node;
+    }
+
+    /**
+     * Removes a node from its slot.
+     */
+    protected void unlink (Node<T> node)
+    {
+        if (node.prev == null) {
+            _levels[node.level][node.slot] = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        }
+        node.prev = node.next = null;
+    }
+
+    /**
+     * A scheduled element.
+     */
+    protected static class Node<T>
+    {
+        /** The scheduled element. */
+        public final T element;
+
+        /** The timestamp for which the element is scheduled. */
+        public int timestamp;
+
+        /** The sequence number of the schedule, which orders elements with equal timestamps. */
+        public long seq;
+
+        /** The level and index of the slot containing the node. */
+        public int level, slot;
+
+        /** The neighboring nodes in the slot. */
+        public Node<T> prev, next;
+
+        public Node (T element)
+        {
+            this.element = element;
+        }
+    }
+
+    /** The slot duration as a power of two exponent. */
+    protected int _shift;
+
+    /** The number of slots in each level as a power of two exponent. */
+    protected int _bits;
+
+    /** The heads of the node lists in the slots of each level. */
+    protected Node<T>[][] _levels;
+
+    /** The nodes of the scheduled elements. */
+    protected Map<T, Node<T>> _nodes = Maps.newHashMap();
+
+    /** The (unwrapped) index of the current slot of the first level. */
+    protected int _current;
+
+    /** The next schedule sequence number. */
+    protected long _seq;
+
+    /** Holds the expired nodes during an advance. */
+    protected List<Node<T>> _expired = Lists.newArrayList();
+
+    /** Orders expired nodes by timestamp, then sequence. */
+    protected static final Comparator<Node<?>> EXPIRY_ORDER = new Comparator<Node<?>>() {
+        public int compare (Node<?> n1, Node<?> n2) {
+            if (n1.timestamp != n2.timestamp) {
+                return (n1.timestamp < n2.timestamp) ? -1 : +1;
+            }
+            return (n1.seq < n2.seq) ? -1 : (n1.seq > n2.seq ? +1 : 0);
+        }
+    };
+}
@@ -27,8 +27,10 @@ package com.threerings.tudey.tools;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 
 import java.util.List;
+import java.util.Set;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.DirectoryScanner;
@@ -36,22 +38,37 @@ import org.apache.tools.ant.Task;
 import org.apache.tools.ant.types.FileSet;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import com.samskivert.util.Tuple;
 
 import com.threerings.resource.ResourceManager;
 import com.threerings.util.MessageManager;
 
 import com.threerings.config.ConfigManager;
+import com.threerings.editor.util.ReferenceManifest;
 import com.threerings.export.BinaryImporter;
+import com.threerings.util.BuildManifest;
 
 import com.threerings.tudey.data.TudeySceneModel;
 
 import static com.threerings.tudey.Log.log;
 
 /**
- * Validates the references in a set of scenes.
+ * Validates the references in a set of scenes.  If a manifest is specified, scenes whose contents
+ * haven't changed since they were last found to be valid are not read again; we simply check
+ * that the configs and resources they reference still exist.
  */
 public class SceneValidatorTask extends Task
 {
+    /**
+     * Sets the file in which to record the validated scenes and their references.
+     */
+    public void setManifest (File manifest)
+    {
+        _manifest = manifest;
+    }
+
     /**
      * Adds a fileset to the list of sets to process.
      */
@@ -72,24 +89,53 @@ public class SceneValidatorTask extends Task
 
         boolean valid = true;
 
+        ReferenceManifest manifest = (_manifest == null) ? null : new ReferenceManifest(_manifest);
         for (FileSet fs : _filesets) {
             DirectoryScanner ds = fs.getDirectoryScanner(getProject());
             File fromDir = fs.getDir(getProject());
             for (String file : ds.getIncludedFiles()) {
                 File source = new File(fromDir, file);
+                String path = source.getPath();
                 try {
+                    String hash = null;
+                    if (manifest != null && manifest.isStillValid(
+                            path, hash = BuildManifest.getHash(source), cfgmgr)) {
+                        continue;
+                    }
                     TudeySceneModel model = (TudeySceneModel)new BinaryImporter(
                         new FileInputStream(source)).readObject();
                     model.getConfigManager().init("scene", cfgmgr);
-                    valid = model.validateReferences(file, System.err) && valid;
+                    boolean svalid = model.validateReferences(file, System.err);
+                    valid = svalid && valid;
+                    if (manifest == null) {
+                        continue;
+                    }
+                    if (svalid) {
+                        Set<Tuple<Class<?>, String>> configs = Sets.newHashSet();
+                        Set<String> resources = Sets.newHashSet();
+                        model.getReferences(configs, resources);
+                        manifest.put(path, hash, cfgmgr, configs, resources);
+                    } else {
+                        manifest.remove(path);
+                    }
 
                 } catch (Exception e) { // IOException, ClassCastException
                     log.warning("Failed to read scene.", "file", source, e);
                 }
             }
         }
+        if (manifest != null) {
+            try {
+                manifest.save();
+            } catch (IOException e) {
+                throw new BuildException("Error writing manifest: " + e, e);
+            }
+        }
     }
 
+    /** The file in which to record the validated scenes, if any. */
+    protected File _manifest;
+
     /** A list of filesets that contain resource configs. */
     protected List<FileSet> _filesets = Lists.newArrayList();
 }
@@ -0,0 +1,210 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import static com.threerings.ClydeLog.log;
+
+/**
+ * Records the content hashes of the source files processed by a build step (along with the
+ * dependencies of each file, if any), so that later builds can skip the files that haven't
+ * changed.  The manifest is stored as a text file with one tab-delimited line per source: path,
+ * hash, and dependencies.  Sources that are neither checked nor recorded in a build (because
+ * they have been deleted, for instance) are dropped from the manifest when it is saved.  Methods
+ * may be called from multiple threads.
+ */
+public class BuildManifest
+{
+    /**
+     * Returns the hash of the contents of the specified file.
+     */
+    public static String getHash (File file)
+        throws IOException
+    {
+        return Files.hash(file, Hashing.md5()).toString();
+    }
+
+    /**
+     * Creates a manifest that will be stored in the specified file, reading its existing
+     * contents if present.
+     */
+    public BuildManifest (File file)
+    {
+        _file = file;
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), Charsets.UTF_8));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] fields = line.split("\t");
+                    if (fields.length >= 2) {
+                        _entries.put(fields[0], new Entry(fields[1], ImmutableList.copyOf(
+                            Arrays.asList(fields).subList(2, fields.length))));
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            log.warning("Failed to read build manifest; rebuilding all.", "file", file, e);
+            _entries.clear();
+        }
+    }
+
+    /**
+     * Checks whether the specified source was processed with the given hash.
+     */
+    public synchronized boolean isCurrent (String path, String hash)
+    {
+        _seen.add(path);
+        Entry entry = _entries.get(path);
+        return entry != null && entry.hash.equals(hash);
+    }
+
+    /**
+     * Returns the dependencies recorded for the specified source.
+     */
+    public synchronized List<String> getDependencies (String path)
+    {
+        Entry entry = _entries.get(path);
+        return (entry == null) ? Collections.<String>emptyList() : entry.dependencies;
+    }
+
+    /**
+     * Records that the specified source was processed with the given hash.
+     */
+    public void put (String path, String hash)
+    {
+        put(path, hash, Collections.<String>emptyList());
+    }
+
+    /**
+     * Records that the specified source was processed with the given hash and dependencies.
+     */
+    public synchronized void put (String path, String hash, Collection<String> dependencies)
+    {
+        _seen.add(path);
+        _entries.put(path, new Entry(hash, ImmutableList.copyOf(dependencies)));
+    }
+
+    /**
+     * Removes the entry for the specified source, so that it will be processed again.
+     */
+    public synchronized void remove (String path)
+    {
+        _entries.remove(path);
+    }
+
+    /**
+     * Writes the manifest to its file, omitting the entries for sources that have not been
+     * checked or recorded since the manifest was read.
+     */
+    public synchronized void save ()
+        throws IOException
+    {
+        _entries.keySet().retainAll(_seen);
+
+        // write to a temporary file and then move it into place, so that an interrupted build
+        // doesn't leave a partial manifest
+        File parent = _file.getAbsoluteFile().getParentFile();
+        if (!parent.exists()) {
+            parent.mkdirs();
+        }
+        File tmp = new File(parent, _file.getName() + ".tmp");
+        BufferedWriter out = new BufferedWriter(
+            new OutputStreamWriter(new FileOutputStream(tmp), Charsets.UTF_8));
+        try {
+            for (Map.Entry<String, Entry> entry : _entries.entrySet()) {
+                out.write(entry.getKey());
+                out.write('\t');
+                out.write(entry.getValue().hash);
+                for (String dependency : entry.getValue().dependencies) {
+                    out.write('\t');
+                    out.write(dependency);
+                }
+                out.newLine();
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(_file) && !(_file.delete() && tmp.renameTo(_file))) {
+            throw new IOException("Failed to move " + tmp + " to " + _file);
+        }
+    }
+
+    /**
+     * The recorded state of a single source.
+     */
+    protected static class Entry
+    {
+        /** The hash of the source when processed. */
+        public final String hash;
+
+        /** The dependencies of the source. */
+        public final List<String> dependencies;
+
+        public Entry (String hash, List<String> dependencies)
+        {
+            this.hash = hash;
+            this.dependencies = dependencies;
+        }
+    }
+
+    /** The file in which the manifest is stored. */
+    protected File _file;
+
+    /** The entries, mapped by source path. */
+    protected Map<String, Entry> _entries = Maps.newTreeMap();
+
+    /** The paths of the sources checked or recorded since the manifest was read. */
+    protected Set<String> _seen = Sets.newHashSet();
+}
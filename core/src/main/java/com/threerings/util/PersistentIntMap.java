@@ -0,0 +1,541 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable map from integer keys to values, stored in a hash array mapped trie so that
+ * modified versions may be created (through an {@link Editor}) at a cost proportional to the
+ * number of changes rather than the size of the map: unchanged portions of the trie are shared
+ * between versions.
+ */
+public class PersistentIntMap<V> extends AbstractMap<Integer, V>
+{
+    /**
+     * Accumulates changes to a map.  Nodes copied by the editor are modified in place until
+     * the next call to {@link #build}, so a batch of changes copies each affected node once.
+     */
+    public static class Editor<V>
+    {
+        /**
+         * Returns the number of entries in the edited map.
+         */
+        public int size ()
+        {
+            return _size;
+        }
+
+        /**
+         * Returns the value mapped to the specified key, or <code>null</code> for none.
+         */
+        public V get (int key)
+        {
+            return PersistentIntMap.<V>get(_root, key);
+        }
+
+        /**
+         * Checks whether the edited map contains the specified key.
+         */
+        public boolean containsKey (int key)
+        {
+            return getLeaf(_root, key) != null;
+        }
+
+        /**
+         * Maps the specified key to the given value.
+         *
+         * @return the previous value mapped to the key, or <code>null</code> for none.
+         */
+        public V put (int key, V value)
+        {
+            _old = null;
+            _root = put(_root, 0, key, value);
+            @SuppressWarnings("unchecked") V old = (V)_old;
+            _old = null;
+            return old;
+        }
+
+        /**
+         * Removes the mapping for the specified key.
+         *
+         * @return the previous value mapped to the key, or <code>null</code> for none.
+         */
+        public V remove (int key)
+        {
+            _old = null;
+            _root = remove(_root, 0, key);
+            @SuppressWarnings("unchecked") V old = (V)_old;
+            _old = null;
+            return old;
+        }
+
+        /**
+         * Returns a map containing the current state of the editor.  The editor may continue to
+         * be used afterwards without affecting the returned map.
+         */
+        public PersistentIntMap<V> build ()
+        {
+            _owner = new Object();
+            return new PersistentIntMap<V>(_root, _size);
+        }
+
+        protected Editor (Node root, int size)
+        {
+            _root = root;
+            _size = size;
+        }
+
+        /**
+         * Puts a mapping into the subtrie rooted at the specified node.
+         *
+         * @return the node to use in its place.
+         */
+        protected Node put (Node node, int shift, int key, Object value)
+        {
+            int bit = getBit(key, shift), idx = node.getIndex(bit);
+            if ((node.bitmap & bit) == 0) {
+                Node nnode = editable(node);
+                nnode.array = insert(node.array, idx, new Leaf<Object>(key, value));
+                nnode.bitmap |= bit;
+                _size++;
+                return nnode;
+            }
+            Object child = node.array[idx], nchild;
+            if (child instanceof Node) {
+                nchild = put((Node)child, shift + BITS, key, value);
+            } else {
+                Leaf<?> leaf = (Leaf<?>)child;
+                if (leaf.key != key) {
+                    nchild = createNode(shift + BITS, leaf, new Leaf<Object>(key, value));
+                    _size++;
+                } else {
+                    _old = leaf.value;
+                    nchild = (leaf.value == value) ? leaf : new Leaf<Object>(key, value);
+                }
+            }
+            if (nchild == child) {
+                return node;
+            }
+            Node nnode = editable(node);
+            nnode.array[idx] = nchild;
+            return nnode;
+        }
+
+        /**
+         * Removes a mapping from the subtrie rooted at the specified node.
+         *
+         * @return the node to use in its place.
+         */
+        protected Node remove (Node node, int shift, int key)
+        {
+            int bit = getBit(key, shift);
+            if ((node.bitmap & bit) == 0) {
+                return node;
+            }
+            int idx = node.getIndex(bit);
+            Object child = node.array[idx], nchild;
+            if (child instanceof Node) {
+                Node cnode = remove((Node)child, shift + BITS, key);
+                if (cnode == child) {
+                    return node;
+                }
+                // collapse nodes left with a single leaf into that leaf
+                nchild = (cnode.array.length == 1 && cnode.array[0] instanceof Leaf) ?
+                    cnode.array[0] : cnode;
+
+            } else {
+                Leaf<?> leaf = (Leaf<?>)child;
+                if (leaf.key != key) {
+                    return node;
+                }
+                _old = leaf.value;
+                _size--;
+                Node nnode = editable(node);
+                nnode.array = delete(node.array, idx);
+                nnode.bitmap &= ~bit;
+                return nnode;
+            }
+            Node nnode = editable(node);
+            nnode.array[idx] = nchild;
+            return nnode;
+        }
+
+        /**
+         * Creates a node containing the two supplied leaves.
+         */
+        protected Node createNode (int shift, Leaf<?> l1, Leaf<?> l2)
+        {
+            int b1 = getBit(l1.key, shift), b2 = getBit(l2.key, shift);
+            if (b1 == b2) {
+                return new Node(_owner, b1, new Object[] { createNode(shift + BITS, l1, l2) });
+            }
+            boolean first = ((l1.key >>> shift) & MASK) < ((l2.key >>> shift) & MASK);
+            return new Node(_owner, b1 | b2,
+                first ? new Object[] { l1, l2 } : new Object[] { l2, l1 });
+        }
+
+        /**
+         * Returns a version of the node that we may modify: either the node itself, if we
+         * created it since the last build, or a copy.
+         */
+        protected Node editable (Node node)
+        {
+            return (node.owner == _owner) ?
+                node : new Node(_owner, node.bitmap, node.array.clone());
+        }
+
+        /** The current root node. */
+        protected Node _root;
+
+        /** The current number of entries. */
+        protected int _size;
+
+        /** Identifies the nodes created by this editor since the last build. */
+        protected Object _owner = new Object();
+
+        /** Holds the value replaced or removed by the current operation. */
+        protected Object _old;
+    }
+
+    /**
+     * Returns an empty map.
+     */
+    public static <V> PersistentIntMap<V> empty ()
+    {
+        @SuppressWarnings("unchecked") PersistentIntMap<V> empty = (PersistentIntMap<V>)EMPTY;
+        return empty;
+    }
+
+    /**
+     * Returns an editor initialized with the contents of this map.
+     */
+    public Editor<V> edit ()
+    {
+        return new Editor<V>(_root, _size);
+    }
+
+    /**
+     * Returns the value mapped to the specified key, or <code>null</code> for none.
+     */
+    public V get (int key)
+    {
+        return PersistentIntMap.<V>get(_root, key);
+    }
+
+    /**
+     * Checks whether the map contains the specified key.
+     */
+    public boolean containsKey (int key)
+    {
+        return getLeaf(_root, key) != null;
+    }
+
+    @Override
+    public int size ()
+    {
+        return _size;
+    }
+
+    @Override
+    public V get (Object key)
+    {
+        return (key instanceof Integer) ? get(((Integer)key).intValue()) : null;
+    }
+
+    @Override
+    public boolean containsKey (Object key)
+    {
+        return (key instanceof Integer) && containsKey(((Integer)key).intValue());
+    }
+
+    @Override
+    public Set<Map.Entry<Integer, V>> entrySet ()
+    {
+        return new AbstractSet<Map.Entry<Integer, V>>() {
+            public Iterator<Map.Entry<Integer, V>> iterator () {
+                return new EntryIterator<V>(_root);
+            }
+            public int size () {
+                return _size;
+            }
+        };
+    }
+
+    protected PersistentIntMap (Node root, int size)
+    {
+        _root = root;
+        _size = size;
+    }
+
+    /**
+     * An internal node of the trie, which contains the leaves and nodes whose bits are set in
+     * its bitmap, in order of their bits.
+     */
+    protected static final class Node
+    {
+        /** The editor (if any) that may modify this node in place. */
+        public final Object owner;
+
+        /** The bits corresponding to the occupied slots. */
+        public int bitmap;
+
+        /** The leaves and child nodes. */
+        public Object[] array;
+
+        public Node (Object owner, int bitmap, Object[] array)
+        {
+            this.owner = owner;
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        /**
+         * Returns the array index corresponding to the specified bit.
+         */
+        public int getIndex (int bit)
+        {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+    }
+
+    /**
+     * A single mapping.
+     */
+    protected static final class Leaf<V>
+        implements Map.Entry<Integer, V>
+    {
+        /** The key of the mapping. */
+        public final int key;
+
+        /** The value of the mapping. */
+        public final V value;
+
+        public Leaf (int key, V value)
+        {
+            this.key = key;
+            this.value = value;
+        }
+
+        // documentation inherited from interface Map.Entry
+        public Integer getKey ()
+        {
+            return key;
+        }
+
+        // documentation inherited from interface Map.Entry
+        public V getValue ()
+        {
+            return value;
+        }
+
+        // documentation inherited from interface Map.Entry
+        public V setValue (V value)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int hashCode ()
+        {
+            return key ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public boolean equals (Object other)
+        {
+            if (!(other instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> oentry = (Map.Entry<?, ?>)other;
+            Object ovalue = oentry.getValue();
+            return getKey().equals(oentry.getKey()) &&
+                (value == null ? ovalue == null : value.equals(ovalue));
+        }
+
+        @Override
+        public String toString ()
+        {
+            return key + "=" + value;
+        }
+    }
+
+    /**
+     * Iterates over the leaves of a trie in depth-first order.
+     */
+    protected static class EntryIterator<V>
+        implements Iterator<Map.Entry<Integer, V>>
+    {
+        public EntryIterator (Node root)
+        {
+            _nodes[0] = root;
+            advance();
+        }
+
+        // documentation inherited from interface Iterator
+        public boolean hasNext ()
+        {
+            return _next != null;
+        }
+
+        // documentation inherited from interface Iterator
+        public Map.Entry<Integer, V> next ()
+        {
+            if (_next == null) {
+                throw new NoSuchElementException();
+            }
+            @SuppressWarnings("unchecked") Leaf<V> next = (Leaf<V>)_next;
+            advance();
+            return next;
+        }
+
+        // documentation inherited from interface Iterator
+        public void remove ()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Finds the next leaf.
+         */
+        protected void advance ()
+        {
+            while (_depth >= 0) {
+                Object[] array = _nodes[_depth].array;
+                int idx = _indices[_depth]++;
+                if (idx >= array.length) {
+                    _depth--;
+                    continue;
+                }
+                Object child = array[idx];
+                if (child instanceof Leaf) {
+                    _next = (Leaf<?>)child;
+                    return;
+                }
+                _nodes[++_depth] = (Node)child;
+                _indices[_depth] = 0;
+            }
+            _next = null;
+        }
+
+        /** The stack of nodes being traversed. */
+        protected Node[] _nodes = new Node[MAX_DEPTH];
+
+        /** The index of the next child of each node on the stack. */
+        protected int[] _indices = new int[MAX_DEPTH];
+
+        /** The depth of the current node. */
+        protected int _depth;
+
+        /** The next leaf to return, or <code>null</code> if we've reached the end. */
+        protected Leaf<?> _next;
+    }
+
+    /**
+     * Returns the value mapped to the specified key in the trie, or <code>null</code> for none.
+     */
+    protected static <V> V get (Node root, int key)
+    {
+        Leaf<?> leaf = getLeaf(root, key);
+        @SuppressWarnings("unchecked") V value = (leaf == null) ? null : (V)leaf.value;
+        return value;
+    }
+
+    /**
+     * Returns the leaf for the specified key in the trie, or <code>null</code> for none.
+     */
+    protected static Leaf<?> getLeaf (Node root, int key)
+    {
+        Node node = root;
+        for (int shift = 0;; shift += BITS) {
+            int bit = getBit(key, shift);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object child = node.array[node.getIndex(bit)];
+            if (child instanceof Leaf) {
+                Leaf<?> leaf = (Leaf<?>)child;
+                return (leaf.key == key) ? leaf : null;
+            }
+            node = (Node)child;
+        }
+    }
+
+    /**
+     * Returns the bit corresponding to the key at the specified level.
+     */
+    protected static int getBit (int key, int shift)
+    {
+        return 1 << ((key >>> shift) & MASK);
+    }
+
+    /**
+     * Returns a copy of the array with the specified element inserted.
+     */
+    protected static Object[] insert (Object[] array, int idx, Object element)
+    {
+        Object[] narray = new Object[array.length + 1];
+        System.arraycopy(array, 0, narray, 0, idx);
+        narray[idx] = element;
+        System.arraycopy(array, idx, narray, idx + 1, array.length - idx);
+        return narray;
+    }
+
+    /**
+     * Returns a copy of the array with the specified element deleted.
+     */
+    protected static Object[] delete (Object[] array, int idx)
+    {
+        Object[] narray = new Object[array.length - 1];
+        System.arraycopy(array, 0, narray, 0, idx);
+        System.arraycopy(array, idx + 1, narray, idx, narray.length - idx);
+        return narray;
+    }
+
+    /** The root node of the trie. */
+    protected final Node _root;
+
+    /** The number of entries in the map. */
+    protected final int _size;
+
+    /** The number of key bits consumed at each level of the trie. */
+    protected static final int BITS = 5;
+
+    /** The mask for the bits consumed at each level. */
+    protected static final int MASK = (1 << BITS) - 1;
+
+    /** The maximum depth of the trie. */
+    protected static final int MAX_DEPTH = (32 + BITS - 1) / BITS;
+
+    /** The shared empty map. */
+    protected static final PersistentIntMap<Object> EMPTY =
+        new PersistentIntMap<Object>(new Node(null, 0, new Object[0]), 0);
+}
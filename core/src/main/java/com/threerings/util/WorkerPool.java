@@ -0,0 +1,317 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import static com.threerings.ClydeLog.log;
+
+/**
+ * A single pool of daemon worker threads shared by all of the client's parallel and background
+ * tasks, so that the various subsystems don't each start threads of their own that compete for
+ * the same processors.  Each subsystem submits its tasks through a {@link Limiter}, which bounds
+ * the number of the pool's threads that the subsystem may occupy at once.
+ */
+public class WorkerPool
+{
+    /**
+     * Checks whether the pool has any threads with which to run background tasks.
+     */
+    public static boolean isEnabled ()
+    {
+        return _executor != null;
+    }
+
+    /**
+     * Returns a reference to the pool's executor, or <code>null</code> if the pool is disabled.
+     */
+    public static Executor getExecutor ()
+    {
+        return _executor;
+    }
+
+    /**
+     * Runs the supplied task on one of the pool's threads, or on the calling thread if the pool
+     * is disabled.
+     */
+    public static void execute (Runnable task)
+    {
+        if (_executor == null) {
+            task.run();
+        } else {
+            _executor.execute(task);
+        }
+    }
+
+    /**
+     * Runs tasks on the pool, using at most a fixed number of the pool's threads at once.  Tasks
+     * beyond that number wait in the limiter's own queue rather than the pool's, so a subsystem
+     * with a backlog of work leaves the remaining threads free for the others.  If the limit is
+     * zero (or the pool is disabled), tasks run on the calling thread.
+     */
+    public static class Limiter
+        implements Executor
+    {
+        /**
+         * Creates a limiter whose limit is read from the specified system property.
+         *
+         * @param property the name of the property containing the maximum number of threads.
+         * @param defaultThreads the maximum number of threads if the property isn't set.
+         */
+        public Limiter (String property, int defaultThreads)
+        {
+            this(Integer.getInteger(property, defaultThreads));
+        }
+
+        /**
+         * Creates a limiter.
+         *
+         * @param threads the maximum number of threads to occupy at once, or zero to run tasks
+         * on the calling thread.
+         */
+        public Limiter (int threads)
+        {
+            _threads = threads;
+        }
+
+        /**
+         * Returns the maximum number of threads that the limiter will occupy at once (zero if
+         * the limiter runs tasks on the calling thread).
+         */
+        public int getThreads ()
+        {
+            return (_executor == null) ? 0 : Math.max(0, _threads);
+        }
+
+        /**
+         * Checks whether the limiter runs its tasks on the pool.
+         */
+        public boolean isEnabled ()
+        {
+            return getThreads() > 0;
+        }
+
+        /**
+         * Checks whether it's worth dividing work among the limiter's threads and the calling
+         * thread: that is, whether the limiter is enabled and we have more than one processor.
+         */
+        public boolean isParallel ()
+        {
+            return isEnabled() && Runtime.getRuntime().availableProcessors() > 1;
+        }
+
+        // documentation inherited from interface Executor
+        public void execute (Runnable task)
+        {
+            if (!isEnabled()) {
+                task.run();
+                return;
+            }
+            _tasks.add(task);
+            for (int active; (active = _active.get()) < _threads; ) {
+                if (_active.compareAndSet(active, active + 1)) {
+                    _executor.execute(_drainer);
+                    return;
+                }
+            }
+        }
+
+        /** The maximum number of threads to occupy at once. */
+        protected int _threads;
+
+        /** The tasks awaiting a thread. */
+        protected ConcurrentLinkedQueue<Runnable> _tasks = new ConcurrentLinkedQueue<Runnable>();
+
+        /** The number of drainers posted to the pool. */
+        protected AtomicInteger _active = new AtomicInteger();
+
+        /** Runs tasks from the queue until it is empty. */
+        protected Runnable _drainer = new Runnable() {
+            public void run () {
+                while (true) {
+                    for (Runnable task; (task = _tasks.poll()) != null; ) {
+                        try {
+                            task.run();
+                        } catch (Throwable t) {
+                            log.warning("Failed to run task.", "task", task, t);
+                        }
+                    }
+                    _active.decrementAndGet();
+
+                    // a task added after our last poll may have found us still active, in which
+                    // case it's up to us to run it
+                    while (true) {
+                        if (_tasks.isEmpty()) {
+                            return;
+                        }
+                        int active = _active.get();
+                        if (active >= _threads) {
+                            return;
+                        }
+                        if (_active.compareAndSet(active, active + 1)) {
+                            break;
+                        }
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * A group of tasks whose completion the submitting thread waits for.  While waiting, the
+     * submitting thread runs any of the group's tasks that the workers haven't yet started, so
+     * a group completes even when the pool is busy with (or disabled for) other work.
+     */
+    public static class TaskGroup
+    {
+        /**
+         * Creates a group whose tasks run through the specified limiter.
+         */
+        public TaskGroup (Limiter limiter)
+        {
+            _limiter = limiter;
+        }
+
+        /**
+         * Checks whether it's worth dividing work among the group's threads and the calling
+         * thread.
+         */
+        public boolean isParallel ()
+        {
+            return _limiter.isParallel();
+        }
+
+        /**
+         * Submits a task to run on the pool.
+         */
+        public void submit (Runnable task)
+        {
+            _outstanding.incrementAndGet();
+            _tasks.add(task);
+            if (_limiter.isEnabled()) {
+                _limiter.execute(_runner);
+            }
+        }
+
+        /**
+         * Runs the supplied tasks, the first on the calling thread and the rest on the pool,
+         * returning when they have all completed.
+         */
+        public void invoke (Runnable[] tasks)
+        {
+            for (int ii = 1; ii < tasks.length; ii++) {
+                submit(tasks[ii]);
+            }
+            _outstanding.incrementAndGet();
+            run(tasks[0]);
+            finish();
+        }
+
+        /**
+         * Waits for all submitted tasks to complete, helping out with any not yet started.
+         */
+        public void finish ()
+        {
+            for (Runnable task; (task = _tasks.poll()) != null; ) {
+                run(task);
+            }
+            synchronized (_outstanding) {
+                while (_outstanding.get() > 0) {
+                    try {
+                        _outstanding.wait();
+                    } catch (InterruptedException e) {
+                        // keep waiting
+                    }
+                }
+            }
+        }
+
+        /**
+         * Runs a single task, noting its completion.
+         */
+        protected void run (Runnable task)
+        {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                log.warning("Failed to run task.", "task", task, t);
+            }
+            if (_outstanding.decrementAndGet() == 0) {
+                synchronized (_outstanding) {
+                    _outstanding.notifyAll();
+                }
+            }
+        }
+
+        /** Runs the group's tasks on the pool. */
+        protected Limiter _limiter;
+
+        /** The tasks not yet started. */
+        protected ConcurrentLinkedQueue<Runnable> _tasks = new ConcurrentLinkedQueue<Runnable>();
+
+        /** The number of tasks submitted but not yet completed. */
+        protected AtomicInteger _outstanding = new AtomicInteger();
+
+        /** Posted to the limiter once per submitted task to run whichever task is next, if any. */
+        protected Runnable _runner = new Runnable() {
+            public void run () {
+                Runnable task = _tasks.poll();
+                if (task != null) {
+                    TaskGroup.this.run(task);
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates the pool's executor, or returns <code>null</code> if disabled.
+     */
+    protected static ThreadPoolExecutor createExecutor ()
+    {
+        if (THREADS <= 0) {
+            return null;
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            THREADS, THREADS, 10L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactoryBuilder().setNameFormat("worker-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /** The number of worker threads (zero to disable the pool). */
+    protected static final int THREADS = Integer.getInteger(
+        "worker_threads", Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+
+    /** The shared executor, or <code>null</code> if disabled. */
+    protected static final ThreadPoolExecutor _executor = createExecutor();
+}
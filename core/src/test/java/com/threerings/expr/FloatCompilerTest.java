@@ -0,0 +1,267 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package com.threerings.expr;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the {@link FloatCompiler} class against the tree evaluators.
+ */
+public class FloatCompilerTest extends TestCase
+{
+    public FloatCompilerTest (String name)
+    {
+        super(name);
+    }
+
+    @Override
+    protected void setUp ()
+    {
+        _scope = new DynamicScope("test");
+        _scope.put("a", _a = new MutableFloat(0.7f));
+        _scope.put("b", _b = new MutableFloat(1.9f));
+        _scope.put("v", _v = Variable.newInstance(2.5f));
+        _scope.put(Scope.EPOCH, _epoch = new MutableLong(1000L));
+        _scope.put(Scope.NOW, _now = new MutableLong(3500L));
+    }
+
+    public void testOpcodes ()
+    {
+        for (String expr : OPERATIONS) {
+            FloatExpression.Evaluator compiled = compileGenerated(expr);
+            FloatExpression.Evaluator tree = parse(expr).createEvaluator(_scope);
+            for (float[] values : OPERAND_VALUES) {
+                _a.value = values[0];
+                _b.value = values[1];
+                assertEquals(expr, tree.evaluate(), compiled.evaluate(), 0f);
+            }
+        }
+    }
+
+    public void testOperandOrder ()
+    {
+        _a.value = 2f;
+        _b.value = 3f;
+        assertEquals(8f, compileGenerated("pow(a, b)").evaluate(), 0f);
+        assertEquals(9f, compileGenerated("pow(b, a)").evaluate(), 0f);
+        assertEquals(2f / 3f, compileGenerated("a / b").evaluate(), 0f);
+        assertEquals(1f, compileGenerated("a - b + 2").evaluate(), 0f);
+
+        _a.value = 0.3f;
+        _b.value = 1.6f;
+        float ab = compileGenerated("noise2(a, b)").evaluate();
+        float ba = compileGenerated("noise2(b, a)").evaluate();
+        assertTrue(ab != ba);
+        assertEquals(parse("noise2(a, b)").createEvaluator(_scope).evaluate(), ab, 0f);
+        assertEquals(parse("noise2(b, a)").createEvaluator(_scope).evaluate(), ba, 0f);
+    }
+
+    public void testConstantFolding ()
+    {
+        // a constant expression folds to a single constant
+        FloatExpression expr = parse("pow(2, 3) + sin(0.5) * -4 % 3");
+        FloatCompiler compiler = new FloatCompiler(_scope);
+        assertTrue(compiler.compile(expr));
+        assertEquals(1, compiler._ops.size());
+        assertEquals(1, compiler._constants.size());
+        float value = expr.createEvaluator(_scope).evaluate();
+        assertEquals(value, compiler._constants.get(0), 0f);
+        assertEquals(value, FloatCompiler.compile(expr, _scope).evaluate(), 0f);
+
+        // constant subexpressions fold within variable ones
+        compiler = new FloatCompiler(_scope);
+        assertFalse(compiler.compile(parse("a + 2 * 3")));
+        assertEquals(3, compiler._ops.size());
+        assertEquals(1, compiler._constants.size());
+        assertEquals(6f, compiler._constants.get(0), 0f);
+        assertEquals(6.7f, compileGenerated("a + 2 * 3").evaluate(), 0f);
+    }
+
+    public void testReferences ()
+    {
+        // references and variables are read when evaluated, not when compiled
+        FloatExpression.Evaluator eval = compileGenerated("a * v + b");
+        assertEquals(0.7f * 2.5f + 1.9f, eval.evaluate(), 0f);
+        _a.value = 3f;
+        _v.setFloat(-1f);
+        _b.value = 0.5f;
+        assertEquals(-2.5f, eval.evaluate(), 0f);
+
+        // a lone reference needs no generated class
+        FloatExpression.Evaluator single = FloatCompiler.compile(parse("b"), _scope);
+        _b.value = 4f;
+        assertEquals(4f, single.evaluate(), 0f);
+
+        // unresolved references use their default values
+        FloatExpression.Reference missing = new FloatExpression.Reference();
+        missing.name = "missing";
+        missing.defvalue = 4f;
+        FloatExpression.Add add = new FloatExpression.Add();
+        add.firstOperand = missing;
+        add.secondOperand = parse("a");
+        assertEquals(7f, compileGenerated(add).evaluate(), 0f);
+    }
+
+    public void testClock ()
+    {
+        FloatExpression.Evaluator eval = compileGenerated("clock() * 2");
+        FloatExpression.Evaluator tree = parse("clock() * 2").createEvaluator(_scope);
+        assertEquals(5f, eval.evaluate(), 0f);
+        _now.value = 61250L;
+        assertEquals(120.5f, eval.evaluate(), 0f);
+        assertEquals(tree.evaluate(), eval.evaluate(), 0f);
+        _epoch.value = 60000L;
+        assertEquals(2.5f, eval.evaluate(), 0f);
+    }
+
+    public void testFallback ()
+    {
+        // expression types unknown to the compiler are evaluated through their own evaluators,
+        // and are never folded
+        final int[] count = new int[1];
+        FloatExpression custom = new FloatExpression() {
+            public Evaluator createEvaluator (Scope scope) {
+                return new Evaluator() {
+                    public float evaluate () {
+                        return ++count[0];
+                    }
+                };
+            }
+        };
+        FloatExpression.Add add = new FloatExpression.Add();
+        add.firstOperand = custom;
+        add.secondOperand = parse("2 * 3");
+        FloatExpression.Evaluator eval = compileGenerated(add);
+        assertEquals(7f, eval.evaluate(), 0f);
+        assertEquals(8f, eval.evaluate(), 0f);
+
+        // as are subclasses of the known operations
+        FloatExpression.Multiply multiply = new FloatExpression.Multiply() {
+            @Override protected Evaluator createEvaluator (
+                    final Evaluator eval1, final Evaluator eval2) {
+                return new Evaluator() {
+                    public float evaluate () {
+                        return eval1.evaluate() * eval2.evaluate() + 1f;
+                    }
+                };
+            }
+        };
+        multiply.firstOperand = parse("a");
+        multiply.secondOperand = parse("b");
+        FloatCompiler compiler = new FloatCompiler(_scope);
+        assertFalse(compiler.compile(multiply));
+        assertEquals(1, compiler._evaluators.size());
+        assertEquals(0.7f * 1.9f + 1f, FloatCompiler.compile(multiply, _scope).evaluate(), 0f);
+    }
+
+    public void testClassSharing ()
+    {
+        // expressions with the same structure share a class, bound to their own references
+        DynamicScope other = new DynamicScope("other");
+        other.put("a", new MutableFloat(5f));
+        other.put("b", new MutableFloat(6f));
+        FloatExpression.Evaluator e1 = compileGenerated("a + b * 3");
+        FloatExpression.Evaluator e2 = FloatCompiler.compile(parse("a + b * 3"), other);
+        assertSame(e1.getClass(), e2.getClass());
+        assertEquals(0.7f + 1.9f * 3f, e1.evaluate(), 0f);
+        assertEquals(23f, e2.evaluate(), 0f);
+
+        // different constants require a different class
+        assertNotSame(e1.getClass(), compileGenerated("a + b * 4").getClass());
+    }
+
+    public void testClassEviction ()
+    {
+        // the cache never holds more than the maximum number of classes
+        FloatExpression.Evaluator first = compileGenerated("a + 0.5");
+        for (int ii = 0; ii < FloatCompiler.MAX_CLASSES + 16; ii++) {
+            assertEquals(ii + 0.7f, compileGenerated("a + " + ii).evaluate(), 0f);
+        }
+        assertTrue(FloatCompiler._classes.size() <= FloatCompiler.MAX_CLASSES);
+
+        // evaluators outlive the eviction of their classes, which are generated anew when needed
+        FloatCompiler._classes.invalidateAll();
+        FloatExpression.Evaluator second = compileGenerated("a + 0.5");
+        assertNotSame(first.getClass(), second.getClass());
+        assertNotSame(first.getClass().getClassLoader(), second.getClass().getClassLoader());
+        assertEquals(1.2f, first.evaluate(), 0f);
+        assertEquals(1.2f, second.evaluate(), 0f);
+    }
+
+    /**
+     * Parses the supplied expression.
+     */
+    protected static FloatExpression parse (String expr)
+    {
+        try {
+            return FloatExpression.parseExpression(expr);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Compiles the supplied expression, which must require a generated class.
+     */
+    protected FloatExpression.Evaluator compileGenerated (String expr)
+    {
+        return compileGenerated(parse(expr));
+    }
+
+    /**
+     * Compiles the supplied expression, which must require a generated class.
+     */
+    protected FloatExpression.Evaluator compileGenerated (FloatExpression expr)
+    {
+        FloatExpression.Evaluator eval = FloatCompiler.compile(expr, _scope);
+        assertTrue(eval.getClass().getName().startsWith(FloatCompiler.GENERATED_PREFIX));
+        return eval;
+    }
+
+    /** The scope in which expressions are compiled. */
+    protected DynamicScope _scope;
+
+    /** The mutable references in the scope. */
+    protected MutableFloat _a, _b;
+
+    /** The variable in the scope. */
+    protected Variable _v;
+
+    /** The clock timestamps in the scope. */
+    protected MutableLong _epoch, _now;
+
+    /** One expression for each operation, with the non-commutative ones in both orders. */
+    protected static final String[] OPERATIONS = {
+        "-a", "a + b", "a - b", "b - a", "a * b", "a / b", "b / a", "a % b", "b % a",
+        "exp(a)", "sin(a)", "cos(a)", "tan(a)", "square(b)", "triangle(b)", "ramp(b)",
+        "saw(b)", "noise1(b)", "pow(a, b)", "pow(b, a)", "noise2(a, b)", "noise2(b, a)",
+        "v * clock() - b", "sin(a * 2 + b) / (1 + pow(a, 2)) % 0.3" };
+
+    /** The values of the operands with which to evaluate each expression. */
+    protected static final float[][] OPERAND_VALUES = {
+        { 0.7f, 1.9f }, { 2f, 3f }, { -1.25f, 0.4f }, { 5.5f, -2.75f } };
+}
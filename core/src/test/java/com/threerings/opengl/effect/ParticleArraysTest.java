@@ -0,0 +1,114 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package com.threerings.opengl.effect;
+
+import junit.framework.TestCase;
+
+import com.threerings.math.Vector3f;
+
+import com.threerings.opengl.effect.config.InfluenceConfig;
+import com.threerings.opengl.renderer.Color4f;
+
+/**
+ * Tests the array storage of {@link Particle} state.
+ */
+public class ParticleArraysTest extends TestCase
+{
+    public ParticleArraysTest (String name)
+    {
+        super(name);
+    }
+
+    public void testLoadStore ()
+    {
+        ParticleArrays arrays = new ParticleArrays(3);
+        Particle particle = new Particle(arrays, 1);
+
+        // the working copies are written to the particle's slot on store
+        particle.getPosition().set(1f, 2f, 3f);
+        particle.getVelocity().set(4f, 5f, 6f);
+        particle.getColor().set(0.1f, 0.2f, 0.3f, 0.4f);
+        particle.setSize(7f);
+        particle.store();
+        assertEquals(new Vector3f(1f, 2f, 3f), arrays.getPosition(1, new Vector3f()));
+        assertEquals(new Vector3f(4f, 5f, 6f), arrays.getVelocity(1, new Vector3f()));
+        assertEquals(new Color4f(0.1f, 0.2f, 0.3f, 0.4f), arrays.getColor(1, new Color4f()));
+        assertEquals(7f, arrays.sizes[1]);
+        assertEquals(0f, arrays.positions[0]);
+        assertEquals(0f, arrays.positions[6]);
+
+        // and read back from it on load
+        arrays.positions[4] = 8f;
+        particle.load();
+        assertEquals(new Vector3f(1f, 8f, 3f), particle.getPosition());
+    }
+
+    public void testMoveTo ()
+    {
+        ParticleArrays arrays = new ParticleArrays(2);
+        Particle particle = new Particle(arrays, 0);
+        int id = arrays.ids[0];
+        particle.getVelocity().set(1f, 2f, 3f);
+        particle.store();
+        particle.setSize(4f);
+
+        ParticleArrays narrays = new ParticleArrays(4);
+        particle.moveTo(narrays, 3);
+        assertSame(narrays, particle.getArrays());
+        assertEquals(3, particle.getSlot());
+        assertEquals(new Vector3f(1f, 2f, 3f), narrays.getVelocity(3, new Vector3f()));
+        assertEquals(4f, particle.getSize());
+        assertEquals(id, narrays.ids[3]);
+    }
+
+    public void testArrayInfluence ()
+    {
+        InfluenceConfig.LinearDrag config = new InfluenceConfig.LinearDrag();
+        config.amount = 0.5f;
+        Influence influence = config.createInfluence(null);
+        assertTrue(influence instanceof ArrayInfluence);
+        influence.tick(1f);
+
+        // the bulk update only touches the listed slots
+        ParticleArrays arrays = new ParticleArrays(3);
+        for (int ii = 0; ii < 3; ii++) {
+            arrays.setVelocity(ii, new Vector3f(2f, 4f, 6f));
+        }
+        ((ArrayInfluence)influence).apply(arrays, new int[] { 2, 0, 1 }, 2);
+        assertEquals(new Vector3f(1f, 2f, 3f), arrays.getVelocity(0, new Vector3f()));
+        assertEquals(new Vector3f(2f, 4f, 6f), arrays.getVelocity(1, new Vector3f()));
+        assertEquals(new Vector3f(1f, 2f, 3f), arrays.getVelocity(2, new Vector3f()));
+
+        // the single-particle update works on the loaded particle's working copies
+        Particle particle = new Particle(arrays, 1);
+        particle.load();
+        particle.getVelocity().multLocal(2f);
+        influence.apply(particle);
+        assertEquals(new Vector3f(2f, 4f, 6f), particle.getVelocity());
+        assertEquals(new Vector3f(2f, 4f, 6f), arrays.getVelocity(1, new Vector3f()));
+    }
+}
@@ -0,0 +1,117 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+
+package com.threerings.opengl.gui;
+
+import junit.framework.TestCase;
+
+import com.threerings.opengl.gui.layout.GroupLayout;
+
+/**
+ * Tests the layout caching in {@link Container}.
+ */
+public class ContainerTest extends TestCase
+{
+    public ContainerTest (String name)
+    {
+        super(name);
+    }
+
+    public void testUnchangedChildSkipsLayout ()
+    {
+        CountingContainer cont = new CountingContainer(GroupLayout.makeHStretch());
+        Component child = new Component(null);
+        child.setPreferredSize(10, 10);
+        cont.add(child);
+        cont.setBounds(0, 0, 100, 100);
+        cont.validate();
+        assertEquals(1, cont.layouts);
+
+        // a child invalidated without changing its preferred size is validated on its own
+        child.invalidate();
+        assertFalse(cont.isValid());
+        cont.validate();
+        assertTrue(child.isValid());
+        assertEquals(1, cont.layouts);
+
+        // one whose preferred size changes causes its parent to be laid out again
+        child.setPreferredSize(20, 10);
+        child.invalidate();
+        cont.validate();
+        assertEquals(2, cont.layouts);
+        assertEquals(20, cont.getPreferredSize(-1, -1).width);
+    }
+
+    public void testLayoutChangesInvalidate ()
+    {
+        GroupLayout layout = GroupLayout.makeHStretch().setGap(0);
+        CountingContainer cont = new CountingContainer(layout);
+        for (int ii = 0; ii < 2; ii++) {
+            Component child = new Component(null);
+            child.setPreferredSize(10, 10);
+            cont.add(child);
+        }
+        cont.setBounds(0, 0, 100, 100);
+        cont.validate();
+        assertEquals(20, cont.getPreferredSize(-1, -1).width);
+
+        // changing the policy flushes the cached preferred size and forces a layout
+        layout.setGap(5);
+        assertFalse(cont.isValid());
+        assertEquals(25, cont.getPreferredSize(-1, -1).width);
+        cont.validate();
+        assertEquals(2, cont.layouts);
+
+        // as does replacing the layout manager, after which the old one is no longer tracked
+        cont.setLayoutManager(GroupLayout.makeHStretch().setGap(1));
+        assertEquals(21, cont.getPreferredSize(-1, -1).width);
+        cont.validate();
+        assertEquals(3, cont.layouts);
+        layout.setGap(10);
+        assertTrue(cont.isValid());
+    }
+
+    /**
+     * Counts the number of times it is laid out.
+     */
+    protected static class CountingContainer extends Container
+    {
+        /** The number of layouts performed. */
+        public int layouts;
+
+        public CountingContainer (GroupLayout layout)
+        {
+            super(null, layout);
+        }
+
+        @Override // from Container
+        protected void layout ()
+        {
+            layouts++;
+            super.layout();
+        }
+    }
+}
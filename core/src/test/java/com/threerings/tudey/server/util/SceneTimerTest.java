@@ -0,0 +1,146 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Lists;
+
+import com.threerings.tudey.server.TudeySceneManager;
+
+/**
+ * Tests the {@link SceneTimer} class.
+ */
+public class SceneTimerTest extends TestCase
+{
+    public SceneTimerTest (String name)
+    {
+        super(name);
+    }
+
+    public void testWheelSpan ()
+    {
+        // a delay of exactly one span of the first level of the wheel, from the middle of a slot
+        TestSceneManager scenemgr = new TestSceneManager();
+        scenemgr.tickTo(1000);
+        TestTimer timer = new TestTimer(scenemgr);
+        timer.schedule(TestSceneManager.SPAN);
+        scenemgr.tickTo(1000 + TestSceneManager.SPAN - 1);
+        assertTrue(timer.fired.isEmpty());
+        assertTrue(timer.isScheduled());
+        scenemgr.tickTo(1000 + TestSceneManager.SPAN);
+        assertEquals(Lists.newArrayList(1000 + TestSceneManager.SPAN), timer.fired);
+        assertFalse(timer.isScheduled());
+    }
+
+    public void testWrapAround ()
+    {
+        // start just before the end of a revolution of the first level, with one timer due
+        // after the wrap and another beyond the span of the second level
+        TestSceneManager scenemgr = new TestSceneManager();
+        int start = TestSceneManager.SPAN*3 - 10;
+        scenemgr.tickTo(start);
+        TestTimer near = new TestTimer(scenemgr), far = new TestTimer(scenemgr);
+        near.schedule(20);
+        far.scheduleAt(start + TestSceneManager.SPAN*300 + 5);
+
+        // tick at a typical interval; each timer fires on the first tick to reach its time
+        int interval = 110;
+        for (int timestamp = start; near.fired.isEmpty() || far.fired.isEmpty(); ) {
+            scenemgr.tickTo(timestamp += interval);
+        }
+        assertEquals(Lists.newArrayList(start + interval), near.fired);
+        int fired = far.fired.get(0);
+        assertTrue(fired >= start + TestSceneManager.SPAN*300 + 5);
+        assertTrue(fired < start + TestSceneManager.SPAN*300 + 5 + interval);
+        assertEquals(0, scenemgr.getTimerCount());
+    }
+
+    public void testRepeat ()
+    {
+        // a timer that reschedules itself from within its callback fires once per period
+        TestSceneManager scenemgr = new TestSceneManager();
+        TestTimer timer = new TestTimer(scenemgr) {
+            @Override
+            public void expired () {
+                super.expired();
+                schedule(TestSceneManager.SPAN);
+            }
+        };
+        timer.schedule(TestSceneManager.SPAN);
+        for (int timestamp = 0; timestamp <= TestSceneManager.SPAN*4; timestamp += 32) {
+            scenemgr.tickTo(timestamp);
+        }
+        assertEquals(Lists.newArrayList(TestSceneManager.SPAN, TestSceneManager.SPAN*2,
+            TestSceneManager.SPAN*3, TestSceneManager.SPAN*4), timer.fired);
+        assertTrue(timer.cancel());
+        assertFalse(timer.cancel());
+    }
+
+    /**
+     * A timer that records the timestamps at which it fires.
+     */
+    protected static class TestTimer extends SceneTimer
+    {
+        /** The timestamps at which the timer fired. */
+        public List<Integer> fired = Lists.newArrayList();
+
+        public TestTimer (TudeySceneManager scenemgr)
+        {
+            super(scenemgr);
+        }
+
+        @Override
+        public void expired ()
+        {
+            fired.add(_scenemgr.getTimestamp());
+        }
+    }
+
+    /**
+     * A scene manager that fires its timers as the tick does, without ticking anything else.
+     */
+    protected static class TestSceneManager extends TudeySceneManager
+    {
+        /** The span of the first level of the timer wheel. */
+        public static final int SPAN = 1 << (WHEEL_RESOLUTION + WHEEL_SLOTS);
+
+        /**
+         * Advances the scene to the specified timestamp, firing the timers whose time has come.
+         */
+        public void tickTo (int timestamp)
+        {
+            _timestamp = timestamp;
+            _timers.advance(_timestamp, _expiredTimers);
+            for (int ii = 0, nn = _expiredTimers.size(); ii < nn; ii++) {
+                _expiredTimers.get(ii).expired();
+            }
+            _expiredTimers.clear();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Tests the {@link TimingWheel} class.
+ */
+public class TimingWheelTest extends TestCase
+{
+    public TimingWheelTest (String name)
+    {
+        super(name);
+    }
+
+    public void testExpiryOrder ()
+    {
+        TimingWheel<String> wheel = createWheel();
+        wheel.schedule("c", 40);
+        wheel.schedule("a", 10);
+        wheel.schedule("b", 40);
+        wheel.schedule("d", 35);
+        wheel.schedule("e", 10);
+        List<String> expired = Lists.newArrayList();
+
+        // nothing is due yet
+        wheel.advance(9, expired);
+        assertTrue(expired.isEmpty());
+
+        // elements with equal timestamps come out in the order they were scheduled
+        wheel.advance(40, expired);
+        assertEquals(Arrays.asList("a", "e", "d", "c", "b"), expired);
+        assertEquals(0, wheel.size());
+    }
+
+    public void testReschedule ()
+    {
+        TimingWheel<String> wheel = createWheel();
+        wheel.schedule("a", 20);
+        wheel.schedule("b", 20);
+        wheel.schedule("a", 20);
+        wheel.schedule("c", 500);
+        wheel.schedule("c", 15);
+        assertEquals(3, wheel.size());
+        assertEquals(15, wheel.getTimestamp("c"));
+
+        // rescheduling moves an element behind those already scheduled for the same time
+        List<String> expired = Lists.newArrayList();
+        wheel.advance(20, expired);
+        assertEquals(Arrays.asList("c", "b", "a"), expired);
+    }
+
+    public void testCancel ()
+    {
+        TimingWheel<String> wheel = createWheel();
+        wheel.schedule("a", 10);
+        wheel.schedule("b", 10);
+        wheel.schedule("c", 10);
+        wheel.schedule("d", 5000);
+        assertTrue(wheel.cancel("b"));
+        assertTrue(wheel.cancel("d"));
+        assertFalse(wheel.cancel("b"));
+        assertFalse(wheel.cancel("e"));
+        assertFalse(wheel.contains("b"));
+        assertEquals(Integer.MAX_VALUE, wheel.getTimestamp("d"));
+        assertEquals(2, wheel.size());
+
+        // cancelled elements never expire
+        List<String> expired = Lists.newArrayList();
+        wheel.advance(10000, expired);
+        assertEquals(Arrays.asList("a", "c"), expired);
+
+        // and may be scheduled again
+        expired.clear();
+        wheel.schedule("b", 10010);
+        wheel.advance(10010, expired);
+        assertEquals(Arrays.asList("b"), expired);
+    }
+
+    public void testPastTimestamps ()
+    {
+        TimingWheel<String> wheel = createWheel();
+        List<String> expired = Lists.newArrayList();
+        wheel.advance(1000, expired);
+
+        // elements scheduled for times already reached expire on the next advance
+        wheel.schedule("b", 999);
+        wheel.schedule("a", 10);
+        wheel.schedule("c", 1000);
+        wheel.advance(1000, expired);
+        assertEquals(Arrays.asList("a", "b", "c"), expired);
+    }
+
+    public void testSpanBoundaries ()
+    {
+        // the first level spans 128 milliseconds, the second 1024, the third 8192
+        TimingWheel<String> wheel = createWheel();
+        Map<String, Integer> schedule = Maps.newHashMap();
+        for (int timestamp : new int[] { 127, 128, 129, 1023, 1024, 1025, 8191, 8192 }) {
+            schedule.put("t" + timestamp, timestamp);
+        }
+        checkExpiries(wheel, schedule, 0, 9000, 1);
+    }
+
+    public void testWrapAround ()
+    {
+        // start just before the end of a revolution of the first two levels
+        TimingWheel<String> wheel = new TimingWheel<String>(4, 3, 3, 1020);
+        Map<String, Integer> schedule = Maps.newHashMap();
+        schedule.put("a", 1030);
+        schedule.put("b", 1020 + 128);
+        schedule.put("c", 1020 + 1024);
+        schedule.put("d", 1020 + 8192);
+
+        // beyond the span of the whole wheel, the top level wraps around
+        schedule.put("e", 1020 + 8192*8 + 5);
+        schedule.put("f", 1020 + 8192*20);
+
+        // advance in uneven steps, so that some advances cross slot boundaries
+        checkExpiries(wheel, schedule, 1020, 1020 + 8192*21, 7);
+
+        // and in large steps, so that each crosses several slots of every level
+        wheel = new TimingWheel<String>(4, 3, 3, 1020);
+        checkExpiries(wheel, schedule, 1020, 1020 + 8192*21, 3000);
+    }
+
+    /**
+     * Schedules the elements for their timestamps, then advances the wheel from the start to the
+     * end timestamp in steps of the given size, checking that each element expires on the first
+     * advance to reach its timestamp.
+     */
+    protected static void checkExpiries (
+        TimingWheel<String> wheel, Map<String, Integer> schedule, int start, int end, int step)
+    {
+        for (Map.Entry<String, Integer> entry : schedule.entrySet()) {
+            wheel.schedule(entry.getKey(), entry.getValue());
+        }
+        List<String> expired = Lists.newArrayList();
+        for (int timestamp = start; timestamp <= end; timestamp += step) {
+            wheel.advance(timestamp, expired);
+            for (String element : expired) {
+                int scheduled = schedule.get(element);
+                assertTrue(element + " expired early at " + timestamp, scheduled <= timestamp);
+                assertTrue(element + " expired late at " + timestamp,
+                    scheduled > timestamp - step);
+            }
+            expired.clear();
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    /**
+     * Creates a wheel with 16 millisecond slots, eight slots per level, and three levels.
+     */
+    protected static TimingWheel<String> createWheel ()
+    {
+        return new TimingWheel<String>(4, 3, 3, 0);
+    }
+}
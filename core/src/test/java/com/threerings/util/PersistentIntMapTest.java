@@ -0,0 +1,169 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.util;
+
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Maps;
+
+import com.samskivert.util.RandomUtil;
+
+/**
+ * Tests the {@link PersistentIntMap} class.
+ */
+public class PersistentIntMapTest extends TestCase
+{
+    public PersistentIntMapTest (String name)
+    {
+        super(name);
+    }
+
+    @Override
+    public void setUp ()
+    {
+        // use a fixed seed so that our results are reproducible
+        RandomUtil.rand.setSeed(1199325877849L);
+    }
+
+    public void testPutRemove ()
+    {
+        // apply random changes to both a persistent map and a hash map, comparing them after
+        // each batch; the small key range makes for plenty of replacements and removals
+        Map<Integer, String> expected = Maps.newHashMap();
+        PersistentIntMap<String> map = PersistentIntMap.empty();
+        for (int ii = 0; ii < 50; ii++) {
+            PersistentIntMap.Editor<String> editor = map.edit();
+            for (int jj = 0; jj < 100; jj++) {
+                int key = RandomUtil.getInt(500) - 250;
+                if (RandomUtil.getInt(3) == 0) {
+                    assertEquals(expected.remove(key), editor.remove(key));
+                } else {
+                    String value = String.valueOf(RandomUtil.getInt(1000));
+                    assertEquals(expected.put(key, value), editor.put(key, value));
+                }
+                assertEquals(expected.size(), editor.size());
+            }
+            map = editor.build();
+            assertEquals(expected, map);
+            assertEquals(map, expected);
+            for (int key = -260; key < 260; key++) {
+                assertEquals(expected.get(key), map.get(key));
+                assertEquals(expected.containsKey(key), map.containsKey(key));
+            }
+        }
+
+        // remove everything
+        PersistentIntMap.Editor<String> editor = map.edit();
+        for (Integer key : expected.keySet()) {
+            editor.remove(key);
+        }
+        map = editor.build();
+        assertEquals(0, map.size());
+        assertTrue(map.isEmpty());
+        assertFalse(map.entrySet().iterator().hasNext());
+    }
+
+    public void testStructuralSharing ()
+    {
+        PersistentIntMap.Editor<String> editor = PersistentIntMap.<String>empty().edit();
+        for (int ii = 0; ii < 1000; ii++) {
+            editor.put(ii, "v" + ii);
+        }
+        PersistentIntMap<String> m1 = editor.build();
+
+        // the editor may continue after a build without affecting the built map
+        editor.put(3, "changed");
+        editor.remove(4);
+        editor.put(5000, "added");
+        PersistentIntMap<String> m2 = editor.build();
+        assertEquals("v3", m1.get(3));
+        assertEquals("v4", m1.get(4));
+        assertNull(m1.get(5000));
+        assertEquals(1000, m1.size());
+        assertEquals("changed", m2.get(3));
+        assertFalse(m2.containsKey(4));
+        assertEquals("added", m2.get(5000));
+        assertEquals(1000, m2.size());
+
+        // keys 3, 4 and 5000 fall in root slots 3, 4 and 8; every other subtrie is shared
+        Object[] a1 = m1._root.array, a2 = m2._root.array;
+        assertEquals(a1.length, a2.length);
+        for (int ii = 0; ii < a1.length; ii++) {
+            if (ii == 3 || ii == 4 || ii == 8) {
+                assertNotSame(a1[ii], a2[ii]);
+            } else {
+                assertSame(a1[ii], a2[ii]);
+            }
+        }
+
+        // replacing a value with itself and removing a missing key change nothing
+        PersistentIntMap.Editor<String> reeditor = m2.edit();
+        assertEquals("v10", reeditor.put(10, m2.get(10)));
+        assertNull(reeditor.remove(-1));
+        assertSame(m2._root, reeditor.build()._root);
+    }
+
+    public void testCollisions ()
+    {
+        // these keys share all but their highest bits, so they collide at every level but the
+        // last, and their removal must collapse the chain of nodes between them
+        int[] keys = { 0, 1 << 30, Integer.MIN_VALUE, -1, Integer.MAX_VALUE, 31, (31 << 5) | 1 };
+        PersistentIntMap.Editor<Integer> editor = PersistentIntMap.<Integer>empty().edit();
+        for (int key : keys) {
+            assertNull(editor.put(key, key));
+        }
+        PersistentIntMap<Integer> map = editor.build();
+        assertEquals(keys.length, map.size());
+        Map<Integer, Integer> expected = Maps.newHashMap();
+        for (int key : keys) {
+            assertEquals(Integer.valueOf(key), map.get(key));
+            expected.put(key, key);
+        }
+        assertEquals(expected, map);
+        assertFalse(map.containsKey(1 << 25));
+        assertFalse(map.containsKey(1 << 29));
+
+        // remove the colliding keys one at a time
+        editor.remove(1 << 30);
+        expected.remove(1 << 30);
+        assertEquals(expected, editor.build());
+        editor.remove(0);
+        expected.remove(0);
+        PersistentIntMap<Integer> removed = editor.build();
+        assertEquals(expected, removed);
+        assertEquals(Integer.valueOf(Integer.MIN_VALUE), removed.get(Integer.MIN_VALUE));
+
+        // the remaining key at root slot zero is collapsed back into a leaf
+        Object[] array = removed._root.array;
+        assertTrue(array[0] instanceof PersistentIntMap.Leaf);
+
+        // the original map is unaffected
+        assertEquals(keys.length, map.size());
+        assertEquals(Integer.valueOf(0), map.get(0));
+    }
+}
@@ -0,0 +1,103 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the {@link WorkerPool} class.
+ */
+public class WorkerPoolTest extends TestCase
+{
+    public WorkerPoolTest (String name)
+    {
+        super(name);
+    }
+
+    public void testLimiter ()
+        throws InterruptedException
+    {
+        if (!WorkerPool.isEnabled()) {
+            return;
+        }
+        // the limiter never occupies more than its share of threads, and runs every task
+        WorkerPool.Limiter limiter = new WorkerPool.Limiter(2);
+        final AtomicInteger running = new AtomicInteger(), highest = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(200);
+        for (int ii = 0; ii < 200; ii++) {
+            limiter.execute(new Runnable() {
+                public void run () {
+                    int count = running.incrementAndGet();
+                    for (int max; (max = highest.get()) < count; ) {
+                        highest.compareAndSet(max, count);
+                    }
+                    Thread.yield();
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(highest.get() <= 2);
+    }
+
+    public void testDisabledLimiter ()
+    {
+        // a limit of zero runs tasks on the calling thread
+        final Thread caller = Thread.currentThread();
+        final boolean[] ran = new boolean[1];
+        new WorkerPool.Limiter(0).execute(new Runnable() {
+            public void run () {
+                ran[0] = (Thread.currentThread() == caller);
+            }
+        });
+        assertTrue(ran[0]);
+    }
+
+    public void testTaskGroup ()
+    {
+        // every task has completed when invoke returns, whatever the limit
+        for (int threads = 0; threads <= 3; threads++) {
+            WorkerPool.TaskGroup group = new WorkerPool.TaskGroup(
+                new WorkerPool.Limiter(threads));
+            final AtomicInteger count = new AtomicInteger();
+            Runnable[] tasks = new Runnable[50];
+            for (int ii = 0; ii < tasks.length; ii++) {
+                tasks[ii] = new Runnable() {
+                    public void run () {
+                        count.incrementAndGet();
+                    }
+                };
+            }
+            group.invoke(tasks);
+            assertEquals(tasks.length, count.get());
+        }
+    }
+}